@@ -0,0 +1,76 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.colibri.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Compares the parsing of COLIBRI conferences with about a thousand channels
+ * (two per endpoint) by the parser specialized for the children of channels
+ * and by the providers registered with <tt>ProviderManager</tt>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColibriChannelParserBenchmark
+{
+    /**
+     * The kind of stanza to parse, one of the {@link Samples.Colibri} names.
+     */
+    @Param({ "ALLOCATE_RESPONSE", "UPDATE_REQUEST" })
+    public String kind;
+
+    /**
+     * The number of endpoints in the conference.
+     */
+    @Param({ "500" })
+    public int endpoints;
+
+    /**
+     * Whether the specialized parser is used.
+     */
+    @Param({ "true", "false" })
+    public boolean fastChannelParsing;
+
+    private ColibriIQProvider provider;
+
+    private String xml;
+
+    @Setup
+    public void setUp()
+    {
+        // Registers the providers of the transports, without which the
+        // generic path would skip them.
+        new JingleIQProvider();
+        provider = new ColibriIQProvider();
+        provider.setFastChannelParsing(fastChannelParsing);
+        xml = Samples.colibri(Samples.Colibri.valueOf(kind), endpoints);
+    }
+
+    @Benchmark
+    public Object parse()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.colibri.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures the parsing and serialization of COLIBRI conference IQs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColibriConferenceIQBenchmark
+{
+    /**
+     * The kind of IQ, one of the {@link Samples.Colibri} names.
+     */
+    @Param({
+        "ALLOCATE_REQUEST",
+        "ALLOCATE_RESPONSE",
+        "UPDATE_REQUEST",
+        "UPDATE_RESPONSE" })
+    public String kind;
+
+    /**
+     * The number of endpoints in the conference.
+     */
+    @Param({ "4", "50" })
+    public int endpoints;
+
+    private ColibriIQProvider provider;
+
+    private String xml;
+
+    private ColibriConferenceIQ iq;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        provider = new ColibriIQProvider();
+        xml = Samples.colibri(Samples.Colibri.valueOf(kind), endpoints);
+        iq = (ColibriConferenceIQ) Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    public Object parse()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    public String toXML()
+    {
+        return iq.toXML().toString();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures how the lookups of children by type in a shared ICE transport
+ * scale with the number of threads, with the transport frozen and not. A
+ * frozen tree is read without taking the monitors of its child lists, so
+ * its aggregate throughput is expected to grow with the thread count until
+ * the cores are saturated, whereas the readers of a mutable tree contend.
+ * <p>
+ * The transport rather than the RTP description is read because a mutable
+ * <tt>RtpDescriptionPacketExtension</tt> rebuilds a shared list of its
+ * children on every lookup, so it cannot be read concurrently unless it is
+ * frozen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrozenTreeBenchmark
+{
+    /**
+     * Whether the content of the transport is frozen.
+     */
+    @Param({ "true", "false" })
+    public boolean frozen;
+
+    /**
+     * The number of ICE candidates of the transport.
+     */
+    @Param({ "32" })
+    public int candidates;
+
+    private IceUdpTransportPacketExtension transport;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        JingleIQ iq
+            = Samples.parse(
+                    new JingleIQProvider(),
+                    Samples.jingleSessionInitiate(candidates));
+        ContentPacketExtension content = iq.getContentByName("video");
+
+        if (frozen)
+        {
+            content.freeze();
+        }
+        transport
+            = content.getFirstChildOfType(IceUdpTransportPacketExtension.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<?> candidates1Thread()
+    {
+        return transport.getChildExtensionsOfType(
+            CandidatePacketExtension.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<?> candidates4Threads()
+    {
+        return transport.getChildExtensionsOfType(
+            CandidatePacketExtension.class);
+    }
+
+    /**
+     * Looks the candidates up in a group of threads which concurrently look
+     * the fingerprints up in {@link #fingerprints()}.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public List<?> candidates()
+    {
+        return transport.getChildExtensionsOfType(
+            CandidatePacketExtension.class);
+    }
+
+    /**
+     * Looks the fingerprints up in a group of threads which concurrently look
+     * the candidates up in {@link #candidates()}.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public List<?> fingerprints()
+    {
+        return transport.getChildExtensionsOfType(
+            DtlsFingerprintPacketExtension.class);
+    }
+}
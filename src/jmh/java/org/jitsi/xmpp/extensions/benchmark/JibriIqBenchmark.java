@@ -0,0 +1,67 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.jibri.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures the parsing and serialization of Jibri IQs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JibriIqBenchmark
+{
+    /**
+     * The kind of IQ, one of the {@link Samples.Jibri} names.
+     */
+    @Param({ "START_REQUEST", "STATUS" })
+    public String kind;
+
+    private JibriIqProvider provider;
+
+    private String xml;
+
+    private JibriIq iq;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        provider = new JibriIqProvider();
+        xml = Samples.jibri(Samples.Jibri.valueOf(kind));
+        iq = Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    public Object parse()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    public String toXML()
+    {
+        return iq.toXML().toString();
+    }
+}
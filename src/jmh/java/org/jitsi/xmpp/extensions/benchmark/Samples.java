@@ -0,0 +1,453 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+import java.io.*;
+import java.util.logging.*;
+
+/**
+ * Generates the XML documents used by the benchmarks and parses them the way
+ * Smack does, i.e. by positioning a parser on the child element of the
+ * <tt>iq</tt> and passing it to the provider of that element.
+ */
+final class Samples
+{
+    /**
+     * The kinds of COLIBRI conference IQs exchanged between a focus and a
+     * bridge.
+     */
+    enum Colibri
+    {
+        /**
+         * A request to allocate channels for new endpoints: no IDs, no
+         * sources, no transports.
+         */
+        ALLOCATE_REQUEST,
+
+        /**
+         * The response to {@link #ALLOCATE_REQUEST}: channel IDs, the
+         * bridge's SSRCs and transports (with local candidates), endpoints.
+         */
+        ALLOCATE_RESPONSE,
+
+        /**
+         * A request which updates existing channels with the sources, source
+         * groups and transports (with remote candidates) of the endpoints.
+         */
+        UPDATE_REQUEST,
+
+        /**
+         * The response to {@link #UPDATE_REQUEST}, which echoes the channels
+         * and their sources.
+         */
+        UPDATE_RESPONSE
+    }
+
+    /**
+     * The kinds of Jibri IQs.
+     */
+    enum Jibri
+    {
+        /**
+         * A request to start a live stream.
+         */
+        START_REQUEST,
+
+        /**
+         * A status update.
+         */
+        STATUS
+    }
+
+    /**
+     * The logger of the extensions. A reference is kept because
+     * <tt>java.util.logging</tt> only keeps weak ones, and a level set on an
+     * unreferenced logger is lost when it is collected.
+     */
+    private static final Logger extensionsLogger
+        = Logger.getLogger("org.jitsi.xmpp.extensions");
+
+    static
+    {
+        // Some extensions log every time they are serialized. The formatting
+        // of the messages is still measured, but not the console output.
+        extensionsLogger.setLevel(Level.SEVERE);
+    }
+
+    /**
+     * Returns a COLIBRI conference IQ child element of a specific kind.
+     *
+     * @param kind the kind of the IQ.
+     * @param endpoints the number of endpoints in the conference.
+     * @return the <tt>conference</tt> element.
+     */
+    static String colibri(Colibri kind, int endpoints)
+    {
+        boolean ids = kind != Colibri.ALLOCATE_REQUEST;
+        boolean payloads = kind != Colibri.UPDATE_RESPONSE;
+        boolean sources
+            = kind == Colibri.UPDATE_REQUEST
+                || kind == Colibri.UPDATE_RESPONSE;
+        boolean bundles
+            = kind == Colibri.ALLOCATE_RESPONSE
+                || kind == Colibri.UPDATE_REQUEST;
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<conference xmlns='http://jitsi.org/protocol/colibri'")
+            .append(" id='8c7b2e4f1a3d9065' gid='ff62ef'")
+            .append(" name='room@conference.example.com'>");
+        for (String media : new String[] { "audio", "video" })
+        {
+            xml.append("<content name='").append(media).append("'>");
+            for (int i = 0; i < endpoints; i++)
+            {
+                xml.append("<channel");
+                if (ids)
+                {
+                    xml.append(" id='").append(media).append(i)
+                        .append("c5e1d7a9'");
+                }
+                xml.append(" endpoint='").append(endpointId(i))
+                    .append("' channel-bundle-id='").append(endpointId(i))
+                    .append("' expire='60' initiator='true'")
+                    .append(" direction='sendrecv'")
+                    .append(" rtp-level-relay-type='translator'>");
+                if (payloads)
+                {
+                    appendPayloadTypes(xml, media);
+                }
+                if (sources)
+                {
+                    appendSources(xml, media, i);
+                }
+                if (kind == Colibri.ALLOCATE_RESPONSE)
+                {
+                    xml.append("<ssrc>").append(1000000 + i).append("</ssrc>");
+                }
+                xml.append("</channel>");
+            }
+            xml.append("</content>");
+        }
+        xml.append("<content name='data'>");
+        for (int i = 0; i < endpoints; i++)
+        {
+            xml.append("<sctpconnection");
+            if (ids)
+            {
+                xml.append(" id='data").append(i).append("c5e1d7a9'");
+            }
+            xml.append(" endpoint='").append(endpointId(i))
+                .append("' channel-bundle-id='").append(endpointId(i))
+                .append("' port='5000' expire='60' initiator='true'/>");
+        }
+        xml.append("</content>");
+        if (bundles)
+        {
+            for (int i = 0; i < endpoints; i++)
+            {
+                xml.append("<channel-bundle id='").append(endpointId(i))
+                    .append("'>");
+                appendTransport(xml, i, 2);
+                xml.append("</channel-bundle>");
+            }
+        }
+        if (kind == Colibri.ALLOCATE_RESPONSE)
+        {
+            for (int i = 0; i < endpoints; i++)
+            {
+                xml.append("<endpoint id='").append(endpointId(i))
+                    .append("' stats-id='Participant-").append(i)
+                    .append("'/>");
+            }
+        }
+        return xml.append("</conference>").toString();
+    }
+
+    /**
+     * Returns a COLIBRI <tt>stats</tt> IQ child element, as published by a
+     * bridge.
+     *
+     * @param count the number of statistics.
+     * @return the <tt>stats</tt> element.
+     */
+    static String colibriStats(int count)
+    {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<stats xmlns='http://jitsi.org/protocol/colibri'>");
+        for (int i = 0; i < count; i++)
+        {
+            xml.append("<stat name='stat_").append(i).append("' value='");
+            switch (i % 4)
+            {
+            case 0:
+                xml.append(i * 1000);
+                break;
+            case 1:
+                xml.append(i).append(".25");
+                break;
+            case 2:
+                xml.append((i & 8) == 0);
+                break;
+            default:
+                xml.append("region-").append(i % 3);
+                break;
+            }
+            xml.append("'/>");
+        }
+        return xml.append("</stats>").toString();
+    }
+
+    /**
+     * Returns a Jingle <tt>session-initiate</tt> IQ child element for an
+     * audio and a simulcast video stream.
+     *
+     * @param candidates the number of ICE candidates of each transport.
+     * @return the <tt>jingle</tt> element.
+     */
+    static String jingleSessionInitiate(int candidates)
+    {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<jingle xmlns='urn:xmpp:jingle:1'")
+            .append(" action='session-initiate'")
+            .append(" initiator='focus@auth.example.com/focus1234'")
+            .append(" sid='e4c1ab6f3d'>");
+        for (String media : new String[] { "audio", "video" })
+        {
+            xml.append("<content creator='initiator' senders='both' name='")
+                .append(media).append("'>")
+                .append("<description xmlns='urn:xmpp:jingle:apps:rtp:1'")
+                .append(" media='").append(media).append("'>");
+            appendPayloadTypes(xml, media);
+            appendSources(xml, media, 0);
+            xml.append("</description>");
+            appendTransport(xml, 0, candidates);
+            xml.append("</content>");
+        }
+        xml.append("<group xmlns='urn:xmpp:jingle:apps:grouping:0'")
+            .append(" semantics='BUNDLE'>")
+            .append("<content name='audio'/><content name='video'/>")
+            .append("</group>");
+        return xml.append("</jingle>").toString();
+    }
+
+    /**
+     * Returns a Jibri IQ child element of a specific kind.
+     *
+     * @param kind the kind of the IQ.
+     * @return the <tt>jibri</tt> element.
+     */
+    static String jibri(Jibri kind)
+    {
+        switch (kind)
+        {
+        case START_REQUEST:
+            return "<jibri xmlns='http://jitsi.org/protocol/jibri'"
+                + " action='start' recording_mode='stream'"
+                + " room='room@conference.example.com'"
+                + " streamid='abcd-efgh-ijkl-mnop'"
+                + " you_tube_broadcast_id='broadcast1'"
+                + " session_id='session1' app_data='{\"file_recording\":{}}'"
+                + " displayname='Recorder'/>";
+        default:
+            return "<jibri xmlns='http://jitsi.org/protocol/jibri'"
+                + " status='off' failure_reason='error'"
+                + " should_retry='true' session_id='session1'/>";
+        }
+    }
+
+    /**
+     * Parses a specific IQ child element with a specific provider.
+     *
+     * @param provider the provider of the IQ.
+     * @param xml the child element of the IQ.
+     * @param <I> the type of the IQ.
+     * @return the parsed IQ.
+     * @throws Exception if parsing fails.
+     */
+    static <I extends IQ> I parse(IQProvider<I> provider, String xml)
+        throws Exception
+    {
+        XmlPullParser parser = new MXParser();
+
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new StringReader(xml));
+        parser.next();
+        return provider.parse(parser);
+    }
+
+    /**
+     * Returns the ID of a specific endpoint.
+     *
+     * @param i the index of the endpoint.
+     * @return the ID of the endpoint.
+     */
+    private static String endpointId(int i)
+    {
+        return "7a3f" + (1000 + i);
+    }
+
+    /**
+     * Appends the payload types and RTP header extensions negotiated for a
+     * specific media type.
+     */
+    private static void appendPayloadTypes(StringBuilder xml, String media)
+    {
+        String rtcpFb
+            = "<rtcp-fb xmlns='urn:xmpp:jingle:apps:rtp:rtcp-fb:0'";
+        String hdrExt
+            = "<rtp-hdrext xmlns='urn:xmpp:jingle:apps:rtp:rtp-hdrext:0'";
+
+        if ("audio".equals(media))
+        {
+            xml.append("<payload-type id='111' name='opus' clockrate='48000'")
+                .append(" channels='2'>")
+                .append("<parameter name='minptime' value='10'/>")
+                .append("<parameter name='useinbandfec' value='1'/>")
+                .append(rtcpFb).append(" type='transport-cc'/>")
+                .append("</payload-type>")
+                .append("<payload-type id='126' name='telephone-event'")
+                .append(" clockrate='8000'/>")
+                .append(hdrExt).append(" id='1'")
+                .append(" uri='urn:ietf:params:rtp-hdrext:ssrc-audio-level'/>");
+        }
+        else
+        {
+            for (String[] codec
+                    : new String[][] { { "100", "VP8" }, { "101", "VP9" } })
+            {
+                xml.append("<payload-type id='").append(codec[0])
+                    .append("' name='").append(codec[1])
+                    .append("' clockrate='90000'>")
+                    .append("<parameter name='x-google-start-bitrate'")
+                    .append(" value='800'/>")
+                    .append(rtcpFb).append(" type='ccm' subtype='fir'/>")
+                    .append(rtcpFb).append(" type='nack'/>")
+                    .append(rtcpFb).append(" type='nack' subtype='pli'/>")
+                    .append(rtcpFb).append(" type='goog-remb'/>")
+                    .append(rtcpFb).append(" type='transport-cc'/>")
+                    .append("</payload-type>");
+            }
+            xml.append("<payload-type id='96' name='rtx' clockrate='90000'>")
+                .append("<parameter name='apt' value='100'/>")
+                .append("</payload-type>")
+                .append(hdrExt).append(" id='3' uri='http://www.webrtc.org")
+                .append("/experiments/rtp-hdrext/abs-send-time'/>");
+        }
+    }
+
+    /**
+     * Appends the sources (and, for video, the simulcast and RTX source
+     * groups) of a specific endpoint.
+     */
+    private static void appendSources(
+            StringBuilder xml, String media, int endpoint)
+    {
+        String ssma = " xmlns='urn:xmpp:jingle:apps:rtp:ssma:0'";
+        int layers = "audio".equals(media) ? 1 : 3;
+        long base = 100000L * (endpoint + 1) + ("audio".equals(media) ? 0 : 10);
+
+        for (int i = 0; i < layers; i++)
+        {
+            appendSource(xml, ssma, base + i, endpoint);
+            if (layers > 1)
+            {
+                appendSource(xml, ssma, base + layers + i, endpoint);
+            }
+        }
+        if (layers > 1)
+        {
+            xml.append("<ssrc-group").append(ssma).append(" semantics='SIM'>");
+            for (int i = 0; i < layers; i++)
+            {
+                xml.append("<source ssrc='").append(base + i).append("'/>");
+            }
+            xml.append("</ssrc-group>");
+            for (int i = 0; i < layers; i++)
+            {
+                xml.append("<ssrc-group").append(ssma)
+                    .append(" semantics='FID'>")
+                    .append("<source ssrc='").append(base + i).append("'/>")
+                    .append("<source ssrc='").append(base + layers + i)
+                    .append("'/></ssrc-group>");
+            }
+        }
+    }
+
+    /**
+     * Appends a single source of a specific endpoint.
+     */
+    private static void appendSource(
+            StringBuilder xml, String ssma, long ssrc, int endpoint)
+    {
+        xml.append("<source").append(ssma).append(" ssrc='").append(ssrc)
+            .append("'><parameter name='cname' value='cname-")
+            .append(endpoint).append("'/>")
+            .append("<parameter name='msid' value='stream-").append(endpoint)
+            .append(" track-").append(ssrc).append("'/>")
+            .append("<ssrc-info xmlns='http://jitsi.org/jitmeet'")
+            .append(" owner='room@conference.example.com/")
+            .append(endpointId(endpoint)).append("'/></source>");
+    }
+
+    /**
+     * Appends an ICE-UDP transport with a DTLS fingerprint and a specific
+     * number of candidates.
+     */
+    private static void appendTransport(
+            StringBuilder xml, int endpoint, int candidates)
+    {
+        xml.append("<transport xmlns='urn:xmpp:jingle:transports:ice-udp:1'")
+            .append(" ufrag='uf").append(endpoint)
+            .append("' pwd='5hd1jc6dn7b0k3ka7p5mk9s0").append(endpoint)
+            .append("'><rtcp-mux/>")
+            .append("<fingerprint xmlns='urn:xmpp:jingle:apps:dtls:0'")
+            .append(" hash='sha-256' setup='actpass'>")
+            .append("44:AF:49:E3:3B:E0:0D:A2:FA:AB:F4:93:EC:5D:32:39:")
+            .append("78:F8:01:06:1F:8E:E4:35:36:15:56:59:6B:3C:52:49")
+            .append("</fingerprint>");
+        for (int i = 0; i < candidates; i++)
+        {
+            xml.append("<candidate component='1' foundation='").append(i)
+                .append("' generation='0' id='c").append(endpoint).append('-')
+                .append(i).append("' ip='10.0.").append(i % 250)
+                .append(".1' network='").append(i % 4)
+                .append("' port='").append(10000 + i)
+                .append("' priority='").append(2130706431 - i)
+                .append("' protocol='udp' type='")
+                .append(i % 3 == 0 ? "host" : "srflx").append("'");
+            if (i % 3 != 0)
+            {
+                xml.append(" rel-addr='10.0.0.1' rel-port='10000'");
+            }
+            xml.append("/>");
+        }
+        xml.append("</transport>");
+    }
+
+    /**
+     * Prevents the initialization of new <tt>Samples</tt> instances.
+     */
+    private Samples()
+    {
+    }
+}
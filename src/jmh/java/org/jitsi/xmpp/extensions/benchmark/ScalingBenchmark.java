@@ -0,0 +1,106 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.colibri.*;
+import org.jivesoftware.smack.packet.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures how the parsing and serialization of a COLIBRI allocation
+ * response, the largest IQ exchanged in a conference, scale with the number
+ * of threads sharing a provider. The aggregate throughput of each method is
+ * expected to grow with its thread count until the cores are saturated;
+ * flattening earlier points at contention in shared state (providers,
+ * interning tables, loggers).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingBenchmark
+{
+    /**
+     * The number of endpoints in the conference.
+     */
+    @Param({ "50" })
+    public int endpoints;
+
+    private ColibriIQProvider provider;
+
+    private String xml;
+
+    private IQ iq;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        provider = new ColibriIQProvider();
+        xml
+            = Samples.colibri(Samples.Colibri.ALLOCATE_RESPONSE, endpoints);
+        iq = Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object parse1Thread()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object parse4Threads()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object parseMaxThreads()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String toXML1Thread()
+    {
+        return iq.toXML().toString();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String toXML4Threads()
+    {
+        return iq.toXML().toString();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String toXMLMaxThreads()
+    {
+        return iq.toXML().toString();
+    }
+}
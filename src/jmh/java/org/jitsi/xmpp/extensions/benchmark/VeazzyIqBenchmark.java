@@ -0,0 +1,155 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.jitsimeet.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures the parsing and serialization of each of the Veazzy IQs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VeazzyIqBenchmark
+{
+    /**
+     * The attributes shared by all the Veazzy IQs.
+     */
+    private static final String JIDS
+        = " jid='room@conference.example.com/7a3f1000'"
+            + " actor='room@conference.example.com/7a3f1001'";
+
+    /**
+     * The element name of the IQ.
+     */
+    @Param({
+        "advertisingStream",
+        "blind",
+        "donationAmount",
+        "quizAnswer",
+        "quizQuestion",
+        "raiseHand",
+        "roomFocalParticipant",
+        "roomManager",
+        "roomStatus",
+        "visitor" })
+    public String element;
+
+    private IQProvider<? extends IQ> provider;
+
+    private String xml;
+
+    private IQ iq;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        String namespace;
+        String attributes = JIDS;
+        String text;
+
+        switch (element)
+        {
+        case VeazzyAdvertisingStreamIq.ELEMENT_NAME:
+            provider = new VeazzyAdvertisingStreamIqProvider();
+            namespace = VeazzyAdvertisingStreamIq.NAMESPACE;
+            text = "1";
+            break;
+        case VeazzyBlindIq.ELEMENT_NAME:
+            provider = new VeazzyBlindIqProvider();
+            namespace = VeazzyBlindIq.NAMESPACE;
+            attributes += " blockvideocontrol='true'";
+            text = "true";
+            break;
+        case VeazzyDonationAmountIq.ELEMENT_NAME:
+            provider = new VeazzyDonationAmountIqProvider();
+            namespace = VeazzyDonationAmountIq.NAMESPACE;
+            attributes
+                += " avatar='https://example.com/avatar.png' currency='EUR'";
+            text = "12.50";
+            break;
+        case VeazzyQuizAnswerIq.ELEMENT_NAME:
+            provider = new VeazzyQuizAnswerIqProvider();
+            namespace = VeazzyQuizAnswerIq.NAMESPACE;
+            text = "B";
+            break;
+        case VeazzyQuizQuestionIq.ELEMENT_NAME:
+            provider = new VeazzyQuizQuestionIqProvider();
+            namespace = VeazzyQuizQuestionIq.NAMESPACE;
+            attributes
+                += " answerA='Paris' answerB='Rome' answerC='Madrid'"
+                    + " answerD='Berlin' statusA='true' statusB='false'"
+                    + " statusC='false' statusD='false'";
+            text = "What is the capital of France?";
+            break;
+        case VeazzyRaiseHandIq.ELEMENT_NAME:
+            provider = new VeazzyRaiseHandIqProvider();
+            namespace = VeazzyRaiseHandIq.NAMESPACE;
+            attributes += " participantToRaiseHand='7a3f1002'";
+            text = "1";
+            break;
+        case VeazzyRoomFocalParticipantIq.ELEMENT_NAME:
+            provider = new VeazzyRoomFocalParticipantIqProvider();
+            namespace = VeazzyRoomFocalParticipantIq.NAMESPACE;
+            text = "7a3f1002";
+            break;
+        case VeazzyRoomManagerIq.ELEMENT_NAME:
+            provider = new VeazzyRoomManagerIqProvider();
+            namespace = VeazzyRoomManagerIq.NAMESPACE;
+            text = "7a3f1002";
+            break;
+        case VeazzyRoomStatusIq.ELEMENT_NAME:
+            provider = new VeazzyRoomStatusIqProvider();
+            namespace = VeazzyRoomStatusIq.NAMESPACE;
+            text = "1";
+            break;
+        case VeazzyVisitorIq.ELEMENT_NAME:
+            provider = new VeazzyVisitorIqProvider();
+            namespace = VeazzyVisitorIq.NAMESPACE;
+            attributes += " participantToHide='7a3f1002'";
+            text = "1";
+            break;
+        default:
+            throw new IllegalArgumentException(element);
+        }
+        xml
+            = "<" + element + " xmlns='" + namespace + "'" + attributes + ">"
+                + text + "</" + element + ">";
+        iq = Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    public Object parse()
+        throws Exception
+    {
+        return Samples.parse(provider, xml);
+    }
+
+    @Benchmark
+    public String toXML()
+    {
+        return iq.toXML().toString();
+    }
+}
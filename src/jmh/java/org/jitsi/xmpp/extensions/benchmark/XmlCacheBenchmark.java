@@ -0,0 +1,73 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.benchmark;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+/**
+ * Measures the repeated serialization of an unchanged Jingle content with
+ * and without the XML cache of <tt>AbstractPacketExtension</tt>. With the
+ * cache, <tt>toXML()</tt> is expected to return the same <tt>String</tt>
+ * without allocating, which is best seen with <tt>-prof gc</tt>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlCacheBenchmark
+{
+    /**
+     * Whether the XML cache of the content is enabled.
+     */
+    @Param({ "true", "false" })
+    public boolean xmlCache;
+
+    /**
+     * The number of ICE candidates of the transport of the content.
+     */
+    @Param({ "4", "32" })
+    public int candidates;
+
+    private ContentPacketExtension content;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        JingleIQ iq
+            = Samples.parse(
+                    new JingleIQProvider(),
+                    Samples.jingleSessionInitiate(candidates));
+
+        content = iq.getContentByName("video");
+        content.setXmlCacheEnabled(xmlCache);
+        if (xmlCache && content.toXML() != content.toXML())
+        {
+            throw new IllegalStateException("The XML is not cached.");
+        }
+    }
+
+    @Benchmark
+    public String toXML()
+    {
+        return content.toXML();
+    }
+}
@@ -15,9 +15,11 @@
  */
 package org.jitsi.xmpp.extensions;
 
+import java.lang.ref.*;
 import java.lang.reflect.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jivesoftware.smack.packet.*;
@@ -30,6 +32,15 @@ import org.jivesoftware.smack.util.*;
  * extension rather than using as a fallback for unknown elements. We let for
  * example our descendants handle child elements and we automate attribute
  * handling instead.
+ * <p>
+ * An extension (and all of its descendants) can be turned into an immutable
+ * snapshot with {@link #freeze()}. Its getters then read without taking any
+ * locks and its mutators throw <tt>IllegalStateException</tt>.
+ * <p>
+ * The XML representation of an extension may be cached (see
+ * {@link #setXmlCacheEnabled(boolean)}), in which case {@link #toXML()}
+ * returns the same <tt>String</tt> until the extension or one of its
+ * descendants is modified. Frozen extensions cache their XML automatically.
  *
  * @author Emil Ivov
  * @author Lyubomir Marinov
@@ -37,6 +48,40 @@ import org.jivesoftware.smack.util.*;
 public abstract class AbstractPacketExtension
     implements ExtensionElement
 {
+    /**
+     * The {@link SerializationTraits} of the <tt>AbstractPacketExtension</tt>
+     * classes, computed lazily.
+     */
+    private static final ClassValue<SerializationTraits> SERIALIZATION_TRAITS
+        = new ClassValue<SerializationTraits>()
+        {
+            @Override
+            protected SerializationTraits computeValue(Class<?> type)
+            {
+                return new SerializationTraits(type);
+            }
+        };
+
+    /**
+     * Updates {@link #xmlVersion}.
+     */
+    private static final AtomicIntegerFieldUpdater<AbstractPacketExtension>
+        XML_VERSION
+            = AtomicIntegerFieldUpdater.newUpdater(
+                    AbstractPacketExtension.class, "xmlVersion");
+
+    /**
+     * Updates {@link #xmlParents}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<
+            AbstractPacketExtension, WeakReference[]>
+        XML_PARENTS
+            = AtomicReferenceFieldUpdater.newUpdater(
+                    AbstractPacketExtension.class,
+                    WeakReference[].class,
+                    "xmlParents");
+
     /**
      * Clones the attributes, namespace and text of a specific
      * <tt>AbstractPacketExtension</tt> into a new
@@ -52,15 +97,7 @@ public abstract class AbstractPacketExtension
     @SuppressWarnings("unchecked")
     public static <T extends AbstractPacketExtension> T clone(T src)
     {
-        T dst = null;
-        try
-        {
-            dst = (T) src.getClass().getConstructor().newInstance();
-        }
-        catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e)
-        {
-            throw new RuntimeException(e);
-        }
+        T dst = PacketExtensionFactories.newInstance((Class<T>) src.getClass());
 
         // attributes
         for (String name : src.getAttributeNames())
@@ -88,10 +125,10 @@ public abstract class AbstractPacketExtension
     private final String elementName;
 
     /**
-     * A map of all attributes that this extension is currently using.
+     * A map of all attributes that this extension is currently using. It is
+     * an {@link AttributeMap} which keeps the attributes in insertion order.
      */
-    protected final Map<String, Object> attributes
-        = new LinkedHashMap<String, Object>();
+    protected final Map<String, Object> attributes = new AttributeMap();
 
     /**
      * The text content of this packet extension, if any.
@@ -101,8 +138,54 @@ public abstract class AbstractPacketExtension
     /**
      * A list of extensions registered with this element.
      */
-    private final List<ExtensionElement> childExtensions
-                                = new ArrayList<>();
+    private final ChildList childExtensions = new ChildList();
+
+    /**
+     * The unmodifiable view of {@link #childExtensions} returned by
+     * {@link #getChildExtensions()} once this extension has been frozen.
+     */
+    private List<ExtensionElement> frozenChildExtensions;
+
+    /**
+     * The lists of the child extensions of specific types, built on demand by
+     * {@link #getUnmodifiableChildExtensionsOfType(Class)}. Only valid as
+     * long as its stamp matches the one of {@link #childExtensions}, so any
+     * modification of the children invalidates it.
+     */
+    private volatile ChildIndex childIndex;
+
+    /**
+     * Whether {@link #freeze()} has been called. Written after everything
+     * else that <tt>freeze()</tt> changes, so that a thread which reads
+     * <tt>true</tt> also sees the frozen state.
+     */
+    private volatile boolean frozen;
+
+    /**
+     * Whether the XML representation of this extension is cached.
+     */
+    private volatile boolean xmlCacheEnabled;
+
+    /**
+     * The last XML representation of this extension, if it is cached.
+     */
+    private volatile XmlCache xmlCache;
+
+    /**
+     * Incremented by {@link #modified()} whenever this extension or one of
+     * its descendants changes while its XML may be cached.
+     */
+    private volatile int xmlVersion;
+
+    /**
+     * The extensions which have this one as a child and which need to be
+     * told about its modifications, because they (or one of their ancestors)
+     * cache their XML. <tt>null</tt> if there are none. They are weakly
+     * referenced, because a child may be shared by many parents (e.g. the
+     * frozen payload types of a <tt>CodecSet</tt>) which must not be kept
+     * alive by it.
+     */
+    private volatile WeakReference<AbstractPacketExtension>[] xmlParents;
 
     /**
      * Creates an {@link AbstractPacketExtension} instance for the specified
@@ -133,8 +216,24 @@ public abstract class AbstractPacketExtension
      * @param namespace the XML namespace for this element.
      */
     public void setNamespace(String namespace)
+    {
+        checkNotFrozen();
+        this.namespace = namespace;
+        modified();
+    }
+
+    /**
+     * Sets the XML namespace of this element even if it is frozen. Used by
+     * {@link DefaultPacketExtensionProvider} to apply the namespace of the
+     * parsed element to a child which has been frozen by its own provider,
+     * before the child is handed out to anyone else.
+     *
+     * @param namespace the XML namespace for this element.
+     */
+    void overrideNamespace(String namespace)
     {
         this.namespace = namespace;
+        xmlCache = null;
     }
 
     /**
@@ -156,32 +255,144 @@ public abstract class AbstractPacketExtension
      */
     public String toXML()
     {
+        SerializationTraits traits = getSerializationTraits(getClass());
+        boolean cache = traits.cachesXml && (xmlCacheEnabled || frozen);
+        int version = 0;
+        int stamp = 0;
+
+        if (cache)
+        {
+            XmlCache xmlCache = this.xmlCache;
+
+            // Read the version before serializing, so that a concurrent
+            // modification makes the result stale rather than cached.
+            version = xmlVersion;
+            stamp = childExtensions.stamp();
+            if (xmlCache != null
+                    && xmlCache.version == version
+                    && xmlCache.stamp == stamp)
+            {
+                return xmlCache.xml;
+            }
+        }
+
         XmlStringBuilder xml = new XmlStringBuilder();
 
+        if (traits.overridesAppendXml)
+        {
+            appendXml(xml);
+        }
+        else
+        {
+            writeXml(xml);
+        }
+
+        String s = xml.toString();
+
+        if (cache)
+        {
+            xmlCache = new XmlCache(version, stamp, s);
+        }
+        return s;
+    }
+
+    /**
+     * Writes the XML representation of this extension, including all of its
+     * descendants, into a specific <tt>XmlStringBuilder</tt>. Unlike
+     * {@link #toXML()}, children which are <tt>AbstractPacketExtension</tt>s
+     * write themselves into the same builder instead of producing strings of
+     * their own which then get copied into their parent, so a whole tree is
+     * serialized in a single pass.
+     * <p>
+     * Extensions which customize their XML representation should override
+     * this method. Extensions which override {@link #toXML()} only still work,
+     * the result of their <tt>toXML()</tt> is appended as is.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to write to.
+     * @return <tt>xml</tt>
+     */
+    public XmlStringBuilder appendXml(XmlStringBuilder xml)
+    {
+        SerializationTraits traits = getSerializationTraits(getClass());
+
+        if (traits.overridesToXml
+                || (traits.cachesXml && (xmlCacheEnabled || frozen)))
+        {
+            return xml.append(toXML());
+        }
+        else
+        {
+            return writeXml(xml);
+        }
+    }
+
+    /**
+     * Writes the XML representation of a specific <tt>ExtensionElement</tt>
+     * into a specific <tt>XmlStringBuilder</tt>, without going through an
+     * intermediate string if the element is an
+     * <tt>AbstractPacketExtension</tt>.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to write to.
+     * @param element the element to write or <tt>null</tt>, in which case
+     * nothing is written.
+     * @return <tt>xml</tt>
+     */
+    public static XmlStringBuilder appendXml(
+            XmlStringBuilder xml, ExtensionElement element)
+    {
+        if (element instanceof AbstractPacketExtension)
+        {
+            return ((AbstractPacketExtension) element).appendXml(xml);
+        }
+        else
+        {
+            return xml.optAppend(element);
+        }
+    }
+
+    /**
+     * Writes the default XML representation of this extension (the element
+     * with its attributes, child extensions, the content of
+     * {@link #getChildElementBuilder()} and text) into a specific
+     * <tt>XmlStringBuilder</tt>.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to write to.
+     * @return <tt>xml</tt>
+     */
+    private XmlStringBuilder writeXml(XmlStringBuilder xml)
+    {
         xml.halfOpenElement(getElementName());
         xml.xmlnsAttribute(getNamespace());
 
         //add the rest of the attributes if any
-        for(Map.Entry<String, Object> entry : attributes.entrySet())
+        AttributeMap attributes = (AttributeMap) this.attributes;
+
+        for (int i = 0, count = attributes.size(); i < count; i++)
         {
-            Object value = entry.getValue();
+            Object value = attributes.valueAt(i);
 
             if (value != null)
             {
-                xml.attribute(entry.getKey(), value.toString());
+                xml.attribute(attributes.keyAt(i), value.toString());
             }
         }
 
         //add child elements if any
         List<? extends ExtensionElement> childElements = getChildExtensions();
         String text = getText();
-        XmlStringBuilder childBuilder = getChildElementBuilder();
+        // Only extensions which actually provide custom child content get to
+        // allocate a builder for it.
+        XmlStringBuilder childBuilder
+            = getSerializationTraits(getClass()).overridesChildElementBuilder
+                ? getChildElementBuilder()
+                : null;
 
-        if (childElements.isEmpty() && childBuilder.length() == 0)
+        if (childElements.isEmpty()
+                && (childBuilder == null || childBuilder.length() == 0))
         {
             if (StringUtils.isEmpty(text))
             {
-                return xml.closeEmptyElement().toString();
+                return xml.closeEmptyElement();
             }
             else
             {
@@ -190,15 +401,25 @@ public abstract class AbstractPacketExtension
         }
         else
         {
-            synchronized(childElements)
+            xml.rightAngleBracket();
+            if (frozen)
             {
-                xml.rightAngleBracket();
+                appendChildXml(xml, childElements, null);
+            }
+            else
+            {
+                // If anything above us caches its XML, we need to hear about
+                // the modifications of our children.
+                AbstractPacketExtension parent
+                    = (xmlCacheEnabled || xmlParents != null) ? this : null;
 
-                for(ExtensionElement packExt : childElements)
+                synchronized(childElements)
                 {
-                    xml.optAppend(packExt);
+                    appendChildXml(xml, childElements, parent);
                 }
-
+            }
+            if (childBuilder != null)
+            {
                 xml.append(childBuilder);
             }
         }
@@ -211,7 +432,204 @@ public abstract class AbstractPacketExtension
 
         xml.closeElement(getElementName());
 
-        return xml.toString();
+        return xml;
+    }
+
+    /**
+     * Writes the XML representations of specific child extensions into a
+     * specific <tt>XmlStringBuilder</tt>.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to write to.
+     * @param childElements the child extensions to write.
+     * @param parent the extension to register as a parent of the
+     * <tt>AbstractPacketExtension</tt>s in <tt>childElements</tt> (see
+     * {@link #modified()}) or <tt>null</tt>.
+     */
+    private static void appendChildXml(
+            XmlStringBuilder xml,
+            List<? extends ExtensionElement> childElements,
+            AbstractPacketExtension parent)
+    {
+        for(ExtensionElement packExt : childElements)
+        {
+            if (parent != null && packExt instanceof AbstractPacketExtension)
+            {
+                ((AbstractPacketExtension) packExt).addXmlParent(parent);
+            }
+            appendXml(xml, packExt);
+        }
+    }
+
+    /**
+     * Sets whether the XML representation of this extension is cached. When
+     * it is, {@link #toXML()} keeps returning the same <tt>String</tt> (and
+     * parents append it as is) until this extension or one of its
+     * descendants is modified. This is meant for extensions which are
+     * serialized over and over again without changing, e.g. presence
+     * extensions which are attached to every outgoing presence.
+     * <p>
+     * Modifications made through the methods of
+     * <tt>AbstractPacketExtension</tt> are tracked automatically. Extensions
+     * which keep state of their own must call {@link #modified()} when it
+     * changes, including the state which they write through
+     * {@link #getChildElementBuilder()}, so that the cached XML of their
+     * ancestors is dropped. Extensions which override
+     * <tt>getChildElementBuilder()</tt> or {@link #toXML()} are never cached
+     * themselves.
+     *
+     * @param xmlCacheEnabled <tt>true</tt> to cache the XML representation of
+     * this extension.
+     */
+    public void setXmlCacheEnabled(boolean xmlCacheEnabled)
+    {
+        this.xmlCacheEnabled = xmlCacheEnabled;
+        if (!xmlCacheEnabled)
+        {
+            xmlCache = null;
+        }
+    }
+
+    /**
+     * Determines whether the XML representation of this extension is cached.
+     *
+     * @return <tt>true</tt> if the XML representation of this extension is
+     * cached.
+     */
+    public boolean isXmlCacheEnabled()
+    {
+        return xmlCacheEnabled;
+    }
+
+    /**
+     * Notifies this extension that it (or one of its descendants) has been
+     * modified, which drops the cached XML of this extension and of all of
+     * its ancestors. Called by all mutators of
+     * <tt>AbstractPacketExtension</tt>. Extensions which keep state of their
+     * own must call it whenever that state changes.
+     */
+    protected void modified()
+    {
+        // Nothing to do unless someone caches the XML we are part of.
+        if (xmlCacheEnabled || xmlParents != null)
+        {
+            XML_VERSION.incrementAndGet(this);
+            xmlCache = null;
+
+            WeakReference<AbstractPacketExtension>[] parents = xmlParents;
+
+            if (parents != null)
+            {
+                for (WeakReference<AbstractPacketExtension> ref : parents)
+                {
+                    AbstractPacketExtension parent = ref.get();
+
+                    if (parent != null)
+                    {
+                        parent.modified();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a specific extension as a parent of this one, which is told
+     * about the modifications of this extension. The parents which have been
+     * collected are dropped at the same time.
+     *
+     * @param parent the parent to register.
+     */
+    @SuppressWarnings("unchecked")
+    private void addXmlParent(AbstractPacketExtension parent)
+    {
+        if (frozen)
+        {
+            // Never modified again.
+            return;
+        }
+
+        WeakReference<AbstractPacketExtension>[] parents;
+        WeakReference<AbstractPacketExtension>[] newParents;
+
+        do
+        {
+            parents = xmlParents;
+            newParents
+                = new WeakReference[
+                        (parents == null ? 0 : parents.length) + 1];
+
+            int count = 0;
+
+            if (parents != null)
+            {
+                for (WeakReference<AbstractPacketExtension> ref : parents)
+                {
+                    AbstractPacketExtension p = ref.get();
+
+                    if (p == parent)
+                    {
+                        return;
+                    }
+                    if (p != null)
+                    {
+                        newParents[count++] = ref;
+                    }
+                }
+            }
+            newParents[count++] = new WeakReference<>(parent);
+            if (count < newParents.length)
+            {
+                newParents = Arrays.copyOf(newParents, count);
+            }
+        }
+        while (!XML_PARENTS.compareAndSet(this, parents, newParents));
+    }
+
+    /**
+     * Unregisters a specific extension as a parent of this one.
+     *
+     * @param parent the parent to unregister.
+     */
+    @SuppressWarnings("unchecked")
+    private void removeXmlParent(AbstractPacketExtension parent)
+    {
+        WeakReference<AbstractPacketExtension>[] parents;
+        WeakReference<AbstractPacketExtension>[] newParents;
+
+        do
+        {
+            parents = xmlParents;
+
+            int i = -1;
+
+            if (parents != null)
+            {
+                for (int j = 0; j < parents.length; j++)
+                {
+                    if (parents[j].get() == parent)
+                    {
+                        i = j;
+                        break;
+                    }
+                }
+            }
+            if (i < 0)
+            {
+                return;
+            }
+            if (parents.length == 1)
+            {
+                newParents = null;
+            }
+            else
+            {
+                newParents = new WeakReference[parents.length - 1];
+                System.arraycopy(parents, 0, newParents, 0, i);
+                System.arraycopy(
+                    parents, i + 1, newParents, i, parents.length - i - 1);
+            }
+        }
+        while (!XML_PARENTS.compareAndSet(this, parents, newParents));
     }
 
     /**
@@ -235,7 +653,7 @@ public abstract class AbstractPacketExtension
      */
     public List<? extends ExtensionElement> getChildExtensions()
     {
-        return childExtensions;
+        return frozen ? frozenChildExtensions : childExtensions;
     }
 
     /**
@@ -250,7 +668,12 @@ public abstract class AbstractPacketExtension
      */
     public void addChildExtension(ExtensionElement childExtension)
     {
-        childExtensions.add(childExtension);
+        checkNotFrozen();
+        synchronized (childExtensions)
+        {
+            childExtensions.add(childExtension);
+        }
+        modified();
     }
 
     /**
@@ -260,6 +683,7 @@ public abstract class AbstractPacketExtension
      */
     public void setChildExtension(ExtensionElement childExtension)
     {
+        checkNotFrozen();
         getChildExtensionsOfType(childExtension.getClass())
             .forEach(this::removeChildExtension);
         addChildExtension(childExtension);
@@ -292,12 +716,26 @@ public abstract class AbstractPacketExtension
      */
     public boolean removeChildExtension(ExtensionElement childExtension)
     {
+        checkNotFrozen();
+
         boolean removed = false;
         if (childExtension != null)
         {
-            while (childExtensions.remove(childExtension))
+            synchronized (childExtensions)
+            {
+                while (childExtensions.remove(childExtension))
+                {
+                    removed = true;
+                }
+            }
+            if (removed)
             {
-                removed = true;
+                if (childExtension instanceof AbstractPacketExtension)
+                {
+                    ((AbstractPacketExtension) childExtension)
+                        .removeXmlParent(this);
+                }
+                modified();
             }
         }
 
@@ -314,6 +752,7 @@ public abstract class AbstractPacketExtension
      */
     public void setAttribute(String name, Object value)
     {
+        checkNotFrozen();
         synchronized(attributes)
         {
             if (value != null)
@@ -325,6 +764,81 @@ public abstract class AbstractPacketExtension
                 this.attributes.remove(name);
             }
         }
+        modified();
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a specific
+     * <tt>int</tt>. The value is kept as a number and only turned into a
+     * <tt>String</tt> when needed (e.g. by {@link #toXML()}).
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute.
+     */
+    public void setAttribute(String name, int value)
+    {
+        setAttribute(name, (long) value);
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a specific
+     * <tt>long</tt>. The value is kept as a number and only turned into a
+     * <tt>String</tt> when needed (e.g. by {@link #toXML()}).
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute.
+     */
+    public void setAttribute(String name, long value)
+    {
+        checkNotFrozen();
+        synchronized(attributes)
+        {
+            getAttributeMap().putNumber(name, value);
+        }
+        modified();
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a specific
+     * <tt>boolean</tt>.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute.
+     */
+    public void setAttribute(String name, boolean value)
+    {
+        checkNotFrozen();
+        synchronized(attributes)
+        {
+            getAttributeMap().putTyped(name, Boolean.valueOf(value));
+        }
+        modified();
+    }
+
+    /**
+     * Sets the value of the attribute named <tt>name</tt> to a specific enum
+     * constant, whose XML value is the one returned by its
+     * <tt>toString()</tt> method.
+     *
+     * @param name the name of the attribute that we are setting.
+     * @param value the value of the attribute or <tt>null</tt> if we'd like
+     * to remove the attribute with the specified <tt>name</tt>.
+     */
+    public void setAttribute(String name, Enum<?> value)
+    {
+        checkNotFrozen();
+        synchronized(attributes)
+        {
+            if (value != null)
+            {
+                getAttributeMap().putTyped(name, value);
+            }
+            else
+            {
+                this.attributes.remove(name);
+            }
+        }
+        modified();
     }
 
     /**
@@ -335,10 +849,12 @@ public abstract class AbstractPacketExtension
      */
     public void removeAttribute(String name)
     {
+        checkNotFrozen();
         synchronized(attributes)
         {
             attributes.remove(name);
         }
+        modified();
     }
 
     /**
@@ -352,6 +868,10 @@ public abstract class AbstractPacketExtension
      */
     public Object getAttribute(String attribute)
     {
+        if (frozen)
+        {
+            return attributes.get(attribute);
+        }
         synchronized(attributes)
         {
             return attributes.get(attribute);
@@ -370,12 +890,9 @@ public abstract class AbstractPacketExtension
      */
     public String getAttributeAsString(String attribute)
     {
-        synchronized(attributes)
-        {
-            Object attributeVal = attributes.get(attribute);
+        Object attributeVal = getAttribute(attribute);
 
-            return attributeVal == null ? null : attributeVal.toString();
-        }
+        return attributeVal == null ? null : attributeVal.toString();
     }
 
     /**
@@ -407,46 +924,349 @@ public abstract class AbstractPacketExtension
      */
     public int getAttributeAsInt(String attribute, int defaultValue)
     {
+        if (frozen)
+        {
+            return readAttributeAsInt(attribute, defaultValue);
+        }
         synchronized(attributes)
         {
-            String value = getAttributeAsString(attribute);
-
-            return (value == null) ? defaultValue : Integer.parseInt(value);
+            return readAttributeAsInt(attribute, defaultValue);
         }
     }
 
     /**
-     * Tries to parse the value of the specified <tt>attribute</tt> as an
-     * <tt>URI</tt> and returns it.
-     *
-     * @param attribute the name of the attribute that we'd like to retrieve.
-     *
-     * @return the <tt>URI</tt> value of the specified <tt>attribute</tt> or
-     * <tt>null</tt> if no such attribute is currently registered with this
-     * extension.
-     * @throws IllegalArgumentException if <tt>attribute</tt> is not a valid {@link
+     * Implements {@link #getAttributeAsInt(String, int)} once it is safe to
+     * read {@link #attributes}.
+     */
+    private int readAttributeAsInt(String attribute, int defaultValue)
+    {
+        AttributeMap attributes = getAttributeMap();
+        int index = attributes.entryIndexOf(attribute);
+
+        if (index < 0)
+        {
+            return defaultValue;
+        }
+        if (attributes.hasNumberAt(index))
+        {
+            long number = attributes.numberAt(index);
+
+            if (number != (int) number)
+            {
+                throw new NumberFormatException(
+                    "For input string: \"" + number + "\"");
+            }
+            return (int) number;
+        }
+
+        Object value = attributes.valueAt(index);
+
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        int number = Integer.parseInt(value.toString());
+
+        attributes.cacheNumber(index, number);
+        return number;
+    }
+
+    /**
+     * Returns the <tt>long</tt> value of the attribute with the specified
+     * <tt>name</tt>. The value parsed from the attribute's <tt>String</tt> is
+     * cached, so subsequent calls do not parse it again.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve
+     * @param defaultValue the <tt>long</tt> to be returned as the value of the
+     * specified attribute if no such attribute is currently registered with
+     * this extension
+     * @return the <tt>long</tt> value of the specified <tt>attribute</tt> or
+     * <tt>defaultValue</tt> if no such attribute is currently registered with
+     * this extension
+     * @throws NumberFormatException if the value of the attribute is not a
+     * valid <tt>long</tt>.
+     */
+    public long getAttributeAsLong(String attribute, long defaultValue)
+    {
+        if (frozen)
+        {
+            return readAttributeAsLong(attribute, defaultValue);
+        }
+        synchronized(attributes)
+        {
+            return readAttributeAsLong(attribute, defaultValue);
+        }
+    }
+
+    /**
+     * Implements {@link #getAttributeAsLong(String, long)} once it is safe to
+     * read {@link #attributes}.
+     */
+    private long readAttributeAsLong(String attribute, long defaultValue)
+    {
+        AttributeMap attributes = getAttributeMap();
+        int index = attributes.entryIndexOf(attribute);
+
+        if (index < 0)
+        {
+            return defaultValue;
+        }
+        if (attributes.hasNumberAt(index))
+        {
+            return attributes.numberAt(index);
+        }
+
+        Object value = attributes.valueAt(index);
+
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        long number = Long.parseLong(value.toString());
+
+        attributes.cacheNumber(index, number);
+        return number;
+    }
+
+    /**
+     * Returns the <tt>boolean</tt> value of the attribute with the specified
+     * <tt>name</tt>, as parsed by {@link Boolean#parseBoolean(String)}.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve
+     * @param defaultValue the <tt>boolean</tt> to be returned as the value of
+     * the specified attribute if no such attribute is currently registered
+     * with this extension
+     * @return the <tt>boolean</tt> value of the specified <tt>attribute</tt>
+     * or <tt>defaultValue</tt> if no such attribute is currently registered
+     * with this extension
+     */
+    public boolean getAttributeAsBoolean(String attribute, boolean defaultValue)
+    {
+        if (frozen)
+        {
+            return readAttributeAsBoolean(attribute, defaultValue);
+        }
+        synchronized(attributes)
+        {
+            return readAttributeAsBoolean(attribute, defaultValue);
+        }
+    }
+
+    /**
+     * Implements {@link #getAttributeAsBoolean(String, boolean)} once it is
+     * safe to read {@link #attributes}.
+     */
+    private boolean readAttributeAsBoolean(
+            String attribute, boolean defaultValue)
+    {
+        AttributeMap attributes = getAttributeMap();
+        int index = attributes.entryIndexOf(attribute);
+
+        if (index < 0)
+        {
+            return defaultValue;
+        }
+
+        Object value = attributes.storedValueAt(index);
+
+        if (value instanceof Boolean)
+        {
+            return (Boolean) value;
+        }
+
+        value = attributes.valueAt(index);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        String s = value.toString();
+        boolean b = Boolean.parseBoolean(s);
+
+        // Only keep the parsed value if it serializes back to the same
+        // String.
+        if (s.equals(Boolean.toString(b)))
+        {
+            attributes.cacheTypedValue(index, b);
+        }
+        return b;
+    }
+
+    /**
+     * Returns the value of the attribute with the specified <tt>name</tt> as
+     * a constant of a specific enum type. If the value was not set as such,
+     * it is parsed with {@link Enum#valueOf(Class, String)} and cached.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve
+     * @param type the enum type of the value.
+     * @param <E> the enum type of the value.
+     * @return the value of the specified <tt>attribute</tt> or <tt>null</tt>
+     * if no such attribute is currently registered with this extension.
+     * @throws IllegalArgumentException if the value of the attribute is not
+     * the name of a constant of <tt>type</tt>.
+     */
+    public <E extends Enum<E>> E getAttributeAsEnum(
+            String attribute, Class<E> type)
+    {
+        if (frozen)
+        {
+            return readAttributeAsEnum(attribute, type);
+        }
+        synchronized(attributes)
+        {
+            return readAttributeAsEnum(attribute, type);
+        }
+    }
+
+    /**
+     * Implements {@link #getAttributeAsEnum(String, Class)} once it is safe
+     * to read {@link #attributes}.
+     */
+    private <E extends Enum<E>> E readAttributeAsEnum(
+            String attribute, Class<E> type)
+    {
+        AttributeMap attributes = getAttributeMap();
+        int index = attributes.entryIndexOf(attribute);
+
+        if (index < 0)
+        {
+            return null;
+        }
+
+        Object value = attributes.storedValueAt(index);
+
+        if (type.isInstance(value))
+        {
+            return type.cast(value);
+        }
+
+        value = attributes.valueAt(index);
+        if (value == null)
+        {
+            return null;
+        }
+
+        String s = value.toString();
+        E e = Enum.valueOf(type, s);
+
+        // Only keep the parsed value if it serializes back to the same
+        // String.
+        if (s.equals(e.toString()))
+        {
+            attributes.cacheTypedValue(index, e);
+        }
+        return e;
+    }
+
+    /**
+     * Determines whether this extension has an attribute with a specific name.
+     *
+     * @param attribute the name of the attribute.
+     * @return <tt>true</tt> if this extension has a (non-<tt>null</tt>) value
+     * for the attribute named <tt>attribute</tt>.
+     */
+    public boolean hasAttribute(String attribute)
+    {
+        if (frozen)
+        {
+            return readHasAttribute(attribute);
+        }
+        synchronized(attributes)
+        {
+            return readHasAttribute(attribute);
+        }
+    }
+
+    /**
+     * Implements {@link #hasAttribute(String)} once it is safe to read
+     * {@link #attributes}.
+     */
+    private boolean readHasAttribute(String attribute)
+    {
+        AttributeMap attributes = getAttributeMap();
+        int index = attributes.entryIndexOf(attribute);
+
+        return index >= 0
+            && (attributes.hasNumberAt(index)
+                    || attributes.storedValueAt(index) != null);
+    }
+
+    /**
+     * Determines whether the value of a specific attribute is held as a
+     * <tt>long</tt>, because it was set as a number or has already been read
+     * with {@link #getAttributeAsLong(String, long)}. If it is, the latter
+     * returns it without parsing or allocating, whereas
+     * {@link #getAttribute(String)} formats it anew.
+     *
+     * @param attribute the name of the attribute.
+     * @return <tt>true</tt> if the value of the attribute named
+     * <tt>attribute</tt> is held as a <tt>long</tt>.
+     */
+    protected boolean isLongAttribute(String attribute)
+    {
+        if (frozen)
+        {
+            return readIsLongAttribute(attribute);
+        }
+        synchronized(attributes)
+        {
+            return readIsLongAttribute(attribute);
+        }
+    }
+
+    /**
+     * Implements {@link #isLongAttribute(String)} once it is safe to read
+     * {@link #attributes}.
+     */
+    private boolean readIsLongAttribute(String attribute)
+    {
+        AttributeMap attributes = getAttributeMap();
+        int index = attributes.entryIndexOf(attribute);
+
+        return index >= 0 && attributes.hasNumberAt(index);
+    }
+
+    /**
+     * Returns {@link #attributes} as the <tt>AttributeMap</tt> it is.
+     *
+     * @return {@link #attributes}
+     */
+    private AttributeMap getAttributeMap()
+    {
+        return (AttributeMap) attributes;
+    }
+
+    /**
+     * Tries to parse the value of the specified <tt>attribute</tt> as an
+     * <tt>URI</tt> and returns it.
+     *
+     * @param attribute the name of the attribute that we'd like to retrieve.
+     *
+     * @return the <tt>URI</tt> value of the specified <tt>attribute</tt> or
+     * <tt>null</tt> if no such attribute is currently registered with this
+     * extension.
+     * @throws IllegalArgumentException if <tt>attribute</tt> is not a valid {@link
      * URI}
      */
     public URI getAttributeAsURI(String attribute)
         throws IllegalArgumentException
     {
-        synchronized(attributes)
-        {
-            String attributeVal = getAttributeAsString(attribute);
+        String attributeVal = getAttributeAsString(attribute);
 
-            if (attributeVal == null)
-                return null;
+        if (attributeVal == null)
+            return null;
 
-            try
-            {
-                URI uri = new URI(attributeVal);
+        try
+        {
+            URI uri = new URI(attributeVal);
 
-                return uri;
-            }
-            catch (URISyntaxException e)
-            {
-                throw new IllegalArgumentException(e);
-            }
+            return uri;
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IllegalArgumentException(e);
         }
     }
 
@@ -459,6 +1279,10 @@ public abstract class AbstractPacketExtension
      */
     public List<String> getAttributeNames()
     {
+        if (frozen)
+        {
+            return new ArrayList<String>(attributes.keySet());
+        }
         synchronized (attributes)
         {
             return new ArrayList<String>(attributes.keySet());
@@ -472,7 +1296,9 @@ public abstract class AbstractPacketExtension
      */
     public void setText(String text)
     {
+        checkNotFrozen();
         this.textContent = text;
+        modified();
     }
 
     /**
@@ -500,19 +1326,45 @@ public abstract class AbstractPacketExtension
      */
     public <T extends ExtensionElement> T getFirstChildOfType(Class<T> type)
     {
+        if (getSerializationTraits(getClass()).indexesChildExtensions)
+        {
+            List<T> ofType = getIndexedChildExtensions(type);
+
+            return ofType.isEmpty() ? null : ofType.get(0);
+        }
+
         List<? extends ExtensionElement> childExtensions = getChildExtensions();
 
+        if (frozen)
+        {
+            return findFirstOfType(childExtensions, type);
+        }
         synchronized (childExtensions)
         {
-            for(ExtensionElement extension : childExtensions)
+            return findFirstOfType(childExtensions, type);
+        }
+    }
+
+    /**
+     * Returns the first element of a specific list which is an instance of a
+     * specific type.
+     *
+     * @param extensions the list to search.
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     * @return the first element of <tt>extensions</tt> which is an instance of
+     * <tt>type</tt> or <tt>null</tt> if there is none.
+     */
+    private static <T extends ExtensionElement> T findFirstOfType(
+            List<? extends ExtensionElement> extensions, Class<T> type)
+    {
+        for(ExtensionElement extension : extensions)
+        {
+            if(type.isInstance(extension))
             {
-                if(type.isInstance(extension))
-                {
-                    @SuppressWarnings("unchecked")
-                    T extensionAsType = (T) extension;
+                @SuppressWarnings("unchecked")
+                T extensionAsType = (T) extension;
 
-                    return extensionAsType;
-                }
+                return extensionAsType;
             }
         }
         return null;
@@ -533,26 +1385,430 @@ public abstract class AbstractPacketExtension
     public <T extends ExtensionElement> List<T> getChildExtensionsOfType(
             Class<T> type)
     {
+        if (getSerializationTraits(getClass()).indexesChildExtensions)
+        {
+            return new ArrayList<T>(getIndexedChildExtensions(type));
+        }
+
         List<? extends ExtensionElement> childExtensions = getChildExtensions();
         List<T> result = new ArrayList<T>();
 
         if (childExtensions == null)
             return result;
 
+        if (frozen)
+        {
+            addAllOfType(childExtensions, type, result);
+        }
+        else
+        {
+            synchronized (childExtensions)
+            {
+                addAllOfType(childExtensions, type, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the elements of a specific list which are instances of a specific
+     * type to another list.
+     *
+     * @param extensions the list to search.
+     * @param type the <tt>Class</tt> of the extensions we are looking for.
+     * @param result the list to add the matching extensions to.
+     */
+    private static <T extends ExtensionElement> void addAllOfType(
+            List<? extends ExtensionElement> extensions,
+            Class<T> type,
+            List<T> result)
+    {
+        for(ExtensionElement extension : extensions)
+        {
+            if(type.isInstance(extension))
+            {
+                @SuppressWarnings("unchecked")
+                T extensionAsType = (T) extension;
+
+                result.add(extensionAsType);
+            }
+        }
+    }
+
+    /**
+     * Returns this packet's direct child extensions that match the specified
+     * <tt>type</tt> as an unmodifiable list. Unlike
+     * {@link #getChildExtensionsOfType(Class)}, repeated calls do not scan the
+     * children or allocate a new list as long as the children do not change:
+     * the list for each type is built on first use and kept until the next
+     * modification of the children. The returned list is a snapshot, i.e. it
+     * does not reflect later modifications.
+     *
+     * @param <T> the specific <tt>ExtensionElement</tt> type of child extensions
+     * to be returned
+     * @param type the <tt>Class</tt> of the extension we are looking for.
+     * @return an unmodifiable (possibly empty) list containing all of this
+     * packet's direct child extensions that match the specified <tt>type</tt>
+     */
+    public <T extends ExtensionElement> List<T>
+        getUnmodifiableChildExtensionsOfType(Class<T> type)
+    {
+        if (getSerializationTraits(getClass()).indexesChildExtensions)
+        {
+            return getIndexedChildExtensions(type);
+        }
+        else
+        {
+            return Collections.unmodifiableList(getChildExtensionsOfType(type));
+        }
+    }
+
+    /**
+     * Returns the number of this packet's direct child extensions that match
+     * the specified <tt>type</tt>.
+     *
+     * @param type the <tt>Class</tt> of the extensions to count.
+     * @return the number of this packet's direct child extensions that match
+     * the specified <tt>type</tt>.
+     */
+    public int getChildExtensionCount(Class<? extends ExtensionElement> type)
+    {
+        return getUnmodifiableChildExtensionsOfType(type).size();
+    }
+
+    /**
+     * Gets the list of the elements of {@link #childExtensions} of a specific
+     * type from {@link #childIndex}, adding it to the index if necessary.
+     *
+     * @param type the <tt>Class</tt> of the extensions we are looking for.
+     * @return the unmodifiable list of the child extensions which are
+     * instances of <tt>type</tt>.
+     */
+    private <T extends ExtensionElement> List<T> getIndexedChildExtensions(
+            Class<T> type)
+    {
+        if (frozen)
+        {
+            // The stamp cannot change anymore and a lost update (when two
+            // threads add a type at the same time) only costs a rebuild.
+            return lookupChildExtensions(type);
+        }
         synchronized (childExtensions)
         {
-            for(ExtensionElement extension : childExtensions)
+            return lookupChildExtensions(type);
+        }
+    }
+
+    /**
+     * Implements {@link #getIndexedChildExtensions(Class)} once it is safe to
+     * read {@link #childExtensions}.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends ExtensionElement> List<T> lookupChildExtensions(
+            Class<T> type)
+    {
+        int stamp = childExtensions.stamp();
+        ChildIndex index = childIndex;
+
+        if (index != null && index.stamp == stamp)
+        {
+            List<?> list = index.lists.get(type);
+
+            if (list != null)
             {
-                if(type.isInstance(extension))
+                return (List<T>) list;
+            }
+        }
+
+        List<T> list = new ArrayList<>();
+
+        addAllOfType(childExtensions, type, list);
+        list
+            = list.isEmpty()
+                ? Collections.<T>emptyList()
+                : Collections.unmodifiableList(list);
+        childIndex
+            = (index != null && index.stamp == stamp)
+                ? index.with(type, list)
+                : new ChildIndex(stamp, type, list);
+        return list;
+    }
+
+    /**
+     * Turns this extension and all of its descendants into immutable
+     * snapshots. Afterwards the getters of this extension do not take any
+     * locks and its mutators throw <tt>IllegalStateException</tt>. Calling
+     * this method again has no effect.
+     * <p>
+     * An extension should be frozen before it is shared with other threads
+     * and only if nothing is going to modify it anymore, e.g. right after it
+     * has been parsed (see {@link DefaultPacketExtensionProvider}).
+     * Extensions which keep state of their own besides what they
+     * store in <tt>AbstractPacketExtension</tt> should override this method
+     * (calling the super implementation) in order to freeze that state as
+     * well.
+     */
+    public void freeze()
+    {
+        if (frozen)
+        {
+            return;
+        }
+
+        List<? extends ExtensionElement> childElements = getChildExtensions();
+
+        synchronized (childElements)
+        {
+            for (ExtensionElement childElement : childElements)
+            {
+                if (childElement instanceof AbstractPacketExtension)
                 {
-                    @SuppressWarnings("unchecked")
-                    T extensionAsType = (T) extension;
+                    ((AbstractPacketExtension) childElement).freeze();
+                }
+            }
+        }
+        synchronized (attributes)
+        {
+            getAttributeMap().freeze();
+        }
+        synchronized (childExtensions)
+        {
+            frozenChildExtensions
+                = Collections.unmodifiableList(childExtensions);
+        }
+        frozen = true;
+    }
+
+    /**
+     * Determines whether {@link #freeze()} has been called on this extension
+     * (or one of its ancestors).
+     *
+     * @return <tt>true</tt> if this extension is immutable.
+     */
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    /**
+     * Throws an <tt>IllegalStateException</tt> if this extension has been
+     * frozen. Extensions which have mutators of their own should call it
+     * before modifying anything.
+     *
+     * @throws IllegalStateException if {@link #freeze()} has been called.
+     */
+    protected void checkNotFrozen()
+    {
+        if (frozen)
+        {
+            throw new IllegalStateException(
+                "Cannot modify a frozen " + getElementName() + " element");
+        }
+    }
+
+    /**
+     * Gets the <tt>SerializationTraits</tt> of a specific
+     * <tt>AbstractPacketExtension</tt> class.
+     *
+     * @param type the class to get the traits of.
+     * @return the <tt>SerializationTraits</tt> of <tt>type</tt>.
+     */
+    private static SerializationTraits getSerializationTraits(Class<?> type)
+    {
+        return SERIALIZATION_TRAITS.get(type);
+    }
+
+    /**
+     * Describes which of the serialization methods of
+     * <tt>AbstractPacketExtension</tt> a specific class overrides. Computed
+     * once per class, so that the common case of extensions relying on the
+     * default serialization does not have to call (and allocate in) methods
+     * which only exist as extension points.
+     */
+    private static class SerializationTraits
+    {
+        /**
+         * Whether {@link #appendXml(XmlStringBuilder)} is overridden.
+         */
+        final boolean overridesAppendXml;
+
+        /**
+         * Whether {@link #getChildElementBuilder()} is overridden.
+         */
+        final boolean overridesChildElementBuilder;
+
+        /**
+         * Whether {@link #toXML()} is overridden.
+         */
+        final boolean overridesToXml;
+
+        /**
+         * Whether the XML representation of the class may be cached, i.e.
+         * neither {@link #toXML()} nor {@link #getChildElementBuilder()}
+         * (whose output we cannot track) is overridden.
+         */
+        final boolean cachesXml;
+
+        /**
+         * Whether {@link #getChildExtensions()} is not overridden, i.e. the
+         * child extensions are exactly the ones in {@link #childExtensions}
+         * and may be looked up in {@link #childIndex}.
+         */
+        final boolean indexesChildExtensions;
 
-                    result.add(extensionAsType);
+        SerializationTraits(Class<?> type)
+        {
+            overridesAppendXml
+                = overrides(type, "appendXml", XmlStringBuilder.class);
+            overridesChildElementBuilder
+                = overrides(type, "getChildElementBuilder");
+            overridesToXml = overrides(type, "toXML");
+            indexesChildExtensions = !overrides(type, "getChildExtensions");
+            cachesXml = !overridesToXml && !overridesChildElementBuilder;
+        }
+
+        /**
+         * Checks whether a specific class (or any of its super classes up to,
+         * but excluding, <tt>AbstractPacketExtension</tt>) declares a method
+         * with a specific signature.
+         */
+        private static boolean overrides(
+                Class<?> type, String name, Class<?>... parameterTypes)
+        {
+            for (Class<?> c = type;
+                    c != null && c != AbstractPacketExtension.class;
+                    c = c.getSuperclass())
+            {
+                for (Method method : c.getDeclaredMethods())
+                {
+                    if (!method.isBridge()
+                            && method.getName().equals(name)
+                            && Arrays.equals(
+                                    method.getParameterTypes(),
+                                    parameterTypes))
+                    {
+                        return true;
+                    }
                 }
             }
+            return false;
         }
+    }
 
-        return result;
+    /**
+     * The list of child extensions of an <tt>AbstractPacketExtension</tt>.
+     * Extends <tt>ArrayList</tt> with a stamp which changes whenever the list
+     * is modified, so that the lists in {@link #childIndex} can be validated
+     * even when the children are modified through the list returned by
+     * {@link #getChildExtensions()}.
+     */
+    private static class ChildList
+        extends ArrayList<ExtensionElement>
+    {
+        private static final long serialVersionUID = 0L;
+
+        /**
+         * The number of elements replaced through {@link #set(int,
+         * ExtensionElement)}, which does not count as a structural
+         * modification of an <tt>ArrayList</tt>.
+         */
+        private int replacements;
+
+        @Override
+        public ExtensionElement set(int index, ExtensionElement element)
+        {
+            replacements++;
+            return super.set(index, element);
+        }
+
+        /**
+         * Returns a value which changes whenever this list is modified.
+         *
+         * @return a value which changes whenever this list is modified.
+         */
+        int stamp()
+        {
+            return modCount + replacements;
+        }
+    }
+
+    /**
+     * An immutable map of types to the (unmodifiable) lists of the child
+     * extensions of an <tt>AbstractPacketExtension</tt> which are instances
+     * of them, valid for a specific {@link ChildList#stamp()}.
+     */
+    private static class ChildIndex
+    {
+        /**
+         * The stamp of the list of child extensions that this index was built
+         * from.
+         */
+        final int stamp;
+
+        /**
+         * The lists of child extensions, mapped by type.
+         */
+        final Map<Class<?>, List<?>> lists;
+
+        ChildIndex(int stamp, Class<?> type, List<?> list)
+        {
+            this(stamp, Collections.singletonMap(type, list));
+        }
+
+        private ChildIndex(int stamp, Map<Class<?>, List<?>> lists)
+        {
+            this.stamp = stamp;
+            this.lists = lists;
+        }
+
+        /**
+         * Returns a copy of this index to which a specific list is added.
+         *
+         * @param type the type of the extensions in <tt>list</tt>.
+         * @param list the child extensions which are instances of
+         * <tt>type</tt>.
+         * @return a new index which contains the lists of this one and
+         * <tt>list</tt>.
+         */
+        ChildIndex with(Class<?> type, List<?> list)
+        {
+            Map<Class<?>, List<?>> lists = new HashMap<>(this.lists);
+
+            lists.put(type, list);
+            return new ChildIndex(stamp, lists);
+        }
+    }
+
+    /**
+     * A cached XML representation of an extension along with the state of the
+     * extension it was produced from.
+     */
+    private static class XmlCache
+    {
+        /**
+         * The {@link #xmlVersion} of the extension when {@link #xml} was
+         * produced.
+         */
+        final int version;
+
+        /**
+         * The stamp of the list of child extensions of the extension when
+         * {@link #xml} was produced, which catches modifications made through
+         * the list returned by {@link #getChildExtensions()}.
+         */
+        final int stamp;
+
+        /**
+         * The XML representation of the extension.
+         */
+        final String xml;
+
+        XmlCache(int version, int stamp, String xml)
+        {
+            this.version = version;
+            this.stamp = stamp;
+            this.xml = xml;
+        }
     }
 }
@@ -0,0 +1,736 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.util.*;
+
+/**
+ * A compact, insertion-ordered <tt>Map</tt> used to store the attributes of
+ * an {@link AbstractPacketExtension}. Extensions rarely have more than a
+ * handful of attributes, so instead of a hash table with one entry object per
+ * attribute, keys and values are kept next to each other in a single flat
+ * array which is searched linearly. Attribute names are interned with
+ * {@link StringPool#internName(String)}, which makes most key comparisons
+ * identity checks and lets all extensions share a single copy of each name.
+ * <p>
+ * Like the <tt>LinkedHashMap</tt> it replaces, iteration follows insertion
+ * order and replacing the value of an existing key does not change its
+ * position. Instances are not thread-safe.
+ * <p>
+ * Besides plain values, the first {@link #MAX_TYPED_ENTRIES} entries may hold
+ * typed values: numbers are kept as primitive <tt>long</tt>s and
+ * <tt>Boolean</tt>s and enum constants as themselves. Their <tt>String</tt>
+ * form is only produced when it is asked for through the <tt>Map</tt>
+ * interface (e.g. for serialization), so that <tt>Map</tt> users keep seeing
+ * the same <tt>String</tt> values they did before. The number parsed from a
+ * plain value is cached next to it as well.
+ * <p>
+ * Once {@link #freeze()} has been called, the map is read-only: all
+ * mutators throw <tt>UnsupportedOperationException</tt> and the caches are no
+ * longer written to, so that it can be read from multiple threads without
+ * synchronization.
+ */
+final class AttributeMap
+    extends AbstractMap<String, Object>
+{
+    /**
+     * The number of key/value pairs for which space is allocated when the
+     * first attribute is set.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The number of entries (counting from the first one) which can hold
+     * typed values, i.e. the number of bits in {@link #numberMask} and
+     * {@link #typedMask}.
+     */
+    private static final int MAX_TYPED_ENTRIES = Long.SIZE;
+
+    /**
+     * The value stored in {@link #slots} for entries whose value is only
+     * known as a number (in {@link #numbers}).
+     */
+    private static final Object NUMBER = new Object();
+
+    /**
+     * The keys and values of this map: the key of the <tt>i</tt>-th entry is
+     * at index <tt>2*i</tt> and its value at index <tt>2*i+1</tt>.
+     * <tt>null</tt> until the first entry is added.
+     */
+    private Object[] slots;
+
+    /**
+     * The number of entries in this map.
+     */
+    private int size;
+
+    /**
+     * The numeric values of the entries of this map, indexed by entry.
+     * <tt>numbers[i]</tt> is only valid if bit <tt>i</tt> of
+     * {@link #numberMask} is set. <tt>null</tt> until the first number is
+     * stored.
+     */
+    private long[] numbers;
+
+    /**
+     * The bit set of entries whose value is (also) available in
+     * {@link #numbers}.
+     */
+    private long numberMask;
+
+    /**
+     * The bit set of entries whose value in {@link #slots} is a typed value
+     * (i.e. {@link #NUMBER}, a <tt>Boolean</tt> or an enum constant stored
+     * through one of the typed setters) rather than the value given to
+     * {@link #put(String, Object)}.
+     */
+    private long typedMask;
+
+    /**
+     * The view of the entries of this map, created on demand.
+     */
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    /**
+     * Whether {@link #freeze()} has been called.
+     */
+    private boolean frozen;
+
+    /**
+     * Returns the index in {@link #slots} of the key of the entry with a
+     * specific key.
+     *
+     * @param key the key to look for.
+     * @return the index of the key in {@link #slots} or <tt>-1</tt> if this
+     * map does not contain <tt>key</tt>.
+     */
+    private int indexOf(Object key)
+    {
+        Object[] slots = this.slots;
+        int end = size << 1;
+
+        // Interned keys and String constants match by identity.
+        for (int i = 0; i < end; i += 2)
+        {
+            if (slots[i] == key)
+            {
+                return i;
+            }
+        }
+        if (key != null)
+        {
+            for (int i = 0; i < end; i += 2)
+            {
+                if (key.equals(slots[i]))
+                {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the entry with a specific key.
+     *
+     * @param key the key to look for.
+     * @return the index of the entry with <tt>key</tt> or <tt>-1</tt> if this
+     * map does not contain <tt>key</tt>.
+     */
+    int entryIndexOf(String key)
+    {
+        return indexOf(key) >> 1;
+    }
+
+    /**
+     * Returns the key of the entry at a specific index.
+     *
+     * @param index the index of the entry.
+     * @return the key of the entry at <tt>index</tt>.
+     */
+    String keyAt(int index)
+    {
+        return (String) slots[index << 1];
+    }
+
+    /**
+     * Returns the value of the entry at a specific index.
+     *
+     * @param index the index of the entry.
+     * @return the value of the entry at <tt>index</tt>.
+     */
+    Object valueAt(int index)
+    {
+        Object value = slots[(index << 1) + 1];
+
+        if (index < MAX_TYPED_ENTRIES && (typedMask & (1L << index)) != 0)
+        {
+            value
+                = (value == NUMBER)
+                    ? Long.toString(numbers[index])
+                    : value.toString();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the entry at a specific index as it is stored,
+     * i.e. a typed value is returned as such (unless it is a number, in
+     * which case <tt>null</tt> is returned).
+     *
+     * @param index the index of the entry.
+     * @return the value of the entry at <tt>index</tt> as it is stored.
+     */
+    Object storedValueAt(int index)
+    {
+        Object value = slots[(index << 1) + 1];
+
+        return (value == NUMBER) ? null : value;
+    }
+
+    /**
+     * Determines whether the number stored for the entry at a specific index
+     * is valid.
+     *
+     * @param index the index of the entry.
+     * @return <tt>true</tt> if {@link #numberAt(int)} may be called for
+     * <tt>index</tt>.
+     */
+    boolean hasNumberAt(int index)
+    {
+        return index < MAX_TYPED_ENTRIES && (numberMask & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the number stored for the entry at a specific index. Only valid
+     * if {@link #hasNumberAt(int)} returns <tt>true</tt>.
+     *
+     * @param index the index of the entry.
+     * @return the number stored for the entry at <tt>index</tt>.
+     */
+    long numberAt(int index)
+    {
+        return numbers[index];
+    }
+
+    /**
+     * Remembers the number parsed from the (plain) value of the entry at a
+     * specific index.
+     *
+     * @param index the index of the entry.
+     * @param number the number parsed from the value of the entry.
+     */
+    void cacheNumber(int index, long number)
+    {
+        if (index < MAX_TYPED_ENTRIES && !frozen)
+        {
+            numbers()[index] = number;
+            numberMask |= 1L << index;
+        }
+    }
+
+    /**
+     * Replaces the (plain) value of the entry at a specific index with a typed
+     * value whose <tt>String</tt> form is equal to it.
+     *
+     * @param index the index of the entry.
+     * @param value the typed value (a <tt>Boolean</tt> or an enum constant).
+     */
+    void cacheTypedValue(int index, Object value)
+    {
+        if (index < MAX_TYPED_ENTRIES && !frozen)
+        {
+            slots[(index << 1) + 1] = value;
+            typedMask |= 1L << index;
+        }
+    }
+
+    /**
+     * Associates a numeric value with a specific key.
+     *
+     * @param key the key.
+     * @param value the numeric value to associate with <tt>key</tt>.
+     */
+    void putNumber(String key, long value)
+    {
+        checkNotFrozen();
+
+        int index = putSlot(key, NUMBER);
+
+        if (index < MAX_TYPED_ENTRIES)
+        {
+            long bit = 1L << index;
+
+            numbers()[index] = value;
+            numberMask |= bit;
+            typedMask |= bit;
+        }
+        else
+        {
+            slots[(index << 1) + 1] = Long.toString(value);
+        }
+    }
+
+    /**
+     * Associates a typed value (a <tt>Boolean</tt> or an enum constant) with
+     * a specific key. Its <tt>String</tt> form is the one returned by its
+     * <tt>toString()</tt> method.
+     *
+     * @param key the key.
+     * @param value the typed value to associate with <tt>key</tt>.
+     */
+    void putTyped(String key, Object value)
+    {
+        checkNotFrozen();
+
+        int index = putSlot(key, value);
+
+        if (index < MAX_TYPED_ENTRIES)
+        {
+            typedMask |= 1L << index;
+        }
+        else
+        {
+            slots[(index << 1) + 1] = value.toString();
+        }
+    }
+
+    /**
+     * Makes this map read-only. The values of the entries which are decimal
+     * integers in canonical form are parsed beforehand, so that reading them
+     * as numbers does not need to write to the map anymore.
+     */
+    void freeze()
+    {
+        if (frozen)
+        {
+            return;
+        }
+
+        for (int i = 0, count = Math.min(size, MAX_TYPED_ENTRIES);
+                i < count;
+                i++)
+        {
+            if (!hasNumberAt(i))
+            {
+                Object value = slots[(i << 1) + 1];
+
+                if (value instanceof String
+                        && isCanonicalDecimal((String) value))
+                {
+                    try
+                    {
+                        cacheNumber(i, Long.parseLong((String) value));
+                    }
+                    catch (NumberFormatException nfe)
+                    {
+                        // Out of the range of long, leave it as it is.
+                    }
+                }
+            }
+        }
+        frozen = true;
+    }
+
+    /**
+     * Determines whether {@link #freeze()} has been called.
+     *
+     * @return <tt>true</tt> if this map is read-only.
+     */
+    boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    /**
+     * Throws an <tt>UnsupportedOperationException</tt> if this map is
+     * read-only.
+     */
+    private void checkNotFrozen()
+    {
+        if (frozen)
+        {
+            throw new UnsupportedOperationException("frozen");
+        }
+    }
+
+    /**
+     * Determines whether a specific <tt>String</tt> is a decimal integer in
+     * canonical form, i.e. whether <tt>Long.toString</tt> would format the
+     * <tt>long</tt> parsed from it (if it is in range) into the same
+     * <tt>String</tt>. Leading zeros (e.g. "007") and "-0" are not canonical.
+     *
+     * @param s the <tt>String</tt> to check.
+     * @return <tt>true</tt> if <tt>s</tt> is a canonical decimal integer.
+     */
+    private static boolean isCanonicalDecimal(String s)
+    {
+        int length = s.length();
+        int i = (length > 1 && s.charAt(0) == '-') ? 1 : 0;
+
+        if (i == length)
+        {
+            return false;
+        }
+        if (s.charAt(i) == '0')
+        {
+            // Only "0" itself.
+            return length == 1;
+        }
+        for (; i < length; i++)
+        {
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@link #numbers}, allocating it if necessary so that it can hold
+     * as many entries as {@link #slots}.
+     *
+     * @return {@link #numbers}
+     */
+    private long[] numbers()
+    {
+        long[] numbers = this.numbers;
+        int capacity = Math.min(slots.length >> 1, MAX_TYPED_ENTRIES);
+
+        if (numbers == null)
+        {
+            this.numbers = numbers = new long[capacity];
+        }
+        else if (numbers.length < capacity)
+        {
+            this.numbers = numbers = Arrays.copyOf(numbers, capacity);
+        }
+        return numbers;
+    }
+
+    /**
+     * Removes the entry at a specific index in {@link #slots}, keeping the
+     * order of the remaining entries.
+     *
+     * @param i the index in {@link #slots} of the key of the entry to remove.
+     * @return the value of the removed entry.
+     */
+    private Object removeSlot(int i)
+    {
+        checkNotFrozen();
+
+        Object value = valueAt(i >> 1);
+        Object[] slots = this.slots;
+        int end = size << 1;
+        int index = i >> 1;
+
+        System.arraycopy(slots, i + 2, slots, i, end - i - 2);
+        slots[end - 2] = null;
+        slots[end - 1] = null;
+        size--;
+
+        if (index < MAX_TYPED_ENTRIES && (numberMask | typedMask) != 0)
+        {
+            long[] numbers = this.numbers;
+
+            if (numbers != null)
+            {
+                // The number of entries before the removal which may have a
+                // number.
+                int count = Math.min(size + 1, numbers.length);
+
+                if (index + 1 < count)
+                {
+                    System.arraycopy(
+                        numbers, index + 1, numbers, index, count - index - 1);
+                }
+            }
+
+            long low = (1L << index) - 1;
+
+            numberMask = (numberMask & low) | ((numberMask >>> 1) & ~low);
+            typedMask = (typedMask & low) | ((typedMask >>> 1) & ~low);
+        }
+        return value;
+    }
+
+    /**
+     * Clears the bits in {@link #numberMask} and {@link #typedMask} of the
+     * entry at a specific index, because a plain value has been stored in
+     * it.
+     *
+     * @param index the index of the entry.
+     */
+    private void clearTypes(int index)
+    {
+        if (index < MAX_TYPED_ENTRIES)
+        {
+            long bit = 1L << index;
+
+            numberMask &= ~bit;
+            typedMask &= ~bit;
+        }
+    }
+
+    /**
+     * Stores a value for a specific key, appending a new entry if there is no
+     * entry with the key yet. The type bits of the entry are cleared.
+     *
+     * @param key the key.
+     * @param value the value to store in {@link #slots}.
+     * @return the index of the entry.
+     */
+    private int putSlot(String key, Object value)
+    {
+        checkNotFrozen();
+
+        int i = indexOf(key);
+
+        if (i >= 0)
+        {
+            slots[i + 1] = value;
+            clearTypes(i >> 1);
+            return i >> 1;
+        }
+
+        Object[] slots = this.slots;
+        int end = size << 1;
+
+        if (slots == null)
+        {
+            this.slots = slots = new Object[INITIAL_CAPACITY << 1];
+        }
+        else if (end == slots.length)
+        {
+            this.slots = slots = Arrays.copyOf(slots, end << 1);
+        }
+        slots[end] = StringPool.internName(key);
+        slots[end + 1] = value;
+        clearTypes(size);
+        return size++;
+    }
+
+    @Override
+    public void clear()
+    {
+        checkNotFrozen();
+        if (size != 0)
+        {
+            Arrays.fill(slots, 0, size << 1, null);
+            size = 0;
+            numberMask = 0;
+            typedMask = 0;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet()
+    {
+        Set<Map.Entry<String, Object>> entrySet = this.entrySet;
+
+        if (entrySet == null)
+        {
+            this.entrySet = entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    @Override
+    public Object get(Object key)
+    {
+        int i = indexOf(key);
+
+        return (i < 0) ? null : valueAt(i >> 1);
+    }
+
+    @Override
+    public Object put(String key, Object value)
+    {
+        int i = indexOf(key);
+        Object oldValue = (i < 0) ? null : valueAt(i >> 1);
+
+        putSlot(key, value);
+        return oldValue;
+    }
+
+    @Override
+    public Object remove(Object key)
+    {
+        int i = indexOf(key);
+
+        return (i < 0) ? null : removeSlot(i);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The view of the entries of an <tt>AttributeMap</tt>.
+     */
+    private class EntrySet
+        extends AbstractSet<Map.Entry<String, Object>>
+    {
+        @Override
+        public void clear()
+        {
+            AttributeMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator()
+        {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * Iterates over the entries of an <tt>AttributeMap</tt> in insertion
+     * order. The returned entries write through to the map.
+     */
+    private class EntryIterator
+        implements Iterator<Map.Entry<String, Object>>
+    {
+        /**
+         * The index of the entry to be returned by the next call to
+         * {@link #next()}.
+         */
+        private int next;
+
+        /**
+         * The index of the entry last returned by {@link #next()} or
+         * <tt>-1</tt> if it has been removed (or <tt>next()</tt> has not been
+         * called yet).
+         */
+        private int last = -1;
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next()
+        {
+            if (next >= size)
+            {
+                throw new NoSuchElementException();
+            }
+
+            last = next++;
+            return new Entry(last);
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last < 0)
+            {
+                throw new IllegalStateException();
+            }
+
+            removeSlot(last << 1);
+            next = last;
+            last = -1;
+        }
+    }
+
+    /**
+     * An entry of an <tt>AttributeMap</tt> which reads and writes through to
+     * the slot it was created for.
+     */
+    private class Entry
+        implements Map.Entry<String, Object>
+    {
+        /**
+         * The index of the entry in the map.
+         */
+        private final int index;
+
+        Entry(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+
+            return Objects.equals(getKey(), e.getKey())
+                && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public String getKey()
+        {
+            return keyAt(index);
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return valueAt(index);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public Object setValue(Object value)
+        {
+            checkNotFrozen();
+
+            Object oldValue = valueAt(index);
+
+            slots[(index << 1) + 1] = value;
+            clearTypes(index);
+            return oldValue;
+        }
+
+        @Override
+        public String toString()
+        {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
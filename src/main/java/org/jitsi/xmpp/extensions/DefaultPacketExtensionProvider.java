@@ -15,6 +15,8 @@
  */
 package org.jitsi.xmpp.extensions;
 
+import java.util.*;
+import java.util.function.*;
 import java.util.logging.*;
 
 import org.jivesoftware.smack.packet.*;
@@ -43,14 +45,164 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
      */
     private final Class<C> packetClass;
 
+    /**
+     * The factory which creates the instances of {@link #packetClass} that
+     * we fill in while parsing.
+     */
+    private final Supplier<C> factory;
+
+    /**
+     * Whether the extensions returned by {@link #parse(XmlPullParser, int)}
+     * are frozen.
+     */
+    private volatile boolean freezeParsedExtensions;
+
+    /**
+     * The providers of the child elements of the extensions parsed by this
+     * provider. Filled in with the providers added through
+     * {@link #addChildProvider(String, String, ExtensionElementProvider)} and
+     * the ones found in <tt>ProviderManager</tt> for the child elements seen
+     * so far. The latter are checked against <tt>ProviderManager</tt> when
+     * they are used, so that a provider registered again replaces them.
+     * Replaced (rather than modified) on every change.
+     */
+    private volatile ChildProviders childProviders = ChildProviders.EMPTY;
+
     /**
      * Creates a new packet provider for the specified packet extensions.
+     * Instances are created with the factory registered for <tt>c</tt> in
+     * {@link PacketExtensionFactories} (or with its public no-argument
+     * constructor, if there is none).
      *
      * @param c the {@link Class} that the packets we will be parsing belong to.
      */
     public DefaultPacketExtensionProvider(Class<C> c)
     {
         this.packetClass = c;
+        this.factory = PacketExtensionFactories.getFactory(c);
+    }
+
+    /**
+     * Creates a new packet provider for the specified packet extensions, which
+     * uses a specific factory to create new instances. The factory is also
+     * registered with {@link PacketExtensionFactories} so that it is used when
+     * cloning instances of <tt>c</tt>.
+     *
+     * @param c the {@link Class} that the packets we will be parsing belong to.
+     * @param factory the factory which creates new instances of <tt>c</tt>,
+     * e.g. <tt>CandidatePacketExtension::new</tt>.
+     */
+    public DefaultPacketExtensionProvider(Class<C> c, Supplier<C> factory)
+    {
+        PacketExtensionFactories.register(c, factory);
+
+        this.packetClass = c;
+        this.factory = factory;
+    }
+
+    /**
+     * Sets whether the extensions parsed by this provider are frozen (see
+     * {@link AbstractPacketExtension#freeze()}) before they are returned. This
+     * is off by default. It should only be turned on for elements which are
+     * not modified after they have been parsed (including by the providers of
+     * their parent elements), because modifying a frozen extension fails.
+     *
+     * @param freezeParsedExtensions <tt>true</tt> to freeze the parsed
+     * extensions.
+     */
+    public void setFreezeParsedExtensions(boolean freezeParsedExtensions)
+    {
+        this.freezeParsedExtensions = freezeParsedExtensions;
+    }
+
+    /**
+     * Determines whether the extensions parsed by this provider are frozen
+     * before they are returned.
+     *
+     * @return <tt>true</tt> if the extensions parsed by this provider are
+     * frozen.
+     */
+    public boolean isFreezeParsedExtensions()
+    {
+        return freezeParsedExtensions;
+    }
+
+    /**
+     * Adds a provider for a specific child element of the extensions parsed
+     * by this provider, which takes precedence over the one registered with
+     * <tt>ProviderManager</tt> (if any).
+     *
+     * @param elementName the name of the child element.
+     * @param namespace the namespace of the child element.
+     * @param provider the provider which parses the child element.
+     */
+    public void addChildProvider(
+            String elementName,
+            String namespace,
+            ExtensionElementProvider<?> provider)
+    {
+        synchronized (this)
+        {
+            childProviders
+                = childProviders.with(elementName, namespace, provider);
+        }
+    }
+
+    /**
+     * Forgets the providers of child elements which have been taken from
+     * <tt>ProviderManager</tt> so far. It is not necessary to call it when
+     * the providers registered with <tt>ProviderManager</tt> change, because
+     * they are checked when they are used. The ones added with
+     * {@link #addChildProvider(String, String, ExtensionElementProvider)} are
+     * kept.
+     */
+    public void clearResolvedChildProviders()
+    {
+        synchronized (this)
+        {
+            childProviders = childProviders.withoutResolved();
+        }
+    }
+
+    /**
+     * Gets the provider of a specific child element. A provider added with
+     * {@link #addChildProvider(String, String, ExtensionElementProvider)} is
+     * used as it is. Otherwise, the provider registered with
+     * <tt>ProviderManager</tt> is used, and remembered if it is not known yet
+     * (or has changed). Elements without a provider are not remembered, so
+     * that a provider registered later is found.
+     *
+     * @param elementName the (interned) name of the child element.
+     * @param namespace the (interned) namespace of the child element.
+     * @return the provider of the child element or <tt>null</tt> if there is
+     * none.
+     */
+    @SuppressWarnings("unchecked")
+    private ExtensionElementProvider<ExtensionElement> getChildProvider(
+            String elementName, String namespace)
+    {
+        ChildProviders table = childProviders;
+        int i = table.indexOf(elementName, namespace);
+
+        if (i >= 0 && !table.resolved[i])
+        {
+            return (ExtensionElementProvider<ExtensionElement>)
+                table.providers[i];
+        }
+
+        ExtensionElementProvider<ExtensionElement> provider
+            = ProviderManager.getExtensionProvider(elementName, namespace);
+
+        if (i < 0 ? provider != null : provider != table.providers[i])
+        {
+            synchronized (this)
+            {
+                childProviders
+                    = childProviders.withResolved(
+                            elementName, namespace, provider);
+            }
+        }
+        return provider;
     }
 
     /**
@@ -68,39 +220,44 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
     @Override
     public C parse(XmlPullParser parser, int depth) throws Exception
     {
-        C packetExtension = packetClass.getConstructor().newInstance();
+        C packetExtension = factory.get();
 
-        //first, set all attributes
+        //first, set all attributes (the names are interned by the
+        //attribute map itself)
         int attrCount = parser.getAttributeCount();
 
         for (int i = 0; i < attrCount; i++)
         {
             packetExtension.setAttribute(
                             parser.getAttributeName(i),
-                            parser.getAttributeValue(i));
+                            StringPool.internValue(
+                                parser.getAttributeValue(i)));
         }
 
         //now parse the sub elements
         boolean done = false;
         int eventType;
         String elementName;
-        String namespace;
 
         while (!done)
         {
             eventType = parser.next();
             elementName = parser.getName();
-            namespace = parser.getNamespace();
 
             if (logger.isLoggable(Level.FINEST))
                 logger.finest("Will parse " + elementName
-                    + " ns=" + namespace
+                    + " ns=" + parser.getNamespace()
                     + " class=" + packetExtension.getClass().getSimpleName());
 
             if (eventType == XmlPullParser.START_TAG)
             {
-                ExtensionElementProvider<ExtensionElement> provider = ProviderManager
-                        .getExtensionProvider( elementName, namespace );
+                // The names in childProviders are interned, so interned names
+                // match them by identity. The other events are not looked up.
+                elementName = StringPool.internName(elementName);
+
+                String namespace = StringPool.internName(parser.getNamespace());
+                ExtensionElementProvider<ExtensionElement> provider
+                    = getChildProvider(elementName, namespace);
 
                 if(provider == null)
                 {
@@ -116,8 +273,20 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
                     {
                         if(childExtension instanceof AbstractPacketExtension)
                         {
-                            ((AbstractPacketExtension)childExtension).
-                                setNamespace(namespace);
+                            AbstractPacketExtension ape
+                                = (AbstractPacketExtension) childExtension;
+
+                            // The child may have been frozen by its own
+                            // provider, but nobody else has seen it yet.
+                            if (ape.isFrozen())
+                            {
+                                if (!namespace.equals(ape.getNamespace()))
+                                    ape.overrideNamespace(namespace);
+                            }
+                            else
+                            {
+                                ape.setNamespace(namespace);
+                            }
                         }
                     }
                     packetExtension.addChildExtension(childExtension);
@@ -140,6 +309,198 @@ public class DefaultPacketExtensionProvider<C extends AbstractPacketExtension>
                 logger.finest("Done parsing " + elementName);
         }
 
+        if (freezeParsedExtensions)
+        {
+            packetExtension.freeze();
+        }
+
         return packetExtension;
     }
+
+    /**
+     * An immutable table of the providers of child elements. It is meant to
+     * hold a handful of entries, so it is searched linearly, comparing the
+     * interned names by identity first.
+     */
+    private static class ChildProviders
+    {
+        /**
+         * The table without any entries.
+         */
+        static final ChildProviders EMPTY
+            = new ChildProviders(
+                    new String[0],
+                    new String[0],
+                    new ExtensionElementProvider<?>[0],
+                    new boolean[0]);
+
+        /**
+         * The names of the child elements.
+         */
+        private final String[] elementNames;
+
+        /**
+         * The namespaces of the child elements.
+         */
+        private final String[] namespaces;
+
+        /**
+         * The providers of the child elements.
+         */
+        private final ExtensionElementProvider<?>[] providers;
+
+        /**
+         * Whether the providers have been taken from
+         * <tt>ProviderManager</tt> (as opposed to added explicitly).
+         */
+        private final boolean[] resolved;
+
+        private ChildProviders(
+                String[] elementNames,
+                String[] namespaces,
+                ExtensionElementProvider<?>[] providers,
+                boolean[] resolved)
+        {
+            this.elementNames = elementNames;
+            this.namespaces = namespaces;
+            this.providers = providers;
+            this.resolved = resolved;
+        }
+
+        /**
+         * Returns the index of the entry of a specific child element.
+         */
+        int indexOf(String elementName, String namespace)
+        {
+            String[] elementNames = this.elementNames;
+            String[] namespaces = this.namespaces;
+
+            for (int i = 0; i < elementNames.length; i++)
+            {
+                if (elementNames[i] == elementName
+                        && namespaces[i] == namespace)
+                {
+                    return i;
+                }
+            }
+            for (int i = 0; i < elementNames.length; i++)
+            {
+                if (Objects.equals(elementNames[i], elementName)
+                        && Objects.equals(namespaces[i], namespace))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns a copy of this table with a provider added explicitly.
+         */
+        ChildProviders with(
+                String elementName,
+                String namespace,
+                ExtensionElementProvider<?> provider)
+        {
+            return put(elementName, namespace, provider, false);
+        }
+
+        /**
+         * Returns a copy of this table with a provider taken from
+         * <tt>ProviderManager</tt>, or without the entry of the child element
+         * if <tt>provider</tt> is <tt>null</tt>. A provider added explicitly
+         * is kept.
+         */
+        ChildProviders withResolved(
+                String elementName,
+                String namespace,
+                ExtensionElementProvider<?> provider)
+        {
+            int i = indexOf(elementName, namespace);
+
+            if (i >= 0 && !resolved[i])
+                return this;
+            if (provider != null)
+                return put(elementName, namespace, provider, true);
+            if (i < 0)
+                return this;
+
+            ChildProviders table = EMPTY;
+
+            for (int j = 0; j < providers.length; j++)
+            {
+                if (j != i)
+                {
+                    table
+                        = table.put(
+                                elementNames[j],
+                                namespaces[j],
+                                providers[j],
+                                resolved[j]);
+                }
+            }
+            return table;
+        }
+
+        /**
+         * Returns a copy of this table without the providers taken from
+         * <tt>ProviderManager</tt>.
+         */
+        ChildProviders withoutResolved()
+        {
+            ChildProviders table = EMPTY;
+
+            for (int i = 0; i < providers.length; i++)
+            {
+                if (!resolved[i])
+                {
+                    table
+                        = table.put(
+                                elementNames[i],
+                                namespaces[i],
+                                providers[i],
+                                false);
+                }
+            }
+            return table;
+        }
+
+        /**
+         * Returns a copy of this table in which a specific child element is
+         * mapped to a specific provider.
+         */
+        private ChildProviders put(
+                String elementName,
+                String namespace,
+                ExtensionElementProvider<?> provider,
+                boolean resolved)
+        {
+            int i = indexOf(elementName, namespace);
+            int length = elementNames.length;
+            String[] elementNames;
+            String[] namespaces;
+            ExtensionElementProvider<?>[] providers;
+            boolean[] resolvedCopy;
+
+            if (i < 0)
+            {
+                i = length;
+                length++;
+            }
+            elementNames = Arrays.copyOf(this.elementNames, length);
+            namespaces = Arrays.copyOf(this.namespaces, length);
+            providers = Arrays.copyOf(this.providers, length);
+            resolvedCopy = Arrays.copyOf(this.resolved, length);
+
+            // Interned names match the ones returned by the parser by
+            // identity.
+            elementNames[i] = StringPool.internName(elementName);
+            namespaces[i] = StringPool.internName(namespace);
+            providers[i] = provider;
+            resolvedCopy[i] = resolved;
+            return
+                new ChildProviders(
+                        elementNames, namespaces, providers, resolvedCopy);
+        }
+    }
 }
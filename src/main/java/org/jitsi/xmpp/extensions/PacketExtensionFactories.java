@@ -0,0 +1,155 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * A registry which maps <tt>AbstractPacketExtension</tt> classes to
+ * pre-resolved factories. It is used by
+ * {@link DefaultPacketExtensionProvider} and
+ * {@link AbstractPacketExtension#clone(AbstractPacketExtension)} in order to
+ * avoid looking up the public no-argument constructor of the extension class
+ * every time a new instance is needed.
+ * <p>
+ * Classes for which no factory has been registered explicitly get one which
+ * invokes their public no-argument constructor through reflection. The
+ * constructor is resolved only once per class.
+ */
+public final class PacketExtensionFactories
+{
+    /**
+     * The factories known to this registry, mapped by the class of the
+     * instances they create.
+     */
+    private static final Map<Class<?>, Supplier<?>> factories
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a factory for a specific <tt>AbstractPacketExtension</tt>
+     * class, replacing any factory previously registered (or resolved) for it.
+     *
+     * @param clazz the class of the instances created by <tt>factory</tt>.
+     * @param factory the factory which creates new instances of
+     * <tt>clazz</tt>, usually a constructor reference like
+     * <tt>CandidatePacketExtension::new</tt>.
+     * @param <T> the type of the instances created by <tt>factory</tt>.
+     */
+    public static <T extends AbstractPacketExtension> void register(
+            Class<T> clazz, Supplier<? extends T> factory)
+    {
+        Objects.requireNonNull(clazz, "clazz");
+        Objects.requireNonNull(factory, "factory");
+
+        // Providers may be created over and over again with the same
+        // (non-capturing, hence cached) constructor reference, so avoid
+        // writing to the map when nothing changes.
+        if (factories.get(clazz) != factory)
+        {
+            factories.put(clazz, factory);
+        }
+    }
+
+    /**
+     * Gets the factory for a specific <tt>AbstractPacketExtension</tt> class.
+     * If no factory has been registered for <tt>clazz</tt>, a reflective one
+     * is created (and remembered) which uses its public no-argument
+     * constructor.
+     *
+     * @param clazz the class for which to get a factory.
+     * @param <T> the type of the instances created by the returned factory.
+     * @return the factory which creates new instances of <tt>clazz</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends AbstractPacketExtension> Supplier<T> getFactory(
+            Class<T> clazz)
+    {
+        Supplier<?> factory = factories.get(clazz);
+
+        if (factory == null)
+        {
+            factory
+                = factories.computeIfAbsent(
+                        clazz,
+                        PacketExtensionFactories::createReflectiveFactory);
+        }
+        return (Supplier<T>) factory;
+    }
+
+    /**
+     * Creates a new instance of a specific <tt>AbstractPacketExtension</tt>
+     * class using the factory registered for it.
+     *
+     * @param clazz the class to instantiate.
+     * @param <T> the type of the instance to create.
+     * @return a new instance of <tt>clazz</tt>.
+     * @throws RuntimeException if <tt>clazz</tt> has no factory registered and
+     * cannot be instantiated through its public no-argument constructor.
+     */
+    public static <T extends AbstractPacketExtension> T newInstance(
+            Class<T> clazz)
+    {
+        return getFactory(clazz).get();
+    }
+
+    /**
+     * Creates a factory which invokes the public no-argument constructor of a
+     * specific class. The constructor is looked up once, here. If it is
+     * missing the returned factory fails with the same error on every
+     * invocation.
+     *
+     * @param clazz the class to create a factory for.
+     * @return a factory for <tt>clazz</tt>.
+     */
+    private static Supplier<?> createReflectiveFactory(Class<?> clazz)
+    {
+        Constructor<?> constructor;
+
+        try
+        {
+            constructor = clazz.getConstructor();
+        }
+        catch (NoSuchMethodException e)
+        {
+            return () -> { throw new RuntimeException(e); };
+        }
+
+        return () ->
+        {
+            try
+            {
+                return constructor.newInstance();
+            }
+            catch (InstantiationException
+                    | IllegalAccessException
+                    | InvocationTargetException e)
+            {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    /**
+     * Prevents the initialization of new <tt>PacketExtensionFactories</tt>
+     * instances.
+     */
+    private PacketExtensionFactories()
+    {
+    }
+}
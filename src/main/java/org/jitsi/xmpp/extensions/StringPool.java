@@ -0,0 +1,201 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Deduplicates the strings returned by XML parsers, so that long-lived
+ * extensions do not each keep their own copies of the same names and values.
+ * <p>
+ * Names (of elements, attributes and namespaces) come from a small, fixed
+ * vocabulary, so they are interned in a table which keeps every name it has
+ * seen, up to {@link #MAX_NAMES} of them. Attribute values are a mix of
+ * low-cardinality values (e.g. <tt>"sendrecv"</tt>, <tt>"opus"</tt> or
+ * <tt>"udp"</tt>) and unique ones (IDs, SSRCs, ...), so they go through a
+ * bounded, direct-mapped pool instead: each value has a single slot, chosen
+ * by its hash, and a value replaces whatever value was in its slot before.
+ * Frequent values thus stay in the pool while unique ones only evict each
+ * other. The size of the pool is set with the
+ * <tt>org.jitsi.xmpp.extensions.StringPool.VALUE_POOL_SIZE</tt> system
+ * property or {@link #setValuePoolSize(int)}. A size of <tt>0</tt> disables
+ * it.
+ */
+public final class StringPool
+{
+    /**
+     * The maximum number of names that {@link #internName(String)} keeps.
+     * Once it is reached, new names are used as they are, so that unexpected
+     * input cannot make the table grow indefinitely.
+     */
+    public static final int MAX_NAMES = 4096;
+
+    /**
+     * The longest value that {@link #internValue(String)} pools. Longer values
+     * are unlikely to repeat (and expensive to compare), so they are returned
+     * as they are.
+     */
+    public static final int MAX_VALUE_LENGTH = 64;
+
+    /**
+     * The name of the system property which specifies the number of slots of
+     * the value pool.
+     */
+    public static final String VALUE_POOL_SIZE_PNAME
+        = StringPool.class.getName() + ".VALUE_POOL_SIZE";
+
+    /**
+     * The default number of slots of the value pool.
+     */
+    private static final int DEFAULT_VALUE_POOL_SIZE = 4096;
+
+    /**
+     * The table of interned names.
+     */
+    private static final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * The slots of the value pool. Its length is a power of two. Slots are
+     * read and written without synchronization, which is safe because
+     * <tt>String</tt>s are immutable and a lost write only costs a duplicate.
+     */
+    private static volatile String[] values
+        = new String[
+                poolSize(
+                    Integer.getInteger(
+                        VALUE_POOL_SIZE_PNAME, DEFAULT_VALUE_POOL_SIZE))];
+
+    /**
+     * Returns the canonical instance of a specific name (of an element,
+     * attribute or namespace).
+     *
+     * @param name the name.
+     * @return the canonical instance of <tt>name</tt>, or <tt>name</tt> itself
+     * if the table of interned names is full.
+     */
+    public static String internName(String name)
+    {
+        if (name == null)
+        {
+            return null;
+        }
+
+        String interned = names.get(name);
+
+        if (interned == null)
+        {
+            if (names.size() >= MAX_NAMES)
+            {
+                return name;
+            }
+
+            // Prefer the JVM-wide instance so that the String constants used
+            // by the extensions are the ones found in the table.
+            interned = names.computeIfAbsent(name, String::intern);
+        }
+        return interned;
+    }
+
+    /**
+     * Returns a pooled instance of a specific attribute value, i.e. an
+     * instance equal to it which has been returned before, if it is still in
+     * the pool.
+     *
+     * @param value the value.
+     * @return a pooled instance equal to <tt>value</tt>, or <tt>value</tt>
+     * itself.
+     */
+    public static String internValue(String value)
+    {
+        String[] values = StringPool.values;
+        int length;
+
+        if (value == null
+                || values.length == 0
+                || (length = value.length()) > MAX_VALUE_LENGTH)
+        {
+            return value;
+        }
+        if (length == 0)
+        {
+            return "";
+        }
+
+        int h = value.hashCode();
+        int i = (h ^ (h >>> 16)) & (values.length - 1);
+        String pooled = values[i];
+
+        if (value.equals(pooled))
+        {
+            return pooled;
+        }
+        values[i] = value;
+        return value;
+    }
+
+    /**
+     * Sets the number of slots of the value pool, discarding its current
+     * contents.
+     *
+     * @param size the number of slots, rounded up to a power of two, or
+     * <tt>0</tt> to disable the value pool.
+     */
+    public static void setValuePoolSize(int size)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("size " + size);
+        }
+        values = new String[poolSize(size)];
+    }
+
+    /**
+     * Returns the number of slots of the value pool.
+     *
+     * @return the number of slots of the value pool.
+     */
+    public static int getValuePoolSize()
+    {
+        return values.length;
+    }
+
+    /**
+     * Rounds a specific pool size up to a power of two.
+     *
+     * @param size the requested size.
+     * @return the smallest power of two which is not less than <tt>size</tt>,
+     * or <tt>0</tt> if <tt>size</tt> is not positive.
+     */
+    private static int poolSize(int size)
+    {
+        if (size <= 0)
+        {
+            return 0;
+        }
+
+        int n = Integer.highestOneBit(Math.min(size, 1 << 30));
+
+        return (n < size) ? (n << 1) : n;
+    }
+
+    /**
+     * Prevents the initialization of new <tt>StringPool</tt> instances.
+     */
+    private StringPool()
+    {
+    }
+}
@@ -91,7 +91,9 @@ public class ConferenceMediumPacketExtension
      */
     public void setStatus(String status)
     {
+        checkNotFrozen();
         this.status = status;
+        modified();
     }
 
     /**
@@ -101,7 +103,9 @@ public class ConferenceMediumPacketExtension
      */
     public void setType(String type)
     {
+        checkNotFrozen();
         this.type = type;
+        modified();
     }
 
     /**
@@ -110,7 +114,9 @@ public class ConferenceMediumPacketExtension
      */
     public void setDisplayText(String displayText)
     {
+        checkNotFrozen();
         this.displayText = displayText;
+        modified();
     }
 
     /**
@@ -93,7 +93,9 @@ public class DescriptionPacketExtension
      */
     public void setSubject(String subject)
     {
+        checkNotFrozen();
         this.subject = subject;
+        modified();
     }
 
     /**
@@ -103,7 +105,9 @@ public class DescriptionPacketExtension
      */
     public void setDisplayText(String displayText)
     {
+        checkNotFrozen();
         this.displayText = displayText;
+        modified();
     }
 
     /**
@@ -113,7 +117,9 @@ public class DescriptionPacketExtension
      */
     public void setFreeText(String freeText)
     {
+        checkNotFrozen();
         this.freeText = freeText;
+        modified();
     }
 
     /**
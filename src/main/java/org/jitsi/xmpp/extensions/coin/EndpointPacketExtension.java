@@ -105,7 +105,9 @@ public class EndpointPacketExtension
      */
     public void setDisplayText(String displayText)
     {
+        checkNotFrozen();
         this.displayText = displayText;
+        modified();
     }
 
     /**
@@ -115,7 +117,9 @@ public class EndpointPacketExtension
      */
     public void setStatus(EndpointStatusType status)
     {
+        checkNotFrozen();
         this.status = status;
+        modified();
     }
 
     /**
@@ -125,7 +129,9 @@ public class EndpointPacketExtension
      */
     public void setDisconnectionType(DisconnectionType disconnectionType)
     {
+        checkNotFrozen();
         this.disconnectionType = disconnectionType;
+        modified();
     }
 
     /**
@@ -135,7 +141,9 @@ public class EndpointPacketExtension
      */
     public void setJoiningType(JoiningType joiningType)
     {
+        checkNotFrozen();
         this.joiningType = joiningType;
+        modified();
     }
 
     /**
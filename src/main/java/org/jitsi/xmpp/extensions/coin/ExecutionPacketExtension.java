@@ -90,7 +90,9 @@ public class ExecutionPacketExtension
      */
     public void setBy(String by)
     {
+        checkNotFrozen();
         this.by = by;
+        modified();
     }
 
     /**
@@ -110,7 +112,9 @@ public class ExecutionPacketExtension
      */
     public void setWhen(String when)
     {
+        checkNotFrozen();
         this.when = when;
+        modified();
     }
 
     /**
@@ -130,7 +134,9 @@ public class ExecutionPacketExtension
      */
     public void setReason(String reason)
     {
+        checkNotFrozen();
         this.reason = reason;
+        modified();
     }
 
     /**
@@ -71,7 +71,9 @@ public class HostInfoPacketExtension
      */
     public void setDisplayText(String displayText)
     {
+        checkNotFrozen();
         this.displayText = displayText;
+        modified();
     }
 
     /**
@@ -90,7 +92,9 @@ public class HostInfoPacketExtension
      */
     public void setWebPage(String webPage)
     {
+        checkNotFrozen();
         this.webPage = webPage;
+        modified();
     }
 
     /**
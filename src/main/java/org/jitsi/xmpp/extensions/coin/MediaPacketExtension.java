@@ -111,7 +111,9 @@ public class MediaPacketExtension
      */
     public void setLabel(String label)
     {
+        checkNotFrozen();
         this.label = label;
+        modified();
     }
 
     /**
@@ -121,7 +123,9 @@ public class MediaPacketExtension
      */
     public void setStatus(String status)
     {
+        checkNotFrozen();
         this.status = status;
+        modified();
     }
 
     /**
@@ -131,7 +135,9 @@ public class MediaPacketExtension
      */
     public void setSrcID(String srcId)
     {
+        checkNotFrozen();
         this.srcId = srcId;
+        modified();
     }
 
     /**
@@ -141,7 +147,9 @@ public class MediaPacketExtension
      */
     public void setType(String type)
     {
+        checkNotFrozen();
         this.type = type;
+        modified();
     }
 
     /**
@@ -150,7 +158,9 @@ public class MediaPacketExtension
      */
     public void setDisplayText(String displayText)
     {
+        checkNotFrozen();
         this.displayText = displayText;
+        modified();
     }
 
     /**
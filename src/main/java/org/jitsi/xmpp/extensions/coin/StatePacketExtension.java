@@ -82,7 +82,9 @@ public class StatePacketExtension
      */
     public void setUserCount(int userCount)
     {
+        checkNotFrozen();
         this.userCount = userCount;
+        modified();
     }
 
     /**
@@ -92,7 +94,9 @@ public class StatePacketExtension
      */
     public void setActive(int active)
     {
+        checkNotFrozen();
         this.active = active;
+        modified();
     }
 
     /**
@@ -102,7 +106,9 @@ public class StatePacketExtension
      */
     public void setLocked(int locked)
     {
+        checkNotFrozen();
         this.locked = locked;
+        modified();
     }
 
     /**
@@ -74,7 +74,9 @@ public class URIPacketExtension
      */
     public void setDisplayText(String displayText)
     {
+        checkNotFrozen();
         this.displayText = displayText;
+        modified();
     }
 
     /**
@@ -94,7 +96,9 @@ public class URIPacketExtension
      */
     public void setPurpose(String purpose)
     {
+        checkNotFrozen();
         this.purpose = purpose;
+        modified();
     }
 
     /**
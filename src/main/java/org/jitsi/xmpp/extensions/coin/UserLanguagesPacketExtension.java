@@ -62,7 +62,9 @@ public class UserLanguagesPacketExtension
      */
     public void setLanguages(String languages)
     {
+        checkNotFrozen();
         this.languages = languages;
+        modified();
     }
 
     /**
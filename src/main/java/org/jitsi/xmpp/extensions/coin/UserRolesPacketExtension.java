@@ -64,7 +64,9 @@ public class UserRolesPacketExtension
      */
     public void addRoles(String role)
     {
+        checkNotFrozen();
         roles.add(role);
+        modified();
     }
 
     /**
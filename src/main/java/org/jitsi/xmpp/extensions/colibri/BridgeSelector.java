@@ -0,0 +1,537 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jxmpp.jid.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Selects bridges for conferences from the <tt>stats</tt> extensions that
+ * the bridges publish. The bridges are kept ordered by load in one sorted
+ * set per {@link ColibriStatsExtension#REGION}, so that the stats of a
+ * bridge are applied in <tt>O(log n)</tt> and the least loaded bridge of a
+ * region is found without scanning. Bridges which are shutting down (see
+ * {@link ColibriStatsExtension#SHUTDOWN_IN_PROGRESS}) are never selected.
+ * <p>
+ * The sets are concurrent (skip lists), so selections do not lock and may be
+ * made from any number of threads while stats are being applied. The
+ * updates of a single bridge are serialized.
+ * <p>
+ * The load of a bridge is computed from its stats by a function given to
+ * the constructor (by default {@link #PACKET_RATE_LOAD}), and the bridge for
+ * a conference is picked by a {@link Strategy}, e.g. {@link #LEAST_LOADED},
+ * {@link #REGION_AFFINITY} or {@link #splitForOcto(double)}.
+ */
+public class BridgeSelector
+{
+    /**
+     * The <tt>Strategy</tt> which selects the least loaded bridge overall.
+     */
+    public static final Strategy LEAST_LOADED
+        = (selector, region, conferenceBridges) -> selector.getLeastLoaded();
+
+    /**
+     * The region of the bridges which do not report one.
+     */
+    private static final String NO_REGION = "";
+
+    /**
+     * The load function which sums the download and upload packet rates of a
+     * bridge.
+     */
+    public static final ToDoubleFunction<ColibriStatsExtension>
+        PACKET_RATE_LOAD
+            = stats ->
+                stats.getValueAsDouble(
+                        ColibriStatsExtension.PACKET_RATE_DOWNLOAD, 0)
+                    + stats.getValueAsDouble(
+                        ColibriStatsExtension.PACKET_RATE_UPLOAD, 0);
+
+    /**
+     * The <tt>Strategy</tt> which selects the least loaded bridge in the
+     * region of the participant, or the least loaded bridge overall if there
+     * is no bridge in that region.
+     */
+    public static final Strategy REGION_AFFINITY
+        = (selector, region, conferenceBridges) ->
+        {
+            Bridge bridge = selector.getLeastLoaded(region);
+
+            return (bridge == null) ? selector.getLeastLoaded() : bridge;
+        };
+
+    /**
+     * The bridges, by JID.
+     */
+    private final Map<Jid, Bridge> bridges = new ConcurrentHashMap<>();
+
+    /**
+     * The function which computes the load of a bridge from its stats.
+     */
+    private final ToDoubleFunction<ColibriStatsExtension> loadFunction;
+
+    /**
+     * The selectable bridges (i.e. those which are not shutting down) of
+     * each region, ordered by load.
+     */
+    private final Map<String, NavigableSet<Bridge>> regions
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new <tt>BridgeSelector</tt> which orders the bridges by
+     * {@link #PACKET_RATE_LOAD}.
+     */
+    public BridgeSelector()
+    {
+        this(PACKET_RATE_LOAD);
+    }
+
+    /**
+     * Initializes a new <tt>BridgeSelector</tt> instance.
+     *
+     * @param loadFunction the function which computes the load of a bridge
+     * from its (complete) stats, e.g. from smoothed values kept by a
+     * {@link ColibriStatsHistory}.
+     */
+    public BridgeSelector(ToDoubleFunction<ColibriStatsExtension> loadFunction)
+    {
+        this.loadFunction
+            = Objects.requireNonNull(loadFunction, "loadFunction");
+    }
+
+    /**
+     * Gets the key of a region in {@link #regions}.
+     *
+     * @param region the region, or <tt>null</tt>.
+     * @return the key of <tt>region</tt>.
+     */
+    private static String key(String region)
+    {
+        return (region == null) ? NO_REGION : region;
+    }
+
+    /**
+     * Gets the last known state of a specific bridge.
+     *
+     * @param jid the JID of the bridge.
+     * @return the state of the bridge, or <tt>null</tt> if it is not known.
+     */
+    public Bridge getBridge(Jid jid)
+    {
+        return bridges.get(jid);
+    }
+
+    /**
+     * Gets the least loaded bridge which is not shutting down.
+     *
+     * @return the least loaded bridge, or <tt>null</tt> if there is none.
+     */
+    public Bridge getLeastLoaded()
+    {
+        Bridge leastLoaded = null;
+
+        for (NavigableSet<Bridge> region : regions.values())
+        {
+            Bridge bridge = first(region);
+
+            if (bridge != null
+                    && (leastLoaded == null
+                        || bridge.compareTo(leastLoaded) < 0))
+            {
+                leastLoaded = bridge;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Gets the least loaded bridge of a specific region which is not
+     * shutting down.
+     *
+     * @param region the region, or <tt>null</tt> for the bridges which do
+     * not report one.
+     * @return the least loaded bridge of <tt>region</tt>, or <tt>null</tt>
+     * if there is none.
+     */
+    public Bridge getLeastLoaded(String region)
+    {
+        return first(regions.get(key(region)));
+    }
+
+    /**
+     * Gets the least loaded bridge of a specific region which is not
+     * shutting down and matches a specific predicate.
+     *
+     * @param region the region, or <tt>null</tt> for the bridges which do
+     * not report one.
+     * @param predicate the predicate.
+     * @return the least loaded bridge of <tt>region</tt> which matches
+     * <tt>predicate</tt>, or <tt>null</tt> if there is none.
+     */
+    public Bridge getLeastLoaded(String region, Predicate<Bridge> predicate)
+    {
+        NavigableSet<Bridge> set = regions.get(key(region));
+
+        if (set != null)
+        {
+            for (Bridge bridge : set)
+            {
+                if (predicate.test(bridge))
+                {
+                    return bridge;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the first element of a set, which may be concurrently modified.
+     *
+     * @param set the set, or <tt>null</tt>.
+     * @return the first element of <tt>set</tt>, or <tt>null</tt> if it is
+     * empty.
+     */
+    private static Bridge first(NavigableSet<Bridge> set)
+    {
+        if (set != null)
+        {
+            Iterator<Bridge> i = set.iterator();
+
+            if (i.hasNext())
+            {
+                return i.next();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets a specific bridge, e.g. because it has gone away.
+     *
+     * @param jid the JID of the bridge.
+     * @return the last known state of the bridge, or <tt>null</tt> if it was
+     * not known.
+     */
+    public Bridge remove(Jid jid)
+    {
+        Bridge[] removed = new Bridge[1];
+
+        bridges.computeIfPresent(jid, (k, bridge) ->
+        {
+            unindex(bridge);
+            removed[0] = bridge;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Selects a bridge for a participant with a specific strategy.
+     *
+     * @param strategy the strategy.
+     * @param region the region of the participant, or <tt>null</tt>.
+     * @param conferenceBridges the JIDs of the bridges which the conference
+     * already uses.
+     * @return the selected bridge, or <tt>null</tt> if there is none.
+     */
+    public Bridge select(
+            Strategy strategy,
+            String region,
+            Collection<Jid> conferenceBridges)
+    {
+        return strategy.select(
+            this,
+            region,
+            (conferenceBridges == null)
+                ? Collections.emptyList()
+                : conferenceBridges);
+    }
+
+    /**
+     * Returns a <tt>Strategy</tt> which splits conferences between regions
+     * with Octo. A participant is placed on a bridge of the conference in
+     * its region, unless that bridge's load exceeds <tt>maxLoad</tt>, or
+     * else on the least loaded bridge of its region which supports Octo
+     * (i.e. reports a {@link ColibriStatsExtension#RELAY_ID}). If the
+     * conference cannot be split, because a bridge does not support Octo,
+     * the least loaded bridge of the conference is selected. Conferences
+     * without bridges are placed like with {@link #REGION_AFFINITY}.
+     *
+     * @param maxLoad the load above which a bridge of the conference is not
+     * selected for more participants from its region.
+     * @return a <tt>Strategy</tt> which splits conferences between regions.
+     */
+    public static Strategy splitForOcto(double maxLoad)
+    {
+        return (selector, region, conferenceBridges) ->
+        {
+            List<Bridge> bridges = new ArrayList<>(conferenceBridges.size());
+
+            for (Jid jid : conferenceBridges)
+            {
+                Bridge bridge = selector.getBridge(jid);
+
+                if (bridge != null && !bridge.isShuttingDown())
+                {
+                    bridges.add(bridge);
+                }
+            }
+            if (bridges.isEmpty())
+            {
+                return REGION_AFFINITY.select(
+                    selector, region, conferenceBridges);
+            }
+
+            Bridge leastLoaded = null;
+            boolean octo = true;
+
+            for (Bridge bridge : bridges)
+            {
+                if (Objects.equals(region, bridge.getRegion())
+                        && bridge.getLoad() <= maxLoad)
+                {
+                    return bridge;
+                }
+                if (bridge.getRelayId() == null)
+                {
+                    octo = false;
+                }
+                if (leastLoaded == null || bridge.compareTo(leastLoaded) < 0)
+                {
+                    leastLoaded = bridge;
+                }
+            }
+
+            if (octo)
+            {
+                Bridge bridge
+                    = selector.getLeastLoaded(
+                            region, b -> b.getRelayId() != null);
+
+                if (bridge != null)
+                {
+                    return bridge;
+                }
+            }
+            return leastLoaded;
+        };
+    }
+
+    /**
+     * Removes a bridge from the set of its region.
+     *
+     * @param bridge the bridge.
+     */
+    private void unindex(Bridge bridge)
+    {
+        if (!bridge.isShuttingDown())
+        {
+            NavigableSet<Bridge> region = regions.get(key(bridge.getRegion()));
+
+            if (region != null)
+            {
+                region.remove(bridge);
+            }
+        }
+    }
+
+    /**
+     * Applies the stats of a specific bridge.
+     *
+     * @param jid the JID of the bridge.
+     * @param stats the complete stats of the bridge (e.g. merged by a
+     * {@link ColibriStatsDeltaMerger}).
+     * @return the new state of the bridge.
+     */
+    public Bridge update(Jid jid, ColibriStatsExtension stats)
+    {
+        Objects.requireNonNull(jid, "jid");
+
+        Bridge bridge
+            = new Bridge(
+                    jid,
+                    stats.getValueAsString(ColibriStatsExtension.REGION),
+                    stats.getValueAsString(ColibriStatsExtension.RELAY_ID),
+                    loadFunction.applyAsDouble(stats),
+                    Boolean.parseBoolean(
+                        stats.getValueAsString(
+                            ColibriStatsExtension.SHUTDOWN_IN_PROGRESS)),
+                    stats);
+
+        bridges.compute(jid, (k, old) ->
+        {
+            if (old != null)
+            {
+                unindex(old);
+            }
+            if (!bridge.isShuttingDown())
+            {
+                regions
+                    .computeIfAbsent(
+                        key(bridge.getRegion()),
+                        r -> new ConcurrentSkipListSet<>())
+                    .add(bridge);
+            }
+            return bridge;
+        });
+        return bridge;
+    }
+
+    /**
+     * The state of a bridge, as of a specific set of its stats. Instances
+     * are immutable and ordered by load.
+     */
+    public static final class Bridge
+        implements Comparable<Bridge>
+    {
+        /**
+         * The JID of the bridge.
+         */
+        private final Jid jid;
+
+        /**
+         * The load of the bridge.
+         */
+        private final double load;
+
+        /**
+         * The region of the bridge.
+         */
+        private final String region;
+
+        /**
+         * The Octo relay ID of the bridge.
+         */
+        private final String relayId;
+
+        /**
+         * Whether the bridge is shutting down.
+         */
+        private final boolean shuttingDown;
+
+        /**
+         * The stats that this state was computed from.
+         */
+        private final ColibriStatsExtension stats;
+
+        private Bridge(
+                Jid jid,
+                String region,
+                String relayId,
+                double load,
+                boolean shuttingDown,
+                ColibriStatsExtension stats)
+        {
+            this.jid = jid;
+            this.region = region;
+            this.relayId = relayId;
+            this.load = load;
+            this.shuttingDown = shuttingDown;
+            this.stats = stats;
+        }
+
+        @Override
+        public int compareTo(Bridge other)
+        {
+            int c = Double.compare(load, other.load);
+
+            return (c == 0) ? jid.compareTo(other.jid) : c;
+        }
+
+        /**
+         * @return the JID of the bridge.
+         */
+        public Jid getJid()
+        {
+            return jid;
+        }
+
+        /**
+         * @return the load of the bridge.
+         */
+        public double getLoad()
+        {
+            return load;
+        }
+
+        /**
+         * @return the region of the bridge, or <tt>null</tt> if it does not
+         * report one.
+         */
+        public String getRegion()
+        {
+            return region;
+        }
+
+        /**
+         * @return the Octo relay ID of the bridge, or <tt>null</tt> if it
+         * does not support Octo.
+         */
+        public String getRelayId()
+        {
+            return relayId;
+        }
+
+        /**
+         * @return the stats that this state was computed from.
+         */
+        public ColibriStatsExtension getStats()
+        {
+            return stats;
+        }
+
+        /**
+         * @return <tt>true</tt> if the bridge is shutting down.
+         */
+        public boolean isShuttingDown()
+        {
+            return shuttingDown;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Bridge[jid=" + jid + ", region=" + region
+                + ", load=" + load + "]";
+        }
+    }
+
+    /**
+     * Selects a bridge for a participant of a conference.
+     */
+    @FunctionalInterface
+    public interface Strategy
+    {
+        /**
+         * Selects a bridge for a participant of a conference.
+         *
+         * @param selector the <tt>BridgeSelector</tt> which knows the state
+         * of the bridges.
+         * @param region the region of the participant, or <tt>null</tt>.
+         * @param conferenceBridges the JIDs of the bridges which the
+         * conference already uses.
+         * @return the selected bridge, or <tt>null</tt> if there is none.
+         */
+        Bridge select(
+                BridgeSelector selector,
+                String region,
+                Collection<Jid> conferenceBridges);
+    }
+}
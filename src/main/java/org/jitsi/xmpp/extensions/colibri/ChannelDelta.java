@@ -0,0 +1,400 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * Computes and applies delta <tt>channel</tt>s, i.e.
+ * {@link ColibriConferenceIQ.Channel}s which only carry the sources, source
+ * groups, payload types and RTP header extensions added to a channel since a
+ * known (acknowledged) state, and list the removed ones in a
+ * {@link ColibriConferenceIQ.Channel#REMOVE_ELEMENT_NAME} element. A delta
+ * channel is marked with the
+ * {@link ColibriConferenceIQ.Channel#DELTA_ATTR_NAME} attribute.
+ * <p>
+ * Sources are matched with
+ * {@link SourcePacketExtension#sourceEquals(SourcePacketExtension)}, so a
+ * source whose parameters (but not SSRC or RID) changed is not part of a
+ * delta. Source groups, payload types and RTP header extensions are matched
+ * by their XML representations.
+ */
+public final class ChannelDelta
+{
+    /**
+     * Patches a channel with an update, in place. The sources, source
+     * groups, payload types and RTP header extensions of a delta update are
+     * added to <tt>target</tt> and the ones it lists for removal are removed
+     * from it. Any other update describes all the elements of each of these
+     * kinds which it has any of, so those of <tt>target</tt> are replaced.
+     * The kinds of elements that it has none of (e.g. the sources in a
+     * response of the bridge) are left unchanged.
+     *
+     * @param target the channel to patch.
+     * @param update the delta or full description of the channel.
+     */
+    public static void apply(
+            ColibriConferenceIQ.Channel target,
+            ColibriConferenceIQ.Channel update)
+    {
+        if (!update.isDelta())
+        {
+            ColibriConferenceIQ.Channel delta
+                = new ColibriConferenceIQ.Channel();
+            List<SourceGroupPacketExtension> sourceGroups
+                = update.getSourceGroupsView();
+            List<PayloadTypePacketExtension> payloadTypes
+                = update.getPayloadTypes();
+
+            List<SourcePacketExtension> sources = update.getSourcesView();
+
+            if (!sources.isEmpty())
+                diffSources(target, sources, delta);
+            if (!sourceGroups.isEmpty())
+                diffSourceGroups(target, sourceGroups, delta);
+            if (!payloadTypes.isEmpty())
+                diffPayloadTypes(target, payloadTypes, delta);
+
+            Collection<RTPHdrExtPacketExtension> rtpHeaderExtensions
+                = update.getRtpHeaderExtensions();
+
+            if (!rtpHeaderExtensions.isEmpty())
+                diffRtpHeaderExtensions(target, rtpHeaderExtensions, delta);
+            update = delta;
+        }
+
+        for (SourcePacketExtension source : update.getRemovedSources())
+        {
+            target.removeSource(target.findSource(source));
+        }
+        for (SourcePacketExtension source : update.getSourcesView())
+        {
+            target.addSource(source);
+        }
+
+        List<SourceGroupPacketExtension> removedGroups
+            = update.getRemovedSourceGroups();
+        List<SourceGroupPacketExtension> addedGroups
+            = update.getSourceGroupsView();
+        List<SourceGroupPacketExtension> targetGroups
+            = target.getSourceGroupsView();
+
+        if (!removedGroups.isEmpty())
+        {
+            Set<String> removed = keys(removedGroups);
+
+            for (SourceGroupPacketExtension group : targetGroups)
+            {
+                if (removed.contains(group.toXML()))
+                    target.removeSourceGroup(group);
+            }
+        }
+        if (!addedGroups.isEmpty())
+        {
+            Set<String> existing = keys(target.getSourceGroupsView());
+
+            for (SourceGroupPacketExtension group : addedGroups)
+            {
+                if (existing.add(group.toXML()))
+                    target.addSourceGroup(group);
+            }
+        }
+
+        List<PayloadTypePacketExtension> removedPayloadTypes
+            = update.getRemovedPayloadTypes();
+
+        if (!removedPayloadTypes.isEmpty())
+        {
+            Set<String> removed = keys(removedPayloadTypes);
+
+            // The CodecSet of target is replaced, not modified, so its
+            // payload types can be iterated while they are removed.
+            for (PayloadTypePacketExtension p : target.getPayloadTypes())
+            {
+                if (removed.contains(p.toXML()))
+                    target.removePayloadType(p);
+            }
+        }
+
+        List<PayloadTypePacketExtension> addedPayloadTypes
+            = update.getPayloadTypes();
+
+        if (!addedPayloadTypes.isEmpty())
+        {
+            Set<String> existing = keys(target.getPayloadTypes());
+
+            for (PayloadTypePacketExtension p : addedPayloadTypes)
+            {
+                if (existing.add(p.toXML()))
+                    target.addPayloadType(p);
+            }
+        }
+
+        List<RTPHdrExtPacketExtension> removedRtpHeaderExtensions
+            = update.getRemovedRtpHeaderExtensions();
+
+        if (!removedRtpHeaderExtensions.isEmpty())
+        {
+            Set<String> removed = keys(removedRtpHeaderExtensions);
+
+            for (RTPHdrExtPacketExtension ext
+                    : target.getRtpHeaderExtensions())
+            {
+                if (removed.contains(ext.toXML()))
+                    target.removeRtpHeaderExtension(ext);
+            }
+        }
+
+        // An added RTP header extension replaces the one with the same ID.
+        for (RTPHdrExtPacketExtension ext : update.getRtpHeaderExtensions())
+        {
+            target.addRtpHeaderExtension(ext);
+        }
+    }
+
+    /**
+     * Adds to a delta channel the payload types which differ between the
+     * acknowledged state of a channel and specific payload types.
+     *
+     * @param acknowledged the acknowledged state of the channel.
+     * @param payloadTypes the payload types that the channel is to have.
+     * @param delta the delta channel to add the changes to.
+     * @return <tt>true</tt> if there are any changes.
+     */
+    public static boolean diffPayloadTypes(
+            ColibriConferenceIQ.Channel acknowledged,
+            List<PayloadTypePacketExtension> payloadTypes,
+            ColibriConferenceIQ.Channel delta)
+    {
+        delta.setDelta(true);
+
+        // The payload types of a channel use the COLIBRI namespace, so those
+        // from e.g. Jingle descriptions have to be converted to be compared.
+        List<PayloadTypePacketExtension> converted
+            = new ArrayList<>(payloadTypes.size());
+
+        for (PayloadTypePacketExtension p : payloadTypes)
+        {
+            PayloadTypePacketExtension clone
+                = PayloadTypePacketExtension.clone(p);
+
+            clone.setNamespace(null);
+            for (ParameterPacketExtension param : clone.getParameters())
+                param.setNamespace(null);
+            converted.add(clone);
+        }
+
+        return diff(
+            acknowledged.getPayloadTypes(),
+            converted,
+            delta::addPayloadType,
+            delta::addRemovedPayloadType);
+    }
+
+    /**
+     * Adds to a delta channel the RTP header extensions which differ between
+     * the acknowledged state of a channel and specific RTP header extensions.
+     * Those with invalid IDs are ignored.
+     *
+     * @param acknowledged the acknowledged state of the channel.
+     * @param rtpHeaderExtensions the RTP header extensions that the channel
+     * is to have.
+     * @param delta the delta channel to add the changes to.
+     * @return <tt>true</tt> if there are any changes.
+     */
+    public static boolean diffRtpHeaderExtensions(
+            ColibriConferenceIQ.Channel acknowledged,
+            Collection<? extends RTPHdrExtPacketExtension> rtpHeaderExtensions,
+            ColibriConferenceIQ.Channel delta)
+    {
+        delta.setDelta(true);
+
+        // Like the payload types, those from e.g. Jingle descriptions have to
+        // be converted to the COLIBRI namespace to be compared.
+        List<RTPHdrExtPacketExtension> converted
+            = new ArrayList<>(rtpHeaderExtensions.size());
+
+        for (RTPHdrExtPacketExtension ext : rtpHeaderExtensions)
+        {
+            if (CodecSet.getID(ext) >= 0)
+            {
+                RTPHdrExtPacketExtension clone
+                    = RTPHdrExtPacketExtension.clone(ext);
+
+                clone.setNamespace(null);
+                converted.add(clone);
+            }
+        }
+
+        return diff(
+            new ArrayList<>(acknowledged.getRtpHeaderExtensions()),
+            converted,
+            delta::addRtpHeaderExtension,
+            delta::addRemovedRtpHeaderExtension);
+    }
+
+    /**
+     * Adds to a delta channel the source groups which differ between the
+     * acknowledged state of a channel and specific source groups.
+     *
+     * @param acknowledged the acknowledged state of the channel.
+     * @param sourceGroups the source groups that the channel is to have.
+     * @param delta the delta channel to add the changes to.
+     * @return <tt>true</tt> if there are any changes.
+     */
+    public static boolean diffSourceGroups(
+            ColibriConferenceIQ.Channel acknowledged,
+            List<SourceGroupPacketExtension> sourceGroups,
+            ColibriConferenceIQ.Channel delta)
+    {
+        delta.setDelta(true);
+        return diff(
+            acknowledged.getSourceGroupsView(),
+            sourceGroups,
+            delta::addSourceGroup,
+            delta::addRemovedSourceGroup);
+    }
+
+    /**
+     * Adds to a delta channel the sources which differ between the
+     * acknowledged state of a channel and specific sources. Sources without
+     * an SSRC or RID cannot be matched, so they are ignored. A source whose
+     * SSRC or RID is acknowledged but whose description (e.g. its
+     * <tt>parameter</tt>s) has changed is both removed and added, so that it
+     * is replaced.
+     *
+     * @param acknowledged the acknowledged state of the channel.
+     * @param sources the sources that the channel is to have.
+     * @param delta the delta channel to add the changes to.
+     * @return <tt>true</tt> if there are any changes.
+     */
+    public static boolean diffSources(
+            ColibriConferenceIQ.Channel acknowledged,
+            List<SourcePacketExtension> sources,
+            ColibriConferenceIQ.Channel delta)
+    {
+        SourceIndex target = new SourceIndex();
+        boolean changed = false;
+
+        delta.setDelta(true);
+        for (SourcePacketExtension source : sources)
+        {
+            if ((source.hasSSRC() || source.hasRid()) && target.add(source))
+            {
+                SourcePacketExtension current
+                    = acknowledged.findSource(source);
+
+                if (current != null
+                        && !current.toXML().equals(source.toXML()))
+                {
+                    delta.addRemovedSource(current.copy());
+                    current = null;
+                }
+                if (current == null)
+                {
+                    delta.addSource(source.copy());
+                    changed = true;
+                }
+            }
+        }
+        for (SourcePacketExtension source : acknowledged.getSourcesView())
+        {
+            if ((source.hasSSRC() || source.hasRid())
+                    && target.find(source) == null)
+            {
+                delta.addRemovedSource(source.copy());
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Reports the elements which differ between two lists, matching them by
+     * their XML representations.
+     *
+     * @param current the current elements.
+     * @param target the elements to have.
+     * @param added receives the elements of <tt>target</tt> which are not in
+     * <tt>current</tt>.
+     * @param removed receives the elements of <tt>current</tt> which are not
+     * in <tt>target</tt>.
+     * @param <T> the type of the elements.
+     * @return <tt>true</tt> if there are any differences.
+     */
+    private static <T extends AbstractPacketExtension> boolean diff(
+            List<T> current,
+            List<T> target,
+            Consumer<T> added,
+            Consumer<T> removed)
+    {
+        Set<String> currentKeys = keys(current);
+        Set<String> targetKeys = new HashSet<>();
+        boolean changed = false;
+
+        for (T element : target)
+        {
+            String key = element.toXML();
+
+            if (targetKeys.add(key) && !currentKeys.contains(key))
+            {
+                added.accept(element);
+                changed = true;
+            }
+        }
+        for (T element : current)
+        {
+            if (!targetKeys.contains(element.toXML()))
+            {
+                removed.accept(element);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the XML representations of specific elements.
+     *
+     * @param elements the elements, or <tt>null</tt>.
+     * @return the XML representations of <tt>elements</tt>.
+     */
+    private static Set<String> keys(
+            List<? extends AbstractPacketExtension> elements)
+    {
+        Set<String> keys = new HashSet<>();
+
+        if (elements != null)
+        {
+            for (AbstractPacketExtension element : elements)
+            {
+                keys.add(element.toXML());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Prevents the initialization of new <tt>ChannelDelta</tt> instances.
+     */
+    private ChannelDelta()
+    {
+    }
+}
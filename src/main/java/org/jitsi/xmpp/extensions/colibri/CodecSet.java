@@ -0,0 +1,698 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.util.*;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * An immutable set of the <tt>payload-type</tt> and <tt>rtp-hdrext</tt>
+ * elements of a {@link ColibriConferenceIQ.Channel}. The elements of a
+ * <tt>CodecSet</tt> use the COLIBRI namespace (i.e. they have no namespace of
+ * their own) and are frozen (see
+ * {@link org.jitsi.xmpp.extensions.AbstractPacketExtension#freeze()}), so a
+ * <tt>CodecSet</tt> can be shared by any number of channels and its XML
+ * representation is computed only once.
+ * <p>
+ * The participants of a conference usually negotiate the same codecs, so
+ * their channels should reference the same instance, which
+ * {@link #intern(CodecSet)} returns. Channels modify their codecs by
+ * replacing their <tt>CodecSet</tt> with a modified copy (see e.g.
+ * {@link #withPayloadType(PayloadTypePacketExtension)}), which leaves the
+ * other channels which share it unaffected.
+ * <p>
+ * Two <tt>CodecSet</tt>s are equal if their XML representations are equal.
+ */
+public final class CodecSet
+{
+    /**
+     * The <tt>CodecSet</tt> without any payload types and RTP header
+     * extensions.
+     */
+    public static final CodecSet EMPTY
+        = new CodecSet(
+                Collections.emptyList(), new TreeMap<>());
+
+    /**
+     * The interned <tt>CodecSet</tt>s. They are weakly referenced, so a
+     * <tt>CodecSet</tt> is dropped once no channel references it anymore.
+     */
+    private static final Map<CodecSet, WeakReference<CodecSet>> interned
+        = new WeakHashMap<>();
+
+    /**
+     * The payload types, in the order in which they were added.
+     */
+    private final List<PayloadTypePacketExtension> payloadTypes;
+
+    /**
+     * The RTP header extensions, by ID.
+     */
+    private final SortedMap<Integer, RTPHdrExtPacketExtension>
+        rtpHeaderExtensions;
+
+    /**
+     * The XML representation of this set, computed on demand.
+     */
+    private volatile String xml;
+
+    /**
+     * Initializes a new <tt>CodecSet</tt> instance which takes ownership of
+     * specific (normalized) elements.
+     *
+     * @param payloadTypes the payload types.
+     * @param rtpHeaderExtensions the RTP header extensions, by ID.
+     */
+    private CodecSet(
+            List<PayloadTypePacketExtension> payloadTypes,
+            SortedMap<Integer, RTPHdrExtPacketExtension> rtpHeaderExtensions)
+    {
+        this.payloadTypes = Collections.unmodifiableList(payloadTypes);
+        this.rtpHeaderExtensions
+            = Collections.unmodifiableSortedMap(rtpHeaderExtensions);
+    }
+
+    /**
+     * Returns the canonical instance of a specific <tt>CodecSet</tt>.
+     *
+     * @param codecSet the <tt>CodecSet</tt>.
+     * @return an interned <tt>CodecSet</tt> equal to <tt>codecSet</tt>.
+     */
+    public static CodecSet intern(CodecSet codecSet)
+    {
+        if (codecSet.isEmpty())
+            return EMPTY;
+
+        // Compute the XML representation outside of the lock.
+        codecSet.toXML();
+
+        synchronized (interned)
+        {
+            WeakReference<CodecSet> ref = interned.get(codecSet);
+            CodecSet canonical = (ref == null) ? null : ref.get();
+
+            if (canonical == null)
+            {
+                canonical = codecSet;
+                interned.put(canonical, new WeakReference<>(canonical));
+            }
+            return canonical;
+        }
+    }
+
+    /**
+     * Returns the canonical <tt>CodecSet</tt> of specific payload types and
+     * RTP header extensions, e.g. those of a Jingle description. The elements
+     * are copied unless they are frozen and use the COLIBRI namespace
+     * already.
+     *
+     * @param payloadTypes the payload types.
+     * @param rtpHeaderExtensions the RTP header extensions. Those with
+     * invalid IDs are ignored.
+     * @return an interned <tt>CodecSet</tt> with <tt>payloadTypes</tt> and
+     * <tt>rtpHeaderExtensions</tt>.
+     */
+    public static CodecSet intern(
+            Collection<? extends PayloadTypePacketExtension> payloadTypes,
+            Collection<? extends RTPHdrExtPacketExtension> rtpHeaderExtensions)
+    {
+        CodecSet codecSet = EMPTY;
+
+        for (PayloadTypePacketExtension p : payloadTypes)
+        {
+            codecSet = codecSet.withPayloadType(p);
+        }
+        for (RTPHdrExtPacketExtension ext : rtpHeaderExtensions)
+        {
+            int id = getID(ext);
+
+            if (id >= 0)
+                codecSet = codecSet.withRtpHeaderExtension(id, ext);
+        }
+        return intern(codecSet);
+    }
+
+    /**
+     * Gets the payload types of this set.
+     *
+     * @return the unmodifiable list of the payload types of this set, in the
+     * order in which they were added.
+     */
+    public List<PayloadTypePacketExtension> getPayloadTypes()
+    {
+        return payloadTypes;
+    }
+
+    /**
+     * Gets the RTP header extensions of this set.
+     *
+     * @return the unmodifiable collection of the RTP header extensions of
+     * this set, ordered by ID.
+     */
+    public Collection<RTPHdrExtPacketExtension> getRtpHeaderExtensions()
+    {
+        return rtpHeaderExtensions.values();
+    }
+
+    /**
+     * Determines whether this set has neither payload types nor RTP header
+     * extensions.
+     *
+     * @return <tt>true</tt> if this set is empty.
+     */
+    public boolean isEmpty()
+    {
+        return payloadTypes.isEmpty() && rtpHeaderExtensions.isEmpty();
+    }
+
+    /**
+     * Returns a <tt>CodecSet</tt> which has the payload types and RTP header
+     * extensions of this one plus a specific payload type. The payload type
+     * is copied unless it is frozen and uses the COLIBRI namespace already.
+     *
+     * @param payloadType the payload type to add.
+     * @return this instance if it already has a payload type equal to
+     * <tt>payloadType</tt>; otherwise, a new (not interned)
+     * <tt>CodecSet</tt>.
+     */
+    public CodecSet withPayloadType(PayloadTypePacketExtension payloadType)
+    {
+        PayloadTypePacketExtension normalized = normalize(payloadType);
+
+        if (indexOf(normalized) >= 0)
+            return this;
+
+        List<PayloadTypePacketExtension> payloadTypes
+            = new ArrayList<>(this.payloadTypes.size() + 1);
+
+        payloadTypes.addAll(this.payloadTypes);
+        payloadTypes.add(normalized);
+        return
+            new CodecSet(
+                    payloadTypes, new TreeMap<>(this.rtpHeaderExtensions));
+    }
+
+    /**
+     * Returns a <tt>CodecSet</tt> which has the payload types and RTP header
+     * extensions of this one except for a specific payload type.
+     *
+     * @param payloadType the payload type to remove, either an element of
+     * this set or one equal to it.
+     * @return this instance if it does not have <tt>payloadType</tt>;
+     * otherwise, a new (not interned) <tt>CodecSet</tt>.
+     */
+    public CodecSet withoutPayloadType(PayloadTypePacketExtension payloadType)
+    {
+        int index = this.payloadTypes.indexOf(payloadType);
+
+        if (index < 0)
+            index = indexOf(normalize(payloadType));
+        if (index < 0)
+            return this;
+
+        List<PayloadTypePacketExtension> payloadTypes
+            = new ArrayList<>(this.payloadTypes);
+
+        payloadTypes.remove(index);
+        return
+            new CodecSet(
+                    payloadTypes, new TreeMap<>(this.rtpHeaderExtensions));
+    }
+
+    /**
+     * Returns a <tt>CodecSet</tt> which has the payload types and RTP header
+     * extensions of this one, with a specific payload type replaced by a
+     * modified copy of it at the same position. This is how the (frozen)
+     * payload types of a <tt>CodecSet</tt> are modified.
+     *
+     * @param payloadType the payload type to modify, either an element of
+     * this set or one equal to it.
+     * @param modifier the function which modifies the (mutable) copy of
+     * <tt>payloadType</tt>.
+     * @return this instance if it does not have <tt>payloadType</tt> or if
+     * the copy has not been modified; otherwise, a new (not interned)
+     * <tt>CodecSet</tt>.
+     */
+    public CodecSet withModifiedPayloadType(
+            PayloadTypePacketExtension payloadType,
+            Consumer<? super PayloadTypePacketExtension> modifier)
+    {
+        int index = this.payloadTypes.indexOf(payloadType);
+
+        if (index < 0)
+            index = indexOf(normalize(payloadType));
+        if (index < 0)
+            return this;
+
+        PayloadTypePacketExtension oldPayloadType
+            = this.payloadTypes.get(index);
+        PayloadTypePacketExtension copy = copy(oldPayloadType);
+
+        modifier.accept(copy);
+        copy = adopt(copy);
+        if (copy.toXML().equals(oldPayloadType.toXML()))
+            return this;
+
+        List<PayloadTypePacketExtension> payloadTypes
+            = new ArrayList<>(this.payloadTypes);
+
+        payloadTypes.set(index, copy);
+        return
+            new CodecSet(
+                    payloadTypes, new TreeMap<>(this.rtpHeaderExtensions));
+    }
+
+    /**
+     * Returns a <tt>CodecSet</tt> which has the payload types and RTP header
+     * extensions of this one, with the RTP header extension with a specific
+     * ID replaced by a modified copy of it. The copy is dropped if the
+     * modification gives it an invalid ID.
+     *
+     * @param id the ID of the RTP header extension to modify.
+     * @param modifier the function which modifies the (mutable) copy of the
+     * RTP header extension.
+     * @return this instance if it does not have an RTP header extension with
+     * ID <tt>id</tt> or if the copy has not been modified; otherwise, a new
+     * (not interned) <tt>CodecSet</tt>.
+     */
+    public CodecSet withModifiedRtpHeaderExtension(
+            int id, Consumer<? super RTPHdrExtPacketExtension> modifier)
+    {
+        RTPHdrExtPacketExtension oldExt = this.rtpHeaderExtensions.get(id);
+
+        if (oldExt == null)
+            return this;
+
+        RTPHdrExtPacketExtension copy = copy(oldExt);
+
+        modifier.accept(copy);
+        copy = adopt(copy);
+        if (copy.toXML().equals(oldExt.toXML()))
+            return this;
+
+        SortedMap<Integer, RTPHdrExtPacketExtension> rtpHeaderExtensions
+            = new TreeMap<>(this.rtpHeaderExtensions);
+        int newID = getID(copy);
+
+        rtpHeaderExtensions.remove(id);
+        if (newID >= 0)
+            rtpHeaderExtensions.put(newID, copy);
+        return
+            new CodecSet(
+                    new ArrayList<>(this.payloadTypes), rtpHeaderExtensions);
+    }
+
+    /**
+     * Returns a <tt>CodecSet</tt> which has the payload types and RTP header
+     * extensions of this one, with a specific RTP header extension replacing
+     * any with the same ID. The extension is copied unless it is frozen and
+     * uses the COLIBRI namespace already.
+     *
+     * @param id the ID of <tt>ext</tt>.
+     * @param ext the RTP header extension to add.
+     * @return a new (not interned) <tt>CodecSet</tt>.
+     */
+    public CodecSet withRtpHeaderExtension(int id, RTPHdrExtPacketExtension ext)
+    {
+        SortedMap<Integer, RTPHdrExtPacketExtension> rtpHeaderExtensions
+            = new TreeMap<>(this.rtpHeaderExtensions);
+
+        rtpHeaderExtensions.put(id, normalize(ext));
+        return
+            new CodecSet(
+                    new ArrayList<>(this.payloadTypes), rtpHeaderExtensions);
+    }
+
+    /**
+     * Returns a <tt>CodecSet</tt> which has the payload types and RTP header
+     * extensions of this one except for the RTP header extension with a
+     * specific ID.
+     *
+     * @param id the ID of the RTP header extension to remove.
+     * @return this instance if it does not have an RTP header extension with
+     * ID <tt>id</tt>; otherwise, a new (not interned) <tt>CodecSet</tt>.
+     */
+    public CodecSet withoutRtpHeaderExtension(int id)
+    {
+        if (!this.rtpHeaderExtensions.containsKey(id))
+            return this;
+
+        SortedMap<Integer, RTPHdrExtPacketExtension> rtpHeaderExtensions
+            = new TreeMap<>(this.rtpHeaderExtensions);
+
+        rtpHeaderExtensions.remove(id);
+        return
+            new CodecSet(
+                    new ArrayList<>(this.payloadTypes), rtpHeaderExtensions);
+    }
+
+    /**
+     * Appends the XML representation of this set, i.e. of its payload types
+     * followed by its RTP header extensions, to a specific
+     * <tt>XmlStringBuilder</tt>.
+     *
+     * @param xml the <tt>XmlStringBuilder</tt> to append to.
+     * @return <tt>xml</tt>
+     */
+    public XmlStringBuilder appendXml(XmlStringBuilder xml)
+    {
+        return isEmpty() ? xml : xml.append(toXML());
+    }
+
+    /**
+     * Gets the XML representation of this set, i.e. of its payload types
+     * followed by its RTP header extensions. It is computed once.
+     *
+     * @return the XML representation of this set.
+     */
+    public String toXML()
+    {
+        String xml = this.xml;
+
+        if (xml == null)
+        {
+            XmlStringBuilder builder = new XmlStringBuilder();
+
+            for (PayloadTypePacketExtension p : payloadTypes)
+                p.appendXml(builder);
+            for (RTPHdrExtPacketExtension ext : rtpHeaderExtensions.values())
+                ext.appendXml(builder);
+            this.xml = xml = builder.toString();
+        }
+        return xml;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        return
+            (this == obj)
+                || ((obj instanceof CodecSet)
+                    && toXML().equals(((CodecSet) obj).toXML()));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return toXML().hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return toXML();
+    }
+
+    /**
+     * Gets the index of the payload type of this set which is equal to a
+     * specific (normalized) payload type.
+     *
+     * @param payloadType the normalized payload type.
+     * @return the index of the equal payload type, or <tt>-1</tt>.
+     */
+    private int indexOf(PayloadTypePacketExtension payloadType)
+    {
+        String key = payloadType.toXML();
+
+        for (int i = 0; i < payloadTypes.size(); i++)
+        {
+            PayloadTypePacketExtension p = payloadTypes.get(i);
+
+            if (p == payloadType || key.equals(p.toXML()))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the ID of a specific RTP header extension.
+     *
+     * @param ext the RTP header extension.
+     * @return the ID of <tt>ext</tt>, or <tt>-1</tt> if it is not a valid one
+     * (i.e. 4 bits, with 15 reserved).
+     */
+    static int getID(RTPHdrExtPacketExtension ext)
+    {
+        int id;
+
+        try
+        {
+            id = Integer.parseInt(ext.getID());
+        }
+        catch (NumberFormatException nfe)
+        {
+            return -1;
+        }
+        return (id < 0 || id > 14) ? -1 : id;
+    }
+
+    /**
+     * Accumulates the payload types and RTP header extensions of a channel
+     * which is being parsed, and builds its (interned) <tt>CodecSet</tt> at
+     * once. The elements are adopted rather than copied (unless they are
+     * frozen), so nobody else may reference them.
+     * <p>
+     * Instances are not thread-safe.
+     */
+    static final class Builder
+    {
+        /**
+         * The payload types, in the order in which they were added.
+         */
+        private final List<PayloadTypePacketExtension> payloadTypes
+            = new ArrayList<>();
+
+        /**
+         * The RTP header extensions, by ID.
+         */
+        private final SortedMap<Integer, RTPHdrExtPacketExtension>
+            rtpHeaderExtensions = new TreeMap<>();
+
+        /**
+         * Adds a specific payload type, unless one equal to it has been added
+         * already.
+         *
+         * @param payloadType the payload type to adopt.
+         */
+        void addPayloadType(PayloadTypePacketExtension payloadType)
+        {
+            PayloadTypePacketExtension adopted = adopt(payloadType);
+            String xml = adopted.toXML();
+
+            for (PayloadTypePacketExtension p : payloadTypes)
+            {
+                if (xml.equals(p.toXML()))
+                    return;
+            }
+            payloadTypes.add(adopted);
+        }
+
+        /**
+         * Adds a specific RTP header extension, replacing any with the same
+         * ID.
+         *
+         * @param ext the RTP header extension to adopt.
+         * @return <tt>false</tt> if <tt>ext</tt> has an invalid ID and was
+         * ignored; otherwise, <tt>true</tt>
+         */
+        boolean addRtpHeaderExtension(RTPHdrExtPacketExtension ext)
+        {
+            int id = getID(ext);
+
+            if (id < 0)
+                return false;
+
+            rtpHeaderExtensions.put(id, adopt(ext));
+            return true;
+        }
+
+        /**
+         * Gets the interned <tt>CodecSet</tt> of the elements added so far.
+         *
+         * @return the interned <tt>CodecSet</tt> of the elements added so far.
+         */
+        CodecSet build()
+        {
+            return
+                intern(
+                    new CodecSet(
+                            new ArrayList<>(payloadTypes),
+                            new TreeMap<>(rtpHeaderExtensions)));
+        }
+    }
+
+    /**
+     * Gets a frozen payload type which uses the COLIBRI namespace and is
+     * equal to a specific payload type.
+     *
+     * @param payloadType the payload type.
+     * @return <tt>payloadType</tt> if it is frozen and uses the COLIBRI
+     * namespace already; otherwise, a frozen copy of it which does.
+     */
+    private static PayloadTypePacketExtension normalize(
+            PayloadTypePacketExtension payloadType)
+    {
+        if (payloadType.isFrozen() && isNormalized(payloadType))
+            return payloadType;
+
+        PayloadTypePacketExtension copy = copy(payloadType);
+
+        copy.freeze();
+        return copy;
+    }
+
+    /**
+     * Makes a mutable copy of a specific payload type which uses the COLIBRI
+     * namespace.
+     *
+     * @param payloadType the payload type to copy.
+     * @return a copy of <tt>payloadType</tt> which is not frozen and whose
+     * XML differs from that of <tt>payloadType</tt> in the namespaces only.
+     */
+    public static PayloadTypePacketExtension copy(
+            PayloadTypePacketExtension payloadType)
+    {
+        // The children are copied in document order (unlike
+        // PayloadTypePacketExtension#clone).
+        PayloadTypePacketExtension copy
+            = AbstractPacketExtension.clone(payloadType);
+
+        copy.setNamespace(null);
+        for (ExtensionElement child : payloadType.getChildExtensions())
+        {
+            if (child instanceof ParameterPacketExtension)
+            {
+                ParameterPacketExtension p
+                    = ParameterPacketExtension.clone(
+                            (ParameterPacketExtension) child);
+
+                p.setNamespace(null);
+                copy.addParameter(p);
+            }
+            else if (child instanceof RtcpFbPacketExtension)
+            {
+                copy.addRtcpFeedbackType(
+                    RtcpFbPacketExtension.clone((RtcpFbPacketExtension) child));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Makes a mutable copy of a specific RTP header extension which uses the
+     * COLIBRI namespace.
+     *
+     * @param ext the RTP header extension to copy.
+     * @return a copy of <tt>ext</tt> which is not frozen.
+     */
+    public static RTPHdrExtPacketExtension copy(RTPHdrExtPacketExtension ext)
+    {
+        RTPHdrExtPacketExtension copy = RTPHdrExtPacketExtension.clone(ext);
+
+        copy.setNamespace(null);
+        return copy;
+    }
+
+    /**
+     * Gets a frozen payload type which uses the COLIBRI namespace and is
+     * equal to a specific payload type which nobody else references (e.g.
+     * one which has just been parsed or copied).
+     *
+     * @param payloadType the payload type.
+     * @return <tt>payloadType</tt>, frozen and moved into the COLIBRI
+     * namespace, unless it was frozen already, in which case
+     * {@link #normalize(PayloadTypePacketExtension)} is returned.
+     */
+    private static PayloadTypePacketExtension adopt(
+            PayloadTypePacketExtension payloadType)
+    {
+        if (payloadType.isFrozen())
+            return normalize(payloadType);
+
+        payloadType.setNamespace(null);
+        for (ParameterPacketExtension p : payloadType.getParameters())
+            p.setNamespace(null);
+        payloadType.freeze();
+        return payloadType;
+    }
+
+    /**
+     * Gets a frozen RTP header extension which uses the COLIBRI namespace and
+     * is equal to a specific RTP header extension which nobody else
+     * references.
+     *
+     * @param ext the RTP header extension.
+     * @return <tt>ext</tt>, frozen and moved into the COLIBRI namespace,
+     * unless it was frozen already, in which case
+     * {@link #normalize(RTPHdrExtPacketExtension)} is returned.
+     */
+    private static RTPHdrExtPacketExtension adopt(RTPHdrExtPacketExtension ext)
+    {
+        if (ext.isFrozen())
+            return normalize(ext);
+
+        ext.setNamespace(null);
+        ext.freeze();
+        return ext;
+    }
+
+    /**
+     * Gets a frozen RTP header extension which uses the COLIBRI namespace and
+     * is equal to a specific RTP header extension.
+     *
+     * @param ext the RTP header extension.
+     * @return <tt>ext</tt> if it is frozen and uses the COLIBRI namespace
+     * already; otherwise, a frozen copy of it which does.
+     */
+    private static RTPHdrExtPacketExtension normalize(
+            RTPHdrExtPacketExtension ext)
+    {
+        if (ext.isFrozen() && ext.getNamespace() == null)
+            return ext;
+
+        RTPHdrExtPacketExtension copy = copy(ext);
+
+        copy.freeze();
+        return copy;
+    }
+
+    /**
+     * Determines whether a specific payload type and its parameters use the
+     * COLIBRI namespace.
+     *
+     * @param payloadType the payload type.
+     * @return <tt>true</tt> if neither <tt>payloadType</tt> nor its
+     * parameters have namespaces of their own.
+     */
+    static boolean isNormalized(PayloadTypePacketExtension payloadType)
+    {
+        if (payloadType.getNamespace() != null)
+            return false;
+        for (ParameterPacketExtension p : payloadType.getParameters())
+        {
+            if (p.getNamespace() != null)
+                return false;
+        }
+        return true;
+    }
+}
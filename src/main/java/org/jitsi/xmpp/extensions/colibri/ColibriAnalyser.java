@@ -79,6 +79,7 @@ public class ColibriAnalyser
          */
         conferenceState.setFrom(allocateResponse.getFrom());
 
+        SSRCRegistry ssrcRegistry = conferenceState.getSSRCRegistry();
         Set<String> endpoints = new HashSet<>();
         for (ColibriConferenceIQ.Content contentResponse
             : allocateResponse.getContents())
@@ -87,13 +88,41 @@ public class ColibriAnalyser
             ColibriConferenceIQ.Content content
                 = conferenceState.getOrCreateContent(contentName);
 
-            // FIXME: we do not check if allocated channel does not clash
-            // with any existing one
             for (ColibriConferenceIQ.Channel channelResponse
                 : contentResponse.getChannels())
             {
+                String channelID = channelResponse.getID();
+                ColibriConferenceIQ.Channel existing
+                    = (channelID == null)
+                        ? null
+                        : content.getChannel(channelID);
+
+                if (existing != null && existing != channelResponse)
+                {
+                    logger.warn(
+                        "Not adopting allocated channel " + channelID + " of "
+                            + contentName + ", which clashes with an existing"
+                            + " one");
+                    continue;
+                }
+
+                // The sources whose SSRCs are owned by other channels are
+                // not adopted.
+                for (SourcePacketExtension clash
+                    : ssrcRegistry.findClashes(
+                            contentName,
+                            channelID,
+                            channelResponse.getSourcesView()))
+                {
+                    logger.warn(
+                        "Dropping source " + clash + " of channel " + channelID
+                            + ", which clashes with the one of "
+                            + ssrcRegistry.getOwner(clash.getSSRC()));
+                    channelResponse.removeSource(clash);
+                }
                 content.addChannel(channelResponse);
                 endpoints.add(channelResponse.getEndpoint());
+                ssrcRegistry.registerChannel(contentName, channelResponse);
             }
             for (ColibriConferenceIQ.SctpConnection sctpConnResponse
                 : contentResponse.getSctpConnections())
@@ -104,7 +133,7 @@ public class ColibriAnalyser
         }
 
         for (ColibriConferenceIQ.ChannelBundle bundle
-             : allocateResponse.getChannelBundles())
+             : allocateResponse.getChannelBundlesView())
         {
             // ChannelBundles are mapped by their ID, so here we update the
             // state of the conference with whatever the response contained.
@@ -112,7 +141,7 @@ public class ColibriAnalyser
         }
 
         for (ColibriConferenceIQ.Endpoint endpoint
-            : allocateResponse.getEndpoints())
+            : allocateResponse.getEndpointsView())
         {
             // Endpoints are mapped by their ID, so here we update the
             // state of the conference with whatever the response contained.
@@ -120,6 +149,65 @@ public class ColibriAnalyser
         }
     }
 
+    /**
+     * Processes the response of the JVB to a channel update request and
+     * updates the (acknowledged) state of the channels in
+     * {@link #conferenceState} with the sources, source groups and payload
+     * types it describes. Delta channels are applied as such (see
+     * {@link ChannelDelta}). The acknowledged sources are then registered
+     * with the {@link SSRCRegistry} of the conference.
+     * @param updateResponse the Colibri IQ that describes JVB response to
+     *                       update request.
+     */
+    public void processChannelUpdateResp(ColibriConferenceIQ updateResponse)
+    {
+        for (ColibriConferenceIQ.Content contentResponse
+            : updateResponse.getContents())
+        {
+            ColibriConferenceIQ.Content content
+                = conferenceState.getContent(contentResponse.getName());
+
+            if (content == null)
+            {
+                continue;
+            }
+            for (ColibriConferenceIQ.Channel channelResponse
+                : contentResponse.getChannels())
+            {
+                String channelID = channelResponse.getID();
+                ColibriConferenceIQ.Channel channel
+                    = (channelID == null)
+                        ? null
+                        : content.getChannel(channelID);
+
+                if (channel == null)
+                {
+                    continue;
+                }
+                if (channel != channelResponse)
+                {
+                    ChannelDelta.apply(channel, channelResponse);
+                }
+
+                // The bridge has acknowledged the sources of the channel.
+                List<SourcePacketExtension> clashes
+                    = conferenceState.getSSRCRegistry().setSources(
+                            content.getName(),
+                            channel,
+                            channel.getSourcesView());
+
+                for (SourcePacketExtension clash : clashes)
+                {
+                    logger.warn(
+                        "Source " + clash + " of channel " + channelID
+                            + " clashes with the one of "
+                            + conferenceState.getSSRCRegistry().getOwner(
+                                    clash.getSSRC()));
+                }
+            }
+        }
+    }
+
     /**
      * Utility method for extracting info about channels allocated from JVB
      * response.
@@ -134,12 +222,8 @@ public class ColibriAnalyser
             ColibriConferenceIQ conferenceResponse,
             List<ContentPacketExtension> peerContents)
     {
-        ColibriConferenceIQ conferenceResult = new ColibriConferenceIQ();
-
-        conferenceResult.setFrom(conferenceResponse.getFrom());
-        conferenceResult.setID(conferenceResponse.getID());
-        conferenceResult.setGID(conferenceResponse.getGID());
-        conferenceResult.setName(conferenceResponse.getName());
+        ColibriConferenceIQ conferenceResult
+            = createResponseView(conferenceResponse);
 
         // FIXME: we support single bundle for all channels
         String bundleId = null;
@@ -185,20 +269,18 @@ public class ColibriAnalyser
         // Copy only peer's bundle(JVB returns all bundles)
         if (bundleId != null)
         {
-            for (ColibriConferenceIQ.ChannelBundle bundle
-                : conferenceResponse.getChannelBundles())
+            ColibriConferenceIQ.ChannelBundle bundle
+                = conferenceResponse.getChannelBundle(bundleId);
+
+            if (bundle != null)
             {
-                if (bundleId.equals(bundle.getId()))
-                {
-                    conferenceResult.addChannelBundle(bundle);
-                    break;
-                }
+                conferenceResult.addChannelBundle(bundle);
             }
         }
 
         // copy only the endpoints we have seen
         for (ColibriConferenceIQ.Endpoint en
-            : conferenceResponse.getEndpoints())
+            : conferenceResponse.getEndpointsView())
         {
             if (endpointIds.contains(en.getId()))
             {
@@ -209,6 +291,144 @@ public class ColibriAnalyser
         return conferenceResult;
     }
 
+    /**
+     * Splits a JVB response into per-endpoint views in a single pass over its
+     * contents, channels, bundles and endpoints, rather than one pass per
+     * endpoint like {@link #getResponseContents(ColibriConferenceIQ, List)}.
+     * The views share the channel, SCTP connection, bundle and endpoint
+     * instances of the response (and, consequently, their transports) rather
+     * than copying them.
+     * @param conferenceResponse the JVB response, e.g. to an allocate
+     *                           channels request for several endpoints.
+     * @return the map of the IDs of the endpoints of the channels of
+     *         <tt>conferenceResponse</tt> to the Colibri IQs which describe
+     *         their channels, bundles and endpoint. Channels without an
+     *         endpoint are not included in any view.
+     */
+    public static Map<String, ColibriConferenceIQ> splitResponseByEndpoint(
+            ColibriConferenceIQ conferenceResponse)
+    {
+        Map<String, ColibriConferenceIQ> views = new HashMap<>();
+        Map<String, Set<String>> bundleIds = new HashMap<>();
+
+        for (ColibriConferenceIQ.Content contentResponse
+            : conferenceResponse.getContents())
+        {
+            String contentName = contentResponse.getName();
+
+            for (ColibriConferenceIQ.Channel channelResponse
+                : contentResponse.getChannels())
+            {
+                String endpoint = channelResponse.getEndpoint();
+
+                if (endpoint != null)
+                {
+                    getOrCreateView(views, endpoint, conferenceResponse)
+                        .getOrCreateContent(contentName)
+                        .addChannel(channelResponse);
+                    addBundleId(bundleIds, endpoint, channelResponse);
+                }
+            }
+            for (ColibriConferenceIQ.SctpConnection sctpConnResponse
+                : contentResponse.getSctpConnections())
+            {
+                String endpoint = sctpConnResponse.getEndpoint();
+
+                if (endpoint != null)
+                {
+                    getOrCreateView(views, endpoint, conferenceResponse)
+                        .getOrCreateContent(contentName)
+                        .addSctpConnection(sctpConnResponse);
+                    addBundleId(bundleIds, endpoint, sctpConnResponse);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Set<String>> e : bundleIds.entrySet())
+        {
+            ColibriConferenceIQ view = views.get(e.getKey());
+
+            for (String bundleId : e.getValue())
+            {
+                ColibriConferenceIQ.ChannelBundle bundle
+                    = conferenceResponse.getChannelBundle(bundleId);
+
+                if (bundle != null)
+                {
+                    view.addChannelBundle(bundle);
+                }
+            }
+        }
+
+        for (ColibriConferenceIQ.Endpoint en
+            : conferenceResponse.getEndpointsView())
+        {
+            ColibriConferenceIQ view = views.get(en.getId());
+
+            if (view != null)
+            {
+                view.addEndpoint(en);
+            }
+        }
+
+        return views;
+    }
+
+    /**
+     * Notes the ID of the bundle of a channel of a specific endpoint.
+     */
+    private static void addBundleId(
+            Map<String, Set<String>> bundleIds,
+            String endpoint,
+            ColibriConferenceIQ.ChannelCommon channel)
+    {
+        String bundleId = channel.getChannelBundleId();
+
+        if (bundleId != null)
+        {
+            bundleIds
+                .computeIfAbsent(endpoint, k -> new HashSet<>(2))
+                .add(bundleId);
+        }
+    }
+
+    /**
+     * Creates an empty Colibri IQ which describes the same conference as a
+     * specific JVB response, to hold a part of that response.
+     * @param conferenceResponse the JVB response.
+     * @return a new Colibri IQ with the source, conference ID, GID and name
+     *         of <tt>conferenceResponse</tt>.
+     */
+    static ColibriConferenceIQ createResponseView(
+            ColibriConferenceIQ conferenceResponse)
+    {
+        ColibriConferenceIQ view = new ColibriConferenceIQ();
+
+        view.setFrom(conferenceResponse.getFrom());
+        view.setID(conferenceResponse.getID());
+        view.setGID(conferenceResponse.getGID());
+        view.setName(conferenceResponse.getName());
+        return view;
+    }
+
+    /**
+     * Gets the view of a specific endpoint, creating it if necessary.
+     */
+    private static ColibriConferenceIQ getOrCreateView(
+            Map<String, ColibriConferenceIQ> views,
+            String endpoint,
+            ColibriConferenceIQ conferenceResponse)
+    {
+        ColibriConferenceIQ view = views.get(endpoint);
+
+        if (view == null)
+        {
+            view = createResponseView(conferenceResponse);
+            views.put(endpoint, view);
+        }
+        return view;
+    }
+
     /**
      * Utility method for getting actual channel bundle. If
      * <tt>currentBundle</tt> is <tt>null</tt> then <tt>channels</tt> bundle is
@@ -119,21 +119,30 @@ public class ColibriBuilder
         RtpDescriptionPacketExtension description,
         ColibriConferenceIQ.Channel channel)
     {
-        boolean added = false;
-        for (PayloadTypePacketExtension payloadType : description.getPayloadTypes())
+        List<PayloadTypePacketExtension> payloadTypes
+            = description.getPayloadTypes();
+        List<RTPHdrExtPacketExtension> rtpHdrExts = description.getExtmapList();
+
+        if (channel.getCodecSet().isEmpty())
         {
-            channel.addPayloadType(PayloadTypePacketExtension.clone(payloadType));
-            added = true;
+            // The channels of the participants which negotiated the same
+            // codecs share a single (interned) CodecSet.
+            channel.setCodecSet(CodecSet.intern(payloadTypes, rtpHdrExts));
         }
-
-        for (RTPHdrExtPacketExtension rtpHdrExt : description.getExtmapList())
+        else
         {
-            channel
-                .addRtpHeaderExtension(RTPHdrExtPacketExtension.clone(rtpHdrExt));
-            added = true;
+            for (PayloadTypePacketExtension payloadType : payloadTypes)
+            {
+                channel.addPayloadType(
+                    PayloadTypePacketExtension.clone(payloadType));
+            }
+            for (RTPHdrExtPacketExtension rtpHdrExt : rtpHdrExts)
+            {
+                channel.addRtpHeaderExtension(rtpHdrExt);
+            }
         }
 
-        return added;
+        return !payloadTypes.isEmpty() || !rtpHdrExts.isEmpty();
     }
 
     /**
@@ -151,8 +160,7 @@ public class ColibriBuilder
             channel.addSource(source.copy());
         }
 
-        if (channel.getSources() == null
-            || channel.getSources().isEmpty())
+        if (channel.getSourceCount() == 0)
         {
             // Put an empty source to remove all sources
             SourcePacketExtension emptySource = new SourcePacketExtension();
@@ -244,6 +252,13 @@ public class ColibriBuilder
      */
     private RTPLevelRelayType rtpLevelRelayType;
 
+    /**
+     * Whether channel updates only carry the sources, source groups and
+     * payload types which differ from the acknowledged state of the channels
+     * (see {@link ChannelDelta}).
+     */
+    private boolean useDeltas = false;
+
     /**
      * Creates new instance of {@link ColibriBuilder} for given
      * <tt>conferenceState</tt>.
@@ -630,6 +645,8 @@ public class ColibriBuilder
                     = stateContent.getChannel(requestChannel.getID());
 
                 stateContent.removeChannel(stateChannel);
+                conferenceState.getSSRCRegistry().unregisterChannel(
+                        stateContent.getName(), requestChannel.getID());
 
                 /*
                  * If the last remote channel is to be expired, expire
@@ -728,7 +745,26 @@ public class ColibriBuilder
 
         ColibriConferenceIQ.Channel requestChannel
             = getRequestChannel(contentName, channel);
-        return copyDescription(description, requestChannel);
+        ColibriConferenceIQ.Channel acknowledged
+            = getAcknowledgedChannel(contentName, channel);
+
+        if (acknowledged == null)
+        {
+            return copyDescription(description, requestChannel);
+        }
+
+        boolean hasAnyChanges
+            = ChannelDelta.diffPayloadTypes(
+                    acknowledged,
+                    description.getPayloadTypes(),
+                    requestChannel);
+
+        hasAnyChanges
+            |= ChannelDelta.diffRtpHeaderExtensions(
+                    acknowledged,
+                    description.getExtmapList(),
+                    requestChannel);
+        return hasAnyChanges;
     }
 
     /**
@@ -775,13 +811,45 @@ public class ColibriBuilder
                 continue;
             }
 
-            hasAnyChanges = true;
-
             // Ok we have channel for this content, let's add sources
             ColibriConferenceIQ.Channel requestChannel
                 = getRequestChannel(contentName, channel);
+            ColibriConferenceIQ.Channel acknowledged
+                = getAcknowledgedChannel(contentName, channel);
+            List<SourcePacketExtension> sources = sourceMap.get(contentName);
+            SSRCRegistry ssrcRegistry = conferenceState.getSSRCRegistry();
+            List<SourcePacketExtension> clashes
+                = ssrcRegistry.findClashes(
+                        contentName, channel.getID(), sources);
+
+            // The sources whose SSRCs are owned by other channels are not
+            // sent to the bridge. The others are only registered once the
+            // bridge has acknowledged them (see
+            // ColibriAnalyser#processChannelUpdateResp).
+            if (!clashes.isEmpty())
+            {
+                for (SourcePacketExtension clash : clashes)
+                {
+                    logger.warn(
+                        "Dropping source " + clash + " of channel "
+                            + channel.getID() + ", which clashes with the one"
+                            + " of " + ssrcRegistry.getOwner(clash.getSSRC()));
+                }
+                sources = new ArrayList<>(sources);
+                sources.removeAll(clashes);
+            }
 
-            addSources(requestChannel, sourceMap.get(contentName));
+            if (acknowledged == null)
+            {
+                hasAnyChanges = true;
+                addSources(requestChannel, sources);
+            }
+            else
+            {
+                hasAnyChanges
+                    |= ChannelDelta.diffSources(
+                            acknowledged, sources, requestChannel);
+            }
         }
 
         return hasAnyChanges;
@@ -893,11 +961,25 @@ public class ColibriBuilder
             ColibriConferenceIQ.Channel requestChannel
                 = getRequestChannel(contentName, channel);
 
-            hasAnyChanges
-                |= addSourceGroups(
-                    requestChannel,
-                    sourceGroupMap.get(contentName),
-                    "video".equalsIgnoreCase(contentName));
+            ColibriConferenceIQ.Channel acknowledged
+                = getAcknowledgedChannel(contentName, channel);
+
+            if (acknowledged == null)
+            {
+                hasAnyChanges
+                    |= addSourceGroups(
+                        requestChannel,
+                        sourceGroupMap.get(contentName),
+                        "video".equalsIgnoreCase(contentName));
+            }
+            else
+            {
+                hasAnyChanges
+                    |= ChannelDelta.diffSourceGroups(
+                            acknowledged,
+                            sourceGroupMap.get(contentName),
+                            requestChannel);
+            }
         }
 
         return hasAnyChanges;
@@ -1193,6 +1275,31 @@ public class ColibriBuilder
         this.audioPacketDelay = audioPacketDelay;
     }
 
+    /**
+     * Returns <tt>true</tt> if channel updates only carry the sources, source
+     * groups and payload types which differ from the acknowledged state of
+     * the channels.
+     */
+    public boolean isUseDeltas()
+    {
+        return useDeltas;
+    }
+
+    /**
+     * Configures whether channel updates only carry the sources, source groups
+     * and payload types which differ from the acknowledged state of the
+     * channels, i.e. the state in the conference state of this builder, which
+     * {@link ColibriAnalyser} updates from the responses of the bridge. It
+     * must only be enabled with bridges which understand delta channels (see
+     * {@link ChannelDelta}).
+     *
+     * @param useDeltas <tt>true</tt> to send delta channel updates.
+     */
+    public void setUseDeltas(boolean useDeltas)
+    {
+        this.useDeltas = useDeltas;
+    }
+
     /**
      * Sets channel 'simulcast-mode' option that will be added to the
      * request when channels are created.
@@ -1205,6 +1312,30 @@ public class ColibriBuilder
         this.simulcastMode = simulcastMode;
     }
 
+    /**
+     * Returns the acknowledged state of a channel, against which delta updates
+     * are computed.
+     *
+     * @param contentName the name of the content of the channel.
+     * @param channel the channel.
+     * @return the channel of the conference state with the ID of
+     * <tt>channel</tt>, or <tt>null</tt> if delta updates are disabled or
+     * there is no such channel.
+     */
+    private ColibriConferenceIQ.Channel getAcknowledgedChannel(
+        String contentName, ColibriConferenceIQ.Channel channel)
+    {
+        if (!useDeltas || channel.getID() == null)
+        {
+            return null;
+        }
+
+        ColibriConferenceIQ.Content content
+            = conferenceState.getContent(contentName);
+
+        return (content == null) ? null : content.getChannel(channel.getID());
+    }
+
     /**
      * Returns the channel from {@link #request} which matches a particular
      * content name and a particular {@link ColibriConferenceIQ.ChannelCommon}
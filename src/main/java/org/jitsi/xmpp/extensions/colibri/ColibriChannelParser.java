@@ -0,0 +1,392 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.*;
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.jitsi.xmpp.extensions.jitsimeet.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.provider.*;
+import org.xmlpull.v1.*;
+
+/**
+ * Parses the children of the <tt>channel</tt>, <tt>sctpconnection</tt> and
+ * <tt>channel-bundle</tt> elements of a COLIBRI <tt>conference</tt> IQ
+ * (payload types, RTP header extensions, sources, source groups and
+ * transports) without going through <tt>ProviderManager</tt> and
+ * {@link DefaultPacketExtensionProvider}. The elements of that grammar are
+ * created directly, their attributes are read in a single pass and the SSRCs
+ * are parsed into numbers right away. Elements outside of the grammar are
+ * parsed by the providers registered with <tt>ProviderManager</tt>, if any.
+ * <p>
+ * The result is the same as that of the providers which
+ * {@link ColibriIQProvider} and {@link JingleIQProvider} register for these
+ * elements, i.e. the elements have the same classes, attributes, text and
+ * namespaces. However, the providers registered with
+ * <tt>ProviderManager</tt> for the elements of the grammar are bypassed
+ * rather than consulted, which is why {@link ColibriIQProvider} only uses
+ * this parser when it is explicitly enabled (see
+ * {@link ColibriIQProvider#setFastChannelParsing(boolean)}).
+ */
+final class ColibriChannelParser
+{
+    /**
+     * Parses a specific element of the COLIBRI channel grammar.
+     *
+     * @param parser the parser, positioned on the start tag of the element.
+     * @param name the name of the element.
+     * @param namespace the namespace under which the element is looked up.
+     * @return the parsed element, or <tt>null</tt> if the element is not
+     * part of the grammar, in which case the parser has not moved.
+     * @throws Exception if the XML cannot be parsed.
+     */
+    static ExtensionElement parse(
+            XmlPullParser parser, String name, String namespace)
+        throws Exception
+    {
+        AbstractPacketExtension extension = create(name, namespace);
+
+        return (extension == null) ? null : parseElement(parser, extension);
+    }
+
+    /**
+     * Parses the (RTP) SSRC in the text of an <tt>ssrc</tt> element, without
+     * making copies of it. Legacy versions of Jitsi and Jitsi Videobridge may
+     * send an SSRC as a negative integer.
+     *
+     * @param text the text, which may be surrounded by whitespace.
+     * @return the SSRC.
+     * @throws NumberFormatException if <tt>text</tt> is not an SSRC.
+     */
+    static int parseSSRC(String text)
+    {
+        int begin = 0;
+        int end = text.length();
+
+        while (begin < end && Character.isWhitespace(text.charAt(begin)))
+            begin++;
+        while (end > begin && Character.isWhitespace(text.charAt(end - 1)))
+            end--;
+
+        boolean negative = begin < end && text.charAt(begin) == '-';
+        int start = negative ? begin + 1 : begin;
+
+        // Longer numbers may overflow, leave them to the JDK.
+        if (start == end || end - start > 18)
+            return parseSSRCSlow(text.substring(begin, end), negative);
+
+        long value = 0;
+
+        for (int i = start; i < end; i++)
+        {
+            int digit = text.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException(text);
+            value = value * 10 + digit;
+        }
+        if (negative)
+        {
+            value = -value;
+            if (value < Integer.MIN_VALUE)
+                throw new NumberFormatException(text);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses an SSRC like {@link #parseSSRC(String)} used to, through the
+     * JDK.
+     *
+     * @param s the trimmed text.
+     * @param negative whether <tt>s</tt> starts with a minus sign.
+     * @return the SSRC.
+     * @throws NumberFormatException if <tt>s</tt> is not an SSRC.
+     */
+    private static int parseSSRCSlow(String s, boolean negative)
+    {
+        return negative ? Integer.parseInt(s) : (int) Long.parseLong(s);
+    }
+
+    /**
+     * Creates an instance of the element of the COLIBRI channel grammar with
+     * a specific name and namespace.
+     *
+     * @param name the name of the element.
+     * @param namespace the namespace of the element.
+     * @return a new instance of the element, or <tt>null</tt> if it is not
+     * part of the grammar.
+     */
+    private static AbstractPacketExtension create(
+            String name, String namespace)
+    {
+        if (namespace == null)
+            return null;
+
+        switch (name)
+        {
+        case PayloadTypePacketExtension.ELEMENT_NAME:
+            return ColibriConferenceIQ.NAMESPACE.equals(namespace)
+                ? new PayloadTypePacketExtension()
+                : null;
+        case ParameterPacketExtension.ELEMENT_NAME:
+            return (ColibriConferenceIQ.NAMESPACE.equals(namespace)
+                    || SourcePacketExtension.NAMESPACE.equals(namespace))
+                ? new ParameterPacketExtension()
+                : null;
+        case RtcpFbPacketExtension.ELEMENT_NAME:
+            return RtcpFbPacketExtension.NAMESPACE.equals(namespace)
+                ? new RtcpFbPacketExtension()
+                : null;
+        case RTPHdrExtPacketExtension.ELEMENT_NAME:
+            return ColibriConferenceIQ.NAMESPACE.equals(namespace)
+                ? new RTPHdrExtPacketExtension()
+                : null;
+        case SourcePacketExtension.ELEMENT_NAME:
+            return SourcePacketExtension.NAMESPACE.equals(namespace)
+                ? new SourcePacketExtension()
+                : null;
+        case SourceGroupPacketExtension.ELEMENT_NAME:
+            return SourceGroupPacketExtension.NAMESPACE.equals(namespace)
+                ? new SourceGroupPacketExtension()
+                : null;
+        case SourceRidGroupPacketExtension.ELEMENT_NAME:
+            return SourceRidGroupPacketExtension.NAMESPACE.equals(namespace)
+                ? new SourceRidGroupPacketExtension()
+                : null;
+        case SSRCInfoPacketExtension.ELEMENT_NAME:
+            return SSRCInfoPacketExtension.NAMESPACE.equals(namespace)
+                ? new SSRCInfoPacketExtension()
+                : null;
+        case IceUdpTransportPacketExtension.ELEMENT_NAME:
+            if (IceUdpTransportPacketExtension.NAMESPACE.equals(namespace))
+                return new IceUdpTransportPacketExtension();
+            else if (RawUdpTransportPacketExtension.NAMESPACE.equals(namespace))
+                return new RawUdpTransportPacketExtension();
+            else
+                return null;
+        case CandidatePacketExtension.ELEMENT_NAME:
+            return (IceUdpTransportPacketExtension.NAMESPACE.equals(namespace)
+                    || RawUdpTransportPacketExtension.NAMESPACE.equals(
+                            namespace))
+                ? new CandidatePacketExtension()
+                : null;
+        case RemoteCandidatePacketExtension.ELEMENT_NAME:
+            return IceUdpTransportPacketExtension.NAMESPACE.equals(namespace)
+                ? new RemoteCandidatePacketExtension()
+                : null;
+        case DtlsFingerprintPacketExtension.ELEMENT_NAME:
+            return DtlsFingerprintPacketExtension.NAMESPACE.equals(namespace)
+                ? new DtlsFingerprintPacketExtension()
+                : null;
+        case RtcpmuxPacketExtension.ELEMENT_NAME:
+            return IceUdpTransportPacketExtension.NAMESPACE.equals(namespace)
+                ? new RtcpmuxPacketExtension()
+                : null;
+        case WebSocketPacketExtension.ELEMENT_NAME:
+            return WebSocketPacketExtension.NAMESPACE.equals(namespace)
+                ? new WebSocketPacketExtension()
+                : null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Parses the attributes, children and text of an element into a specific
+     * extension, like {@link DefaultPacketExtensionProvider} does.
+     *
+     * @param parser the parser, positioned on the start tag of the element.
+     * @param extension the extension to fill in.
+     * @return <tt>extension</tt>
+     * @throws Exception if the XML cannot be parsed.
+     */
+    private static AbstractPacketExtension parseElement(
+            XmlPullParser parser, AbstractPacketExtension extension)
+        throws Exception
+    {
+        boolean source = extension instanceof SourcePacketExtension;
+        int attrCount = parser.getAttributeCount();
+
+        for (int i = 0; i < attrCount; i++)
+        {
+            String attrName = parser.getAttributeName(i);
+            String value = parser.getAttributeValue(i);
+
+            if (source
+                    && SourcePacketExtension.SSRC_ATTR_NAME.equals(attrName)
+                    && setSSRC(extension, value))
+            {
+                continue;
+            }
+            extension.setAttribute(attrName, StringPool.internValue(value));
+        }
+
+        int depth = parser.getDepth();
+
+        while (true)
+        {
+            int eventType = parser.next();
+
+            if (eventType == XmlPullParser.START_TAG)
+            {
+                String name = parser.getName();
+                String namespace = parser.getNamespace();
+                AbstractPacketExtension known = create(name, namespace);
+                ExtensionElement child;
+
+                if (known != null)
+                {
+                    // The namespaces of the grammar are the (interned) String
+                    // constants matched by create, so they are not interned
+                    // again.
+                    known.setNamespace(namespace);
+                    child = parseElement(parser, known);
+                }
+                else
+                {
+                    namespace = StringPool.internName(namespace);
+                    child = parseUnknown(parser, name, namespace);
+                    if (namespace != null
+                            && child instanceof AbstractPacketExtension)
+                    {
+                        AbstractPacketExtension ape
+                            = (AbstractPacketExtension) child;
+
+                        if (!ape.isFrozen())
+                            ape.setNamespace(namespace);
+                    }
+                }
+                if (child != null)
+                {
+                    extension.addChildExtension(child);
+                }
+            }
+            else if (eventType == XmlPullParser.END_TAG)
+            {
+                if (parser.getDepth() == depth)
+                    break;
+            }
+            else if (eventType == XmlPullParser.TEXT)
+            {
+                extension.setText(parser.getText());
+            }
+            else if (eventType == XmlPullParser.END_DOCUMENT)
+            {
+                throw new XmlPullParserException(
+                    "Unexpected end of document in "
+                        + extension.getElementName());
+            }
+        }
+        return extension;
+    }
+
+    /**
+     * Parses a child element outside of the grammar with the provider
+     * registered with <tt>ProviderManager</tt> for it.
+     *
+     * @param parser the parser, positioned on the start tag of the child.
+     * @param name the name of the child.
+     * @param namespace the namespace of the child.
+     * @return the parsed child, or <tt>null</tt> if there is no provider for
+     * it, in which case it is skipped.
+     * @throws Exception if the XML cannot be parsed.
+     */
+    private static ExtensionElement parseUnknown(
+            XmlPullParser parser, String name, String namespace)
+        throws Exception
+    {
+        ExtensionElementProvider<?> provider
+            = ProviderManager.getExtensionProvider(name, namespace);
+
+        if (provider == null)
+        {
+            skip(parser);
+            return null;
+        }
+        else
+        {
+            return provider.parse(parser);
+        }
+    }
+
+    /**
+     * Sets the <tt>ssrc</tt> attribute of a source from its XML value as a
+     * number, so that it does not have to be parsed whenever it is read.
+     *
+     * @param source the source.
+     * @param value the value of the attribute.
+     * @return <tt>true</tt> if the attribute has been set, or <tt>false</tt>
+     * if <tt>value</tt> is not a valid SSRC and should be kept as it is.
+     */
+    private static boolean setSSRC(
+            AbstractPacketExtension source, String value)
+    {
+        int length = value.length();
+
+        // Only canonical values, so that the XML representation is unchanged.
+        if (length == 0
+                || length > 10
+                || (length > 1 && value.charAt(0) == '0'))
+            return false;
+
+        long ssrc = 0;
+
+        for (int i = 0; i < length; i++)
+        {
+            int digit = value.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9)
+                return false;
+            ssrc = ssrc * 10 + digit;
+        }
+        if (ssrc > 0xffffffffL)
+            return false;
+
+        source.setAttribute(SourcePacketExtension.SSRC_ATTR_NAME, ssrc);
+        return true;
+    }
+
+    /**
+     * Skips the element on the start tag of which a parser is positioned,
+     * including all of its descendants.
+     *
+     * @param parser the parser.
+     * @throws Exception if the XML cannot be parsed.
+     */
+    private static void skip(XmlPullParser parser)
+        throws Exception
+    {
+        int depth = parser.getDepth();
+        int eventType;
+
+        while ((eventType = parser.next()) != XmlPullParser.END_TAG
+                || parser.getDepth() != depth)
+        {
+            if (eventType == XmlPullParser.END_DOCUMENT)
+                throw new XmlPullParserException("Unexpected end of document");
+        }
+    }
+
+    /**
+     * Prevents the initialization of new <tt>ColibriChannelParser</tt>
+     * instances.
+     */
+    private ColibriChannelParser()
+    {
+    }
+}
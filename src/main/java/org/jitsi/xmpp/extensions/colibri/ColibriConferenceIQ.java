@@ -17,6 +17,7 @@ package org.jitsi.xmpp.extensions.colibri;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.*;
 
 import org.jitsi.xmpp.extensions.*;
 import org.jitsi.xmpp.extensions.jingle.*;
@@ -94,10 +95,42 @@ public class ColibriConferenceIQ
     private final Map<String, ChannelBundle> channelBundles
         = new ConcurrentHashMap<>();
 
+    /**
+     * The read-only live view of the values of {@link #channelBundles}.
+     */
+    private final Collection<ChannelBundle> channelBundlesView
+        = Collections.unmodifiableCollection(channelBundles.values());
+
     /**
      * The list of {@link Content}s included into this <tt>conference</tt> IQ.
      */
-    private final List<Content> contents = new LinkedList<>();
+    private final List<Content> contents = new ArrayList<>();
+
+    /**
+     * The read-only live view of {@link #contents}.
+     */
+    private final List<Content> contentsView
+        = Collections.unmodifiableList(contents);
+
+    /**
+     * The {@link Content}s included into this <tt>conference</tt> IQ, mapped
+     * by their names. If several <tt>Content</tt>s have the same name, the
+     * first one in {@link #contents} is mapped.
+     */
+    private final Map<String, Content> contentsByName = new HashMap<>();
+
+    /**
+     * The read-only live view of {@link #contentsByName}.
+     */
+    private final Map<String, Content> contentsByNameView
+        = Collections.unmodifiableMap(contentsByName);
+
+    /**
+     * The {@link Content}s included into this <tt>conference</tt> IQ,
+     * compared by identity.
+     */
+    private final Set<Content> contentSet
+        = Collections.newSetFromMap(new IdentityHashMap<>());
 
     /**
      * The {@link Endpoint}s included in this {@link ColibriConferenceIQ},
@@ -105,6 +138,12 @@ public class ColibriConferenceIQ
      */
     private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
 
+    /**
+     * The read-only live view of the values of {@link #endpoints}.
+     */
+    private final Collection<Endpoint> endpointsView
+        = Collections.unmodifiableCollection(endpoints.values());
+
     /**
      * The ID of the conference represented by this IQ.
      */
@@ -134,6 +173,12 @@ public class ColibriConferenceIQ
      */
     private EntityBareJid name;
 
+    /**
+     * The owners of the SSRCs of the conference, if this IQ holds the state
+     * of a conference. Created on demand.
+     */
+    private SSRCRegistry ssrcRegistry;
+
     /**
      * Returns an error response for given <tt>IQ</tt> that is returned by
      * the videobridge after it has entered graceful shutdown mode and new
@@ -200,7 +245,13 @@ public class ColibriConferenceIQ
     {
         Objects.requireNonNull(content, "content");
 
-        return contents.contains(content) ? false : contents.add(content);
+        if (!contentSet.add(content))
+            return false;
+
+        contents.add(content);
+        content.conferences.add(this);
+        contentsByName.putIfAbsent(content.getName(), content);
+        return true;
     }
 
     /**
@@ -237,13 +288,35 @@ public class ColibriConferenceIQ
 
     /**
      * @return a list which contains the {@link ChannelBundle}s of this
-     * {@link ColibriConferenceIQ}.
+     * {@link ColibriConferenceIQ}. It is a new copy on every call, so
+     * {@link #getChannelBundlesView()} should be preferred when the
+     * <tt>ChannelBundle</tt>s are only to be read.
      */
     public List<ChannelBundle> getChannelBundles()
     {
         return new LinkedList<>(channelBundles.values());
     }
 
+    /**
+     * @return the number of {@link ChannelBundle}s of this
+     * {@link ColibriConferenceIQ}.
+     */
+    public int getChannelBundleCount()
+    {
+        return channelBundles.size();
+    }
+
+    /**
+     * @return a read-only live view of the {@link ChannelBundle}s of this
+     * {@link ColibriConferenceIQ}. Like the collections of
+     * <tt>ConcurrentHashMap</tt>, it may be iterated while
+     * <tt>ChannelBundle</tt>s are added.
+     */
+    public Collection<ChannelBundle> getChannelBundlesView()
+    {
+        return channelBundlesView;
+    }
+
     /**
      * @param channelBundleId The ID of the {@link ChannelBundle} to get.
      * @return The {@link ChannelBundle} identified by {@code channelBundleId},
@@ -283,17 +356,13 @@ public class ColibriConferenceIQ
         xml.optAttribute(GID_ATTR_NAME, getGID());
         xml.optAttribute(NAME_ATTR_NAME, name);
 
-        List<Content> contents = getContents();
-        List<ChannelBundle> channelBundles = getChannelBundles();
-        List<Endpoint> endpoints = getEndpoints();
-
         boolean hasChildren
             = (recording != null)
                 || (rtcpTerminationStrategy != null)
                 || (gracefulShutdown)
-                || (contents.size() > 0)
-                || (channelBundles.size() > 0)
-                || (endpoints.size() > 0);
+                || !contents.isEmpty()
+                || !channelBundles.isEmpty()
+                || !endpoints.isEmpty();
 
         if (!hasChildren)
         {
@@ -304,16 +373,16 @@ public class ColibriConferenceIQ
             xml.rightAngleBracket();
             for (Content content : contents)
                 content.toXML(xml);
-            for (ChannelBundle channelBundle : channelBundles)
+            for (ChannelBundle channelBundle : channelBundles.values())
                 channelBundle.toXML(xml);
-            for (Endpoint endpoint : endpoints)
+            for (Endpoint endpoint : endpoints.values())
                 endpoint.toXML(xml);
             if (recording != null)
                 recording.toXML(xml);
             if (rtcpTerminationStrategy != null)
                 rtcpTerminationStrategy.toXML(xml);
             if (gracefulShutdown)
-                xml.append(new GracefulShutdown().toXML());
+                new GracefulShutdown().appendXml(xml);
         }
 
         return xml;
@@ -331,37 +400,76 @@ public class ColibriConferenceIQ
      */
     public Content getContent(String contentName)
     {
-        for (Content content : getContents())
-        {
-            if (contentName.equals(content.getName()))
-            {
-                return content;
-            }
-        }
-        return null;
+        Objects.requireNonNull(contentName, "contentName");
+
+        return contentsByName.get(contentName);
+    }
+
+    /**
+     * @return the number of <tt>Content</tt>s included into this
+     * <tt>conference</tt> IQ.
+     */
+    public int getContentCount()
+    {
+        return contents.size();
     }
 
     /**
      * Returns a list of the <tt>Content</tt>s included into this
      * <tt>conference</tt> IQ.
      *
-     * @return an unmodifiable <tt>List</tt> of the <tt>Content</tt>s included
+     * @return an unmodifiable live view of the <tt>Content</tt>s included
      * into this <tt>conference</tt> IQ
      */
     public List<Content> getContents()
     {
-        return Collections.unmodifiableList(contents);
+        return contentsView;
     }
 
     /**
-     * Returns a list of all {@link Endpoint}s in this
+     * Returns the <tt>Content</tt>s included into this <tt>conference</tt>
+     * IQ, mapped by their names. If several <tt>Content</tt>s have the same
+     * name, the first one is mapped.
+     *
+     * @return an unmodifiable live view of the <tt>Content</tt>s of this
+     * <tt>conference</tt> IQ by name
+     */
+    public Map<String, Content> getContentsByName()
+    {
+        return contentsByNameView;
+    }
+
+    /**
+     * @return the number of {@link Endpoint}s in this
      * {@link ColibriConferenceIQ}.
      */
+    public int getEndpointCount()
+    {
+        return endpoints.size();
+    }
+
+    /**
+     * Returns a list of all {@link Endpoint}s in this
+     * {@link ColibriConferenceIQ}. It is a new copy on every call, so
+     * {@link #getEndpointsView()} should be preferred when the
+     * <tt>Endpoint</tt>s are only to be read.
+     */
     public List<Endpoint> getEndpoints()
     {
         return new LinkedList<>(endpoints.values());
     }
 
+    /**
+     * @return a read-only live view of the {@link Endpoint}s of this
+     * {@link ColibriConferenceIQ}. Like the collections of
+     * <tt>ConcurrentHashMap</tt>, it may be iterated while
+     * <tt>Endpoint</tt>s are added.
+     */
+    public Collection<Endpoint> getEndpointsView()
+    {
+        return endpointsView;
+    }
+
     /**
      * Gets the ID of the conference represented by this IQ.
      *
@@ -417,6 +525,23 @@ public class ColibriConferenceIQ
         return rtcpTerminationStrategy;
     }
 
+    /**
+     * Gets the registry of the owners of the SSRCs of the conference, when
+     * this IQ is used to hold the state of a conference (e.g. by
+     * {@link ColibriAnalyser} and {@link ColibriBuilder}). It is not part of
+     * the XML representation of this IQ.
+     *
+     * @return the <tt>SSRCRegistry</tt> of the conference.
+     */
+    public synchronized SSRCRegistry getSSRCRegistry()
+    {
+        if (ssrcRegistry == null)
+        {
+            ssrcRegistry = new SSRCRegistry();
+        }
+        return ssrcRegistry;
+    }
+
     /**
      * Removes a specific {@link Content} instance from the list of
      * <tt>Content</tt> instances included into this <tt>conference</tt> IQ.
@@ -429,7 +554,67 @@ public class ColibriConferenceIQ
      */
     public boolean removeContent(Content content)
     {
-        return contents.remove(content);
+        if (content == null)
+            return false;
+
+        if (!contentSet.remove(content))
+            return false;
+
+        contents.remove(content);
+        content.conferences.remove(this);
+        if (contentsByName.get(content.getName()) == content)
+            indexContentName(content.getName());
+        return true;
+    }
+
+    /**
+     * Re-indexes a specific <tt>Content</tt> included into this
+     * <tt>conference</tt> IQ after its name has changed.
+     *
+     * @param content the <tt>Content</tt> whose name has changed.
+     * @param oldName the name under which <tt>content</tt> was indexed.
+     */
+    void contentNameChanged(Content content, String oldName)
+    {
+        if (oldName != null && contentsByName.get(oldName) == content)
+            indexContentName(oldName);
+
+        Content indexed = contentsByName.get(content.getName());
+
+        if (indexed == null)
+        {
+            contentsByName.put(content.getName(), content);
+            return;
+        }
+        for (Content c : contents)
+        {
+            if (c == indexed)
+                return;
+            if (c == content)
+            {
+                contentsByName.put(content.getName(), content);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Maps a specific name in {@link #contentsByName} to the first included
+     * <tt>Content</tt> with that name, if any.
+     *
+     * @param name the name of the <tt>Content</tt>s.
+     */
+    private void indexContentName(String name)
+    {
+        for (Content c : contents)
+        {
+            if (Objects.equals(name, c.getName()))
+            {
+                contentsByName.put(name, c);
+                return;
+            }
+        }
+        contentsByName.remove(name);
     }
 
     /**
@@ -519,6 +704,13 @@ public class ColibriConferenceIQ
          */
         public static final String DIRECTION_ATTR_NAME = "direction";
 
+        /**
+         * The name of the XML attribute of a <tt>channel</tt> which indicates
+         * that its sources, source groups and payload types are changes to
+         * the ones the bridge already has, rather than all of them.
+         */
+        public static final String DELTA_ATTR_NAME = "delta";
+
         /**
          * The XML element name of a <tt>channel</tt> of a <tt>content</tt> of a
          * Jitsi Videobridge <tt>conference</tt> IQ.
@@ -606,6 +798,20 @@ public class ColibriConferenceIQ
          */
         public static final String SSRC_ELEMENT_NAME = "ssrc";
 
+        /**
+         * The name of the XML element which is a child of a delta
+         * &lt;channel&gt; element and which lists the sources, source
+         * groups, payload types and RTP header extensions to be removed from
+         * the respective <tt>Channel</tt>.
+         */
+        public static final String REMOVE_ELEMENT_NAME = "remove";
+
+        /**
+         * Whether the sources, source groups and payload types of this
+         * <tt>Channel</tt> are changes rather than all of them.
+         */
+        private boolean delta = false;
+
         /**
          * The direction of the <tt>channel</tt> represented by this instance.
          */
@@ -645,17 +851,13 @@ public class ColibriConferenceIQ
 
         /**
          * The <tt>payload-type</tt> elements defined by XEP-0167: Jingle RTP
-         * Sessions associated with this <tt>channel</tt>.
+         * Sessions and the <tt>rtp-hdrext</tt> elements defined by XEP-0294:
+         * Jingle RTP Header Extensions Negotiation associated with this
+         * <tt>channel</tt>. It is immutable and possibly shared with other
+         * channels, so it is replaced rather than modified (while holding the
+         * monitor of this <tt>Channel</tt>) and read without locking.
          */
-        private final List<PayloadTypePacketExtension> payloadTypes
-            = new ArrayList<>();
-
-        /**
-         * The <tt>rtp-hdrext</tt> elements defined by XEP-0294: Jingle RTP
-         * Header Extensions Negotiation associated with this channel.
-         */
-        private final Map<Integer, RTPHdrExtPacketExtension> rtpHeaderExtensions
-            = new HashMap<>();
+        private volatile CodecSet codecSet = CodecSet.EMPTY;
 
         /**
          * The target quality of the simulcast substreams to be sent from Jitsi
@@ -690,23 +892,61 @@ public class ColibriConferenceIQ
         @Deprecated
         private int rtpPort;
 
+        /**
+         * The <tt>payload-type</tt> elements to be removed from the channel
+         * described by this delta <tt>Channel</tt>. Created on demand.
+         */
+        private List<PayloadTypePacketExtension> removedPayloadTypes;
+
+        /**
+         * The <tt>rtp-hdrext</tt> elements to be removed from the channel
+         * described by this delta <tt>Channel</tt>. Created on demand.
+         */
+        private List<RTPHdrExtPacketExtension> removedRtpHeaderExtensions;
+
+        /**
+         * The source groups to be removed from the channel described by this
+         * delta <tt>Channel</tt>. Created on demand.
+         */
+        private List<SourceGroupPacketExtension> removedSourceGroups;
+
+        /**
+         * The sources to be removed from the channel described by this delta
+         * <tt>Channel</tt>. Created on demand.
+         */
+        private List<SourcePacketExtension> removedSources;
+
         /**
          * The <tt>SourceGroupPacketExtension</tt>s of this channel.
          */
         private List<SourceGroupPacketExtension> sourceGroups;
 
         /**
-         * The <tt>SourcePacketExtension</tt>s of this channel.
+         * The snapshot of {@link #sourceGroups} returned by
+         * {@link #getSourceGroupsView()}, or <tt>null</tt> if it has to be
+         * taken anew.
          */
-        private final List<SourcePacketExtension> sources
-            = new LinkedList<>();
+        private List<SourceGroupPacketExtension> sourceGroupsView;
+
+        /**
+         * The <tt>SourcePacketExtension</tt>s of this channel, indexed by SSRC
+         * and RID.
+         */
+        private final SourceIndex sources = new SourceIndex();
+
+        /**
+         * The snapshot of {@link #sources} returned by
+         * {@link #getSourcesView()}, or <tt>null</tt> if it has to be taken
+         * anew.
+         */
+        private List<SourcePacketExtension> sourcesView;
 
         /**
          * The list of (RTP) SSRCs which have been seen/received on this
          * <tt>Channel</tt> by now. These may exclude SSRCs which are no longer
          * active. Set by the Jitsi Videobridge server, not its clients.
          */
-        private int[] ssrcs = NO_SSRCS;
+        private final SSRCSet ssrcs = new SSRCSet();
 
         /** Initializes a new <tt>Channel</tt> instance. */
         public Channel()
@@ -724,19 +964,19 @@ public class ColibriConferenceIQ
          * associated with this <tt>channel</tt> has been modified as part of
          * the method call; otherwise, <tt>false</tt>
          */
-        public boolean addPayloadType(PayloadTypePacketExtension payloadType)
+        public synchronized boolean addPayloadType(
+                PayloadTypePacketExtension payloadType)
         {
+            checkNotFrozen();
             Objects.requireNonNull(payloadType, "payloadType");
 
-            // Make sure that the COLIBRI namespace is used.
-            payloadType.setNamespace(null);
-            for (ParameterPacketExtension p : payloadType.getParameters())
-                p.setNamespace(null);
+            // The CodecSet makes a copy in the COLIBRI namespace (unless
+            // payloadType is frozen and uses it already), so payloadType is
+            // not modified.
+            CodecSet oldCodecSet = codecSet;
 
-            return
-                payloadTypes.contains(payloadType)
-                    ? false
-                    : payloadTypes.add(payloadType);
+            codecSet = oldCodecSet.withPayloadType(payloadType);
+            return codecSet != oldCodecSet;
         }
 
         /**
@@ -749,40 +989,130 @@ public class ColibriConferenceIQ
          * associated with this <tt>channel</tt> has been modified as part of
          * the method call; otherwise, <tt>false</tt>
          */
-        public void addRtpHeaderExtension(RTPHdrExtPacketExtension ext)
+        public synchronized void addRtpHeaderExtension(
+                RTPHdrExtPacketExtension ext)
         {
+            checkNotFrozen();
             Objects.requireNonNull(ext, "ext");
 
-            // Create a new instance, because we are going to modify the NS
-            RTPHdrExtPacketExtension newExt
-                = RTPHdrExtPacketExtension.clone(ext);
+            // Only accept valid extension IDs (4-bits, 0xF reserved)
+            int id = CodecSet.getID(ext);
+
+            if (id < 0)
+            {
+                logger.warn("Failed to add an RTP header extension element "
+                                    + "with an invalid ID: " + ext.getID());
+                return;
+            }
 
-            // Make sure that the parent namespace (COLIBRI) is used.
-            newExt.setNamespace(null);
+            // The CodecSet makes a copy (unless ext is frozen and uses the
+            // COLIBRI namespace already), so ext is not modified.
+            codecSet = codecSet.withRtpHeaderExtension(id, ext);
+        }
 
-            int id = -1;
-            try
+        /**
+         * Adds a <tt>payload-type</tt> element to be removed from the channel
+         * described by this delta <tt>Channel</tt>.
+         *
+         * @param payloadType the <tt>payload-type</tt> element to be removed.
+         */
+        public synchronized void addRemovedPayloadType(
+                PayloadTypePacketExtension payloadType)
+        {
+            checkNotFrozen();
+            Objects.requireNonNull(payloadType, "payloadType");
+
+            // Make sure that the COLIBRI namespace is used.
+            if (!CodecSet.isNormalized(payloadType))
             {
-                id = Integer.valueOf(newExt.getID());
+                if (payloadType.isFrozen())
+                {
+                    payloadType = PayloadTypePacketExtension.clone(payloadType);
+                }
+                payloadType.setNamespace(null);
+                for (ParameterPacketExtension p : payloadType.getParameters())
+                    p.setNamespace(null);
             }
-            catch (NumberFormatException nfe)
-            {}
 
-            // Only accept valid extension IDs (4-bits, 0xF reserved)
-            if (id < 0 || id > 14)
+            if (removedPayloadTypes == null)
             {
-                logger.warn("Failed to add an RTP header extension element "
-                                    + "with an invalid ID: " + newExt.getID());
-                return;
+                removedPayloadTypes = new ArrayList<>();
             }
+            removedPayloadTypes.add(payloadType);
+        }
 
-            rtpHeaderExtensions.put(id, newExt);
+        /**
+         * Adds an <tt>rtp-hdrext</tt> element to be removed from the channel
+         * described by this delta <tt>Channel</tt>.
+         *
+         * @param ext the <tt>rtp-hdrext</tt> element to be removed.
+         */
+        public synchronized void addRemovedRtpHeaderExtension(
+                RTPHdrExtPacketExtension ext)
+        {
+            checkNotFrozen();
+            Objects.requireNonNull(ext, "ext");
+
+            // Make sure that the COLIBRI namespace is used.
+            if (ext.getNamespace() != null)
+            {
+                ext = RTPHdrExtPacketExtension.clone(ext);
+                ext.setNamespace(null);
+            }
+
+            if (removedRtpHeaderExtensions == null)
+            {
+                removedRtpHeaderExtensions = new ArrayList<>();
+            }
+            removedRtpHeaderExtensions.add(ext);
+        }
+
+        /**
+         * Adds a source group to be removed from the channel described by
+         * this delta <tt>Channel</tt>.
+         *
+         * @param sourceGroup the source group to be removed.
+         */
+        public synchronized void addRemovedSourceGroup(
+                SourceGroupPacketExtension sourceGroup)
+        {
+            checkNotFrozen();
+            Objects.requireNonNull(sourceGroup, "sourceGroup");
+
+            if (removedSourceGroups == null)
+            {
+                removedSourceGroups = new ArrayList<>();
+            }
+            removedSourceGroups.add(sourceGroup);
+        }
+
+        /**
+         * Adds a source to be removed from the channel described by this delta
+         * <tt>Channel</tt>.
+         *
+         * @param source the source to be removed.
+         */
+        public synchronized void addRemovedSource(SourcePacketExtension source)
+        {
+            checkNotFrozen();
+            Objects.requireNonNull(source, "source");
+
+            if (removedSources == null)
+            {
+                removedSources = new ArrayList<>();
+            }
+            removedSources.add(source);
         }
 
         /**
          * Adds a <tt>SourcePacketExtension</tt> to the list of sources of this
          * channel.
          *
+         * A source which is equal (in the sense of
+         * {@link SourcePacketExtension#sourceEquals(SourcePacketExtension)})
+         * to a source of this channel is not added. The SSRC and RID of a
+         * source must not be changed while it is in a channel.
+         *
          * @param source the <tt>SourcePacketExtension</tt> to add to the list
          * of sources of this channel
          * @return <tt>true</tt> if the list of sources of this channel changed
@@ -790,9 +1120,13 @@ public class ColibriConferenceIQ
          */
         public synchronized boolean addSource(SourcePacketExtension source)
         {
+            checkNotFrozen();
             Objects.requireNonNull(source, "source");
 
-            return sources.contains(source) ? false : sources.add(source);
+            if (!sources.add(source))
+                return false;
+            sourcesView = null;
+            return true;
         }
 
         /**
@@ -808,17 +1142,19 @@ public class ColibriConferenceIQ
         public synchronized boolean addSourceGroup(
                 SourceGroupPacketExtension sourceGroup)
         {
+            checkNotFrozen();
             Objects.requireNonNull(sourceGroup, "sourceGroup");
 
             if (sourceGroups == null)
             {
                 sourceGroups = new LinkedList<>();
             }
+            if (sourceGroups.contains(sourceGroup))
+                return false;
 
-            return
-                sourceGroups.contains(sourceGroup)
-                    ? false
-                    : sourceGroups.add(sourceGroup);
+            sourceGroups.add(sourceGroup);
+            sourceGroupsView = null;
+            return true;
         }
 
         /**
@@ -834,20 +1170,83 @@ public class ColibriConferenceIQ
          */
         public synchronized boolean addSSRC(int ssrc)
         {
-            // contains
-            for (int i = 0; i < ssrcs.length; i++)
-            {
-                if (ssrcs[i] == ssrc)
-                    return false;
-            }
+            checkNotFrozen();
+            return ssrcs.add(ssrc);
+        }
 
-            // add
-            int[] newSSRCs = new int[ssrcs.length + 1];
+        /**
+         * Adds specific (RTP) SSRCs to the list of SSRCs seen/received on this
+         * <tt>Channel</tt>, ignoring the ones which are already in it.
+         *
+         * @param ssrcs the (RTP) SSRCs to be added to the list of SSRCs
+         * seen/received on this <tt>Channel</tt>
+         * @return the number of SSRCs which have been added
+         */
+        public synchronized int addSSRCs(int[] ssrcs)
+        {
+            checkNotFrozen();
+            return this.ssrcs.addAll(ssrcs);
+        }
 
-            System.arraycopy(ssrcs, 0, newSSRCs, 0, ssrcs.length);
-            newSSRCs[ssrcs.length] = ssrc;
-            ssrcs = newSSRCs;
-            return true;
+        /**
+         * Determines whether a specific (RTP) SSRC is in the list of SSRCs
+         * seen/received on this <tt>Channel</tt>.
+         *
+         * @param ssrc the (RTP) SSRC.
+         * @return <tt>true</tt> if <tt>ssrc</tt> has been seen/received on
+         * this <tt>Channel</tt>; otherwise, <tt>false</tt>
+         */
+        public synchronized boolean containsSSRC(int ssrc)
+        {
+            return ssrcs.contains(ssrc);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Also freezes the sources and source groups of this channel and
+         * the elements listed for removal.
+         */
+        @Override
+        public synchronized void freeze()
+        {
+            if (isFrozen())
+                return;
+
+            for (SourcePacketExtension source : sources.getSources())
+                source.freeze();
+            freezeAll(sourceGroups);
+            freezeAll(removedSources);
+            freezeAll(removedSourceGroups);
+            freezeAll(removedPayloadTypes);
+            freezeAll(removedRtpHeaderExtensions);
+            // The elements of the CodecSet are frozen already.
+            super.freeze();
+        }
+
+        /**
+         * Freezes the extensions in a specific list.
+         *
+         * @param extensions the extensions to freeze, or <tt>null</tt>.
+         */
+        private static void freezeAll(
+                List<? extends AbstractPacketExtension> extensions)
+        {
+            if (extensions != null)
+                extensions.forEach(AbstractPacketExtension::freeze);
+        }
+
+        /**
+         * Performs an action for each of the (RTP) SSRCs seen/received on this
+         * <tt>Channel</tt>, in the order in which they were added, without
+         * copying them. The action must not modify the SSRCs of this
+         * <tt>Channel</tt>.
+         *
+         * @param action the action to perform.
+         */
+        public synchronized void forEachSSRC(IntConsumer action)
+        {
+            ssrcs.forEach(action);
         }
 
         /**
@@ -918,11 +1317,25 @@ public class ColibriConferenceIQ
          *
          * @return an unmodifiable <tt>List</tt> of <tt>payload-type</tt>
          * elements defined by XEP-0167: Jingle RTP Sessions added to this
-         * <tt>channel</tt>
+         * <tt>channel</tt>. The elements are frozen and may be shared with
+         * other channels, so they are modified through
+         * {@link #modifyPayloadType(PayloadTypePacketExtension, Consumer)}.
          */
         public List<PayloadTypePacketExtension> getPayloadTypes()
         {
-            return Collections.unmodifiableList(payloadTypes);
+            return codecSet.getPayloadTypes();
+        }
+
+        /**
+         * Gets the <tt>payload-type</tt> and <tt>rtp-hdrext</tt> elements of
+         * this <tt>channel</tt>.
+         *
+         * @return the (immutable, possibly shared) <tt>CodecSet</tt> of this
+         * <tt>channel</tt>.
+         */
+        public CodecSet getCodecSet()
+        {
+            return codecSet;
         }
 
         /**
@@ -932,12 +1345,14 @@ public class ColibriConferenceIQ
          *
          * @return an unmodifiable <tt>List</tt> of <tt>rtp-hdrext</tt>
          * elements defined by XEP-0294: Jingle RTP Header Extensions
-         * Negotiation added to this <tt>channel</tt>
+         * Negotiation added to this <tt>channel</tt>. The elements are frozen
+         * and may be shared with other channels, so they are modified through
+         * {@link #modifyRtpHeaderExtension(RTPHdrExtPacketExtension,
+         * Consumer)}.
          */
         public Collection<RTPHdrExtPacketExtension> getRtpHeaderExtensions()
         {
-            return Collections
-                    .unmodifiableCollection(rtpHeaderExtensions.values());
+            return codecSet.getRtpHeaderExtensions();
         }
 
         /**
@@ -1023,7 +1438,187 @@ public class ColibriConferenceIQ
          */
         public synchronized List<SourcePacketExtension> getSources()
         {
-            return new ArrayList<SourcePacketExtension>(sources);
+            return new ArrayList<SourcePacketExtension>(sources.getSources());
+        }
+
+        /**
+         * Gets the sources of this channel as an unmodifiable list. Unlike
+         * {@link #getSources()}, repeated calls do not copy the sources as
+         * long as they do not change. The returned list is a snapshot, i.e.
+         * it does not reflect later modifications.
+         *
+         * @return an unmodifiable <tt>List</tt> of the sources of this channel.
+         */
+        public synchronized List<SourcePacketExtension> getSourcesView()
+        {
+            List<SourcePacketExtension> view = sourcesView;
+
+            if (view == null)
+            {
+                view
+                    = sources.size() == 0
+                        ? Collections.emptyList()
+                        : Collections.unmodifiableList(
+                                new ArrayList<>(sources.getSources()));
+                sourcesView = view;
+            }
+            return view;
+        }
+
+        /**
+         * Gets the source groups of this channel as an unmodifiable list.
+         * Unlike {@link #getSourceGroups()}, repeated calls do not copy the
+         * source groups as long as they do not change, and the list is empty
+         * (rather than <tt>null</tt>) if there are none. The returned list is
+         * a snapshot, i.e. it does not reflect later modifications.
+         *
+         * @return an unmodifiable <tt>List</tt> of the source groups of this
+         * channel.
+         */
+        public synchronized List<SourceGroupPacketExtension>
+            getSourceGroupsView()
+        {
+            List<SourceGroupPacketExtension> view = sourceGroupsView;
+
+            if (view == null)
+            {
+                view
+                    = (sourceGroups == null || sourceGroups.isEmpty())
+                        ? Collections.emptyList()
+                        : Collections.unmodifiableList(
+                                new ArrayList<>(sourceGroups));
+                sourceGroupsView = view;
+            }
+            return view;
+        }
+
+        /**
+         * Gets the source of this channel which is equal (in the sense of
+         * {@link SourcePacketExtension#sourceEquals(SourcePacketExtension)})
+         * to a specific source.
+         *
+         * @param source the source to look for.
+         * @return the <tt>SourcePacketExtension</tt> of this channel equal to
+         * <tt>source</tt>, or <tt>null</tt> if there is no such source.
+         */
+        public synchronized SourcePacketExtension findSource(
+                SourcePacketExtension source)
+        {
+            return sources.find(source);
+        }
+
+        /**
+         * Gets the <tt>payload-type</tt> elements to be removed from the
+         * channel described by this delta <tt>Channel</tt>.
+         *
+         * @return the <tt>payload-type</tt> elements to be removed.
+         */
+        public synchronized List<PayloadTypePacketExtension>
+            getRemovedPayloadTypes()
+        {
+            return
+                (removedPayloadTypes == null)
+                    ? Collections.emptyList()
+                    : new ArrayList<>(removedPayloadTypes);
+        }
+
+        /**
+         * Gets the <tt>rtp-hdrext</tt> elements to be removed from the
+         * channel described by this delta <tt>Channel</tt>.
+         *
+         * @return the <tt>rtp-hdrext</tt> elements to be removed.
+         */
+        public synchronized List<RTPHdrExtPacketExtension>
+            getRemovedRtpHeaderExtensions()
+        {
+            return
+                (removedRtpHeaderExtensions == null)
+                    ? Collections.emptyList()
+                    : new ArrayList<>(removedRtpHeaderExtensions);
+        }
+
+        /**
+         * Gets the source groups to be removed from the channel described by
+         * this delta <tt>Channel</tt>.
+         *
+         * @return the source groups to be removed.
+         */
+        public synchronized List<SourceGroupPacketExtension>
+            getRemovedSourceGroups()
+        {
+            return
+                (removedSourceGroups == null)
+                    ? Collections.emptyList()
+                    : new ArrayList<>(removedSourceGroups);
+        }
+
+        /**
+         * Gets the sources to be removed from the channel described by this
+         * delta <tt>Channel</tt>.
+         *
+         * @return the sources to be removed.
+         */
+        public synchronized List<SourcePacketExtension> getRemovedSources()
+        {
+            return
+                (removedSources == null)
+                    ? Collections.emptyList()
+                    : new ArrayList<>(removedSources);
+        }
+
+        /**
+         * Gets the source of this channel with a specific SSRC.
+         *
+         * @param ssrc the SSRC of the source to get.
+         * @return the <tt>SourcePacketExtension</tt> of this channel with SSRC
+         * <tt>ssrc</tt>, or <tt>null</tt> if there is no such source.
+         */
+        public synchronized SourcePacketExtension getSourceBySSRC(long ssrc)
+        {
+            return sources.getBySSRC(ssrc);
+        }
+
+        /**
+         * Gets the (first added) source of this channel with a specific RID.
+         *
+         * @param rid the RID of the source to get.
+         * @return the <tt>SourcePacketExtension</tt> of this channel with RID
+         * <tt>rid</tt>, or <tt>null</tt> if there is no such source.
+         */
+        public synchronized SourcePacketExtension getSourceByRid(String rid)
+        {
+            return (rid == null) ? null : sources.getByRid(rid);
+        }
+
+        /**
+         * Gets the number of sources of this channel.
+         *
+         * @return the number of sources of this channel.
+         */
+        public synchronized int getSourceCount()
+        {
+            return sources.size();
+        }
+
+        /**
+         * Determines whether a specific source group only references sources
+         * of this channel, i.e. whether each of its sources is equal (in the
+         * sense of {@link SourcePacketExtension#sourceEquals(
+         * SourcePacketExtension)}) to a source of this channel.
+         *
+         * @param sourceGroup the source group to check.
+         * @return <tt>true</tt> if all the sources of <tt>sourceGroup</tt> are
+         * sources of this channel; otherwise, <tt>false</tt>
+         */
+        public synchronized boolean ownsSourcesOf(
+                SourceGroupPacketExtension sourceGroup)
+        {
+            for (SourcePacketExtension source : sourceGroup.getSources())
+            {
+                if (sources.find(source) == null)
+                    return false;
+            }
+            return true;
         }
 
         /**
@@ -1035,33 +1630,72 @@ public class ColibriConferenceIQ
          */
         public synchronized int[] getSSRCs()
         {
-            return (ssrcs.length == 0) ? NO_SSRCS : ssrcs.clone();
+            return ssrcs.toArray();
         }
 
-        @Override
-        protected boolean hasContent()
+        /**
+         * Gets the number of (RTP) SSRCs seen/received on this
+         * <tt>Channel</tt>.
+         *
+         * @return the number of (RTP) SSRCs seen/received on this
+         * <tt>Channel</tt>
+         */
+        public synchronized int getSSRCCount()
         {
-            List<PayloadTypePacketExtension> payloadTypes = getPayloadTypes();
-
-            if (!payloadTypes.isEmpty())
-                return true;
-
-            List<SourceGroupPacketExtension> sourceGroups = getSourceGroups();
-            if (sourceGroups != null && !getSourceGroups().isEmpty())
-                return true;
+            return ssrcs.size();
+        }
 
-            List<SourcePacketExtension> sources = getSources();
-            if (!sources.isEmpty())
-                return true;
+        @Override
+        protected synchronized boolean hasContent()
+        {
+            return
+                !codecSet.getPayloadTypes().isEmpty()
+                    || (sourceGroups != null && !sourceGroups.isEmpty())
+                    || sources.size() != 0
+                    || ssrcs.size() != 0
+                    || hasRemovals();
+        }
 
-            int[] ssrcs = getSSRCs();
+        /**
+         * Determines whether this delta <tt>Channel</tt> has any sources,
+         * source groups, payload types or RTP header extensions to be
+         * removed.
+         *
+         * @return <tt>true</tt> if this <tt>Channel</tt> has anything to be
+         * removed; otherwise, <tt>false</tt>
+         */
+        private synchronized boolean hasRemovals()
+        {
+            return
+                (removedSources != null && !removedSources.isEmpty())
+                    || (removedSourceGroups != null
+                            && !removedSourceGroups.isEmpty())
+                    || (removedPayloadTypes != null
+                            && !removedPayloadTypes.isEmpty())
+                    || (removedRtpHeaderExtensions != null
+                            && !removedRtpHeaderExtensions.isEmpty());
+        }
 
-            return (ssrcs.length != 0);
+        /**
+         * Determines whether the sources, source groups and payload types of
+         * this <tt>Channel</tt> are changes to the ones the bridge already
+         * has (see {@link ChannelDelta}) rather than all of them.
+         *
+         * @return <tt>true</tt> if this is a delta <tt>Channel</tt>.
+         */
+        public boolean isDelta()
+        {
+            return delta;
         }
 
         @Override
         protected IQChildElementXmlStringBuilder printAttributes(IQChildElementXmlStringBuilder xml)
         {
+            if (isDelta())
+            {
+                xml.attribute(DELTA_ATTR_NAME, Boolean.toString(true));
+            }
+
             // direction
             String direction = getDirection();
             if (direction != null
@@ -1118,35 +1752,107 @@ public class ColibriConferenceIQ
         }
 
         @Override
-        protected IQChildElementXmlStringBuilder printContent(IQChildElementXmlStringBuilder xml)
+        protected synchronized IQChildElementXmlStringBuilder printContent(
+                IQChildElementXmlStringBuilder xml)
         {
-            List<PayloadTypePacketExtension> payloadTypes = getPayloadTypes();
-            Collection<RTPHdrExtPacketExtension> rtpHdrExtPacketExtensions
-                    = getRtpHeaderExtensions();
-            List<SourcePacketExtension> sources = getSources();
-            List<SourceGroupPacketExtension> sourceGroups = getSourceGroups();
-            int[] ssrcs = getSSRCs();
+            // The payload types and RTP header extensions are serialized once
+            // per CodecSet, not once per channel.
+            codecSet.appendXml(xml);
 
-            for (PayloadTypePacketExtension payloadType : payloadTypes)
-                xml.append(payloadType.toXML());
+            // The lists are read in place, without copying them, while the
+            // monitor is held.
+            appendAll(xml, sources.getSources());
+            appendAll(xml, sourceGroups);
 
-            for (RTPHdrExtPacketExtension ext : rtpHdrExtPacketExtensions)
-                xml.append(ext.toXML());
+            ssrcs.forEach(
+                ssrc -> xml.element(
+                    SSRC_ELEMENT_NAME, Long.toString(ssrc & 0xFFFFFFFFL)));
 
-            for (SourcePacketExtension source : sources)
-                xml.append(source.toXML());
+            if (hasRemovals())
+            {
+                xml.openElement(REMOVE_ELEMENT_NAME);
+                appendAll(xml, removedPayloadTypes);
+                appendAll(xml, removedRtpHeaderExtensions);
+                appendAll(xml, removedSources);
+                appendAll(xml, removedSourceGroups);
+                xml.closeElement(REMOVE_ELEMENT_NAME);
+            }
 
-            if (sourceGroups != null && sourceGroups.size() != 0)
-                for (SourceGroupPacketExtension sourceGroup : sourceGroups)
-                    xml.append(sourceGroup.toXML());
+            return xml;
+        }
 
-            for (int i = 0; i < ssrcs.length; i++)
+        /**
+         * Writes the XML representations of specific extensions into a
+         * specific <tt>IQChildElementXmlStringBuilder</tt>.
+         *
+         * @param xml the <tt>IQChildElementXmlStringBuilder</tt> to write to.
+         * @param extensions the extensions to write, or <tt>null</tt>.
+         */
+        private static void appendAll(
+                IQChildElementXmlStringBuilder xml,
+                Collection<? extends AbstractPacketExtension> extensions)
+        {
+            if (extensions != null)
             {
-                xml.element(SSRC_ELEMENT_NAME,
-                    Long.toString(ssrcs[i] & 0xFFFFFFFFL));
+                for (AbstractPacketExtension extension : extensions)
+                    extension.appendXml(xml);
             }
+        }
 
-            return xml;
+        /**
+         * Modifies a <tt>payload-type</tt> element of this <tt>channel</tt>.
+         * The elements of a <tt>channel</tt> are frozen and may be shared with
+         * other channels (see {@link CodecSet}), so <tt>modifier</tt> is given
+         * a mutable copy of <tt>payloadType</tt>, which then replaces it in
+         * this <tt>channel</tt> only.
+         *
+         * @param payloadType the <tt>payload-type</tt> element to modify,
+         * either one of {@link #getPayloadTypes()} or one equal to it.
+         * @param modifier the function which modifies the copy.
+         * @return <tt>true</tt> if the list of <tt>payload-type</tt> elements
+         * associated with this <tt>channel</tt> has been modified as part of
+         * the method call; otherwise, <tt>false</tt>
+         */
+        public synchronized boolean modifyPayloadType(
+                PayloadTypePacketExtension payloadType,
+                Consumer<? super PayloadTypePacketExtension> modifier)
+        {
+            checkNotFrozen();
+            CodecSet oldCodecSet = codecSet;
+
+            codecSet
+                = oldCodecSet.withModifiedPayloadType(payloadType, modifier);
+            return codecSet != oldCodecSet;
+        }
+
+        /**
+         * Modifies an <tt>rtp-hdrext</tt> element of this <tt>channel</tt>.
+         * Like {@link #modifyPayloadType(PayloadTypePacketExtension,
+         * Consumer)}, <tt>modifier</tt> is given a mutable copy of the
+         * element.
+         *
+         * @param ext the <tt>rtp-hdrext</tt> element to modify, either one of
+         * {@link #getRtpHeaderExtensions()} or one with the same ID.
+         * @param modifier the function which modifies the copy.
+         * @return <tt>true</tt> if the list of <tt>rtp-hdrext</tt> elements
+         * associated with this <tt>channel</tt> has been modified as part of
+         * the method call; otherwise, <tt>false</tt>
+         */
+        public synchronized boolean modifyRtpHeaderExtension(
+                RTPHdrExtPacketExtension ext,
+                Consumer<? super RTPHdrExtPacketExtension> modifier)
+        {
+            checkNotFrozen();
+            int id = CodecSet.getID(ext);
+
+            if (id < 0)
+                return false;
+
+            CodecSet oldCodecSet = codecSet;
+
+            codecSet
+                = oldCodecSet.withModifiedRtpHeaderExtension(id, modifier);
+            return codecSet != oldCodecSet;
         }
 
         /**
@@ -1159,9 +1865,14 @@ public class ColibriConferenceIQ
          * associated with this <tt>channel</tt> has been modified as part of
          * the method call; otherwise, <tt>false</tt>
          */
-        public boolean removePayloadType(PayloadTypePacketExtension payloadType)
+        public synchronized boolean removePayloadType(
+                PayloadTypePacketExtension payloadType)
         {
-            return payloadTypes.remove(payloadType);
+            checkNotFrozen();
+            CodecSet oldCodecSet = codecSet;
+
+            codecSet = oldCodecSet.withoutPayloadType(payloadType);
+            return codecSet != oldCodecSet;
         }
 
         /**
@@ -1174,8 +1885,10 @@ public class ColibriConferenceIQ
          * associated with this <tt>channel</tt> has been modified as part of
          * the method call; otherwise, <tt>false</tt>
          */
-        public void removeRtpHeaderExtension(RTPHdrExtPacketExtension ext)
+        public synchronized void removeRtpHeaderExtension(
+                RTPHdrExtPacketExtension ext)
         {
+            checkNotFrozen();
             int id = -1;
             try
             {
@@ -1187,7 +1900,7 @@ public class ColibriConferenceIQ
                 return;
             }
 
-            rtpHeaderExtensions.remove(id);
+            codecSet = codecSet.withoutRtpHeaderExtension(id);
         }
 
         /**
@@ -1201,7 +1914,31 @@ public class ColibriConferenceIQ
          */
         public synchronized boolean removeSource(SourcePacketExtension source)
         {
-            return sources.remove(source);
+            checkNotFrozen();
+            if (source == null || !sources.remove(source))
+                return false;
+            sourcesView = null;
+            return true;
+        }
+
+        /**
+         * Removes a <tt>SourceGroupPacketExtension</tt> from the list of source
+         * groups of this channel.
+         *
+         * @param sourceGroup the <tt>SourceGroupPacketExtension</tt> to remove
+         * from the list of source groups of this channel
+         * @return <tt>true</tt> if the list of source groups of this channel
+         * changed as a result of the execution of the method; otherwise,
+         * <tt>false</tt>
+         */
+        public synchronized boolean removeSourceGroup(
+                SourceGroupPacketExtension sourceGroup)
+        {
+            checkNotFrozen();
+            if (sourceGroups == null || !sourceGroups.remove(sourceGroup))
+                return false;
+            sourceGroupsView = null;
+            return true;
         }
 
         /**
@@ -1217,39 +1954,48 @@ public class ColibriConferenceIQ
          */
         public synchronized boolean removeSSRC(int ssrc)
         {
-            if (ssrcs.length == 1)
-            {
-                if (ssrcs[0] == ssrc)
-                {
-                    ssrcs = NO_SSRCS;
-                    return true;
-                }
-                else
-                    return false;
-            }
-            else
-            {
-                for (int i = 0; i < ssrcs.length; i++)
-                {
-                    if (ssrcs[i] == ssrc)
-                    {
-                        int[] newSSRCs = new int[ssrcs.length - 1];
-
-                        if (i != 0)
-                            System.arraycopy(ssrcs, 0, newSSRCs, 0, i);
-                        if (i != newSSRCs.length)
-                        {
-                            System.arraycopy(
-                                    ssrcs, i + 1,
-                                    newSSRCs, i,
-                                    newSSRCs.length - i);
-                        }
-                        ssrcs = newSSRCs;
-                        return true;
-                    }
-                }
-                return false;
-            }
+            checkNotFrozen();
+            return ssrcs.remove(ssrc);
+        }
+
+        /**
+         * Removes specific (RTP) SSRCs from the list of SSRCs seen/received on
+         * this <tt>Channel</tt>.
+         *
+         * @param ssrcs the (RTP) SSRCs to be removed from the list of SSRCs
+         * seen/received on this <tt>Channel</tt>
+         * @return the number of SSRCs which have been removed
+         */
+        public synchronized int removeSSRCs(int[] ssrcs)
+        {
+            checkNotFrozen();
+            return this.ssrcs.removeAll(ssrcs);
+        }
+
+        /**
+         * Replaces the <tt>payload-type</tt> and <tt>rtp-hdrext</tt> elements
+         * of this <tt>channel</tt>, e.g. with an interned <tt>CodecSet</tt>
+         * shared with other channels.
+         *
+         * @param codecSet the new <tt>CodecSet</tt> of this <tt>channel</tt>.
+         */
+        public synchronized void setCodecSet(CodecSet codecSet)
+        {
+            checkNotFrozen();
+            this.codecSet = Objects.requireNonNull(codecSet, "codecSet");
+        }
+
+        /**
+         * Sets whether the sources, source groups and payload types of this
+         * <tt>Channel</tt> are changes to the ones the bridge already has
+         * rather than all of them.
+         *
+         * @param delta <tt>true</tt> to make this a delta <tt>Channel</tt>.
+         */
+        public void setDelta(boolean delta)
+        {
+            checkNotFrozen();
+            this.delta = delta;
         }
 
         /**
@@ -1260,6 +2006,7 @@ public class ColibriConferenceIQ
          */
         public void setDirection(String direction)
         {
+            checkNotFrozen();
             this.direction = direction;
         }
 
@@ -1277,6 +2024,7 @@ public class ColibriConferenceIQ
         @Deprecated
         public void setHost(String host)
         {
+            checkNotFrozen();
             this.host = host;
         }
 
@@ -1291,6 +2039,7 @@ public class ColibriConferenceIQ
          */
         public void setLastN(Integer lastN)
         {
+            checkNotFrozen();
             this.lastN = lastN;
         }
 
@@ -1302,6 +2051,7 @@ public class ColibriConferenceIQ
          */
         public void setPacketDelay(Integer packetDelay)
         {
+            checkNotFrozen();
             this.packetDelay = packetDelay;
         }
 
@@ -1311,6 +2061,7 @@ public class ColibriConferenceIQ
          */
         public void setSimulcastMode(SimulcastMode simulcastMode)
         {
+            checkNotFrozen();
             this.simulcastMode = simulcastMode;
         }
 
@@ -1325,6 +2076,7 @@ public class ColibriConferenceIQ
          */
         public void setReceivingSimulcastLayer(Integer simulcastLayer)
         {
+            checkNotFrozen();
             this.receivingSimulcastLayer = simulcastLayer;
         }
 
@@ -1341,6 +2093,7 @@ public class ColibriConferenceIQ
         @Deprecated
         public void setRTCPPort(int rtcpPort)
         {
+            checkNotFrozen();
             this.rtcpPort = rtcpPort;
         }
 
@@ -1355,6 +2108,7 @@ public class ColibriConferenceIQ
          */
         public void setRTPLevelRelayType(RTPLevelRelayType rtpLevelRelayType)
         {
+            checkNotFrozen();
             this.rtpLevelRelayType = rtpLevelRelayType;
         }
 
@@ -1384,6 +2138,7 @@ public class ColibriConferenceIQ
         @Deprecated
         public void setRTPPort(int rtpPort)
         {
+            checkNotFrozen();
             this.rtpPort = rtpPort;
         }
 
@@ -1391,18 +2146,13 @@ public class ColibriConferenceIQ
          * Sets the list of (RTP) SSRCs seen/received on this <tt>Channel</tt>.
          *
          * @param ssrcs the list of (RTP) SSRCs to be set as seen/received on
-         * this <tt>Channel</tt>
+         * this <tt>Channel</tt>. Duplicates are ignored.
          */
-        public void setSSRCs(int[] ssrcs)
+        public synchronized void setSSRCs(int[] ssrcs)
         {
-            /*
-             * TODO Make sure that the SSRCs set on this instance do not contain
-             * duplicates.
-             */
-            this.ssrcs
-                = ((ssrcs == null) || (ssrcs.length == 0))
-                    ? NO_SSRCS
-                    : ssrcs.clone();
+            checkNotFrozen();
+            this.ssrcs.clear();
+            this.ssrcs.addAll(ssrcs);
         }
     }
 
@@ -1440,12 +2190,28 @@ public class ColibriConferenceIQ
             setType(TYPE);
         }
 
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Also makes the list of relays unmodifiable.
+         */
+        @Override
+        public synchronized void freeze()
+        {
+            if (isFrozen())
+                return;
+
+            relays = Collections.unmodifiableList(relays);
+            super.freeze();
+        }
+
         /**
          * Sets the list of relays of this {@link OctoChannel}.
          * @param relays the ids of the relays to set.
          */
         public void setRelays(List<String> relays)
         {
+            checkNotFrozen();
             this.relays = new LinkedList<>(relays);
         }
 
@@ -1463,6 +2229,7 @@ public class ColibriConferenceIQ
          */
         public void addRelay(String relay)
         {
+            checkNotFrozen();
             if (!relays.contains(relay))
             {
                 relays.add(relay);
@@ -1475,6 +2242,7 @@ public class ColibriConferenceIQ
          */
         public void removeRelay(String relay)
         {
+            checkNotFrozen();
             relays.remove(relay);
         }
 
@@ -1589,7 +2357,7 @@ public class ColibriConferenceIQ
             if (transport != null)
             {
                 xml.rightAngleBracket();
-                xml.append(transport.toXML());
+                transport.appendXml(xml);
                 xml.closeElement(ELEMENT_NAME);
             }
             else
@@ -1701,6 +2469,17 @@ public class ColibriConferenceIQ
 
         private IceUdpTransportPacketExtension transport;
 
+        /**
+         * The <tt>Content</tt>s which include this instance and index it by
+         * its ID and endpoint.
+         */
+        final WeakContainers<Content> contents = new WeakContainers<>();
+
+        /**
+         * Whether {@link #freeze()} has been called.
+         */
+        private volatile boolean frozen;
+
         /**
          * Initializes this class with given XML <tt>elementName</tt>.
          * @param elementName XML element name to be used for producing XML
@@ -1711,6 +2490,38 @@ public class ColibriConferenceIQ
             this.elementName = elementName;
         }
 
+        /**
+         * Throws an <tt>IllegalStateException</tt> if this instance has been
+         * frozen. Called by all mutators.
+         *
+         * @throws IllegalStateException if {@link #freeze()} has been called.
+         */
+        protected void checkNotFrozen()
+        {
+            if (frozen)
+            {
+                throw new IllegalStateException(
+                    "Cannot modify a frozen " + elementName + " element");
+            }
+        }
+
+        /**
+         * Makes this instance immutable, e.g. before the state of a channel
+         * which has been parsed is shared with other threads. Afterwards the
+         * mutators throw <tt>IllegalStateException</tt>. The extensions held
+         * by this instance (e.g. its transport) are frozen as well (see
+         * {@link AbstractPacketExtension#freeze()}). Calling this method
+         * again has no effect.
+         */
+        public void freeze()
+        {
+            IceUdpTransportPacketExtension transport = getTransport();
+
+            if (transport != null)
+                transport.freeze();
+            frozen = true;
+        }
+
         /**
          * Get the channel-bundle-id attribute of this <tt>CommonChannel</tt>.
          * @return  the channel-bundle-id attribute of this
@@ -1794,6 +2605,17 @@ public class ColibriConferenceIQ
             return initiator;
         }
 
+        /**
+         * Determines whether {@link #freeze()} has been called on this
+         * instance.
+         *
+         * @return <tt>true</tt> if this instance is immutable.
+         */
+        public boolean isFrozen()
+        {
+            return frozen;
+        }
+
         /**
          * Derived class implements this method in order to print additional
          * attributes to main XML element.
@@ -1822,6 +2644,7 @@ public class ColibriConferenceIQ
          */
         public void setChannelBundleId(String channelBundleId)
         {
+            checkNotFrozen();
             this.channelBundleId = channelBundleId;
         }
 
@@ -1834,7 +2657,12 @@ public class ColibriConferenceIQ
          */
         public void setEndpoint(String endpoint)
         {
+            checkNotFrozen();
+            String oldEndpoint = this.endpoint;
+
             this.endpoint = endpoint;
+            if (!Objects.equals(oldEndpoint, endpoint))
+                contents.forEach(c -> c.endpointChanged(this, oldEndpoint));
         }
         /**
          * Sets the optional type of this channel.
@@ -1842,6 +2670,7 @@ public class ColibriConferenceIQ
          */
         public void setType(String type)
         {
+            checkNotFrozen();
             this.type = type;
         }
 
@@ -1857,6 +2686,7 @@ public class ColibriConferenceIQ
          */
         public void setExpire(int expire)
         {
+            checkNotFrozen();
             if ((expire != EXPIRE_NOT_SPECIFIED) && (expire < 0))
                 throw new IllegalArgumentException("expire");
 
@@ -1870,7 +2700,12 @@ public class ColibriConferenceIQ
          */
         public void setID(String id)
         {
+            checkNotFrozen();
+            String oldID = this.id;
+
             this.id = id;
+            if (!Objects.equals(oldID, id))
+                contents.forEach(c -> c.idChanged(this, oldID));
         }
 
         /**
@@ -1886,11 +2721,13 @@ public class ColibriConferenceIQ
          */
         public void setInitiator(Boolean initiator)
         {
+            checkNotFrozen();
             this.initiator = initiator;
         }
 
         public void setTransport(IceUdpTransportPacketExtension transport)
         {
+            checkNotFrozen();
             this.transport = transport;
         }
 
@@ -1931,7 +2768,7 @@ public class ColibriConferenceIQ
 
                 if (hasTransport)
                 {
-                    xml.append(transport.toXML());
+                    transport.appendXml(xml);
                 }
 
                 xml.closeElement(elementName);
@@ -1968,7 +2805,36 @@ public class ColibriConferenceIQ
          * The list of {@link Channel}s included into this <tt>content</tt> of a
          * <tt>conference</tt> IQ.
          */
-        private final List<Channel> channels = new LinkedList<Channel>();
+        private final List<Channel> channels = new ArrayList<>();
+
+        /**
+         * The {@link Channel}s included into this <tt>content</tt> by their
+         * IDs. If several have the same ID, the first one in {@link #channels}
+         * is indexed.
+         */
+        private final Map<String, Channel> channelsByID
+            = new LinkedHashMap<>();
+
+        /**
+         * The {@link Channel}s included into this <tt>content</tt> by the IDs
+         * of their endpoints, in the order of {@link #channels}.
+         */
+        private final Map<String, List<Channel>> channelsByEndpoint
+            = new LinkedHashMap<>();
+
+        /**
+         * The <tt>conference</tt> IQs which include this instance and index
+         * it by its name.
+         */
+        final WeakContainers<ColibriConferenceIQ> conferences
+            = new WeakContainers<>();
+
+        /**
+         * The {@link Channel}s and {@link SctpConnection}s included into this
+         * <tt>content</tt>, compared by identity.
+         */
+        private final Set<ChannelCommon> members
+            = Collections.newSetFromMap(new IdentityHashMap<>());
 
         /**
          * The name of the <tt>content</tt> represented by this instance.
@@ -1980,7 +2846,15 @@ public class ColibriConferenceIQ
          * <tt>content</tt> of a <tt>conference</tt> IQ.
          */
         private final List<SctpConnection> sctpConnections
-            = new LinkedList<SctpConnection>();
+            = new ArrayList<>();
+
+        /**
+         * The {@link SctpConnection}s included into this <tt>content</tt> by
+         * their IDs. If several have the same ID, the first one in
+         * {@link #sctpConnections} is indexed.
+         */
+        private final Map<String, SctpConnection> sctpConnectionsByID
+            = new LinkedHashMap<>();
 
         /**
          * Initializes a new <tt>Content</tt> instance without a name and
@@ -2015,7 +2889,14 @@ public class ColibriConferenceIQ
         {
             Objects.requireNonNull(channel, "channel");
 
-            return channels.contains(channel) ? false : channels.add(channel);
+            if (!members.add(channel))
+                return false;
+
+            channels.add(channel);
+            channel.contents.add(this);
+            indexID(channelsByID, channel);
+            indexEndpoint(channel);
+            return true;
         }
 
         /**
@@ -2051,7 +2932,13 @@ public class ColibriConferenceIQ
         {
             Objects.requireNonNull(conn, "conn");
 
-            return !sctpConnections.contains(conn) && sctpConnections.add(conn);
+            if (!members.add(conn))
+                return false;
+
+            sctpConnections.add(conn);
+            conn.contents.add(this);
+            indexID(sctpConnectionsByID, conn);
+            return true;
         }
 
         /**
@@ -2082,12 +2969,25 @@ public class ColibriConferenceIQ
          */
         public Channel getChannel(String channelID)
         {
-            for (Channel channel : getChannels())
-            {
-                if (channelID.equals(channel.getID()))
-                    return channel;
-            }
-            return null;
+            return channelsByID.get(channelID);
+        }
+
+        /**
+         * Gets the <tt>Channel</tt>s which are included into this
+         * <tt>Content</tt> and which are associated with a specific endpoint.
+         *
+         * @param endpoint the ID of the endpoint.
+         * @return an unmodifiable <tt>List</tt> of the <tt>Channel</tt>s
+         * included into this <tt>Content</tt> whose endpoint is
+         * <tt>endpoint</tt>, in the order in which they are included
+         */
+        public List<Channel> getChannelsForEndpoint(String endpoint)
+        {
+            List<Channel> channels = channelsByEndpoint.get(endpoint);
+
+            return (channels == null)
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(channels);
         }
 
         /**
@@ -2099,10 +2999,7 @@ public class ColibriConferenceIQ
          */
         public SctpConnection getSctpConnection(String connectionID)
         {
-            for (SctpConnection conn : getSctpConnections())
-                if (connectionID.equals(conn.getID()))
-                    return conn;
-            return null;
+            return sctpConnectionsByID.get(connectionID);
         }
 
         /**
@@ -2163,7 +3060,17 @@ public class ColibriConferenceIQ
          */
         public boolean removeChannel(Channel channel)
         {
-            return channels.remove(channel);
+            if (channel == null)
+                return false;
+
+            if (!members.remove(channel))
+                return false;
+
+            channels.remove(channel);
+            channel.contents.remove(this);
+            unindexID(channelsByID, channels, channel, channel.getID());
+            unindexEndpoint(channel, channel.getEndpoint());
+            return true;
         }
 
         /**
@@ -2176,7 +3083,11 @@ public class ColibriConferenceIQ
         {
             Objects.requireNonNull(name, "name");
 
+            String oldName = this.name;
+
             this.name = name;
+            if (!name.equals(oldName))
+                conferences.forEach(c -> c.contentNameChanged(this, oldName));
         }
 
         /**
@@ -2227,7 +3138,199 @@ public class ColibriConferenceIQ
          */
         public boolean removeSctpConnection(SctpConnection connection)
         {
-            return sctpConnections.remove(connection);
+            if (connection == null)
+                return false;
+
+            if (!members.remove(connection))
+                return false;
+
+            sctpConnections.remove(connection);
+            connection.contents.remove(this);
+            unindexID(
+                sctpConnectionsByID,
+                sctpConnections,
+                connection,
+                connection.getID());
+            return true;
+        }
+
+        /**
+         * Re-indexes a specific channel or SCTP connection included into this
+         * <tt>Content</tt> after its ID has changed.
+         *
+         * @param channel the channel or SCTP connection whose ID has changed.
+         * @param oldID the ID under which <tt>channel</tt> was indexed.
+         */
+        void idChanged(ChannelCommon channel, String oldID)
+        {
+            if (channel instanceof Channel)
+            {
+                unindexID(channelsByID, channels, (Channel) channel, oldID);
+                reindexID(channelsByID, channels, (Channel) channel);
+            }
+            else
+            {
+                SctpConnection conn = (SctpConnection) channel;
+
+                unindexID(sctpConnectionsByID, sctpConnections, conn, oldID);
+                reindexID(sctpConnectionsByID, sctpConnections, conn);
+            }
+        }
+
+        /**
+         * Re-indexes a specific channel included into this <tt>Content</tt>
+         * after its endpoint has changed.
+         *
+         * @param channel the channel whose endpoint has changed.
+         * @param oldEndpoint the endpoint under which <tt>channel</tt> was
+         * indexed.
+         */
+        void endpointChanged(ChannelCommon channel, String oldEndpoint)
+        {
+            if (!(channel instanceof Channel))
+                return;
+
+            Channel c = (Channel) channel;
+            String endpoint = c.getEndpoint();
+
+            unindexEndpoint(c, oldEndpoint);
+            if (endpoint == null)
+                return;
+            if (channels.get(channels.size() - 1) == c)
+            {
+                // It is the last channel, e.g. the one just added.
+                indexEndpoint(c);
+                return;
+            }
+
+            List<Channel> endpointChannels = new ArrayList<>(2);
+
+            for (Channel ch : channels)
+            {
+                if (endpoint.equals(ch.getEndpoint()))
+                    endpointChannels.add(ch);
+            }
+            channelsByEndpoint.put(endpoint, endpointChannels);
+        }
+
+        /**
+         * Adds a specific <tt>Channel</tt> to the list of its endpoint in
+         * {@link #channelsByEndpoint}.
+         *
+         * @param channel the <tt>Channel</tt> to index.
+         */
+        private void indexEndpoint(Channel channel)
+        {
+            String endpoint = channel.getEndpoint();
+
+            if (endpoint != null)
+            {
+                channelsByEndpoint
+                    .computeIfAbsent(endpoint, k -> new ArrayList<>(2))
+                    .add(channel);
+            }
+        }
+
+        /**
+         * Removes a specific <tt>Channel</tt> from the list of a specific
+         * endpoint in {@link #channelsByEndpoint}.
+         *
+         * @param channel the <tt>Channel</tt> to remove.
+         * @param endpoint the endpoint under which <tt>channel</tt> is indexed.
+         */
+        private void unindexEndpoint(Channel channel, String endpoint)
+        {
+            if (endpoint == null)
+                return;
+
+            List<Channel> endpointChannels = channelsByEndpoint.get(endpoint);
+
+            if (endpointChannels != null
+                    && endpointChannels.remove(channel)
+                    && endpointChannels.isEmpty())
+            {
+                channelsByEndpoint.remove(endpoint);
+            }
+        }
+
+        /**
+         * Indexes a specific channel or SCTP connection by its ID, unless a
+         * channel which comes before it already has that ID.
+         *
+         * @param index the index by ID.
+         * @param channel the channel or SCTP connection to index, which is
+         * the last one included so far.
+         */
+        private static <T extends ChannelCommon> void indexID(
+                Map<String, T> index, T channel)
+        {
+            String id = channel.getID();
+
+            if (id != null)
+                index.putIfAbsent(id, channel);
+        }
+
+        /**
+         * Indexes a specific channel or SCTP connection by its (new) ID,
+         * unless a channel which comes before it in the list already has that
+         * ID.
+         *
+         * @param index the index by ID.
+         * @param list the list of which <tt>channel</tt> is an element.
+         * @param channel the channel or SCTP connection to index.
+         */
+        private static <T extends ChannelCommon> void reindexID(
+                Map<String, T> index, List<T> list, T channel)
+        {
+            String id = channel.getID();
+
+            if (id == null)
+                return;
+
+            T indexed = index.get(id);
+
+            if (indexed == null)
+            {
+                index.put(id, channel);
+                return;
+            }
+            for (T c : list)
+            {
+                if (c == indexed)
+                    return;
+                if (c == channel)
+                {
+                    index.put(id, channel);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Removes a specific channel or SCTP connection from the index by ID
+         * and indexes the next one with the same ID, if any.
+         *
+         * @param index the index by ID.
+         * @param list the list of which <tt>channel</tt> is (or was) an
+         * element.
+         * @param channel the channel or SCTP connection to remove.
+         * @param id the ID under which <tt>channel</tt> is indexed.
+         */
+        private static <T extends ChannelCommon> void unindexID(
+                Map<String, T> index, List<T> list, T channel, String id)
+        {
+            if (id == null || index.get(id) != channel)
+                return;
+
+            index.remove(id);
+            for (T c : list)
+            {
+                if (c != channel && id.equals(c.getID()))
+                {
+                    index.put(id, c);
+                    break;
+                }
+            }
         }
     }
 
@@ -2662,6 +3765,7 @@ public class ColibriConferenceIQ
          */
         public void setPort(int port)
         {
+            checkNotFrozen();
             this.port = port;
         }
     }
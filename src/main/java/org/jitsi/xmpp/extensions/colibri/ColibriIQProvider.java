@@ -42,6 +42,15 @@ public class ColibriIQProvider
     private final static Logger logger
         = Logger.getLogger(ColibriIQProvider.class);
 
+    /**
+     * Whether the children of channels, SCTP connections and channel bundles
+     * are parsed by {@link ColibriChannelParser} rather than by the providers
+     * registered with <tt>ProviderManager</tt>. It is disabled by default,
+     * because the specialized parser ignores the providers registered for
+     * the elements of its grammar and has not been measured to be faster.
+     */
+    private volatile boolean fastChannelParsing = false;
+
     /** Initializes a new <tt>ColibriIQProvider</tt> instance. */
     public ColibriIQProvider()
     {
@@ -49,36 +58,43 @@ public class ColibriIQProvider
                 PayloadTypePacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        PayloadTypePacketExtension.class));
+                        PayloadTypePacketExtension.class,
+                        PayloadTypePacketExtension::new));
         ProviderManager.addExtensionProvider(
                 RtcpFbPacketExtension.ELEMENT_NAME,
                 RtcpFbPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        RtcpFbPacketExtension.class));
+                        RtcpFbPacketExtension.class,
+                        RtcpFbPacketExtension::new));
         ProviderManager.addExtensionProvider(
                 RTPHdrExtPacketExtension.ELEMENT_NAME,
                 ColibriConferenceIQ.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        RTPHdrExtPacketExtension.class));
+                        RTPHdrExtPacketExtension.class,
+                        RTPHdrExtPacketExtension::new));
         ProviderManager.addExtensionProvider(
                 SourcePacketExtension.ELEMENT_NAME,
                 SourcePacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        SourcePacketExtension.class));
+                        SourcePacketExtension.class,
+                        SourcePacketExtension::new));
         ProviderManager.addExtensionProvider(
                 SourceGroupPacketExtension.ELEMENT_NAME,
                 SourceGroupPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        SourceGroupPacketExtension.class));
+                        SourceGroupPacketExtension.class,
+                        SourceGroupPacketExtension::new));
         ProviderManager.addExtensionProvider(
                 SourceRidGroupPacketExtension.ELEMENT_NAME,
                 SourceRidGroupPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<>(
-                        SourceRidGroupPacketExtension.class));
+                        SourceRidGroupPacketExtension.class,
+                        SourceRidGroupPacketExtension::new));
 
         ExtensionElementProvider parameterProvider
                 = new DefaultPacketExtensionProvider<>(
-                ParameterPacketExtension.class);
+                ParameterPacketExtension.class,
+                ParameterPacketExtension::new);
 
         ProviderManager.addExtensionProvider(
                 ParameterPacketExtension.ELEMENT_NAME,
@@ -100,7 +116,8 @@ public class ColibriIQProvider
         // Shutdown extension
         ExtensionElementProvider shutdownProvider
                 = new DefaultPacketExtensionProvider<>(
-                    ColibriConferenceIQ.GracefulShutdown.class);
+                    ColibriConferenceIQ.GracefulShutdown.class,
+                    ColibriConferenceIQ.GracefulShutdown::new);
 
         ProviderManager.addExtensionProvider(
                 ColibriConferenceIQ.GracefulShutdown.ELEMENT_NAME,
@@ -116,7 +133,8 @@ public class ColibriIQProvider
         // ColibriStatsExtension
         ExtensionElementProvider statsProvider
                 = new DefaultPacketExtensionProvider<>(
-                ColibriStatsExtension.class);
+                ColibriStatsExtension.class,
+                ColibriStatsExtension::new);
 
         ProviderManager.addExtensionProvider(
                 ColibriStatsExtension.ELEMENT_NAME,
@@ -125,7 +143,8 @@ public class ColibriIQProvider
         // ColibriStatsExtension.Stat
         ExtensionElementProvider statProvider
                 = new DefaultPacketExtensionProvider<>(
-                    ColibriStatsExtension.Stat.class);
+                    ColibriStatsExtension.Stat.class,
+                    ColibriStatsExtension.Stat::new);
 
         ProviderManager.addExtensionProvider(
                 ColibriStatsExtension.Stat.ELEMENT_NAME,
@@ -137,11 +156,13 @@ public class ColibriIQProvider
             SSRCInfoPacketExtension.ELEMENT_NAME,
             SSRCInfoPacketExtension.NAMESPACE,
             new DefaultPacketExtensionProvider<>(
-                SSRCInfoPacketExtension.class));
+                SSRCInfoPacketExtension.class,
+                SSRCInfoPacketExtension::new));
     }
 
     private void addChildExtension(
             ColibriConferenceIQ.Channel channel,
+            CodecSet.Builder codecs,
             ExtensionElement childExtension)
     {
         if (childExtension instanceof PayloadTypePacketExtension)
@@ -160,7 +181,7 @@ public class ColibriIQProvider
                  */
                 payloadType.setChannels(2);
             }
-            channel.addPayloadType(payloadType);
+            codecs.addPayloadType(payloadType);
         }
         else if (childExtension instanceof IceUdpTransportPacketExtension)
         {
@@ -185,7 +206,12 @@ public class ColibriIQProvider
             RTPHdrExtPacketExtension rtpHdrExtPacketExtension
                     = (RTPHdrExtPacketExtension) childExtension;
 
-            channel.addRtpHeaderExtension(rtpHdrExtPacketExtension);
+            if (!codecs.addRtpHeaderExtension(rtpHdrExtPacketExtension))
+            {
+                logger.warn(
+                    "Failed to add an RTP header extension element with an"
+                        + " invalid ID: " + rtpHdrExtPacketExtension.getID());
+            }
         }
         else
         {
@@ -195,6 +221,37 @@ public class ColibriIQProvider
         }
     }
 
+    private void addRemovedChildExtension(
+            ColibriConferenceIQ.Channel channel,
+            ExtensionElement childExtension)
+    {
+        if (childExtension instanceof PayloadTypePacketExtension)
+        {
+            channel.addRemovedPayloadType(
+                (PayloadTypePacketExtension) childExtension);
+        }
+        else if (childExtension instanceof RTPHdrExtPacketExtension)
+        {
+            channel.addRemovedRtpHeaderExtension(
+                (RTPHdrExtPacketExtension) childExtension);
+        }
+        else if (childExtension instanceof SourcePacketExtension)
+        {
+            channel.addRemovedSource((SourcePacketExtension) childExtension);
+        }
+        else if (childExtension instanceof SourceGroupPacketExtension)
+        {
+            channel.addRemovedSourceGroup(
+                (SourceGroupPacketExtension) childExtension);
+        }
+        else
+        {
+            logger.error(
+                "Ignoring a child of 'remove' of unknown type: "
+                    + childExtension);
+        }
+    }
+
     private void addChildExtension(
             ColibriConferenceIQ.ChannelBundle bundle,
             ExtensionElement childExtension)
@@ -221,6 +278,33 @@ public class ColibriIQProvider
         }
     }
 
+    /**
+     * Gets whether the children of channels, SCTP connections and channel
+     * bundles are parsed by a parser specialized for their grammar.
+     *
+     * @return <tt>true</tt> if the specialized parser is used.
+     */
+    public boolean isFastChannelParsing()
+    {
+        return fastChannelParsing;
+    }
+
+    /**
+     * Sets whether the children of channels, SCTP connections and channel
+     * bundles are parsed by a parser specialized for their grammar or by the
+     * providers registered with <tt>ProviderManager</tt> (the default). The
+     * specialized parser ignores any providers registered with
+     * <tt>ProviderManager</tt> for the elements of that grammar (payload
+     * types, RTP header extensions, sources, source groups and transports),
+     * so it must not be enabled by applications which replace them.
+     *
+     * @param fastChannelParsing <tt>true</tt> to use the specialized parser.
+     */
+    public void setFastChannelParsing(boolean fastChannelParsing)
+    {
+        this.fastChannelParsing = fastChannelParsing;
+    }
+
     private ExtensionElement parseExtension(
             XmlPullParser parser,
             String name,
@@ -290,6 +374,9 @@ public class ColibriIQProvider
 
             boolean done = false;
             ColibriConferenceIQ.Channel channel = null;
+            // The payload types and RTP header extensions of channel, which
+            // are adopted into a single (interned) CodecSet at its end.
+            CodecSet.Builder codecs = null;
             ColibriConferenceIQ.RTCPTerminationStrategy rtcpTerminationStrategy
                     = null;
             ColibriConferenceIQ.SctpConnection sctpConnection = null;
@@ -297,7 +384,7 @@ public class ColibriIQProvider
             ColibriConferenceIQ.Content content = null;
             ColibriConferenceIQ.Recording recording = null;
             ColibriConferenceIQ.Endpoint conferenceEndpoint = null;
-            StringBuilder ssrc = null;
+            boolean removing = false;
 
             while (!done)
             {
@@ -314,8 +401,17 @@ public class ColibriIQProvider
                     else if (ColibriConferenceIQ.Channel.ELEMENT_NAME.equals(
                             name))
                     {
+                        // Share the codecs with the other channels which
+                        // have the same ones.
+                        channel.setCodecSet(codecs.build());
                         content.addChannel(channel);
                         channel = null;
+                        codecs = null;
+                    }
+                    else if (ColibriConferenceIQ.Channel.REMOVE_ELEMENT_NAME
+                            .equals(name))
+                    {
+                        removing = false;
                     }
                     else if (ColibriConferenceIQ.SctpConnection.ELEMENT_NAME
                             .equals(name))
@@ -351,28 +447,6 @@ public class ColibriIQProvider
                         }
                         conferenceEndpoint = null;
                     }
-                    else if (ColibriConferenceIQ.Channel.SSRC_ELEMENT_NAME
-                            .equals(name))
-                    {
-                        String s = ssrc.toString().trim();
-
-                        if (s.length() != 0)
-                        {
-                            int i;
-
-                            /*
-                             * Legacy versions of Jitsi and Jitsi Videobridge
-                             * may send a synchronization source (SSRC)
-                             * identifier as a negative integer.
-                             */
-                            if (s.startsWith("-"))
-                                i = Integer.parseInt(s);
-                            else
-                                i = (int) Long.parseLong(s);
-                            channel.addSSRC(i);
-                        }
-                        ssrc = null;
-                    }
                     else if (ColibriConferenceIQ.Content.ELEMENT_NAME.equals(
                             name))
                     {
@@ -419,6 +493,7 @@ public class ColibriIQProvider
                         {
                             channel = new ColibriConferenceIQ.Channel();
                         }
+                        codecs = new CodecSet.Builder();
 
                         // direction
                         String direction
@@ -429,10 +504,25 @@ public class ColibriIQProvider
 
                         if ((direction != null) && (direction.length() != 0))
                         {
-                            channel.setDirection(direction);
+                            channel.setDirection(
+                                StringPool.internValue(direction));
+                        }
+
+                        // delta
+                        String delta
+                            = parser.getAttributeValue(
+                                    "",
+                                    ColibriConferenceIQ.Channel
+                                            .DELTA_ATTR_NAME);
+
+                        if ((delta != null) && (delta.length() != 0))
+                        {
+                            channel.setDelta(Boolean.parseBoolean(delta));
                         }
 
-                        // endpoint
+                        // endpoint (like the bundle and endpoint IDs below,
+                        // it is not pooled: there is one per endpoint, so it
+                        // would only evict the values which do repeat)
                         String endpoint
                             = parser.getAttributeValue(
                                     "",
@@ -480,7 +570,7 @@ public class ColibriIQProvider
                                     ColibriConferenceIQ.Channel.HOST_ATTR_NAME);
 
                         if ((host != null) && (host.length() != 0))
-                            channel.setHost(host);
+                            channel.setHost(StringPool.internValue(host));
 
                         // id
                         String channelID
@@ -607,7 +697,8 @@ public class ColibriIQProvider
 
                         if ((strategyName != null)
                                 && (strategyName.length() != 0))
-                            rtcpTerminationStrategy.setName(strategyName);
+                            rtcpTerminationStrategy.setName(
+                                StringPool.internValue(strategyName));
 
                     }
                     else if (ColibriConferenceIQ.OctoChannel
@@ -628,7 +719,13 @@ public class ColibriIQProvider
                     else if (ColibriConferenceIQ.Channel.SSRC_ELEMENT_NAME
                             .equals(name))
                     {
-                        ssrc = new StringBuilder();
+                        String s = parser.nextText();
+
+                        if (!StringUtils.isBlank(s))
+                        {
+                            channel.addSSRC(
+                                ColibriChannelParser.parseSSRC(s));
+                        }
                     }
                     else if (ColibriConferenceIQ.Content.ELEMENT_NAME.equals(
                             name))
@@ -642,7 +739,8 @@ public class ColibriIQProvider
 
                         if ((contentName != null)
                                 && (contentName.length() != 0))
-                            content.setName(contentName);
+                            content.setName(
+                                StringPool.internValue(contentName));
                     }
                     else if (ColibriConferenceIQ.Recording.ELEMENT_NAME.equals(
                             name))
@@ -711,7 +809,8 @@ public class ColibriIQProvider
                                         .CHANNEL_BUNDLE_ID_ATTR_NAME);
                         if (StringUtils.isNotEmpty(channelBundleId))
                         {
-                            sctpConnection.setChannelBundleId(channelBundleId);
+                            sctpConnection.setChannelBundleId(
+                                channelBundleId);
                         }
 
                         // initiator
@@ -759,9 +858,17 @@ public class ColibriIQProvider
                         {
                             conferenceEndpoint
                                 = new ColibriConferenceIQ.Endpoint(
-                                    id, statsId, displayName);
+                                    id,
+                                    statsId,
+                                    displayName);
                         }
                     }
+                    else if (channel != null
+                            && ColibriConferenceIQ.Channel.REMOVE_ELEMENT_NAME
+                                    .equals(name))
+                    {
+                        removing = true;
+                    }
                     else if ( channel != null
                               || sctpConnection != null
                               || bundle != null )
@@ -852,13 +959,29 @@ public class ColibriIQProvider
                         else
                         {
                             ExtensionElement extension
-                                = parseExtension(parser, peName, peNamespace);
+                                = fastChannelParsing
+                                    ? ColibriChannelParser.parse(
+                                            parser, peName, peNamespace)
+                                    : null;
+
+                            if (extension == null)
+                            {
+                                extension
+                                    = parseExtension(
+                                            parser, peName, peNamespace);
+                            }
 
                             if (extension != null)
                             {
-                                if(channel != null)
+                                if (channel != null && removing)
+                                {
+                                    addRemovedChildExtension(
+                                        channel, extension);
+                                }
+                                else if(channel != null)
                                 {
-                                    addChildExtension(channel, extension);
+                                    addChildExtension(
+                                        channel, codecs, extension);
                                 }
                                 else if (sctpConnection != null)
                                 {
@@ -874,13 +997,6 @@ public class ColibriIQProvider
                     }
                     break;
                 }
-
-                case XmlPullParser.TEXT:
-                {
-                    if (ssrc != null)
-                        ssrc.append(parser.getText());
-                    break;
-                }
                 }
             }
 
@@ -0,0 +1,654 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.xmpp.extensions.colibri.ColibriBuilder.RequestType;
+import org.jitsi.xmpp.extensions.jingle.*;
+import org.jitsi.utils.logging.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jxmpp.jid.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Coalesces the Colibri requests made for a conference on a specific bridge,
+ * so that operations which happen at about the same time (e.g. many
+ * participants joining at once) result in a single
+ * <tt>ColibriConferenceIQ</tt> instead of one each.
+ * <p>
+ * Operations are submitted with the {@link RequestType} of the request that
+ * they contribute to. Consecutive operations of the same type are collected
+ * in a batch, which is closed when it reaches a maximum size, when the
+ * coalescing window which started with its first operation ends, when an
+ * operation of another type is submitted or when {@link #flush()} is called.
+ * Closed batches are sent one at a time and in order: a batch is only
+ * applied to the (shared) {@link ColibriBuilder} when the response to the
+ * previous one has been received, so that it sees the conference ID and the
+ * channels that the previous one allocated. The responses to
+ * {@link RequestType#ALLOCATE_CHANNELS} and
+ * {@link RequestType#CHANNEL_INFO_UPDATE} requests are processed with a
+ * {@link ColibriAnalyser} before the callers are notified.
+ * <p>
+ * Instances do not send anything themselves: they hand the requests to a
+ * {@link Sender}.
+ */
+public class ColibriRequestCoalescer
+{
+    /**
+     * The logger used by this instance.
+     */
+    private final static Logger logger
+        = Logger.getLogger(ColibriRequestCoalescer.class);
+
+    /**
+     * The analyser which stores the responses to allocation requests in the
+     * conference state.
+     */
+    private final ColibriAnalyser analyser;
+
+    /**
+     * The batches which have not been sent yet, in submission order. Only
+     * the last one may still be open.
+     */
+    private final Deque<Batch> batches = new ArrayDeque<>();
+
+    /**
+     * The builder of the requests.
+     */
+    private final ColibriBuilder builder;
+
+    /**
+     * The executor which closes batches at the end of their coalescing
+     * windows.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Whether a request has been sent and its response not yet received.
+     */
+    private boolean inFlight = false;
+
+    /**
+     * The maximum number of operations in a batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The sender of the requests.
+     */
+    private final Sender sender;
+
+    /**
+     * The JID of the bridge to which the requests are sent.
+     */
+    private final Jid videobridge;
+
+    /**
+     * The length in milliseconds of the coalescing window of a batch.
+     */
+    private final long windowMillis;
+
+    /**
+     * Initializes a new <tt>ColibriRequestCoalescer</tt> instance.
+     *
+     * @param conferenceState the Colibri IQ which holds the state of the
+     * conference.
+     * @param videobridge the JID of the bridge to which the requests are to
+     * be sent.
+     * @param sender the sender of the requests.
+     * @param executor the executor which is to close batches at the end of
+     * their coalescing windows.
+     * @param windowMillis the length in milliseconds of the coalescing window
+     * of a batch. With <tt>0</tt>, batches are sent as soon as possible, so
+     * only the operations submitted while a request is in flight are
+     * coalesced.
+     * @param maxBatchSize the maximum number of operations in a batch.
+     */
+    public ColibriRequestCoalescer(
+            ColibriConferenceIQ conferenceState,
+            Jid videobridge,
+            Sender sender,
+            ScheduledExecutorService executor,
+            long windowMillis,
+            int maxBatchSize)
+    {
+        Objects.requireNonNull(conferenceState, "conferenceState");
+        if (windowMillis < 0)
+        {
+            throw new IllegalArgumentException("windowMillis " + windowMillis);
+        }
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("maxBatchSize " + maxBatchSize);
+        }
+
+        this.videobridge = Objects.requireNonNull(videobridge, "videobridge");
+        this.sender = Objects.requireNonNull(sender, "sender");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+
+        builder = new ColibriBuilder(conferenceState);
+        analyser = new ColibriAnalyser(conferenceState);
+    }
+
+    /**
+     * Submits the allocation of the channels of an endpoint.
+     *
+     * @param useBundle <tt>true</tt> if the channels should all use the same
+     * bundle.
+     * @param endpointId the ID of the endpoint.
+     * @param statsId the stats ID of the endpoint.
+     * @param peerIsInitiator the value of the 'initiator' attribute of the
+     * channels.
+     * @param contents the contents describing the media of the channels.
+     * @return a future which completes with the part of the response of the
+     * bridge which describes the channels of <tt>endpointId</tt>, or with
+     * <tt>null</tt> if there was nothing to allocate.
+     * @see ColibriBuilder#addAllocateChannelsReq(boolean, String, String,
+     * boolean, List)
+     */
+    public CompletableFuture<ColibriConferenceIQ> allocateChannels(
+            boolean useBundle,
+            String endpointId,
+            String statsId,
+            boolean peerIsInitiator,
+            List<ContentPacketExtension> contents)
+    {
+        Objects.requireNonNull(endpointId, "endpointId");
+
+        return
+            submit(
+                    RequestType.ALLOCATE_CHANNELS,
+                    b -> b.addAllocateChannelsReq(
+                            useBundle,
+                            endpointId,
+                            statsId,
+                            peerIsInitiator,
+                            contents),
+                    endpointId)
+                .thenApply(response -> (ColibriConferenceIQ) response);
+    }
+
+    /**
+     * Closes the open batch, if any, so that it is sent as soon as possible.
+     */
+    public void flush()
+    {
+        Batch next;
+
+        synchronized (this)
+        {
+            Batch last = batches.peekLast();
+
+            if (last != null)
+                last.close();
+            next = pollSendable();
+        }
+        send(next);
+    }
+
+    /**
+     * Gets the builder of the requests, e.g. to set the channel options that
+     * it applies. It must not be used to build requests directly.
+     *
+     * @return the builder of the requests.
+     */
+    public ColibriBuilder getBuilder()
+    {
+        return builder;
+    }
+
+    /**
+     * Submits an operation which contributes to a request of a specific type.
+     *
+     * @param type the type of the request to which <tt>request</tt>
+     * contributes.
+     * @param request the operation, which is applied to the builder when its
+     * batch is sent, not when it is submitted.
+     * @return a future which completes with the response of the bridge to the
+     * request which included <tt>request</tt> (and the operations coalesced
+     * with it), or with <tt>null</tt> if no request was sent because none of
+     * the operations of the batch yielded any changes. It completes
+     * exceptionally if <tt>request</tt> threw or the request could not be
+     * sent.
+     */
+    public CompletableFuture<IQ> submit(RequestType type, Request request)
+    {
+        return submit(type, request, null);
+    }
+
+    /**
+     * Submits an operation which contributes to a request of a specific type.
+     *
+     * @param type the type of the request to which <tt>request</tt>
+     * contributes.
+     * @param request the operation.
+     * @param endpointId the ID of the endpoint whose part of the response is
+     * to complete the future, or <tt>null</tt> for the whole response.
+     * @return a future which completes with the response of the bridge, or
+     * the part of it which describes <tt>endpointId</tt>.
+     */
+    private CompletableFuture<IQ> submit(
+            RequestType type, Request request, String endpointId)
+    {
+        Objects.requireNonNull(type, "type");
+        Objects.requireNonNull(request, "request");
+        if (type == RequestType.UNDEFINED)
+        {
+            throw new IllegalArgumentException("type " + type);
+        }
+
+        Pending pending = new Pending(request, endpointId);
+        Batch next;
+
+        synchronized (this)
+        {
+            Batch batch = batches.peekLast();
+
+            if (batch == null || batch.closed || batch.type != type)
+            {
+                if (batch != null)
+                    batch.close();
+
+                batch = new Batch(type);
+                batches.add(batch);
+                if (windowMillis > 0 && maxBatchSize > 1)
+                {
+                    Batch scheduled = batch;
+
+                    batch.closeTask
+                        = executor.schedule(
+                                () -> close(scheduled),
+                                windowMillis,
+                                TimeUnit.MILLISECONDS);
+                }
+            }
+            batch.requests.add(pending);
+            if (batch.requests.size() >= maxBatchSize)
+                batch.close();
+            next = pollSendable();
+        }
+        send(next);
+        return pending.future;
+    }
+
+    /**
+     * Closes a specific batch at the end of its coalescing window.
+     *
+     * @param batch the batch.
+     */
+    private void close(Batch batch)
+    {
+        Batch next;
+
+        synchronized (this)
+        {
+            batch.close();
+            next = pollSendable();
+        }
+        send(next);
+    }
+
+    /**
+     * Notes that the response to the request in flight has been received.
+     *
+     * @return the next batch to send, if it is closed, or <tt>null</tt>.
+     */
+    private synchronized Batch done()
+    {
+        inFlight = false;
+        return pollSendable();
+    }
+
+    /**
+     * Removes the first batch, if no request is in flight and it is closed
+     * (or has no coalescing window).
+     *
+     * @return the batch to send, or <tt>null</tt>.
+     */
+    private Batch pollSendable()
+    {
+        Batch first = batches.peekFirst();
+
+        if (inFlight || first == null)
+            return null;
+        if (!first.closed)
+        {
+            if (windowMillis != 0)
+                return null;
+            first.close();
+        }
+
+        inFlight = true;
+        return batches.pollFirst();
+    }
+
+    /**
+     * Builds and sends the request of a specific batch, and then those of the
+     * following batches whose turn comes before this method returns (e.g.
+     * because the {@link Sender} completes synchronously). Only one batch is
+     * sent at a time, so the builder is not accessed concurrently.
+     *
+     * @param batch the batch to send, or <tt>null</tt>.
+     */
+    private void send(Batch batch)
+    {
+        // Loop rather than recurse, so that a synchronous Sender does not
+        // grow the stack by one send per queued batch.
+        while (batch != null)
+        {
+            batch = sendBatch(batch);
+        }
+    }
+
+    /**
+     * Builds and sends the request of a specific batch.
+     *
+     * @param batch the batch to send.
+     * @return the next batch to send, if the response to the request of
+     * <tt>batch</tt> has already been processed, or <tt>null</tt>.
+     */
+    private Batch sendBatch(Batch batch)
+    {
+        List<Pending> included = new ArrayList<>(batch.requests.size());
+        boolean hasAnyChanges = false;
+
+        builder.reset();
+        for (Pending pending : batch.requests)
+        {
+            try
+            {
+                if (pending.request.addTo(builder))
+                    hasAnyChanges = true;
+                included.add(pending);
+            }
+            catch (RuntimeException e)
+            {
+                pending.future.completeExceptionally(e);
+                hasAnyChanges = rebuild(included);
+            }
+        }
+
+        ColibriConferenceIQ request
+            = hasAnyChanges ? builder.getRequest(videobridge) : null;
+
+        builder.reset();
+        if (request == null)
+        {
+            complete(included, null, null);
+            return done();
+        }
+
+        CompletionStage<IQ> response;
+
+        try
+        {
+            response = sender.send(request);
+        }
+        catch (RuntimeException e)
+        {
+            complete(included, null, e);
+            return done();
+        }
+
+        // Whichever of the response and this method finishes last goes on
+        // with the next batch.
+        AtomicBoolean awaiting = new AtomicBoolean(true);
+
+        response.whenComplete((iq, error) -> {
+            if (error == null
+                    && iq instanceof ColibriConferenceIQ
+                    && iq.getType() == IQ.Type.result)
+            {
+                try
+                {
+                    if (batch.type == RequestType.ALLOCATE_CHANNELS)
+                    {
+                        analyser.processChannelAllocResp(
+                            (ColibriConferenceIQ) iq);
+                    }
+                    else if (batch.type == RequestType.CHANNEL_INFO_UPDATE)
+                    {
+                        analyser.processChannelUpdateResp(
+                            (ColibriConferenceIQ) iq);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Failed to process a Colibri response", e);
+                    error = e;
+                }
+            }
+            complete(included, iq, error);
+            if (!awaiting.compareAndSet(true, false))
+                send(done());
+        });
+        return awaiting.compareAndSet(true, false) ? null : done();
+    }
+
+    /**
+     * Builds the request anew from specific operations, which discards the
+     * changes that an operation which threw left in the builder. An
+     * operation which throws again is removed from <tt>included</tt>.
+     *
+     * @param included the operations which have been added to the request
+     * successfully.
+     * @return <tt>true</tt> if any of <tt>included</tt> yields any changes.
+     */
+    private boolean rebuild(List<Pending> included)
+    {
+        boolean hasAnyChanges = false;
+
+        builder.reset();
+        for (Iterator<Pending> i = included.iterator(); i.hasNext();)
+        {
+            Pending pending = i.next();
+
+            try
+            {
+                if (pending.request.addTo(builder))
+                    hasAnyChanges = true;
+            }
+            catch (RuntimeException e)
+            {
+                pending.future.completeExceptionally(e);
+                i.remove();
+                return rebuild(included);
+            }
+        }
+        return hasAnyChanges;
+    }
+
+    /**
+     * Completes the futures of specific operations.
+     *
+     * @param included the operations.
+     * @param response the response to their request.
+     * @param error the error which prevented the request or its response, or
+     * <tt>null</tt>.
+     */
+    private static void complete(
+            List<Pending> included, IQ response, Throwable error)
+    {
+        // The response is split once for all the endpoints of the batch.
+        Map<String, ColibriConferenceIQ> views = null;
+
+        for (Pending pending : included)
+        {
+            if (error != null)
+            {
+                pending.future.completeExceptionally(error);
+            }
+            else if (pending.endpointId == null || response == null)
+            {
+                pending.future.complete(response);
+            }
+            else if (!(response instanceof ColibriConferenceIQ)
+                    || response.getType() != IQ.Type.result)
+            {
+                pending.future.completeExceptionally(
+                    new IllegalStateException(
+                        "Unexpected response to channel allocation: "
+                            + response.getType()));
+            }
+            else
+            {
+                ColibriConferenceIQ conferenceResponse
+                    = (ColibriConferenceIQ) response;
+
+                if (views == null)
+                {
+                    views
+                        = ColibriAnalyser.splitResponseByEndpoint(
+                                conferenceResponse);
+                }
+
+                ColibriConferenceIQ view = views.get(pending.endpointId);
+
+                pending.future.complete(
+                    (view == null)
+                        ? ColibriAnalyser.createResponseView(
+                                conferenceResponse)
+                        : view);
+            }
+        }
+    }
+
+    /**
+     * An operation which contributes to a Colibri request.
+     */
+    public interface Request
+    {
+        /**
+         * Adds this operation to the request being built by a specific
+         * builder, typically by calling one of its <tt>add...Req</tt> or
+         * <tt>add...Info</tt> methods.
+         *
+         * If an operation of the same batch throws, the request is built
+         * anew and this method is called again, so it should not have any
+         * side effects other than on <tt>builder</tt>.
+         *
+         * @param builder the builder.
+         * @return <tt>true</tt> if the request yields any changes in Colibri
+         * channels state on the bridge; otherwise, <tt>false</tt>
+         */
+        boolean addTo(ColibriBuilder builder);
+    }
+
+    /**
+     * Sends Colibri requests to a bridge.
+     */
+    public interface Sender
+    {
+        /**
+         * Sends a specific request.
+         *
+         * @param request the request to send.
+         * @return a stage which completes with the response of the bridge
+         * (which may be an error IQ).
+         */
+        CompletionStage<IQ> send(ColibriConferenceIQ request);
+    }
+
+    /**
+     * The operations coalesced into one request.
+     */
+    private static class Batch
+    {
+        /**
+         * The task which closes this batch at the end of its coalescing
+         * window, if any.
+         */
+        private ScheduledFuture<?> closeTask;
+
+        /**
+         * Whether this batch accepts no more operations.
+         */
+        private boolean closed = false;
+
+        /**
+         * The operations of this batch, in submission order.
+         */
+        private final List<Pending> requests = new ArrayList<>();
+
+        /**
+         * The type of the request of this batch.
+         */
+        private final RequestType type;
+
+        /**
+         * Initializes a new <tt>Batch</tt> instance.
+         *
+         * @param type the type of the request of the new batch.
+         */
+        private Batch(RequestType type)
+        {
+            this.type = type;
+        }
+
+        /**
+         * Closes this batch.
+         */
+        private void close()
+        {
+            closed = true;
+            if (closeTask != null)
+            {
+                closeTask.cancel(false);
+                closeTask = null;
+            }
+        }
+    }
+
+    /**
+     * An operation which has been submitted, and its future.
+     */
+    private static class Pending
+    {
+        /**
+         * The ID of the endpoint whose part of the response is to complete
+         * {@link #future}, or <tt>null</tt> for the whole response.
+         */
+        private final String endpointId;
+
+        /**
+         * The future of the operation.
+         */
+        private final CompletableFuture<IQ> future = new CompletableFuture<>();
+
+        /**
+         * The operation.
+         */
+        private final Request request;
+
+        /**
+         * Initializes a new <tt>Pending</tt> instance.
+         *
+         * @param request the operation.
+         * @param endpointId the ID of the endpoint whose part of the response
+         * is to complete the future, or <tt>null</tt>.
+         */
+        private Pending(Request request, String endpointId)
+        {
+            this.request = request;
+            this.endpointId = endpointId;
+        }
+    }
+}
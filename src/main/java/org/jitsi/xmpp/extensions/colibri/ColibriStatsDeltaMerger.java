@@ -0,0 +1,147 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jitsi.utils.logging.*;
+
+import org.jxmpp.jid.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps the complete stats of a number of bridges (or other entities) up to
+ * date from the <tt>stats</tt> extensions that they publish, which may be
+ * deltas produced by a {@link ColibriStatsDeltaPublisher}.
+ * <p>
+ * The merged <tt>ColibriStatsExtension</tt>s are snapshots: merging a delta
+ * creates a new instance (which shares the unchanged {@link
+ * ColibriStatsExtension.Stat}s with the previous one) instead of modifying
+ * the cached one. The instances returned by this class are frozen (see
+ * {@link ColibriStatsExtension#freeze()}), so they are read without locks
+ * and cannot be modified.
+ */
+public class ColibriStatsDeltaMerger
+{
+    /**
+     * The logger used by this class.
+     */
+    private final static Logger logger
+        = Logger.getLogger(ColibriStatsDeltaMerger.class);
+
+    /**
+     * The merged stats of the bridges, by bridge JID.
+     */
+    private final Map<Jid, ColibriStatsExtension> stats
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Applies a delta to a snapshot of the stats of a bridge.
+     *
+     * @param snapshot the current stats of the bridge.
+     * @param delta the delta.
+     * @return a new snapshot with the stats of <tt>snapshot</tt>, updated
+     * and extended with those of <tt>delta</tt>.
+     */
+    private static ColibriStatsExtension apply(
+            ColibriStatsExtension snapshot,
+            ColibriStatsExtension delta)
+    {
+        ColibriStatsExtension merged = new ColibriStatsExtension();
+
+        for (ColibriStatsExtension.Stat stat : snapshot.getStats())
+        {
+            String name = stat.getName();
+            ColibriStatsExtension.Stat update
+                = (name == null) ? null : delta.getStat(name);
+
+            merged.addStat(update == null ? stat : update);
+        }
+        for (ColibriStatsExtension.Stat stat : delta.getStats())
+        {
+            String name = stat.getName();
+
+            if (name != null && snapshot.getStat(name) == null)
+            {
+                merged.addStat(stat);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Gets the merged stats of a specific bridge.
+     *
+     * @param bridge the JID of the bridge.
+     * @return the merged stats of <tt>bridge</tt>, or <tt>null</tt> if none
+     * have been received.
+     */
+    public ColibriStatsExtension get(Jid bridge)
+    {
+        return stats.get(bridge);
+    }
+
+    /**
+     * Merges the <tt>stats</tt> extension published by a specific bridge
+     * with the ones it published before.
+     *
+     * @param bridge the JID of the bridge.
+     * @param received the <tt>stats</tt> extension published by
+     * <tt>bridge</tt>. If it is not a delta, it replaces the stats of
+     * <tt>bridge</tt> and is frozen. Otherwise its stats are frozen.
+     * @return the merged stats of <tt>bridge</tt>.
+     */
+    public ColibriStatsExtension merge(
+            Jid bridge,
+            ColibriStatsExtension received)
+    {
+        Objects.requireNonNull(bridge, "bridge");
+        Objects.requireNonNull(received, "received");
+
+        return stats.compute(bridge, (jid, snapshot) ->
+        {
+            if (!received.isDelta())
+            {
+                received.freeze();
+                return received;
+            }
+            if (snapshot == null)
+            {
+                // Keep what we have until the next full set of stats.
+                logger.warn(
+                    "Received a stats delta before the stats of " + jid);
+                snapshot = new ColibriStatsExtension();
+            }
+            ColibriStatsExtension merged = apply(snapshot, received);
+
+            merged.freeze();
+            return merged;
+        });
+    }
+
+    /**
+     * Forgets the stats of a specific bridge, e.g. because it has gone
+     * away.
+     *
+     * @param bridge the JID of the bridge.
+     * @return the merged stats of <tt>bridge</tt>, or <tt>null</tt> if none
+     * have been received.
+     */
+    public ColibriStatsExtension remove(Jid bridge)
+    {
+        return stats.remove(bridge);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reduces the <tt>stats</tt> extensions that an entity (e.g. a bridge)
+ * publishes periodically to the stats which changed since the last
+ * published ones. Each call to {@link #publish(ColibriStatsExtension)}
+ * represents one interval: it returns either the full set of stats or a
+ * delta {@link ColibriStatsExtension} (see
+ * {@link ColibriStatsExtension#isDelta()}) with the stats whose values
+ * changed. A full set is published for the first interval, every
+ * <tt>fullSnapshotInterval</tt> intervals, after {@link #reset()} and
+ * whenever a stat which was published disappears, because a delta cannot
+ * express the removal of a stat.
+ * <p>
+ * A numeric stat may be given a threshold with
+ * {@link #setThreshold(String, double)}, in which case it is only considered
+ * changed when it differs from the last published value by more than that.
+ * The values of the other stats are compared as strings.
+ * <p>
+ * The receivers apply the deltas with a {@link ColibriStatsDeltaMerger}.
+ */
+public class ColibriStatsDeltaPublisher
+{
+    /**
+     * The number of intervals after which a full set of stats is published.
+     */
+    private final int fullSnapshotInterval;
+
+    /**
+     * The number of intervals since the last full set of stats was
+     * published.
+     */
+    private int intervalsSinceFullSnapshot;
+
+    /**
+     * The last published values of the stats, by name, or <tt>null</tt> if
+     * the next set of stats is to be published in full.
+     */
+    private Map<String, String> published;
+
+    /**
+     * The thresholds of the numeric stats, by name.
+     */
+    private final Map<String, Double> thresholds = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new <tt>ColibriStatsDeltaPublisher</tt> instance.
+     *
+     * @param fullSnapshotInterval the number of intervals after which a full
+     * set of stats is to be published. With <tt>1</tt>, only full sets are
+     * published.
+     */
+    public ColibriStatsDeltaPublisher(int fullSnapshotInterval)
+    {
+        if (fullSnapshotInterval < 1)
+        {
+            throw new IllegalArgumentException(
+                "fullSnapshotInterval " + fullSnapshotInterval);
+        }
+        this.fullSnapshotInterval = fullSnapshotInterval;
+    }
+
+    /**
+     * Determines whether the value of a stat changed enough since it was
+     * published to be published again.
+     *
+     * @param stat the stat.
+     * @param publishedValue the last published value of the stat.
+     * @return <tt>true</tt> if <tt>stat</tt> is to be published.
+     */
+    private boolean changed(
+            ColibriStatsExtension.Stat stat,
+            String publishedValue)
+    {
+        String value = String.valueOf(stat.getValue());
+
+        if (value.equals(publishedValue))
+        {
+            return false;
+        }
+
+        Double threshold = thresholds.get(stat.getName());
+
+        if (threshold != null)
+        {
+            Double number = stat.getValueAsDouble();
+
+            if (number != null)
+            {
+                try
+                {
+                    return Math.abs(number - Double.parseDouble(publishedValue))
+                        > threshold;
+                }
+                catch (NumberFormatException e)
+                {
+                    // The published value was not a number.
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the stats to publish for the current interval.
+     *
+     * @param stats the current values of all stats. The instance is returned
+     * as it is when a full set of stats is to be published, so it must not
+     * be modified afterwards.
+     * @return <tt>stats</tt>, or a new delta <tt>ColibriStatsExtension</tt>
+     * with the stats which changed since they were last published (possibly
+     * none).
+     */
+    public synchronized ColibriStatsExtension publish(
+            ColibriStatsExtension stats)
+    {
+        List<ColibriStatsExtension.Stat> list = stats.getStats();
+
+        if (published != null
+                && intervalsSinceFullSnapshot + 1 < fullSnapshotInterval)
+        {
+            ColibriStatsExtension delta = new ColibriStatsExtension();
+            Map<String, String> changes = new HashMap<>();
+            int found = 0;
+
+            delta.setDelta(true);
+            for (ColibriStatsExtension.Stat stat : list)
+            {
+                String name = stat.getName();
+
+                if (name == null
+                        || stat.getValue() == null
+                        || changes.containsKey(name))
+                {
+                    continue;
+                }
+
+                String publishedValue = published.get(name);
+
+                if (publishedValue != null)
+                {
+                    found++;
+                }
+                if (publishedValue == null || changed(stat, publishedValue))
+                {
+                    changes.put(name, String.valueOf(stat.getValue()));
+                    delta.addStat(stat);
+                }
+                else
+                {
+                    // Only the first stat with a given name counts.
+                    changes.put(name, null);
+                }
+            }
+            // A delta cannot remove stats, so publish a full set instead.
+            if (found == published.size())
+            {
+                for (Map.Entry<String, String> e : changes.entrySet())
+                {
+                    if (e.getValue() != null)
+                    {
+                        published.put(e.getKey(), e.getValue());
+                    }
+                }
+                intervalsSinceFullSnapshot++;
+                return delta;
+            }
+        }
+
+        Map<String, String> published = new HashMap<>();
+
+        for (ColibriStatsExtension.Stat stat : list)
+        {
+            String name = stat.getName();
+            Object value = stat.getValue();
+
+            if (name != null && value != null)
+            {
+                published.putIfAbsent(name, value.toString());
+            }
+        }
+        this.published = published;
+        intervalsSinceFullSnapshot = 0;
+        return stats;
+    }
+
+    /**
+     * Makes the next call to {@link #publish(ColibriStatsExtension)} publish
+     * a full set of stats, e.g. because the receivers have changed.
+     */
+    public synchronized void reset()
+    {
+        published = null;
+    }
+
+    /**
+     * Sets the threshold of a numeric stat, i.e. the amount by which its
+     * value has to differ from the last published one for it to be
+     * published again.
+     *
+     * @param name the name of the stat.
+     * @param threshold the threshold, or <tt>0</tt> to publish all changes.
+     */
+    public void setThreshold(String name, double threshold)
+    {
+        if (threshold < 0 || Double.isNaN(threshold))
+        {
+            throw new IllegalArgumentException("threshold " + threshold);
+        }
+        if (threshold == 0)
+            thresholds.remove(name);
+        else
+            thresholds.put(name, threshold);
+    }
+}
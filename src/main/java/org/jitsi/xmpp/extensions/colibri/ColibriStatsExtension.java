@@ -16,6 +16,8 @@
 package org.jitsi.xmpp.extensions.colibri;
 
 import java.util.*;
+import java.util.Objects;
+import java.util.concurrent.atomic.*;
 
 import org.jitsi.xmpp.extensions.*;
 
@@ -51,6 +53,13 @@ public class ColibriStatsExtension
     public static final String NAMESPACE
         = "http://jitsi.org/protocol/colibri";
 
+    /**
+     * The XML name of the attribute which marks a <tt>stats</tt> extension
+     * which only carries the stats that changed since the previous one, see
+     * {@link ColibriStatsDeltaPublisher}.
+     */
+    public static final String DELTA_ATTR_NAME = "delta";
+
     /**
      * The name of the bit rate statistic for download.
      */
@@ -85,16 +94,19 @@ public class ColibriStatsExtension
 
     /**
      * The name of the conference sizes statistic.
+     * It is a histogram, see {@link #getValueAsLongArray(String)}.
      */
     public static final String CONFERENCE_SIZES = "conference_sizes";
 
     /**
      * The number of conferences by the number of audio senders.
+     * It is a histogram, see {@link #getValueAsLongArray(String)}.
      */
     public static final String CONFERENCES_BY_AUDIO_SENDERS = "conferences_by_audio_senders";
 
     /**
      * The number of conferences by the number of video senders.
+     * It is a histogram, see {@link #getValueAsLongArray(String)}.
      */
     public static final String CONFERENCES_BY_VIDEO_SENDERS = "conferences_by_video_senders";
 
@@ -433,33 +445,6 @@ public class ColibriStatsExtension
      */
     public static final String TOTAL_DOMINANT_SPEAKER_CHANGES = "total_dominant_speaker_changes";
 
-    /**
-     * Tries to parse an object as an integer, returns null on failure.
-     * @param obj the object to parse.
-     */
-    private static Integer getInt(Object obj)
-    {
-        if (obj == null)
-        {
-            return null;
-        }
-        if (obj instanceof Integer)
-        {
-            return (Integer) obj;
-        }
-
-        String str = obj.toString();
-        try
-        {
-            return Integer.valueOf(str);
-        }
-        catch (NumberFormatException e)
-        {
-            logger.error("Error parsing an int: " + obj);
-        }
-        return null;
-    }
-
     /**
      * Creates a deep copy of a {@link ColibriStatsExtension}.
      * @param source the {@link ColibriStatsExtension} to copy.
@@ -471,7 +456,8 @@ public class ColibriStatsExtension
         ColibriStatsExtension destination
             = AbstractPacketExtension.clone(source);
 
-        for (Stat stat : source.getChildExtensionsOfType(Stat.class))
+        for (Stat stat
+                : source.getStats())
         {
             destination.addStat(Stat.clone(stat));
         }
@@ -479,6 +465,17 @@ public class ColibriStatsExtension
         return destination;
     }
 
+    /**
+     * The index of the stats of this extension by name, built on demand.
+     */
+    private volatile StatIndex statIndex;
+
+    /**
+     * The number of times that a stat of this extension has been added,
+     * removed or renamed, which invalidates {@link #statIndex}.
+     */
+    private final AtomicInteger statChanges = new AtomicInteger();
+
     /**
      * Constructs new <tt>ColibriStatsExtension</tt>
      */
@@ -498,7 +495,7 @@ public class ColibriStatsExtension
 
     /**
      * Adds a new {@link Stat} instance with a specific name and a specific
-     * value to the list of stats.
+     * value to the list of stats. See {@link Stat#setValue(Object)}.
      * @param name the name.
      * @param value the value.
      */
@@ -507,21 +504,110 @@ public class ColibriStatsExtension
         addStat(new Stat(name, value));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Tells a {@link Stat} that it is included in this extension, so that
+     * renaming it invalidates the index of the stats by name.
+     */
+    @Override
+    public void addChildExtension(ExtensionElement childExtension)
+    {
+        super.addChildExtension(childExtension);
+        if (childExtension instanceof Stat)
+        {
+            ((Stat) childExtension).extensions.add(this);
+            statChanges.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeChildExtension(ExtensionElement childExtension)
+    {
+        boolean removed = super.removeChildExtension(childExtension);
+
+        if (removed && childExtension instanceof Stat)
+        {
+            ((Stat) childExtension).extensions.remove(this);
+            statChanges.incrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * Notifies this extension that one of its stats has been renamed.
+     */
+    private void statRenamed()
+    {
+        statChanges.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned list is unmodifiable, so that the stats are only added
+     * and removed through {@link #addChildExtension(ExtensionElement)} and
+     * {@link #removeChildExtension(ExtensionElement)}, which keep the index
+     * of the stats by name up to date.
+     */
+    @Override
+    public List<? extends ExtensionElement> getChildExtensions()
+    {
+        return Collections.unmodifiableList(super.getChildExtensions());
+    }
+
+    /**
+     * Gets the stats of this extension, without copying them.
+     *
+     * @return an unmodifiable snapshot of the stats of this extension.
+     */
+    public List<Stat> getStats()
+    {
+        return getStatIndex().list;
+    }
+
     /**
      * @return the first {@link Stat}, if any, with a specific name.
      * @param name the name of the stat to match.
      */
     public Stat getStat(String name)
     {
-        for (Stat stat : getChildExtensionsOfType(Stat.class))
+        return getStatIndex().stats.get(name);
+    }
+
+    /**
+     * Gets the index of the stats of this extension by name, rebuilding it if
+     * the stats have been added, removed or renamed since it was built.
+     *
+     * @return the index of the stats of this extension by name.
+     */
+    private StatIndex getStatIndex()
+    {
+        // Read the number of changes first, so that a concurrent change
+        // makes the new index stale rather than valid.
+        int changes = statChanges.get();
+        StatIndex index = statIndex;
+
+        if (index == null || index.changes != changes)
         {
-            if (stat.getName().equals(name))
+            List<Stat> stats = new ArrayList<>();
+            List<? extends ExtensionElement> children
+                = super.getChildExtensions();
+
+            synchronized (children)
             {
-                return stat;
+                for (ExtensionElement child : children)
+                {
+                    if (child instanceof Stat)
+                        stats.add((Stat) child);
+                }
             }
+            statIndex = index = new StatIndex(stats, changes);
         }
-
-        return null;
+        return index;
     }
 
     /**
@@ -535,6 +621,31 @@ public class ColibriStatsExtension
         return stat == null ? null : stat.getValue();
     }
 
+    /**
+     * Gets whether this extension only carries the stats that changed since
+     * the previous one published by the same entity.
+     *
+     * @return <tt>true</tt> if this extension is a delta.
+     */
+    public boolean isDelta()
+    {
+        return getAttributeAsBoolean(DELTA_ATTR_NAME, false);
+    }
+
+    /**
+     * Sets whether this extension only carries the stats that changed since
+     * the previous one published by the same entity.
+     *
+     * @param delta <tt>true</tt> if this extension is a delta.
+     */
+    public void setDelta(boolean delta)
+    {
+        if (delta)
+            setAttribute(DELTA_ATTR_NAME, true);
+        else
+            removeAttribute(DELTA_ATTR_NAME);
+    }
+
     /**
      * Tries to get the value of the stat with the given {@code name} as a
      * {@link String}. If there is no stat with the given name, or it has no
@@ -568,13 +679,146 @@ public class ColibriStatsExtension
      */
     public Integer getValueAsInt(String name)
     {
-        return getInt(getValue(name));
+        Stat stat = getStat(name);
+        Long value = (stat == null) ? null : stat.getValueAsLong();
+
+        if (value == null)
+        {
+            return null;
+        }
+        if (value != value.intValue())
+        {
+            logger.error("Error parsing an int: " + value);
+            return null;
+        }
+        return value.intValue();
     }
 
-    @Override
-    public List<? extends ExtensionElement> getChildExtensions()
+    /**
+     * Tries to get the value of the stat with the given {@code name} as a
+     * {@link Long}. If there is no stat with the given name, or it has no
+     * value, returns {@code null}. Otherwise, it returns the value of the
+     * stat as a {@link Long} (or {@code null} if it is not an integer). The
+     * value is parsed once and kept for later calls.
+     *
+     * @param name the name of the stat.
+     * @return a {@link Long} representation of the value of the stat with
+     * the given {@code name}, or {@code null}.
+     */
+    public Long getValueAsLong(String name)
     {
-        return Collections.unmodifiableList(super.getChildExtensions());
+        Stat stat = getStat(name);
+
+        return (stat == null) ? null : stat.getValueAsLong();
+    }
+
+    /**
+     * Tries to get the value of the stat with the given {@code name} as a
+     * {@link Double}. If there is no stat with the given name, or it has no
+     * value, returns {@code null}. Otherwise, it returns the value of the
+     * stat as a {@link Double} (or {@code null} if it is not a number). The
+     * value is parsed once and kept for later calls.
+     *
+     * @param name the name of the stat.
+     * @return a {@link Double} representation of the value of the stat with
+     * the given {@code name}, or {@code null}.
+     */
+    public Double getValueAsDouble(String name)
+    {
+        Stat stat = getStat(name);
+
+        return (stat == null) ? null : stat.getValueAsDouble();
+    }
+
+    /**
+     * Gets the value of the stat with the given {@code name} as a
+     * <tt>double</tt>, without boxing. The value is parsed once and kept for
+     * later calls.
+     *
+     * @param name the name of the stat.
+     * @param defaultValue the value to return if there is no stat with the
+     * given {@code name} or its value is not a number.
+     * @return the value of the stat with the given {@code name}, or
+     * <tt>defaultValue</tt>.
+     */
+    public double getValueAsDouble(String name, double defaultValue)
+    {
+        Stat stat = getStat(name);
+
+        return (stat == null)
+            ? defaultValue
+            : stat.getValueAsDouble(defaultValue);
+    }
+
+    /**
+     * Tries to get the value of the stat with the given {@code name} as a
+     * histogram, i.e. an array of integers such as the value of
+     * {@link #CONFERENCE_SIZES}. If there is no stat with the given name, or
+     * it has no value, returns {@code null}. Otherwise, it returns the
+     * parsed value (or {@code null} if it is not an array of integers). The
+     * value is parsed once and kept for later calls.
+     *
+     * @param name the name of the stat.
+     * @return a copy of the histogram in the stat with the given
+     * {@code name}, or {@code null}.
+     */
+    public long[] getValueAsLongArray(String name)
+    {
+        Stat stat = getStat(name);
+
+        return (stat == null) ? null : stat.getValueAsLongArray();
+    }
+
+    /**
+     * Adds a new {@link Stat} instance with a specific name and a specific
+     * histogram value to the list of stats.
+     * @param name the name.
+     * @param value the value.
+     */
+    public void addStat(String name, long[] value)
+    {
+        Stat stat = new Stat();
+
+        stat.setName(name);
+        stat.setValue(value);
+        addStat(stat);
+    }
+
+    /**
+     * Sums the histograms in a specific stat of a number of
+     * <tt>ColibriStatsExtension</tt>s, e.g. the {@link #CONFERENCE_SIZES} of
+     * all bridges of a region. The histograms may have different lengths,
+     * the missing elements of the shorter ones count as <tt>0</tt>. The
+     * extensions without a (valid) histogram in the stat are ignored.
+     *
+     * @param name the name of the stat.
+     * @param stats the <tt>ColibriStatsExtension</tt>s.
+     * @return the sum of the histograms, which is empty if there are none.
+     */
+    public static long[] mergeHistograms(
+            String name,
+            Iterable<ColibriStatsExtension> stats)
+    {
+        long[] sum = new long[0];
+
+        for (ColibriStatsExtension extension : stats)
+        {
+            Stat stat = extension.getStat(name);
+            long[] histogram = (stat == null) ? null : stat.getHistogram();
+
+            if (histogram != null)
+            {
+                if (histogram.length > sum.length)
+                {
+                    sum = Arrays.copyOf(sum, histogram.length);
+                }
+                for (int i = 0; i < histogram.length; i++)
+                {
+                    sum[i] += histogram[i];
+                }
+            }
+        }
+        return sum;
     }
 
     public static class Stat
@@ -600,6 +844,29 @@ public class ColibriStatsExtension
          */
         public static final String VALUE_ATTR_NAME = "value";
 
+        /**
+         * The <tt>ColibriStatsExtension</tt>s which include this stat, and
+         * whose indices are invalidated when it is renamed.
+         */
+        final WeakContainers<ColibriStatsExtension> extensions
+            = new WeakContainers<>();
+
+        /**
+         * The value of this stat which {@link #getValueAsLong()} last failed
+         * to parse, so that the failure is logged once.
+         */
+        private volatile Object invalidLong;
+
+        /**
+         * The <tt>double</tt> parsed from the value of this stat, if any.
+         */
+        private volatile ParsedDouble parsedDouble;
+
+        /**
+         * The histogram parsed from the value of this stat, if any.
+         */
+        private volatile ParsedHistogram parsedHistogram;
+
         public Stat()
         {
             super(NAMESPACE, ELEMENT_NAME);
@@ -654,31 +921,443 @@ public class ColibriStatsExtension
         }
 
         /**
+         * Gets the value of this stat as a {@link Long}. The value is parsed
+         * once and kept for later calls.
+         *
+         * @return the value of this stat, or <tt>null</tt> if it has no value
+         * or its value is not an integer.
+         */
+        public Long getValueAsLong()
+        {
+            if (isLongAttribute(VALUE_ATTR_NAME))
+            {
+                return getAttributeAsLong(VALUE_ATTR_NAME, 0);
+            }
+
+            Object value = getValue();
+
+            // The value is the same (String) instance until it is changed, so
+            // a value which failed to parse is only logged once.
+            if (value == null || value == invalidLong)
+            {
+                return null;
+            }
+            try
+            {
+                return getAttributeAsLong(VALUE_ATTR_NAME, 0);
+            }
+            catch (NumberFormatException e)
+            {
+                invalidLong = value;
+                logger.error("Error parsing a long: " + value);
+                return null;
+            }
+        }
+
+        /**
+         * Gets the value of this stat as a {@link Double}. The value is parsed
+         * once and kept for later calls.
+         *
+         * @return the value of this stat, or <tt>null</tt> if it has no value
+         * or its value is not a number.
+         */
+        public Double getValueAsDouble()
+        {
+            double value = getValueAsDouble(Double.NaN);
+
+            return Double.isNaN(value) ? null : value;
+        }
+
+        /**
+         * Gets the value of this stat as a <tt>double</tt>, without boxing.
+         * The value is parsed once and kept for later calls.
+         *
+         * @param defaultValue the value to return if this stat has no value
+         * or its value is not a number.
+         * @return the value of this stat, or <tt>defaultValue</tt>.
+         */
+        public double getValueAsDouble(double defaultValue)
+        {
+            // A value set as a long would be formatted anew by getValue(), so
+            // it would never hit parsedDouble.
+            if (isLongAttribute(VALUE_ATTR_NAME))
+            {
+                return getAttributeAsLong(VALUE_ATTR_NAME, 0);
+            }
+
+            Object value = getValue();
+
+            if (value == null)
+            {
+                return defaultValue;
+            }
+
+            ParsedDouble parsed = parsedDouble;
+
+            // The value is the same (String) instance until it is changed, so
+            // a value which failed to parse is only logged once.
+            if (parsed == null || parsed.source != value)
+            {
+                try
+                {
+                    parsed
+                        = new ParsedDouble(
+                                value,
+                                Double.parseDouble(value.toString()));
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.error("Error parsing a double: " + value);
+                    parsed = new ParsedDouble(value);
+                }
+                parsedDouble = parsed;
+            }
+            return parsed.valid ? parsed.value : defaultValue;
+        }
+
+        /**
+         * Gets the value of this stat as a histogram, i.e. an array of
+         * integers in the format of e.g. {@link #CONFERENCE_SIZES}:
+         * <tt>[1,4,2]</tt>. The value is parsed once and kept for later
+         * calls.
+         *
+         * @return a copy of the value of this stat, or <tt>null</tt> if it
+         * has no value or its value is not an array of integers.
+         */
+        public long[] getValueAsLongArray()
+        {
+            long[] histogram = getHistogram();
+
+            return (histogram == null) ? null : histogram.clone();
+        }
+
+        /**
+         * Implements {@link #getValueAsLongArray()} without copying the
+         * parsed histogram, which must not be modified.
+         *
+         * @return the value of this stat, or <tt>null</tt> if it has no value
+         * or its value is not an array of integers.
+         */
+        long[] getHistogram()
+        {
+            Object value = getValue();
+
+            if (value == null)
+            {
+                return null;
+            }
+
+            ParsedHistogram parsed = parsedHistogram;
+
+            // The value is the same (String) instance until it is changed, so
+            // a value which failed to parse is only logged once.
+            if (parsed == null || parsed.source != value)
+            {
+                try
+                {
+                    parsed
+                        = new ParsedHistogram(
+                                value,
+                                parseHistogram(value.toString()));
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.error("Error parsing a histogram: " + value);
+                    parsed = new ParsedHistogram(value, null);
+                }
+                parsedHistogram = parsed;
+            }
+            return parsed.histogram;
+        }
+
+        /**
+         * Parses a histogram, i.e. a (JSON) array of integers.
+         *
+         * @param s the <tt>String</tt> to parse.
+         * @return the parsed histogram.
+         * @throws NumberFormatException if <tt>s</tt> is not an array of
+         * integers.
+         */
+        private static long[] parseHistogram(String s)
+        {
+            int begin = 0;
+            int end = s.length();
+
+            while (begin < end && Character.isWhitespace(s.charAt(begin)))
+                begin++;
+            while (end > begin && Character.isWhitespace(s.charAt(end - 1)))
+                end--;
+            if (end - begin < 2
+                    || s.charAt(begin) != '['
+                    || s.charAt(end - 1) != ']')
+            {
+                throw new NumberFormatException(s);
+            }
+            begin++;
+            end--;
+
+            int count = 1;
+            boolean empty = true;
+
+            for (int i = begin; i < end; i++)
+            {
+                char c = s.charAt(i);
+
+                if (c == ',')
+                    count++;
+                else if (!Character.isWhitespace(c))
+                    empty = false;
+            }
+            if (empty)
+            {
+                return new long[0];
+            }
+
+            long[] histogram = new long[count];
+
+            for (int i = 0, from = begin; i < count; i++)
+            {
+                int to = s.indexOf(',', from);
+
+                if (to < 0 || to > end)
+                {
+                    to = end;
+                }
+                histogram[i] = Long.parseLong(s.substring(from, to).trim());
+                from = to + 1;
+            }
+            return histogram;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Keeps track of the renames of stats, so that the stats of a
+         * {@link ColibriStatsExtension} may be looked up by name.
+         */
+        @Override
+        public void setAttribute(String name, Object value)
+        {
+            boolean naming = NAME_ATTR_NAME.equals(name);
+            String oldName = naming ? getName() : null;
+
+            super.setAttribute(name, value);
+            if (naming && !Objects.equals(oldName, getName()))
+            {
+                extensions.forEach(ColibriStatsExtension::statRenamed);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Keeps track of the renames of stats, so that the stats of a
+         * {@link ColibriStatsExtension} may be looked up by name.
+         */
+        @Override
+        public void removeAttribute(String name)
+        {
+            boolean rename = NAME_ATTR_NAME.equals(name) && getName() != null;
+
+            super.removeAttribute(name);
+            if (rename)
+            {
+                extensions.forEach(ColibriStatsExtension::statRenamed);
+            }
+        }
+
+        /**
+         * Sets the value of this stat. As before, {@link #getValue()} returns
+         * the <tt>String</tt> form of the value, but a boxed integer or
+         * <tt>Double</tt> is also kept as a number (see
+         * {@link #setLongValue(long)} and {@link #setDoubleValue(double)}).
+         *
          * @param value the value to set
          */
         public void setValue(Object value)
+        {
+            if (value instanceof Long
+                    || value instanceof Integer
+                    || value instanceof Short
+                    || value instanceof Byte)
+            {
+                setLongValue(((Number) value).longValue());
+            }
+            else if (value instanceof Double)
+            {
+                setDoubleValue((Double) value);
+            }
+            else
+            {
+                setAttribute(VALUE_ATTR_NAME, value);
+            }
+        }
+
+        /**
+         * Sets the value of this stat to a specific integer, which is kept as
+         * a number rather than a <tt>String</tt>.
+         *
+         * @param value the value to set
+         */
+        public void setLongValue(long value)
         {
             setAttribute(VALUE_ATTR_NAME, value);
         }
 
+        /**
+         * Sets the value of this stat to a specific floating-point number,
+         * which is kept for {@link #getValueAsDouble()}.
+         *
+         * @param value the value to set
+         */
+        public void setDoubleValue(double value)
+        {
+            String s = Double.toString(value);
+
+            setAttribute(VALUE_ATTR_NAME, s);
+            parsedDouble = new ParsedDouble(getValue(), value);
+        }
+
+        /**
+         * Sets the value of this stat to a specific histogram, which is kept
+         * for {@link #getValueAsLongArray()}.
+         *
+         * @param value the value to set
+         */
+        public void setValue(long[] value)
+        {
+            StringBuilder s = new StringBuilder(2 + 4 * value.length);
+
+            s.append('[');
+            for (int i = 0; i < value.length; i++)
+            {
+                if (i != 0)
+                    s.append(',');
+                s.append(value[i]);
+            }
+            s.append(']');
+
+            setAttribute(VALUE_ATTR_NAME, s.toString());
+            parsedHistogram = new ParsedHistogram(getValue(), value.clone());
+        }
+
         @Override
-        public String toXML()
+        public XmlStringBuilder appendXml(XmlStringBuilder xml)
         {
             String name = getName();
             Object value = getValue();
 
-            if ((name == null) || (value == null))
-            {
-                return "";
-            }
-            else
+            if ((name != null) && (value != null))
             {
-                return new XmlStringBuilder()
-                    .halfOpenElement(ELEMENT_NAME)
+                xml.halfOpenElement(ELEMENT_NAME)
                     .attribute(NAME_ATTR_NAME, name)
                     .attribute(VALUE_ATTR_NAME, value.toString())
-                    .closeEmptyElement()
-                    .toString();
+                    .closeEmptyElement();
+            }
+            return xml;
+        }
+    }
+
+    /**
+     * A <tt>double</tt> parsed from the value of a {@link Stat}.
+     */
+    private static class ParsedDouble
+    {
+        /**
+         * The value of the stat that {@link #value} was parsed from.
+         */
+        final Object source;
+
+        /**
+         * Whether {@link #source} was parsed successfully.
+         */
+        final boolean valid;
+
+        /**
+         * The parsed value.
+         */
+        final double value;
+
+        ParsedDouble(Object source, double value)
+        {
+            this.source = source;
+            this.valid = true;
+            this.value = value;
+        }
+
+        /**
+         * Initializes a <tt>ParsedDouble</tt> for a value which is not a
+         * number.
+         *
+         * @param source the value of the stat which failed to parse.
+         */
+        ParsedDouble(Object source)
+        {
+            this.source = source;
+            this.valid = false;
+            this.value = Double.NaN;
+        }
+    }
+
+    /**
+     * A histogram parsed from the value of a {@link Stat}.
+     */
+    private static class ParsedHistogram
+    {
+        /**
+         * The value of the stat that {@link #histogram} was parsed from.
+         */
+        final Object source;
+
+        /**
+         * The parsed histogram, or <tt>null</tt> if {@link #source} is not
+         * a histogram.
+         */
+        final long[] histogram;
+
+        ParsedHistogram(Object source, long[] histogram)
+        {
+            this.source = source;
+            this.histogram = histogram;
+        }
+    }
+
+    /**
+     * The stats of a <tt>ColibriStatsExtension</tt> by name (the first stat
+     * with a given name wins), valid for a specific number of changes of the
+     * stats.
+     */
+    private static class StatIndex
+    {
+        /**
+         * The (unmodifiable) list of stats that this index was built from.
+         */
+        final List<Stat> list;
+
+        /**
+         * The number of changes of the stats of the extension when this
+         * index was built.
+         */
+        final int changes;
+
+        /**
+         * The stats, mapped by name.
+         */
+        final Map<String, Stat> stats;
+
+        StatIndex(List<Stat> list, int changes)
+        {
+            this.list = Collections.unmodifiableList(list);
+            this.changes = changes;
+            stats = new HashMap<>(Math.max(4, list.size() * 4 / 3 + 1));
+            for (Stat stat : list)
+            {
+                String name = stat.getName();
+
+                if (name != null)
+                {
+                    stats.putIfAbsent(name, stat);
+                }
             }
         }
     }
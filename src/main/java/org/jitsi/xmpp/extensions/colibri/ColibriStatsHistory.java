@@ -0,0 +1,156 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import org.jxmpp.jid.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps the recent history of specific numeric stats (e.g.
+ * {@link ColibriStatsExtension#CPU_USAGE}) of a number of bridges, in one
+ * {@link StatRingBuffer} per bridge and stat, so that bridges may be
+ * selected by their smoothed load rather than by their latest sample.
+ * <p>
+ * The history is fed with the complete stats of the bridges, e.g. the ones
+ * merged by a {@link ColibriStatsDeltaMerger}.
+ */
+public class ColibriStatsHistory
+{
+    /**
+     * The weight of a new sample in the exponentially weighted moving
+     * averages.
+     */
+    private final double alpha;
+
+    /**
+     * The maximum number of samples kept per bridge and stat.
+     */
+    private final int capacity;
+
+    /**
+     * The histories of the bridges, by bridge JID. The buffers of a bridge
+     * are in the order of {@link #names}.
+     */
+    private final Map<Jid, StatRingBuffer[]> histories
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The names of the stats which are kept.
+     */
+    private final String[] names;
+
+    /**
+     * Initializes a new <tt>ColibriStatsHistory</tt> instance.
+     *
+     * @param names the names of the (numeric) stats to keep.
+     * @param capacity the maximum number of samples to keep per bridge and
+     * stat.
+     * @param alpha the weight, between <tt>0</tt> (exclusive) and
+     * <tt>1</tt> (inclusive), of a new sample in the exponentially weighted
+     * moving averages.
+     */
+    public ColibriStatsHistory(
+            Collection<String> names,
+            int capacity,
+            double alpha)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        if (!(alpha > 0 && alpha <= 1))
+        {
+            throw new IllegalArgumentException("alpha " + alpha);
+        }
+
+        this.names = new LinkedHashSet<>(names).toArray(new String[0]);
+        this.capacity = capacity;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Gets the history of a specific stat of a specific bridge.
+     *
+     * @param bridge the JID of the bridge.
+     * @param name the name of the stat.
+     * @return the history of the stat <tt>name</tt> of <tt>bridge</tt>, or
+     * <tt>null</tt> if no stats of <tt>bridge</tt> have been recorded or
+     * <tt>name</tt> is not kept.
+     */
+    public StatRingBuffer getHistory(Jid bridge, String name)
+    {
+        StatRingBuffer[] buffers = histories.get(bridge);
+
+        if (buffers != null)
+        {
+            for (int i = 0; i < names.length; i++)
+            {
+                if (names[i].equals(name))
+                {
+                    return buffers[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the stats of a specific bridge at a specific time. The stats
+     * which are kept but missing from <tt>stats</tt> (or not numbers) are
+     * not recorded.
+     *
+     * @param bridge the JID of the bridge.
+     * @param stats the complete stats of <tt>bridge</tt>.
+     * @param timeMillis the time of <tt>stats</tt> in milliseconds.
+     */
+    public void record(
+            Jid bridge,
+            ColibriStatsExtension stats,
+            long timeMillis)
+    {
+        StatRingBuffer[] buffers
+            = histories.computeIfAbsent(bridge, jid ->
+            {
+                StatRingBuffer[] b = new StatRingBuffer[names.length];
+
+                for (int i = 0; i < b.length; i++)
+                {
+                    b[i] = new StatRingBuffer(capacity, alpha);
+                }
+                return b;
+            });
+
+        for (int i = 0; i < names.length; i++)
+        {
+            buffers[i].append(
+                timeMillis,
+                stats.getValueAsDouble(names[i], Double.NaN));
+        }
+    }
+
+    /**
+     * Forgets the history of a specific bridge, e.g. because it has gone
+     * away.
+     *
+     * @param bridge the JID of the bridge.
+     */
+    public void remove(Jid bridge)
+    {
+        histories.remove(bridge);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+/**
+ * A map from (RTP) SSRCs, as primitive <tt>long</tt>s, to non-<tt>null</tt>
+ * values. It is an open-addressing hash table with linear probing and
+ * backward-shift deletion, so it neither boxes the SSRCs nor allocates
+ * entries.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @param <V> the type of the values.
+ */
+final class SSRCMap<V>
+{
+    /**
+     * The keys, at the same positions as their values in {@link #values}.
+     */
+    private long[] keys = new long[0];
+
+    /**
+     * The values. A <tt>null</tt> element denotes a free slot. Its length is
+     * zero or a power of two.
+     */
+    private Object[] values = new Object[0];
+
+    /**
+     * The number of entries in this map.
+     */
+    private int size;
+
+    /**
+     * Gets the value mapped to a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the value mapped to <tt>ssrc</tt>, or <tt>null</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long ssrc)
+    {
+        int slot = slotOf(ssrc);
+
+        return (slot < 0) ? null : (V) values[slot];
+    }
+
+    /**
+     * Maps a specific SSRC to a specific value.
+     *
+     * @param ssrc the SSRC.
+     * @param value the value, which must not be <tt>null</tt>.
+     * @return the value which was mapped to <tt>ssrc</tt> before, or
+     * <tt>null</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long ssrc, V value)
+    {
+        int slot = slotOf(ssrc);
+
+        if (slot >= 0)
+        {
+            V previous = (V) values[slot];
+
+            values[slot] = value;
+            return previous;
+        }
+
+        if ((size + 1) * 2 > values.length)
+            resize(Math.max(8, values.length * 2));
+
+        int mask = values.length - 1;
+
+        slot = hash(ssrc) & mask;
+        while (values[slot] != null)
+        {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = ssrc;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping of a specific SSRC, moving back the entries which
+     * follow it in its cluster.
+     *
+     * @param ssrc the SSRC.
+     * @return the value which was mapped to <tt>ssrc</tt>, or <tt>null</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long ssrc)
+    {
+        int slot = slotOf(ssrc);
+
+        if (slot < 0)
+            return null;
+
+        V removed = (V) values[slot];
+        int mask = values.length - 1;
+
+        // Backward-shift deletion: move back any entry that the free slot
+        // would otherwise make unreachable.
+        for (int next = (slot + 1) & mask;
+                values[next] != null;
+                next = (next + 1) & mask)
+        {
+            int home = hash(keys[next]) & mask;
+
+            if (((next - home) & mask) >= ((next - slot) & mask))
+            {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                slot = next;
+            }
+        }
+        values[slot] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Gets the number of entries in this map.
+     *
+     * @return the number of entries in this map.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the slot of a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the slot of <tt>ssrc</tt>, or <tt>-1</tt> if it is not mapped.
+     */
+    private int slotOf(long ssrc)
+    {
+        Object[] values = this.values;
+
+        if (values.length == 0)
+            return -1;
+
+        int mask = values.length - 1;
+
+        for (int slot = hash(ssrc) & mask;
+                values[slot] != null;
+                slot = (slot + 1) & mask)
+        {
+            if (keys[slot] == ssrc)
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Rehashes this map into a specific number of slots.
+     *
+     * @param capacity the new number of slots, a power of two.
+     */
+    private void resize(int capacity)
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int mask = capacity - 1;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldValues.length; i++)
+        {
+            if (oldValues[i] != null)
+            {
+                int slot = hash(oldKeys[i]) & mask;
+
+                while (values[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of an SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the hash of <tt>ssrc</tt>.
+     */
+    private static int hash(long ssrc)
+    {
+        long h = ssrc * 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32));
+    }
+}
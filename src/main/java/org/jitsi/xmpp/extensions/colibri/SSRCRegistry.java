@@ -0,0 +1,399 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * Keeps track of which channel of a conference owns each (RTP) SSRC, so that
+ * the owner of an SSRC can be found, and clashes detected, without walking
+ * all the contents, channels and sources of the conference. It is attached to
+ * the <tt>ColibriConferenceIQ</tt> which holds the state of a conference (see
+ * {@link ColibriConferenceIQ#getSSRCRegistry()}). {@link ColibriAnalyser}
+ * registers the sources which the bridge has acknowledged, and
+ * {@link ColibriBuilder} checks the sources of a request against it.
+ * <p>
+ * An SSRC is owned by the first channel which registers it. Registering it
+ * for another channel is a clash, which is reported to the caller and does
+ * not change the owner. Callers are expected to look for clashes (see
+ * {@link #findClashes(String, String, List)}) before they add the sources to
+ * a request or to the state of the conference.
+ */
+public final class SSRCRegistry
+{
+    /**
+     * The owners of the SSRCs.
+     */
+    private final SSRCMap<Owner> owners = new SSRCMap<>();
+
+    /**
+     * The SSRCs registered for each owner.
+     */
+    private final Map<Owner, SSRCSet> ssrcsByOwner = new HashMap<>();
+
+    /**
+     * Determines whether a specific SSRC is owned by a channel other than a
+     * specific one.
+     *
+     * @param ssrc the SSRC.
+     * @param contentName the name of the content of the channel.
+     * @param channelId the ID of the channel.
+     * @return <tt>true</tt> if <tt>ssrc</tt> is owned by another channel;
+     * otherwise, <tt>false</tt>
+     */
+    public synchronized boolean clashes(
+            long ssrc, String contentName, String channelId)
+    {
+        Owner owner = owners.get(ssrc);
+
+        return owner != null && !owner.is(contentName, channelId);
+    }
+
+    /**
+     * Gets the sources whose SSRCs are owned by a channel other than a
+     * specific one.
+     *
+     * @param contentName the name of the content of the channel.
+     * @param channelId the ID of the channel.
+     * @param sources the sources to check.
+     * @return the sources in <tt>sources</tt> whose SSRCs are owned by
+     * another channel.
+     */
+    public synchronized List<SourcePacketExtension> findClashes(
+            String contentName,
+            String channelId,
+            List<SourcePacketExtension> sources)
+    {
+        List<SourcePacketExtension> clashes = null;
+
+        for (SourcePacketExtension source : sources)
+        {
+            if (source.hasSSRC()
+                    && clashes(source.getSSRC(), contentName, channelId))
+            {
+                if (clashes == null)
+                    clashes = new ArrayList<>();
+                clashes.add(source);
+            }
+        }
+        return (clashes == null) ? Collections.emptyList() : clashes;
+    }
+
+    /**
+     * Gets the owner of a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the owner of <tt>ssrc</tt>, or <tt>null</tt> if it is not
+     * registered.
+     */
+    public synchronized Owner getOwner(long ssrc)
+    {
+        return owners.get(ssrc);
+    }
+
+    /**
+     * Gets the SSRCs registered for a specific channel.
+     *
+     * @param contentName the name of the content of the channel.
+     * @param channelId the ID of the channel.
+     * @return the SSRCs registered for the channel.
+     */
+    public synchronized long[] getSSRCs(String contentName, String channelId)
+    {
+        SSRCSet ssrcs
+            = ssrcsByOwner.get(new Owner(null, contentName, channelId));
+
+        if (ssrcs == null)
+            return new long[0];
+
+        long[] result = new long[ssrcs.size()];
+
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = 0xffffffffL & ssrcs.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Registers the SSRCs of the sources of a specific channel.
+     *
+     * @param contentName the name of the content of <tt>channel</tt>.
+     * @param channel the channel.
+     * @return the sources of <tt>channel</tt> whose SSRCs are owned by other
+     * channels (and were, consequently, not registered).
+     */
+    public List<SourcePacketExtension> registerChannel(
+            String contentName, ColibriConferenceIQ.Channel channel)
+    {
+        return
+            registerSources(
+                    contentName,
+                    channel.getEndpoint(),
+                    channel.getID(),
+                    channel.getSourcesView(),
+                    false);
+    }
+
+    /**
+     * Sets the sources of a specific channel, i.e. registers the SSRCs of
+     * specific sources for it and unregisters its other SSRCs.
+     *
+     * @param contentName the name of the content of <tt>channel</tt>.
+     * @param channel the channel.
+     * @param sources the sources of <tt>channel</tt>.
+     * @return the sources whose SSRCs are owned by other channels (and were,
+     * consequently, not registered).
+     */
+    public List<SourcePacketExtension> setSources(
+            String contentName,
+            ColibriConferenceIQ.Channel channel,
+            List<SourcePacketExtension> sources)
+    {
+        return
+            registerSources(
+                    contentName,
+                    channel.getEndpoint(),
+                    channel.getID(),
+                    sources,
+                    true);
+    }
+
+    /**
+     * Gets the number of registered SSRCs.
+     *
+     * @return the number of registered SSRCs.
+     */
+    public synchronized int size()
+    {
+        return owners.size();
+    }
+
+    /**
+     * Unregisters a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the owner of <tt>ssrc</tt>, or <tt>null</tt> if it was not
+     * registered.
+     */
+    public synchronized Owner unregister(long ssrc)
+    {
+        Owner owner = owners.remove(ssrc);
+
+        if (owner != null)
+        {
+            SSRCSet ssrcs = ssrcsByOwner.get(owner);
+
+            ssrcs.remove((int) ssrc);
+            if (ssrcs.isEmpty())
+                ssrcsByOwner.remove(owner);
+        }
+        return owner;
+    }
+
+    /**
+     * Unregisters the SSRCs of a specific channel, e.g. because it expired.
+     *
+     * @param contentName the name of the content of the channel.
+     * @param channelId the ID of the channel.
+     * @return the number of SSRCs which were unregistered.
+     */
+    public synchronized int unregisterChannel(
+            String contentName, String channelId)
+    {
+        SSRCSet ssrcs
+            = ssrcsByOwner.remove(new Owner(null, contentName, channelId));
+
+        if (ssrcs == null)
+            return 0;
+
+        ssrcs.forEach(ssrc -> owners.remove(0xffffffffL & ssrc));
+        return ssrcs.size();
+    }
+
+    /**
+     * Registers the SSRCs of specific sources for a specific channel.
+     *
+     * @param contentName the name of the content of the channel.
+     * @param endpoint the ID of the endpoint of the channel.
+     * @param channelId the ID of the channel.
+     * @param sources the sources.
+     * @param replace <tt>true</tt> to unregister the SSRCs of the channel
+     * which are not in <tt>sources</tt>.
+     * @return the sources whose SSRCs are owned by other channels.
+     */
+    private synchronized List<SourcePacketExtension> registerSources(
+            String contentName,
+            String endpoint,
+            String channelId,
+            List<SourcePacketExtension> sources,
+            boolean replace)
+    {
+        if (channelId == null)
+            return Collections.emptyList();
+
+        Owner owner = new Owner(endpoint, contentName, channelId);
+        SSRCSet previous = replace ? ssrcsByOwner.remove(owner) : null;
+        SSRCSet ssrcs
+            = replace
+                ? new SSRCSet()
+                : ssrcsByOwner.computeIfAbsent(owner, k -> new SSRCSet());
+        List<SourcePacketExtension> clashes = null;
+
+        for (SourcePacketExtension source : sources)
+        {
+            if (!source.hasSSRC())
+                continue;
+
+            long ssrc = source.getSSRC();
+            Owner existing = owners.get(ssrc);
+
+            if (existing == null || existing.equals(owner))
+            {
+                // The latest endpoint of the channel is the one reported.
+                owners.put(ssrc, owner);
+                ssrcs.add((int) ssrc);
+            }
+            else
+            {
+                if (clashes == null)
+                    clashes = new ArrayList<>();
+                clashes.add(source);
+            }
+        }
+        if (previous != null)
+        {
+            previous.forEach(ssrc -> {
+                if (!ssrcs.contains(ssrc))
+                    owners.remove(0xffffffffL & ssrc);
+            });
+        }
+        if (ssrcs.isEmpty())
+            ssrcsByOwner.remove(owner);
+        else
+            ssrcsByOwner.put(owner, ssrcs);
+
+        return (clashes == null) ? Collections.emptyList() : clashes;
+    }
+
+    /**
+     * The channel which owns an SSRC. Owners are equal if they denote the same
+     * channel, i.e. if their content names and channel IDs are equal.
+     */
+    public static final class Owner
+    {
+        /**
+         * The name of the content of the channel.
+         */
+        private final String contentName;
+
+        /**
+         * The ID of the channel.
+         */
+        private final String channelId;
+
+        /**
+         * The ID of the endpoint of the channel.
+         */
+        private final String endpoint;
+
+        /**
+         * Initializes a new <tt>Owner</tt> instance.
+         *
+         * @param endpoint the ID of the endpoint of the channel.
+         * @param contentName the name of the content of the channel.
+         * @param channelId the ID of the channel.
+         */
+        private Owner(String endpoint, String contentName, String channelId)
+        {
+            this.endpoint = endpoint;
+            this.contentName = contentName;
+            this.channelId = channelId;
+        }
+
+        /**
+         * Gets the ID of the channel.
+         *
+         * @return the ID of the channel.
+         */
+        public String getChannelId()
+        {
+            return channelId;
+        }
+
+        /**
+         * Gets the name of the content of the channel.
+         *
+         * @return the name of the content of the channel.
+         */
+        public String getContentName()
+        {
+            return contentName;
+        }
+
+        /**
+         * Gets the ID of the endpoint of the channel.
+         *
+         * @return the ID of the endpoint of the channel, or <tt>null</tt> if
+         * it is not known.
+         */
+        public String getEndpoint()
+        {
+            return endpoint;
+        }
+
+        /**
+         * Determines whether this owner denotes a specific channel.
+         *
+         * @param contentName the name of the content of the channel.
+         * @param channelId the ID of the channel.
+         * @return <tt>true</tt> if this owner denotes the channel.
+         */
+        private boolean is(String contentName, String channelId)
+        {
+            return
+                Objects.equals(this.contentName, contentName)
+                    && Objects.equals(this.channelId, channelId);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Owner))
+                return false;
+
+            Owner other = (Owner) obj;
+
+            return other.is(contentName, channelId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(contentName, channelId);
+        }
+
+        @Override
+        public String toString()
+        {
+            return
+                "endpoint=" + endpoint + ", content=" + contentName
+                    + ", channel=" + channelId;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * An insertion-ordered set of (RTP) SSRCs stored as primitive <tt>int</tt>s.
+ * <p>
+ * The SSRCs are kept in insertion order in a dense array, which is what
+ * iteration and serialization read, without copying. Once the set grows past
+ * a few elements, an open-addressing hash table (with linear probing) of
+ * indexes into that array makes duplicate checks constant-time. Removing
+ * SSRCs compacts the array and rebuilds the table, so the bulk
+ * {@link #removeAll(int[])} should be preferred to repeated calls to
+ * {@link #remove(int)}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class SSRCSet
+{
+    /**
+     * The size up to which sets are searched linearly rather than through
+     * {@link #table}.
+     */
+    private static final int LINEAR_SEARCH_MAX_SIZE = 8;
+
+    /**
+     * The SSRCs in insertion order. Only the first {@link #size} elements are
+     * used.
+     */
+    private int[] ssrcs = ColibriConferenceIQ.NO_SSRCS;
+
+    /**
+     * The number of SSRCs in this set.
+     */
+    private int size;
+
+    /**
+     * The hash table of the indexes (plus one, so that <tt>0</tt> denotes a
+     * free slot) in {@link #ssrcs} of the SSRCs, or <tt>null</tt> while the
+     * set is small enough to be searched linearly. Its length is a power of
+     * two, at least twice {@link #size}.
+     */
+    private int[] table;
+
+    /**
+     * Initializes a new empty <tt>SSRCSet</tt>.
+     */
+    public SSRCSet()
+    {
+    }
+
+    /**
+     * Initializes a new <tt>SSRCSet</tt> with specific SSRCs.
+     *
+     * @param ssrcs the SSRCs, duplicates of which are ignored.
+     */
+    public SSRCSet(int[] ssrcs)
+    {
+        addAll(ssrcs);
+    }
+
+    /**
+     * Adds a specific SSRC to this set.
+     *
+     * @param ssrc the SSRC to add.
+     * @return <tt>true</tt> if this set did not already contain <tt>ssrc</tt>
+     */
+    public boolean add(int ssrc)
+    {
+        if (indexOf(ssrc) >= 0)
+            return false;
+
+        ensureCapacity(size + 1);
+        append(ssrc);
+        return true;
+    }
+
+    /**
+     * Adds specific SSRCs to this set.
+     *
+     * @param ssrcs the SSRCs to add.
+     * @return the number of SSRCs which were not already in this set.
+     */
+    public int addAll(int[] ssrcs)
+    {
+        if (ssrcs == null || ssrcs.length == 0)
+            return 0;
+
+        ensureCapacity(size + ssrcs.length);
+
+        int added = 0;
+
+        for (int ssrc : ssrcs)
+        {
+            if (indexOf(ssrc) < 0)
+            {
+                append(ssrc);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes all SSRCs from this set.
+     */
+    public void clear()
+    {
+        ssrcs = ColibriConferenceIQ.NO_SSRCS;
+        size = 0;
+        table = null;
+    }
+
+    /**
+     * Determines whether this set contains a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return <tt>true</tt> if this set contains <tt>ssrc</tt>
+     */
+    public boolean contains(int ssrc)
+    {
+        return indexOf(ssrc) >= 0;
+    }
+
+    /**
+     * Performs an action for each SSRC of this set, in insertion order. The
+     * set must not be modified by the action.
+     *
+     * @param action the action.
+     */
+    public void forEach(IntConsumer action)
+    {
+        int[] ssrcs = this.ssrcs;
+
+        for (int i = 0, size = this.size; i < size; i++)
+        {
+            action.accept(ssrcs[i]);
+        }
+    }
+
+    /**
+     * Gets the SSRC at a specific position in the insertion order of this
+     * set.
+     *
+     * @param index the position.
+     * @return the SSRC at <tt>index</tt>
+     * @throws IndexOutOfBoundsException if <tt>index</tt> is negative or not
+     * less than {@link #size()}
+     */
+    public int get(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+
+        return ssrcs[index];
+    }
+
+    /**
+     * Determines whether this set is empty.
+     *
+     * @return <tt>true</tt> if this set contains no SSRCs
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes a specific SSRC from this set.
+     *
+     * @param ssrc the SSRC to remove.
+     * @return <tt>true</tt> if this set contained <tt>ssrc</tt>
+     */
+    public boolean remove(int ssrc)
+    {
+        int index = indexOf(ssrc);
+
+        if (index < 0)
+            return false;
+
+        System.arraycopy(ssrcs, index + 1, ssrcs, index, size - index - 1);
+        size--;
+        rehash();
+        return true;
+    }
+
+    /**
+     * Removes specific SSRCs from this set.
+     *
+     * @param ssrcs the SSRCs to remove.
+     * @return the number of SSRCs which were in this set.
+     */
+    public int removeAll(int[] ssrcs)
+    {
+        if (ssrcs == null || ssrcs.length == 0 || size == 0)
+            return 0;
+
+        // Mark the removed positions, then compact once.
+        boolean[] removed = null;
+        int count = 0;
+
+        for (int ssrc : ssrcs)
+        {
+            int index = indexOf(ssrc);
+
+            if (index >= 0)
+            {
+                if (removed == null)
+                    removed = new boolean[size];
+                if (!removed[index])
+                {
+                    removed[index] = true;
+                    count++;
+                }
+            }
+        }
+        if (count != 0)
+        {
+            int j = 0;
+
+            for (int i = 0; i < size; i++)
+            {
+                if (!removed[i])
+                    this.ssrcs[j++] = this.ssrcs[i];
+            }
+            size = j;
+            rehash();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of SSRCs in this set.
+     *
+     * @return the number of SSRCs in this set.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the SSRCs of this set in a new array, in insertion order.
+     *
+     * @return the SSRCs of this set.
+     */
+    public int[] toArray()
+    {
+        return (size == 0)
+            ? ColibriConferenceIQ.NO_SSRCS
+            : Arrays.copyOf(ssrcs, size);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Appends a specific SSRC, which is not in this set, to {@link #ssrcs}
+     * and {@link #table}. The capacity must have been ensured.
+     *
+     * @param ssrc the SSRC to append.
+     */
+    private void append(int ssrc)
+    {
+        ssrcs[size++] = ssrc;
+        if (table != null)
+            insert(table, ssrc, size);
+        else if (size > LINEAR_SEARCH_MAX_SIZE)
+            rehash(ssrcs.length); // the capacity ensured by the caller
+    }
+
+    /**
+     * Ensures that {@link #ssrcs} (and {@link #table}, if any) can hold a
+     * specific number of SSRCs.
+     *
+     * @param capacity the number of SSRCs.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > ssrcs.length)
+        {
+            ssrcs
+                = Arrays.copyOf(
+                        ssrcs,
+                        Math.max(capacity, Math.max(4, ssrcs.length * 2)));
+        }
+        if (table != null && capacity * 2 > table.length)
+            rehash(capacity);
+    }
+
+    /**
+     * Gets the index in {@link #ssrcs} of a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the index of <tt>ssrc</tt>, or <tt>-1</tt> if it is not in this
+     * set.
+     */
+    private int indexOf(int ssrc)
+    {
+        int[] table = this.table;
+
+        if (table == null)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (ssrcs[i] == ssrc)
+                    return i;
+            }
+            return -1;
+        }
+
+        int mask = table.length - 1;
+
+        for (int slot = hash(ssrc) & mask, entry;
+                (entry = table[slot]) != 0;
+                slot = (slot + 1) & mask)
+        {
+            if (ssrcs[entry - 1] == ssrc)
+                return entry - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds {@link #table} for the current SSRCs.
+     */
+    private void rehash()
+    {
+        rehash(size);
+    }
+
+    /**
+     * Rebuilds {@link #table} for a specific number of SSRCs, or drops it if
+     * the set is small enough to be searched linearly.
+     *
+     * @param capacity the number of SSRCs for which to size the table.
+     */
+    private void rehash(int capacity)
+    {
+        if (capacity <= LINEAR_SEARCH_MAX_SIZE)
+        {
+            table = null;
+            return;
+        }
+
+        int[] table = new int[Integer.highestOneBit(capacity - 1) << 2];
+
+        for (int i = 0; i < size; i++)
+        {
+            insert(table, ssrcs[i], i + 1);
+        }
+        this.table = table;
+    }
+
+    /**
+     * Inserts an entry into a specific hash table.
+     *
+     * @param table the hash table.
+     * @param ssrc the SSRC.
+     * @param entry the index of <tt>ssrc</tt> in {@link #ssrcs} plus one.
+     */
+    private static void insert(int[] table, int ssrc, int entry)
+    {
+        int mask = table.length - 1;
+        int slot = hash(ssrc) & mask;
+
+        while (table[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    /**
+     * Spreads the bits of an SSRC. SSRCs are random, but tests and some
+     * endpoints use sequential ones.
+     *
+     * @param ssrc the SSRC.
+     * @return the hash of <tt>ssrc</tt>.
+     */
+    private static int hash(int ssrc)
+    {
+        int h = ssrc * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * The sources of a {@link ColibriConferenceIQ.Channel}, in insertion order,
+ * indexed by SSRC and by RID.
+ * <p>
+ * Two sources are considered the same if
+ * {@link SourcePacketExtension#sourceEquals(SourcePacketExtension)} says so,
+ * i.e. if both have the same SSRC, or if one of them has no SSRC and both
+ * have the same RID. Sources without either are never the same as another
+ * source.
+ * <p>
+ * Like the keys of a <tt>HashMap</tt>, the SSRC and RID of a source must not
+ * change while it is in an index.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class SourceIndex
+{
+    /**
+     * The sources in insertion order. <tt>SourcePacketExtension</tt> does
+     * not override <tt>equals</tt>, so they are compared by instance, and
+     * removing one does not have to scan them.
+     */
+    private final Set<SourcePacketExtension> sources = new LinkedHashSet<>();
+
+    /**
+     * The sources with SSRCs, by SSRC.
+     */
+    private final SSRCMap<SourcePacketExtension> sourcesBySSRC
+        = new SSRCMap<>();
+
+    /**
+     * The sources with RIDs, by RID, in insertion order. The lists rarely
+     * have more than one element.
+     */
+    private final Map<String, List<SourcePacketExtension>> sourcesByRid
+        = new HashMap<>();
+
+    /**
+     * Adds a specific source, unless this index already has the same source.
+     *
+     * @param source the source to add.
+     * @return <tt>true</tt> if <tt>source</tt> was added.
+     */
+    boolean add(SourcePacketExtension source)
+    {
+        if (find(source) != null)
+            return false;
+
+        // A source without SSRC and RID is never the same as another
+        // source, except itself.
+        if (!sources.add(source))
+            return false;
+        if (source.hasSSRC())
+            sourcesBySSRC.put(source.getSSRC(), source);
+        if (source.hasRid())
+        {
+            sourcesByRid
+                .computeIfAbsent(source.getRid(), k -> new ArrayList<>(1))
+                .add(source);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the source of this index which is the same as a specific source.
+     *
+     * @param source the source.
+     * @return the source of this index which is the same as <tt>source</tt>,
+     * or <tt>null</tt>.
+     */
+    SourcePacketExtension find(SourcePacketExtension source)
+    {
+        if (source.hasSSRC())
+        {
+            SourcePacketExtension found = getBySSRC(source.getSSRC());
+
+            if (found != null)
+                return found;
+        }
+        if (source.hasRid())
+        {
+            List<SourcePacketExtension> withRid
+                = sourcesByRid.get(source.getRid());
+
+            if (withRid != null)
+            {
+                boolean hasSSRC = source.hasSSRC();
+
+                for (SourcePacketExtension s : withRid)
+                {
+                    // Two sources with different SSRCs are different, even
+                    // if they have the same RID.
+                    if (!hasSSRC || !s.hasSSRC())
+                        return s;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the source with a specific SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the source with SSRC <tt>ssrc</tt>, or <tt>null</tt>.
+     */
+    SourcePacketExtension getBySSRC(long ssrc)
+    {
+        return sourcesBySSRC.get(ssrc);
+    }
+
+    /**
+     * Gets the first source with a specific RID.
+     *
+     * @param rid the RID.
+     * @return the first source added with RID <tt>rid</tt>, or <tt>null</tt>.
+     */
+    SourcePacketExtension getByRid(String rid)
+    {
+        List<SourcePacketExtension> withRid = sourcesByRid.get(rid);
+
+        return (withRid == null) ? null : withRid.get(0);
+    }
+
+    /**
+     * Gets the sources of this index in insertion order.
+     *
+     * @return the (live) collection of the sources of this index, which must
+     * not be modified.
+     */
+    Collection<SourcePacketExtension> getSources()
+    {
+        return sources;
+    }
+
+    /**
+     * Removes a specific source.
+     *
+     * @param source the source (instance) to remove.
+     * @return <tt>true</tt> if <tt>source</tt> was in this index.
+     */
+    boolean remove(SourcePacketExtension source)
+    {
+        boolean indexed = false;
+
+        if (source.hasSSRC())
+        {
+            if (getBySSRC(source.getSSRC()) != source)
+                return false;
+
+            sourcesBySSRC.remove(source.getSSRC());
+            indexed = true;
+        }
+        if (source.hasRid())
+        {
+            List<SourcePacketExtension> withRid
+                = sourcesByRid.get(source.getRid());
+
+            if (withRid != null && withRid.remove(source))
+            {
+                indexed = true;
+                if (withRid.isEmpty())
+                    sourcesByRid.remove(source.getRid());
+            }
+        }
+        if (!indexed && (source.hasSSRC() || source.hasRid()))
+            return false;
+
+        return sources.remove(source);
+    }
+
+    /**
+     * Gets the number of sources in this index.
+     *
+     * @return the number of sources in this index.
+     */
+    int size()
+    {
+        return sources.size();
+    }
+}
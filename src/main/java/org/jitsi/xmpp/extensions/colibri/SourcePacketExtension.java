@@ -97,7 +97,9 @@ public class SourcePacketExtension
      */
     public String getParameter(String name)
     {
-        for (ParameterPacketExtension param : getParameters())
+        for (ParameterPacketExtension param
+                : getUnmodifiableChildExtensionsOfType(
+                        ParameterPacketExtension.class))
         {
             if (name.equals(param.getName()))
                 return param.getValue();
@@ -112,9 +114,7 @@ public class SourcePacketExtension
      */
     public long getSSRC()
     {
-        String s = getAttributeAsString(SSRC_ATTR_NAME);
-
-        return (s == null) ? -1 : Long.parseLong(s);
+        return getAttributeAsLong(SSRC_ATTR_NAME, -1);
     }
 
     /**
@@ -130,7 +130,7 @@ public class SourcePacketExtension
         }
         else
         {
-            setAttribute(SSRC_ATTR_NAME, Long.toString(0xffffffffL & ssrc));
+            setAttribute(SSRC_ATTR_NAME, 0xffffffffL & ssrc);
         }
     }
 
@@ -141,7 +141,7 @@ public class SourcePacketExtension
      */
     public boolean hasSSRC()
     {
-        return getAttributeAsString(SSRC_ATTR_NAME) != null;
+        return hasAttribute(SSRC_ATTR_NAME);
     }
 
     /**
@@ -178,7 +178,7 @@ public class SourcePacketExtension
      */
     public boolean hasRid()
     {
-        return getAttribute(RID_ATTR_NAME) != null;
+        return hasAttribute(RID_ATTR_NAME);
     }
 
     /**
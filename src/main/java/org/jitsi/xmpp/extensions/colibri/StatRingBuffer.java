@@ -0,0 +1,319 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.util.*;
+
+/**
+ * Keeps the most recent samples of a numeric stat (e.g.
+ * {@link ColibriStatsExtension#CPU_USAGE}) in a fixed-capacity ring buffer of
+ * primitive arrays, so that appending a sample is <tt>O(1)</tt> and neither
+ * appending nor querying allocates. Once the buffer is full, each sample
+ * replaces the oldest one.
+ * <p>
+ * The windowed queries take the time of the oldest sample to consider and
+ * return {@link Double#NaN} if there are no samples in the window. Samples
+ * are expected to be appended in chronological order. The exponentially
+ * weighted moving average is maintained as the samples are appended, so it
+ * covers all samples rather than a window.
+ */
+public class StatRingBuffer
+{
+    /**
+     * The weight of a new sample in {@link #ewma}.
+     */
+    private final double alpha;
+
+    /**
+     * The exponentially weighted moving average of the samples.
+     */
+    private double ewma = Double.NaN;
+
+    /**
+     * The index at which the next sample is to be stored.
+     */
+    private int head;
+
+    /**
+     * The space in which the values of a window are sorted to compute a
+     * percentile.
+     */
+    private final double[] scratch;
+
+    /**
+     * The number of samples in this buffer.
+     */
+    private int size;
+
+    /**
+     * The times in milliseconds of the samples.
+     */
+    private final long[] times;
+
+    /**
+     * The values of the samples.
+     */
+    private final double[] values;
+
+    /**
+     * Initializes a new <tt>StatRingBuffer</tt> instance.
+     *
+     * @param capacity the maximum number of samples to keep.
+     * @param alpha the weight, between <tt>0</tt> (exclusive) and
+     * <tt>1</tt> (inclusive), of a new sample in the exponentially weighted
+     * moving average.
+     */
+    public StatRingBuffer(int capacity, double alpha)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        if (!(alpha > 0 && alpha <= 1))
+        {
+            throw new IllegalArgumentException("alpha " + alpha);
+        }
+
+        this.alpha = alpha;
+        times = new long[capacity];
+        values = new double[capacity];
+        scratch = new double[capacity];
+    }
+
+    /**
+     * Appends a sample, replacing the oldest one if this buffer is full.
+     * <tt>NaN</tt> values are ignored.
+     *
+     * @param timeMillis the time of the sample in milliseconds.
+     * @param value the value of the sample.
+     */
+    public synchronized void append(long timeMillis, double value)
+    {
+        if (Double.isNaN(value))
+        {
+            return;
+        }
+
+        times[head] = timeMillis;
+        values[head] = value;
+        head = (head + 1) % values.length;
+        if (size < values.length)
+        {
+            size++;
+        }
+        ewma = Double.isNaN(ewma) ? value : alpha * value + (1 - alpha) * ewma;
+    }
+
+    /**
+     * Gets the maximum number of samples that this buffer keeps.
+     *
+     * @return the capacity of this buffer.
+     */
+    public int capacity()
+    {
+        return values.length;
+    }
+
+    /**
+     * Gets the number of samples in a window.
+     *
+     * @param sinceMillis the time of the oldest sample to consider.
+     * @return the number of samples not older than <tt>sinceMillis</tt>.
+     */
+    public synchronized int count(long sinceMillis)
+    {
+        int count = 0;
+
+        for (int i = 0, index = newest();
+                i < size && times[index] >= sinceMillis;
+                i++, index = previous(index))
+        {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the exponentially weighted moving average of all samples
+     * appended to this buffer.
+     *
+     * @return the exponentially weighted moving average, or <tt>NaN</tt> if
+     * no samples have been appended.
+     */
+    public synchronized double ewma()
+    {
+        return ewma;
+    }
+
+    /**
+     * Gets the value of the most recent sample.
+     *
+     * @return the value of the most recent sample, or <tt>NaN</tt> if this
+     * buffer is empty.
+     */
+    public synchronized double latest()
+    {
+        return (size == 0) ? Double.NaN : values[newest()];
+    }
+
+    /**
+     * Gets the maximum value in a window.
+     *
+     * @param sinceMillis the time of the oldest sample to consider.
+     * @return the maximum value of the samples not older than
+     * <tt>sinceMillis</tt>, or <tt>NaN</tt> if there are none.
+     */
+    public synchronized double max(long sinceMillis)
+    {
+        double max = Double.NaN;
+
+        for (int i = 0, index = newest();
+                i < size && times[index] >= sinceMillis;
+                i++, index = previous(index))
+        {
+            if (!(values[index] <= max))
+            {
+                max = values[index];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the mean value in a window.
+     *
+     * @param sinceMillis the time of the oldest sample to consider.
+     * @return the mean value of the samples not older than
+     * <tt>sinceMillis</tt>, or <tt>NaN</tt> if there are none.
+     */
+    public synchronized double mean(long sinceMillis)
+    {
+        double sum = 0;
+        int count = 0;
+
+        for (int i = 0, index = newest();
+                i < size && times[index] >= sinceMillis;
+                i++, index = previous(index))
+        {
+            sum += values[index];
+            count++;
+        }
+        return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Gets the minimum value in a window.
+     *
+     * @param sinceMillis the time of the oldest sample to consider.
+     * @return the minimum value of the samples not older than
+     * <tt>sinceMillis</tt>, or <tt>NaN</tt> if there are none.
+     */
+    public synchronized double min(long sinceMillis)
+    {
+        double min = Double.NaN;
+
+        for (int i = 0, index = newest();
+                i < size && times[index] >= sinceMillis;
+                i++, index = previous(index))
+        {
+            if (!(values[index] >= min))
+            {
+                min = values[index];
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Gets the index of the most recent sample.
+     *
+     * @return the index of the most recent sample.
+     */
+    private int newest()
+    {
+        return previous(head);
+    }
+
+    /**
+     * Gets the 95th percentile of the values in a window.
+     *
+     * @param sinceMillis the time of the oldest sample to consider.
+     * @return the 95th percentile of the values of the samples not older
+     * than <tt>sinceMillis</tt>, or <tt>NaN</tt> if there are none.
+     */
+    public double p95(long sinceMillis)
+    {
+        return percentile(95, sinceMillis);
+    }
+
+    /**
+     * Gets a percentile (using the nearest-rank method) of the values in a
+     * window.
+     *
+     * @param percentile the percentile, between <tt>0</tt> (exclusive) and
+     * <tt>100</tt> (inclusive).
+     * @param sinceMillis the time of the oldest sample to consider.
+     * @return the percentile of the values of the samples not older than
+     * <tt>sinceMillis</tt>, or <tt>NaN</tt> if there are none.
+     */
+    public synchronized double percentile(double percentile, long sinceMillis)
+    {
+        if (!(percentile > 0 && percentile <= 100))
+        {
+            throw new IllegalArgumentException("percentile " + percentile);
+        }
+
+        int count = 0;
+
+        for (int i = 0, index = newest();
+                i < size && times[index] >= sinceMillis;
+                i++, index = previous(index))
+        {
+            scratch[count++] = values[index];
+        }
+        if (count == 0)
+        {
+            return Double.NaN;
+        }
+
+        Arrays.sort(scratch, 0, count);
+
+        int rank = (int) Math.ceil(percentile / 100 * count);
+
+        return scratch[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Gets the index preceding a specific index in the ring.
+     *
+     * @param index the index.
+     * @return the index preceding <tt>index</tt>.
+     */
+    private int previous(int index)
+    {
+        return (index == 0) ? values.length - 1 : index - 1;
+    }
+
+    /**
+     * Gets the number of samples in this buffer.
+     *
+     * @return the number of samples in this buffer.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+}
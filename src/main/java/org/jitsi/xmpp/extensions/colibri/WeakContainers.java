@@ -0,0 +1,101 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * The containers (e.g. the <tt>Content</tt>s of a <tt>Channel</tt>) which
+ * include an element and index it by some of its properties, so that the
+ * element can tell them when such a property changes. The containers are
+ * weakly referenced, so that keeping the element (e.g. in the state of a
+ * conference) does not keep the IQs from which it was taken.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @param <T> the type of the containers.
+ */
+final class WeakContainers<T>
+{
+    /**
+     * The containers, or <tt>null</tt> if the element has never been
+     * included into one. It rarely has more than one element.
+     */
+    private List<WeakReference<T>> refs;
+
+    /**
+     * Adds a specific container.
+     *
+     * @param container the container which has included the element.
+     */
+    synchronized void add(T container)
+    {
+        if (refs == null)
+            refs = new ArrayList<>(1);
+        else
+            refs.removeIf(ref -> ref.get() == null);
+        refs.add(new WeakReference<>(container));
+    }
+
+    /**
+     * Removes a specific container.
+     *
+     * @param container the container which has excluded the element.
+     */
+    synchronized void remove(T container)
+    {
+        if (refs != null)
+        {
+            refs.removeIf(ref -> {
+                T c = ref.get();
+
+                return c == null || c == container;
+            });
+        }
+    }
+
+    /**
+     * Performs an action for each of the containers which have not been
+     * collected. The action is performed without holding the lock of this
+     * instance.
+     *
+     * @param action the action to perform.
+     */
+    void forEach(Consumer<T> action)
+    {
+        List<T> containers;
+
+        synchronized (this)
+        {
+            if (refs == null || refs.isEmpty())
+                return;
+
+            containers = new ArrayList<>(refs.size());
+            for (Iterator<WeakReference<T>> i = refs.iterator(); i.hasNext();)
+            {
+                T c = i.next().get();
+
+                if (c == null)
+                    i.remove();
+                else
+                    containers.add(c);
+            }
+        }
+        containers.forEach(action);
+    }
+}
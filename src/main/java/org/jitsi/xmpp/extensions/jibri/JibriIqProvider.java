@@ -15,6 +15,8 @@
  */
 package org.jitsi.xmpp.extensions.jibri;
 
+import org.jitsi.xmpp.extensions.*;
+
 import org.apache.commons.lang3.StringUtils;
 
 import org.jivesoftware.smack.provider.*;
@@ -90,9 +92,12 @@ public class JibriIqProvider
                 iq.setSessionId(sessionId);
             }
 
+            // The application data is typically one of a few short JSON
+            // documents, whereas the IDs, addresses and names above are
+            // unique to a session, so only the former is pooled.
             String appData = parser.getAttributeValue("", JibriIq.APP_DATA_ATTR_NAME);
             if (StringUtils.isNotEmpty(appData)) {
-                iq.setAppData(appData);
+                iq.setAppData(StringPool.internValue(appData));
             }
 
             String failureStr
@@ -384,7 +384,7 @@ public class CandidatePacketExtension extends AbstractPacketExtension
      */
     public CandidateType getType()
     {
-        return CandidateType.valueOf(getAttributeAsString(TYPE_ATTR_NAME));
+        return getAttributeAsEnum(TYPE_ATTR_NAME, CandidateType.class);
     }
 
     /**
@@ -67,6 +67,7 @@ public class EncryptionPacketExtension
      */
     public void addCrypto(CryptoPacketExtension crypto)
     {
+        checkNotFrozen();
         if(!cryptoList.contains(crypto))
         {
             cryptoList.add(crypto);
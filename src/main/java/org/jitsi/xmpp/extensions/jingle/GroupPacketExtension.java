@@ -138,7 +138,7 @@ public class GroupPacketExtension
 
         String semantics = parser.getAttributeValue("", SEMANTICS_ATTR_NAME);
         if (semantics != null)
-            group.setSemantics(semantics);
+            group.setSemantics(StringPool.internValue(semantics));
 
         boolean done = false;
         int eventType;
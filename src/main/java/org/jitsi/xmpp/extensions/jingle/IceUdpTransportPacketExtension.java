@@ -165,10 +165,12 @@ public class IceUdpTransportPacketExtension
      */
     public void addCandidate(CandidatePacketExtension candidate)
     {
+        checkNotFrozen();
         synchronized(candidateList)
         {
             candidateList.add(candidate);
         }
+        modified();
     }
 
     /**
@@ -182,10 +184,19 @@ public class IceUdpTransportPacketExtension
      */
     public boolean removeCandidate(CandidatePacketExtension candidate)
     {
+        checkNotFrozen();
+
+        boolean removed;
+
         synchronized (candidateList)
         {
-            return candidateList.remove(candidate);
+            removed = candidateList.remove(candidate);
+        }
+        if (removed)
+        {
+            modified();
         }
+        return removed;
     }
 
     /**
@@ -211,7 +222,9 @@ public class IceUdpTransportPacketExtension
      */
     public void setRemoteCandidate(RemoteCandidatePacketExtension candidate)
     {
+        checkNotFrozen();
         this.remoteCandidate = candidate;
+        modified();
     }
 
     /**
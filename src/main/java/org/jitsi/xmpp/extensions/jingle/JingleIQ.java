@@ -155,7 +155,7 @@ public class JingleIQ extends IQ
             //content
             for(ContentPacketExtension cpe : contentList)
             {
-                bldr.append(cpe.toXML());
+                cpe.appendXml(bldr);
             }
 
             //reason
@@ -166,7 +166,7 @@ public class JingleIQ extends IQ
             //XXX: this is RTP specific so we should probably handle it in a
             //subclass
             if (sessionInfo != null)
-                bldr.append(sessionInfo.toXML());
+                sessionInfo.appendXml(bldr);
         }
 
         return bldr;
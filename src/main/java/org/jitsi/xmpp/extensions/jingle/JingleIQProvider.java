@@ -33,6 +33,50 @@ import org.xmlpull.v1.*;
  */
 public class JingleIQProvider extends IQProvider<JingleIQ>
 {
+    /**
+     * The provider of the <tt>content</tt> sub-elements. The sub-element
+     * providers are kept for the lifetime of this instance (rather than
+     * created for each parsed IQ) so that the child providers which they
+     * resolve are looked up only once.
+     */
+    private final DefaultPacketExtensionProvider<ContentPacketExtension>
+        contentProvider
+            = new DefaultPacketExtensionProvider<>(
+                    ContentPacketExtension.class,
+                    ContentPacketExtension::new);
+
+    /**
+     * The provider of the <tt>reason</tt> sub-elements.
+     */
+    private final ReasonProvider reasonProvider = new ReasonProvider();
+
+    /**
+     * The provider of the <tt>transfer</tt> sub-elements.
+     */
+    private final DefaultPacketExtensionProvider<TransferPacketExtension>
+        transferProvider
+            = new DefaultPacketExtensionProvider<>(
+                    TransferPacketExtension.class,
+                    TransferPacketExtension::new);
+
+    /**
+     * The provider of the <tt>conference-info</tt> sub-elements.
+     */
+    private final DefaultPacketExtensionProvider<CoinPacketExtension>
+        coinProvider
+            = new DefaultPacketExtensionProvider<>(
+                    CoinPacketExtension.class,
+                    CoinPacketExtension::new);
+
+    /**
+     * The provider of the <tt>callid</tt> sub-elements.
+     */
+    private final DefaultPacketExtensionProvider<CallIdExtension>
+        callidProvider
+            = new DefaultPacketExtensionProvider<>(
+                    CallIdExtension.class,
+                    CallIdExtension::new);
+
     /**
      * Creates a new instance of the <tt>JingleIQProvider</tt> and register all
      * jingle related extension providers. It is the responsibility of the
@@ -46,7 +90,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <RtpDescriptionPacketExtension>(
-                        RtpDescriptionPacketExtension.class));
+                        RtpDescriptionPacketExtension.class,
+                        RtpDescriptionPacketExtension::new));
 
         //<payload-type/> provider
         ProviderManager.addExtensionProvider(
@@ -54,7 +99,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <PayloadTypePacketExtension>(
-                        PayloadTypePacketExtension.class));
+                        PayloadTypePacketExtension.class,
+                        PayloadTypePacketExtension::new));
 
         //<parameter/> provider
         ProviderManager.addExtensionProvider(
@@ -62,7 +108,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <ParameterPacketExtension>
-                        (ParameterPacketExtension.class));
+                        (ParameterPacketExtension.class,
+                            ParameterPacketExtension::new));
 
         //<rtp-hdrext/> provider
         ProviderManager.addExtensionProvider(
@@ -70,7 +117,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RTPHdrExtPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <RTPHdrExtPacketExtension>
-                        (RTPHdrExtPacketExtension.class));
+                        (RTPHdrExtPacketExtension.class,
+                            RTPHdrExtPacketExtension::new));
 
         // <sctpmap/> provider
         ProviderManager.addExtensionProvider(
@@ -84,7 +132,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <EncryptionPacketExtension>
-                        (EncryptionPacketExtension.class));
+                        (EncryptionPacketExtension.class,
+                            EncryptionPacketExtension::new));
 
         //<zrtp-hash/> provider
         ProviderManager.addExtensionProvider(
@@ -92,7 +141,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 ZrtpHashPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <ZrtpHashPacketExtension>
-                        (ZrtpHashPacketExtension.class));
+                        (ZrtpHashPacketExtension.class,
+                            ZrtpHashPacketExtension::new));
 
         //<crypto/> provider
         ProviderManager.addExtensionProvider(
@@ -100,14 +150,16 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RtpDescriptionPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <CryptoPacketExtension>
-                        (CryptoPacketExtension.class));
+                        (CryptoPacketExtension.class,
+                            CryptoPacketExtension::new));
 
         // <group/> provider
         ProviderManager.addExtensionProvider(
                 GroupPacketExtension.ELEMENT_NAME,
                 GroupPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
-                        <GroupPacketExtension>(GroupPacketExtension.class));
+                        <GroupPacketExtension>(GroupPacketExtension.class,
+                            GroupPacketExtension::new));
 
         //ice-udp transport
         ProviderManager.addExtensionProvider(
@@ -115,7 +167,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <IceUdpTransportPacketExtension>(
-                        IceUdpTransportPacketExtension.class));
+                        IceUdpTransportPacketExtension.class,
+                        IceUdpTransportPacketExtension::new));
 
         //<raw-udp/> provider
         ProviderManager.addExtensionProvider(
@@ -123,7 +176,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RawUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <RawUdpTransportPacketExtension>(
-                        RawUdpTransportPacketExtension.class));
+                        RawUdpTransportPacketExtension.class,
+                        RawUdpTransportPacketExtension::new));
 
         //ice-udp <candidate/> provider
         ProviderManager.addExtensionProvider(
@@ -131,7 +185,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <CandidatePacketExtension>(
-                        CandidatePacketExtension.class));
+                        CandidatePacketExtension.class,
+                        CandidatePacketExtension::new));
 
         //raw-udp <candidate/> provider
         ProviderManager.addExtensionProvider(
@@ -139,7 +194,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 RawUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <CandidatePacketExtension>(
-                        CandidatePacketExtension.class));
+                        CandidatePacketExtension.class,
+                        CandidatePacketExtension::new));
 
         //ice-udp <remote-candidate/> provider
         ProviderManager.addExtensionProvider(
@@ -147,21 +203,24 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <RemoteCandidatePacketExtension>(
-                        RemoteCandidatePacketExtension.class));
+                        RemoteCandidatePacketExtension.class,
+                        RemoteCandidatePacketExtension::new));
 
         //inputevt <inputevt/> provider
         ProviderManager.addExtensionProvider(
                 InputEvtPacketExtension.ELEMENT_NAME,
                 InputEvtPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<InputEvtPacketExtension>(
-                        InputEvtPacketExtension.class));
+                        InputEvtPacketExtension.class,
+                        InputEvtPacketExtension::new));
 
         //coin <conference-info/> provider
         ProviderManager.addExtensionProvider(
                 CoinPacketExtension.ELEMENT_NAME,
                 CoinPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<CoinPacketExtension>(
-                        CoinPacketExtension.class));
+                        CoinPacketExtension.class,
+                        CoinPacketExtension::new));
 
         // DTLS-SRTP
         ProviderManager.addExtensionProvider(
@@ -169,7 +228,8 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 DtlsFingerprintPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider
                         <DtlsFingerprintPacketExtension>(
-                        DtlsFingerprintPacketExtension.class));
+                        DtlsFingerprintPacketExtension.class,
+                        DtlsFingerprintPacketExtension::new));
 
         /*
          * XEP-0251: Jingle Session Transfer <transfer/> and <transferred>
@@ -179,47 +239,54 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                 TransferPacketExtension.ELEMENT_NAME,
                 TransferPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<TransferPacketExtension>(
-                        TransferPacketExtension.class));
+                        TransferPacketExtension.class,
+                        TransferPacketExtension::new));
         ProviderManager.addExtensionProvider(
                 TransferredPacketExtension.ELEMENT_NAME,
                 TransferredPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<TransferredPacketExtension>(
-                        TransferredPacketExtension.class));
+                        TransferredPacketExtension.class,
+                        TransferredPacketExtension::new));
 
         //conference description <callid/> provider
         ProviderManager.addExtensionProvider(
                 CallIdExtension.ELEMENT_NAME,
                 ConferenceDescriptionExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<CallIdExtension>(
-                        CallIdExtension.class));
+                        CallIdExtension.class,
+                        CallIdExtension::new));
 
         //rtcp-fb
         ProviderManager.addExtensionProvider(
                 RtcpFbPacketExtension.ELEMENT_NAME,
                 RtcpFbPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RtcpFbPacketExtension>(
-                        RtcpFbPacketExtension.class));
+                        RtcpFbPacketExtension.class,
+                        RtcpFbPacketExtension::new));
 
         //rtcp-mux
         ProviderManager.addExtensionProvider(
                 RtcpmuxPacketExtension.ELEMENT_NAME,
                 IceUdpTransportPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<RtcpmuxPacketExtension>(
-                        RtcpmuxPacketExtension.class));
+                        RtcpmuxPacketExtension.class,
+                        RtcpmuxPacketExtension::new));
 
         //web-socket
         ProviderManager.addExtensionProvider(
             WebSocketPacketExtension.ELEMENT_NAME,
             WebSocketPacketExtension.NAMESPACE,
             new DefaultPacketExtensionProvider<>(
-                WebSocketPacketExtension.class));
+                WebSocketPacketExtension.class,
+                WebSocketPacketExtension::new));
 
         //ssrcInfo
         ProviderManager.addExtensionProvider(
                 SSRCInfoPacketExtension.ELEMENT_NAME,
                 SSRCInfoPacketExtension.NAMESPACE,
                 new DefaultPacketExtensionProvider<SSRCInfoPacketExtension>(
-                        SSRCInfoPacketExtension.class));
+                        SSRCInfoPacketExtension.class,
+                        SSRCInfoPacketExtension::new));
     }
 
     /**
@@ -242,6 +309,7 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                          .getAttributeValue("", JingleIQ.INITIATOR_ATTR_NAME);
         String responder = parser
                         .getAttributeValue("", JingleIQ.RESPONDER_ATTR_NAME);
+        // The sid is unique to the session, so it is not pooled.
         String sid = parser
                         .getAttributeValue("", JingleIQ.SID_ATTR_NAME);
 
@@ -260,21 +328,6 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
 
         boolean done = false;
 
-        // Sub-elements providers
-        DefaultPacketExtensionProvider<ContentPacketExtension> contentProvider
-            = new DefaultPacketExtensionProvider<ContentPacketExtension>(
-                    ContentPacketExtension.class);
-        ReasonProvider reasonProvider = new ReasonProvider();
-        DefaultPacketExtensionProvider<TransferPacketExtension> transferProvider
-            = new DefaultPacketExtensionProvider<TransferPacketExtension>(
-                    TransferPacketExtension.class);
-        DefaultPacketExtensionProvider<CoinPacketExtension> coinProvider
-            = new DefaultPacketExtensionProvider<CoinPacketExtension>(
-                    CoinPacketExtension.class);
-        DefaultPacketExtensionProvider<CallIdExtension> callidProvider
-            = new DefaultPacketExtensionProvider<CallIdExtension>(
-                    CallIdExtension.class);
-
         // Now go on and parse the jingle element's content.
         int eventType;
         String elementName;
@@ -334,8 +387,13 @@ public class JingleIQProvider extends IQProvider<JingleIQ>
                     if( type == SessionInfoType.mute
                         || type == SessionInfoType.unmute)
                     {
-                        String name = parser.getAttributeValue("",
-                                MuteSessionInfoPacketExtension.NAME_ATTR_VALUE);
+                        // The name of a content, e.g. "audio".
+                        String name
+                            = StringPool.internValue(
+                                parser.getAttributeValue(
+                                    "",
+                                    MuteSessionInfoPacketExtension
+                                        .NAME_ATTR_VALUE));
 
                         jingleIQ.setSessionInfo(
                                 new MuteSessionInfoPacketExtension(
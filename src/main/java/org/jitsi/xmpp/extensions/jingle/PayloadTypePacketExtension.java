@@ -82,7 +82,9 @@ public class PayloadTypePacketExtension extends AbstractPacketExtension
             destination.addRtcpFeedbackType(RtcpFbPacketExtension.clone(rtcpFb));
         }
 
-        for (ParameterPacketExtension parameter : source.getParameters())
+        for (ParameterPacketExtension parameter
+                : source.getUnmodifiableChildExtensionsOfType(
+                        ParameterPacketExtension.class))
         {
             destination.addParameter(ParameterPacketExtension.clone(parameter));
         }
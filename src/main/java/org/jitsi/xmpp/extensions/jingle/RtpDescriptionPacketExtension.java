@@ -78,6 +78,12 @@ public class RtpDescriptionPacketExtension
      */
     private List<ExtensionElement> children;
 
+    /**
+     * The unmodifiable list of child elements returned by
+     * {@link #getChildExtensions()} once this description has been frozen.
+     */
+    private List<ExtensionElement> frozenChildren;
+
     /**
      * Creates a new <tt>RtpDescriptionPacketExtension</tt>.
      */
@@ -152,7 +158,9 @@ public class RtpDescriptionPacketExtension
      */
     public void addPayloadType(PayloadTypePacketExtension payloadType)
     {
+        checkNotFrozen();
         this.payloadTypes.add(payloadType);
+        modified();
     }
 
     /**
@@ -176,6 +184,11 @@ public class RtpDescriptionPacketExtension
     @Override
     public List<? extends ExtensionElement> getChildExtensions()
     {
+        // The list is rebuilt on every call, which is not safe for concurrent
+        // readers.
+        if (isFrozen())
+            return frozenChildren;
+
         if(children == null)
             children = new ArrayList<ExtensionElement>();
         else
@@ -201,6 +214,22 @@ public class RtpDescriptionPacketExtension
         return children;
     }
 
+    /**
+     * Freezes this description after building the list of its child elements
+     * one last time.
+     */
+    @Override
+    public void freeze()
+    {
+        if (!isFrozen())
+        {
+            frozenChildren
+                = Collections.unmodifiableList(
+                        new ArrayList<>(getChildExtensions()));
+            super.freeze();
+        }
+    }
+
     /**
      * Casts <tt>childExtension</tt> to one of the extensions allowed here and
      * sets the corresponding field.
@@ -234,7 +263,9 @@ public class RtpDescriptionPacketExtension
      */
     public void setEncryption(EncryptionPacketExtension encryption)
     {
+        checkNotFrozen();
         this.encryption = encryption;
+        modified();
     }
 
     /**
@@ -258,7 +289,9 @@ public class RtpDescriptionPacketExtension
      */
     public void setBandwidth(BandwidthPacketExtension bandwidth)
     {
+        checkNotFrozen();
         this.bandwidth = bandwidth;
+        modified();
     }
 
     /**
@@ -282,7 +315,9 @@ public class RtpDescriptionPacketExtension
      */
     public void addExtmap(RTPHdrExtPacketExtension extmap)
     {
+        checkNotFrozen();
         this.extmapList.add(extmap);
+        modified();
     }
 
     /**
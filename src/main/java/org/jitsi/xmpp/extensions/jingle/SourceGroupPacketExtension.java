@@ -141,7 +141,8 @@ public class SourceGroupPacketExtension
 
         copy.setSemantics(getSemantics());
 
-        List<SourcePacketExtension> sources = getSources();
+        List<SourcePacketExtension> sources
+            = getUnmodifiableChildExtensionsOfType(SourcePacketExtension.class);
 
         List<SourcePacketExtension> sourcesCopy
             = new ArrayList<SourcePacketExtension>(sources.size());
@@ -35,6 +35,12 @@ public class AvatarUrl
 
     private String avatarUrl = null;
 
+    /**
+     * The XML representation of this extension, computed on demand and
+     * dropped whenever the value changes.
+     */
+    private String xml = null;
+
     /**
      * Initializes an {@link AvatarUrl} instance with a given string value.
      * @param avatarUrl the string value.
@@ -60,6 +66,7 @@ public class AvatarUrl
     public void setAvatarUrl(String avatarUrl)
     {
         this.avatarUrl = avatarUrl;
+        this.xml = null;
     }
 
     /**
@@ -86,9 +93,16 @@ public class AvatarUrl
      */
     public String toXML()
     {
-        return new XmlStringBuilder()
-            .element(getElementName(), getAvatarUrl())
-            .toString();
+        String xml = this.xml;
+
+        if (xml == null)
+        {
+            this.xml = xml
+                = new XmlStringBuilder()
+                    .element(getElementName(), getAvatarUrl())
+                    .toString();
+        }
+        return xml;
     }
 
     /**
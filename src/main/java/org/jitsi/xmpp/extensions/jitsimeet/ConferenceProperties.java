@@ -70,7 +70,9 @@ public class ConferenceProperties
         ConferenceProperties destination
             = AbstractPacketExtension.clone(source);
 
-        for (ConferenceProperty property : source.getProperties())
+        for (ConferenceProperty property
+                : source.getUnmodifiableChildExtensionsOfType(
+                        ConferenceProperty.class))
         {
             destination.addProperty(ConferenceProperty.clone(property));
         }
@@ -128,8 +130,10 @@ public class ConferenceProperties
     {
         Objects.requireNonNull(key);
 
+        // The list is a snapshot, so the properties can be removed while
+        // iterating over it.
         for (ConferenceProperty property :
-            getChildExtensionsOfType(ConferenceProperty.class))
+            getUnmodifiableChildExtensionsOfType(ConferenceProperty.class))
         {
             if (key.equals(property.getKey()))
             {
@@ -41,6 +41,9 @@ public class RegionPacketExtension
     public RegionPacketExtension()
     {
         super(NAMESPACE, ELEMENT_NAME);
+
+        // It is sent in every presence without changing.
+        setXmlCacheEnabled(true);
     }
 
     /**
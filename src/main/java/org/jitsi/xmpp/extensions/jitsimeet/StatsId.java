@@ -35,6 +35,12 @@ public class StatsId
 
     private String statsId = null;
 
+    /**
+     * The XML representation of this extension, computed on demand and
+     * dropped whenever the value changes.
+     */
+    private String xml = null;
+
     /**
      * Initializes an {@link StatsId} instance with a given string value.
      * @param id the string value.
@@ -60,6 +66,7 @@ public class StatsId
     public void setStatsId(String value)
     {
         this.statsId = value;
+        this.xml = null;
     }
 
     /**
@@ -86,9 +93,16 @@ public class StatsId
      */
     public String toXML()
     {
-        return new XmlStringBuilder()
-            .element(ELEMENT_NAME, getStatsId())
-            .toString();
+        String xml = this.xml;
+
+        if (xml == null)
+        {
+            this.xml = xml
+                = new XmlStringBuilder()
+                    .element(ELEMENT_NAME, getStatsId())
+                    .toString();
+        }
+        return xml;
     }
 
     /**
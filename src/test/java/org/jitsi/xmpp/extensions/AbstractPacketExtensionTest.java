@@ -0,0 +1,355 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import junit.framework.*;
+
+import org.jitsi.xmpp.extensions.coin.*;
+import org.jivesoftware.smack.packet.*;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * Tests the attribute and child handling of {@link AbstractPacketExtension}.
+ */
+public class AbstractPacketExtensionTest
+    extends TestCase
+{
+    /**
+     * A minimal concrete extension.
+     */
+    public static class TestExtension
+        extends AbstractPacketExtension
+    {
+        public TestExtension()
+        {
+            super("urn:test", "test");
+        }
+    }
+
+    /**
+     * Attributes are kept in insertion order, replacing a value keeps the
+     * position and removing one keeps the order of the others.
+     */
+    public void testAttributeOrder()
+    {
+        TestExtension ext = new TestExtension();
+
+        for (int i = 0; i < 10; i++)
+        {
+            ext.setAttribute("a" + i, i);
+        }
+        ext.setAttribute("a3", "three");
+        ext.removeAttribute("a5");
+        ext.setAttribute("a7", null);
+
+        assertEquals(
+            Arrays.asList("a0", "a1", "a2", "a3", "a4", "a6", "a8", "a9"),
+            ext.getAttributeNames());
+        assertEquals("three", ext.getAttribute("a3"));
+        assertEquals(9, ext.getAttributeAsInt("a9"));
+        assertNull(ext.getAttribute("a5"));
+        assertEquals(
+            "<test xmlns='urn:test' a0='0' a1='1' a2='2' a3='three' a4='4'"
+                + " a6='6' a8='8' a9='9'/>",
+            ext.toXML());
+
+        Iterator<Map.Entry<String, Object>> it
+            = ext.attributes.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            if (it.next().getKey().startsWith("a"))
+            {
+                it.remove();
+            }
+        }
+        assertTrue(ext.getAttributeNames().isEmpty());
+        assertEquals("<test xmlns='urn:test'/>", ext.toXML());
+    }
+
+    /**
+     * Typed values serialize like their <tt>String</tt> forms and plain
+     * values parse like before.
+     */
+    public void testTypedAttributes()
+    {
+        TestExtension ext = new TestExtension();
+
+        ext.setAttribute("port", 10000);
+        ext.setAttribute("ssrc", 0xffffffffL);
+        ext.setAttribute("required", true);
+        ext.setAttribute("state", Thread.State.NEW);
+        ext.setAttribute("text", "42");
+
+        assertEquals(
+            "<test xmlns='urn:test' port='10000' ssrc='4294967295'"
+                + " required='true' state='NEW' text='42'/>",
+            ext.toXML());
+        assertEquals("10000", ext.getAttribute("port"));
+        assertEquals("true", ext.getAttributeAsString("required"));
+        assertEquals(10000, ext.getAttributeAsInt("port"));
+        assertEquals(4294967295L, ext.getAttributeAsLong("ssrc", -1));
+        assertEquals(42, ext.getAttributeAsInt("text"));
+        assertEquals(42L, ext.getAttributeAsLong("text", -1));
+        assertEquals(-1L, ext.getAttributeAsLong("missing", -1));
+        assertTrue(ext.getAttributeAsBoolean("required", false));
+        assertEquals(
+            Thread.State.NEW,
+            ext.getAttributeAsEnum("state", Thread.State.class));
+        assertTrue(ext.hasAttribute("ssrc"));
+        assertFalse(ext.hasAttribute("missing"));
+
+        try
+        {
+            ext.getAttributeAsInt("ssrc");
+            fail("ssrc does not fit in an int");
+        }
+        catch (NumberFormatException expected)
+        {
+        }
+
+        // Removing an entry moves the typed values which follow it.
+        ext.removeAttribute("port");
+        ext.setAttribute("text", "x");
+        assertEquals(4294967295L, ext.getAttributeAsLong("ssrc", -1));
+        assertEquals(
+            "<test xmlns='urn:test' ssrc='4294967295' required='true'"
+                + " state='NEW' text='x'/>",
+            ext.toXML());
+        assertEquals(
+            Arrays.asList("ssrc", "required", "state", "text"),
+            ext.getAttributeNames());
+    }
+
+    /**
+     * A frozen tree reads like before and rejects modifications.
+     */
+    public void testFreeze()
+    {
+        TestExtension parent = new TestExtension();
+        TestExtension child = new TestExtension();
+
+        parent.setAttribute("id", "17");
+        parent.setAttribute("zeros", "007");
+        parent.setAttribute("zero", "-0");
+        child.setAttribute("enabled", "true");
+        parent.addChildExtension(child);
+
+        String xml = parent.toXML();
+
+        parent.freeze();
+        assertTrue(parent.isFrozen());
+        assertTrue(child.isFrozen());
+        assertEquals(xml, parent.toXML());
+        assertEquals(17, parent.getAttributeAsInt("id"));
+        assertEquals("17", parent.getAttribute("id"));
+
+        // Only canonical decimals are parsed beforehand.
+        assertTrue(parent.isLongAttribute("id"));
+        assertFalse(parent.isLongAttribute("zeros"));
+        assertFalse(parent.isLongAttribute("zero"));
+        assertEquals("007", parent.getAttribute("zeros"));
+        assertEquals(7, parent.getAttributeAsInt("zeros"));
+        assertEquals("-0", parent.getAttribute("zero"));
+        assertTrue(child.getAttributeAsBoolean("enabled", false));
+        assertSame(child, parent.getFirstChildOfType(TestExtension.class));
+        assertEquals(
+            Collections.singletonList(child),
+            parent.getChildExtensionsOfType(TestExtension.class));
+
+        try
+        {
+            parent.setAttribute("id", 18);
+            fail("a frozen extension must not be modified");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        try
+        {
+            child.addChildExtension(new TestExtension());
+            fail("a frozen extension must not be modified");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        try
+        {
+            parent.attributes.remove("id");
+            fail("the attributes of a frozen extension must not be modified");
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+        try
+        {
+            ((List<?>) parent.getChildExtensions()).clear();
+            fail("the children of a frozen extension must not be modified");
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+        assertEquals(xml, parent.toXML());
+
+        // State of their own is frozen too.
+        StatePacketExtension state = new StatePacketExtension();
+
+        state.setUserCount(2);
+        state.freeze();
+        try
+        {
+            state.setUserCount(3);
+            fail("a frozen extension must not be modified");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+    }
+
+    /**
+     * The per-type lists of children follow modifications, including the
+     * ones made through the list returned by <tt>getChildExtensions()</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    public void testChildExtensionsOfType()
+    {
+        TestExtension parent = new TestExtension();
+        TestExtension child1 = new TestExtension();
+        TestExtension child2 = new TestExtension();
+
+        assertEquals(0, parent.getChildExtensionCount(TestExtension.class));
+        assertNull(parent.getFirstChildOfType(TestExtension.class));
+
+        parent.addChildExtension(child1);
+
+        List<TestExtension> children
+            = parent.getUnmodifiableChildExtensionsOfType(TestExtension.class);
+
+        assertEquals(Collections.singletonList(child1), children);
+        assertSame(
+            children,
+            parent.getUnmodifiableChildExtensionsOfType(TestExtension.class));
+
+        parent.addChildExtension(child2);
+        assertEquals(Collections.singletonList(child1), children);
+        assertEquals(
+            Arrays.asList(child1, child2),
+            parent.getChildExtensionsOfType(TestExtension.class));
+        assertEquals(2, parent.getChildExtensionCount(TestExtension.class));
+        assertEquals(
+            2, parent.getChildExtensionCount(AbstractPacketExtension.class));
+
+        ((List<ExtensionElement>) parent.getChildExtensions()).remove(child1);
+        assertSame(child2, parent.getFirstChildOfType(TestExtension.class));
+
+        ((List<ExtensionElement>) parent.getChildExtensions()).set(0, child1);
+        assertSame(child1, parent.getFirstChildOfType(TestExtension.class));
+
+        parent.removeChildExtension(child1);
+        assertEquals(0, parent.getChildExtensionCount(TestExtension.class));
+    }
+
+    /**
+     * A cached XML representation is reused until the extension or one of
+     * its descendants changes.
+     */
+    @SuppressWarnings("unchecked")
+    public void testXmlCache()
+    {
+        TestExtension parent = new TestExtension();
+        TestExtension child = new TestExtension();
+        TestExtension grandchild = new TestExtension();
+
+        parent.setXmlCacheEnabled(true);
+        parent.addChildExtension(child);
+        child.addChildExtension(grandchild);
+
+        String xml = parent.toXML();
+
+        assertSame(xml, parent.toXML());
+
+        grandchild.setAttribute("a", 1);
+        assertEquals(
+            "<test xmlns='urn:test'><test xmlns='urn:test'>"
+                + "<test xmlns='urn:test' a='1'/></test></test>",
+            parent.toXML());
+
+        child.setText("t");
+        xml = parent.toXML();
+        assertEquals(
+            "<test xmlns='urn:test'><test xmlns='urn:test'>"
+                + "<test xmlns='urn:test' a='1'/>t</test></test>",
+            xml);
+        assertSame(xml, parent.toXML());
+
+        parent.removeChildExtension(child);
+        assertEquals("<test xmlns='urn:test'/>", parent.toXML());
+
+        // A removed child does not affect its former parent anymore, but
+        // changes made through the raw list of children still do.
+        xml = parent.toXML();
+        child.setAttribute("b", 2);
+        assertSame(xml, parent.toXML());
+        ((List<ExtensionElement>) parent.getChildExtensions()).add(child);
+        assertEquals(
+            "<test xmlns='urn:test'><test xmlns='urn:test' b='2'>"
+                + "<test xmlns='urn:test' a='1'/>t</test></test>",
+            parent.toXML());
+    }
+
+    /**
+     * The children of a cached extension do not keep it alive, and the ones
+     * which write state of their own through
+     * {@link AbstractPacketExtension#getChildElementBuilder()} drop its
+     * cached XML when that state changes.
+     */
+    public void testXmlCacheParents()
+    {
+        TestExtension shared = new TestExtension();
+        WeakReference<TestExtension> ref = cachedParentOf(shared);
+
+        for (int i = 0; i < 10 && ref.get() != null; i++)
+        {
+            System.gc();
+        }
+        assertNull(ref.get());
+
+        TestExtension parent = new TestExtension();
+        UserPacketExtension user = new UserPacketExtension("sip:a@b");
+
+        parent.setXmlCacheEnabled(true);
+        parent.addChildExtension(user);
+
+        String xml = parent.toXML();
+
+        user.setDisplayText("A");
+        assertFalse(xml.equals(parent.toXML()));
+        assertTrue(parent.toXML().contains("A</display-text>"));
+    }
+
+    private static WeakReference<TestExtension> cachedParentOf(
+            TestExtension child)
+    {
+        TestExtension parent = new TestExtension();
+
+        parent.setXmlCacheEnabled(true);
+        parent.addChildExtension(child);
+        parent.toXML();
+        return new WeakReference<>(parent);
+    }
+}
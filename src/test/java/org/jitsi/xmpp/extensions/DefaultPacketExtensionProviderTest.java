@@ -0,0 +1,122 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions;
+
+import junit.framework.*;
+
+import org.jivesoftware.smack.provider.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests the resolution of the providers of child elements by
+ * {@link DefaultPacketExtensionProvider}.
+ */
+public class DefaultPacketExtensionProviderTest
+    extends TestCase
+{
+    private static final String NAMESPACE = "urn:test:providers";
+
+    public static class Parent
+        extends AbstractPacketExtension
+    {
+        public Parent()
+        {
+            super(NAMESPACE, "parent");
+        }
+    }
+
+    public static class Child
+        extends AbstractPacketExtension
+    {
+        public Child()
+        {
+            super(NAMESPACE, "child");
+        }
+    }
+
+    public static class OtherChild
+        extends AbstractPacketExtension
+    {
+        public OtherChild()
+        {
+            super(NAMESPACE, "child");
+        }
+    }
+
+    private static List<? extends Object> parseChildren(
+            DefaultPacketExtensionProvider<Parent> provider)
+        throws Exception
+    {
+        XmlPullParser parser = new MXParser();
+
+        parser.setFeature(
+            "http://xmlpull.org/v1/doc/features.html#process-namespaces",
+            true);
+        parser.setInput(
+            new StringReader(
+                "<parent xmlns='" + NAMESPACE + "'><child/></parent>"));
+        parser.next();
+        return provider.parse(parser).getChildExtensions();
+    }
+
+    /**
+     * A provider registered again with <tt>ProviderManager</tt> replaces the
+     * one which has been learned, without clearing the learned providers.
+     */
+    public void testProviderManagerChanges()
+        throws Exception
+    {
+        DefaultPacketExtensionProvider<Parent> provider
+            = new DefaultPacketExtensionProvider<>(Parent.class);
+
+        try
+        {
+            ProviderManager.addExtensionProvider(
+                "child",
+                NAMESPACE,
+                new DefaultPacketExtensionProvider<>(Child.class));
+            assertTrue(parseChildren(provider).get(0) instanceof Child);
+
+            ProviderManager.addExtensionProvider(
+                "child",
+                NAMESPACE,
+                new DefaultPacketExtensionProvider<>(OtherChild.class));
+            assertTrue(parseChildren(provider).get(0) instanceof OtherChild);
+
+            ProviderManager.removeExtensionProvider("child", NAMESPACE);
+            assertTrue(parseChildren(provider).isEmpty());
+
+            // An explicit provider takes precedence.
+            ProviderManager.addExtensionProvider(
+                "child",
+                NAMESPACE,
+                new DefaultPacketExtensionProvider<>(OtherChild.class));
+            provider.addChildProvider(
+                "child",
+                NAMESPACE,
+                new DefaultPacketExtensionProvider<>(Child.class));
+            assertTrue(parseChildren(provider).get(0) instanceof Child);
+        }
+        finally
+        {
+            ProviderManager.removeExtensionProvider("child", NAMESPACE);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import org.jxmpp.jid.*;
+import org.jxmpp.jid.impl.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link BridgeSelector}.
+ */
+public class BridgeSelectorTest
+    extends TestCase
+{
+    private static ColibriStatsExtension stats(
+            String region, String relayId, long packetRate)
+    {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat(ColibriStatsExtension.REGION, region);
+        if (relayId != null)
+        {
+            stats.addStat(ColibriStatsExtension.RELAY_ID, relayId);
+        }
+        stats.addStat(ColibriStatsExtension.PACKET_RATE_DOWNLOAD, packetRate);
+        stats.addStat(ColibriStatsExtension.PACKET_RATE_UPLOAD, packetRate);
+        return stats;
+    }
+
+    /**
+     * The strategies select bridges by load, region and Octo support, and
+     * follow the updates of the stats of the bridges.
+     */
+    public void testStrategies()
+        throws Exception
+    {
+        BridgeSelector selector = new BridgeSelector();
+        Jid eu1 = JidCreate.from("jvb-eu1@example.com");
+        Jid eu2 = JidCreate.from("jvb-eu2@example.com");
+        Jid us1 = JidCreate.from("jvb-us1@example.com");
+
+        selector.update(eu1, stats("eu", "eu1", 100));
+        selector.update(eu2, stats("eu", null, 50));
+        selector.update(us1, stats("us", "us1", 500));
+
+        assertEquals(
+            eu2,
+            selector.select(BridgeSelector.LEAST_LOADED, "us", null).getJid());
+        assertEquals(
+            us1,
+            selector.select(BridgeSelector.REGION_AFFINITY, "us", null)
+                .getJid());
+        assertEquals(
+            eu2,
+            selector.select(BridgeSelector.REGION_AFFINITY, "ap", null)
+                .getJid());
+
+        // A new load moves a bridge within its region.
+        selector.update(eu1, stats("eu", "eu1", 10));
+        assertEquals(eu1, selector.getLeastLoaded("eu").getJid());
+
+        // A participant from the US joins a conference on eu1, which
+        // supports Octo, so the conference is split.
+        BridgeSelector.Strategy octo = BridgeSelector.splitForOcto(1000);
+
+        assertEquals(
+            us1,
+            selector.select(octo, "us", Collections.singleton(eu1)).getJid());
+        // It is not split from eu2, which does not support Octo.
+        assertEquals(
+            eu2,
+            selector.select(octo, "us", Collections.singleton(eu2)).getJid());
+        // A participant from Europe stays on eu2 until it is overloaded.
+        assertEquals(
+            eu2,
+            selector.select(octo, "eu", Collections.singleton(eu2)).getJid());
+        assertEquals(
+            eu1,
+            selector.select(
+                    BridgeSelector.splitForOcto(50),
+                    "eu",
+                    Arrays.asList(eu1, eu2))
+                .getJid());
+
+        // Bridges which are shutting down are not selected.
+        ColibriStatsExtension shutdown = stats("eu", "eu1", 10);
+
+        shutdown.addStat(ColibriStatsExtension.SHUTDOWN_IN_PROGRESS, "true");
+        selector.update(eu1, shutdown);
+        assertTrue(selector.getBridge(eu1).isShuttingDown());
+        assertEquals(eu2, selector.getLeastLoaded("eu").getJid());
+
+        selector.remove(eu2);
+        assertNull(selector.getLeastLoaded("eu"));
+        assertEquals(
+            us1,
+            selector.select(BridgeSelector.REGION_AFFINITY, "eu", null)
+                .getJid());
+    }
+}
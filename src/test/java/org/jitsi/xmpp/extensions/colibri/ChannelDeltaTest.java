@@ -0,0 +1,278 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import org.jxmpp.jid.impl.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * Tests {@link ChannelDelta} and delta updates built by
+ * {@link ColibriBuilder}.
+ */
+public class ChannelDeltaTest
+    extends TestCase
+{
+    private static SourcePacketExtension source(long ssrc)
+    {
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(ssrc);
+        return source;
+    }
+
+    private static long[] ssrcs(List<SourcePacketExtension> sources)
+    {
+        return sources.stream().mapToLong(SourcePacketExtension::getSSRC)
+            .toArray();
+    }
+
+    private static ColibriConferenceIQ parse(ColibriConferenceIQ iq)
+        throws Exception
+    {
+        XmlPullParser parser = new MXParser();
+
+        parser.setFeature(
+            "http://xmlpull.org/v1/doc/features.html#process-namespaces",
+            true);
+        parser.setInput(new StringReader(iq.toXML().toString()));
+        parser.next(); // iq
+        parser.next(); // conference
+        return (ColibriConferenceIQ) new ColibriIQProvider().parse(parser, 0);
+    }
+
+    /**
+     * Source updates only carry the changes, which the bridge and the focus
+     * apply to their channels.
+     */
+    public void testSourceDelta()
+        throws Exception
+    {
+        ColibriConferenceIQ state = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Channel acknowledged
+            = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel bridge = new ColibriConferenceIQ.Channel();
+
+        state.setID("conference");
+        acknowledged.setID("c");
+        for (long ssrc = 1; ssrc <= 100; ssrc++)
+        {
+            acknowledged.addSource(source(ssrc));
+            bridge.addSource(source(ssrc));
+        }
+        state.getOrCreateContent("video").addChannel(acknowledged);
+
+        List<SourcePacketExtension> sources = new ArrayList<>();
+
+        for (long ssrc = 2; ssrc <= 101; ssrc++)
+        {
+            sources.add(source(ssrc));
+        }
+
+        ColibriBuilder builder = new ColibriBuilder(state);
+        ColibriConferenceIQ localChannelsInfo = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Channel local = new ColibriConferenceIQ.Channel();
+
+        local.setID("c");
+        localChannelsInfo.getOrCreateContent("video").addChannel(local);
+        builder.setUseDeltas(true);
+        assertTrue(
+            builder.addSourceInfo(
+                Collections.singletonMap("video", sources),
+                localChannelsInfo));
+
+        ColibriConferenceIQ request
+            = parse(builder.getRequest(JidCreate.from("bridge.example.com")));
+        ColibriConferenceIQ.Channel delta
+            = request.getContent("video").getChannel("c");
+
+        assertTrue(delta.isDelta());
+        assertTrue(
+            Arrays.equals(new long[] { 101 }, ssrcs(delta.getSources())));
+        assertTrue(
+            Arrays.equals(new long[] { 1 }, ssrcs(delta.getRemovedSources())));
+
+        ChannelDelta.apply(bridge, delta);
+        assertEquals(100, bridge.getSourceCount());
+        assertNull(bridge.getSourceBySSRC(1));
+        assertNotNull(bridge.getSourceBySSRC(101));
+
+        // The response acknowledges the new state.
+        new ColibriAnalyser(state).processChannelUpdateResp(request);
+        assertTrue(
+            Arrays.equals(
+                ssrcs(sources), ssrcs(acknowledged.getSources())));
+
+        // Nothing changed, so there is nothing to send.
+        builder.reset();
+        assertFalse(
+            builder.addSourceInfo(
+                Collections.singletonMap("video", sources),
+                localChannelsInfo));
+
+        // A source whose parameters changed is replaced.
+        SourcePacketExtension changed = source(50);
+
+        changed.addParameter(new ParameterPacketExtension("msid", "a b"));
+        sources.set(50 - 2, changed);
+        builder.reset();
+        assertTrue(
+            builder.addSourceInfo(
+                Collections.singletonMap("video", sources),
+                localChannelsInfo));
+        request
+            = parse(builder.getRequest(JidCreate.from("bridge.example.com")));
+        delta = request.getContent("video").getChannel("c");
+        assertTrue(
+            Arrays.equals(new long[] { 50 }, ssrcs(delta.getSources())));
+        assertTrue(
+            Arrays.equals(
+                new long[] { 50 }, ssrcs(delta.getRemovedSources())));
+
+        ChannelDelta.apply(bridge, delta);
+        assertEquals(100, bridge.getSourceCount());
+        assertEquals("a b", bridge.getSourceBySSRC(50).getParameter("msid"));
+    }
+
+    private static RTPHdrExtPacketExtension rtpHdrExt(int id, String uri)
+    {
+        RTPHdrExtPacketExtension ext = new RTPHdrExtPacketExtension();
+
+        ext.setID(Integer.toString(id));
+        ext.setURI(URI.create(uri));
+        return ext;
+    }
+
+    /**
+     * Description updates only carry the changed RTP header extensions, which
+     * replace those with the same IDs.
+     */
+    public void testRtpHeaderExtensionDelta()
+        throws Exception
+    {
+        ColibriConferenceIQ state = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Channel acknowledged
+            = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel bridge = new ColibriConferenceIQ.Channel();
+
+        state.setID("conference");
+        acknowledged.setID("c");
+        for (ColibriConferenceIQ.Channel channel
+                : Arrays.asList(acknowledged, bridge))
+        {
+            channel.addRtpHeaderExtension(rtpHdrExt(1, "urn:a"));
+            channel.addRtpHeaderExtension(rtpHdrExt(3, "urn:b"));
+        }
+        state.getOrCreateContent("video").addChannel(acknowledged);
+
+        RtpDescriptionPacketExtension description
+            = new RtpDescriptionPacketExtension();
+
+        description.addExtmap(rtpHdrExt(1, "urn:a"));
+        description.addExtmap(rtpHdrExt(3, "urn:c"));
+        description.addExtmap(rtpHdrExt(5, "urn:d"));
+
+        ColibriBuilder builder = new ColibriBuilder(state);
+        ColibriConferenceIQ.Channel local = new ColibriConferenceIQ.Channel();
+
+        local.setID("c");
+        builder.setUseDeltas(true);
+        assertTrue(builder.addRtpDescription(description, "video", local));
+
+        ColibriConferenceIQ request
+            = parse(builder.getRequest(JidCreate.from("bridge.example.com")));
+        ColibriConferenceIQ.Channel delta
+            = request.getContent("video").getChannel("c");
+
+        assertTrue(delta.isDelta());
+        assertEquals(2, delta.getRtpHeaderExtensions().size());
+        assertEquals(1, delta.getRemovedRtpHeaderExtensions().size());
+        assertEquals(
+            "urn:b",
+            delta.getRemovedRtpHeaderExtensions().get(0).getURI().toString());
+
+        ChannelDelta.apply(bridge, delta);
+
+        List<String> uris = new ArrayList<>();
+
+        for (RTPHdrExtPacketExtension ext : bridge.getRtpHeaderExtensions())
+            uris.add(ext.getID() + " " + ext.getURI());
+        assertEquals(Arrays.asList("1 urn:a", "3 urn:c", "5 urn:d"), uris);
+
+        // Nothing changed, so there is nothing to send.
+        new ColibriAnalyser(state).processChannelUpdateResp(request);
+        builder.reset();
+        assertFalse(builder.addRtpDescription(description, "video", local));
+    }
+
+    /**
+     * Full channel descriptions replace the kinds of elements they have, and
+     * delta ones patch the source groups and payload types.
+     */
+    public void testApply()
+    {
+        ColibriConferenceIQ.Channel target = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel full = new ColibriConferenceIQ.Channel();
+        SourceGroupPacketExtension group = new SourceGroupPacketExtension();
+        PayloadTypePacketExtension vp8 = new PayloadTypePacketExtension();
+        PayloadTypePacketExtension h264 = new PayloadTypePacketExtension();
+
+        target.addSource(source(1));
+        group.setSemantics(SourceGroupPacketExtension.SEMANTICS_FID);
+        group.addSources(Arrays.asList(source(2), source(3)));
+        full.addSource(source(2));
+        full.addSource(source(3));
+        full.addSourceGroup(group);
+        ChannelDelta.apply(target, full);
+        assertTrue(
+            Arrays.equals(new long[] { 2, 3 }, ssrcs(target.getSources())));
+        assertEquals(1, target.getSourceGroups().size());
+
+        // A description without sources and source groups (e.g. a response
+        // of the bridge) leaves them alone.
+        ChannelDelta.apply(target, new ColibriConferenceIQ.Channel());
+        assertTrue(
+            Arrays.equals(new long[] { 2, 3 }, ssrcs(target.getSources())));
+        assertEquals(1, target.getSourceGroups().size());
+
+        vp8.setId(100);
+        vp8.setName("VP8");
+        h264.setId(107);
+        h264.setName("H264");
+        target.addPayloadType(vp8);
+
+        ColibriConferenceIQ.Channel delta = new ColibriConferenceIQ.Channel();
+
+        assertTrue(
+            ChannelDelta.diffPayloadTypes(
+                target, Collections.singletonList(h264), delta));
+        assertTrue(
+            ChannelDelta.diffSourceGroups(
+                target, Collections.emptyList(), delta));
+        ChannelDelta.apply(target, delta);
+        assertEquals(1, target.getPayloadTypes().size());
+        assertEquals("H264", target.getPayloadTypes().get(0).getName());
+        assertTrue(target.getSourceGroups().isEmpty());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import java.net.*;
+import java.util.*;
+
+/**
+ * Tests {@link CodecSet}.
+ */
+public class CodecSetTest
+    extends TestCase
+{
+    private static PayloadTypePacketExtension payloadType(int id, String name)
+    {
+        PayloadTypePacketExtension payloadType
+            = new PayloadTypePacketExtension();
+
+        // Like the payload types of a Jingle description.
+        payloadType.setNamespace(RtpDescriptionPacketExtension.NAMESPACE);
+        payloadType.setId(id);
+        payloadType.setName(name);
+        payloadType.addParameter(new ParameterPacketExtension("x", "y"));
+        return payloadType;
+    }
+
+    private static RTPHdrExtPacketExtension hdrExt(int id)
+    {
+        RTPHdrExtPacketExtension ext = new RTPHdrExtPacketExtension();
+
+        ext.setID(Integer.toString(id));
+        ext.setURI(URI.create("urn:ietf:params:rtp-hdrext:" + id));
+        return ext;
+    }
+
+    /**
+     * Equal codecs are interned into the same instance, which the channels
+     * share until one of them changes its codecs.
+     */
+    public void testInternAndCopyOnWrite()
+    {
+        PayloadTypePacketExtension vp8 = payloadType(100, "VP8");
+        CodecSet codecs
+            = CodecSet.intern(
+                    Arrays.asList(vp8, payloadType(107, "H264")),
+                    Arrays.asList(hdrExt(3), hdrExt(1), hdrExt(15)));
+
+        assertSame(
+            codecs,
+            CodecSet.intern(
+                    Arrays.asList(payloadType(100, "VP8"),
+                                  payloadType(107, "H264")),
+                    Arrays.asList(hdrExt(1), hdrExt(3))));
+
+        // The elements of the description are copied, not modified.
+        assertEquals(RtpDescriptionPacketExtension.NAMESPACE,
+                     vp8.getNamespace());
+        assertFalse(vp8.isFrozen());
+        assertNull(codecs.getPayloadTypes().get(0).getNamespace());
+        assertTrue(codecs.getPayloadTypes().get(0).isFrozen());
+        // The header extension with an invalid ID is ignored.
+        assertEquals(2, codecs.getRtpHeaderExtensions().size());
+        assertEquals(
+            "1", codecs.getRtpHeaderExtensions().iterator().next().getID());
+
+        ColibriConferenceIQ.Channel c1 = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel c2 = new ColibriConferenceIQ.Channel();
+
+        c1.setCodecSet(codecs);
+        c2.setCodecSet(codecs);
+        assertFalse(c1.addPayloadType(payloadType(100, "VP8")));
+        assertSame(codecs, c1.getCodecSet());
+
+        assertTrue(c1.removePayloadType(vp8));
+        assertEquals(1, c1.getPayloadTypes().size());
+        assertEquals(2, c2.getPayloadTypes().size());
+        assertSame(codecs, c2.getCodecSet());
+
+        // So are the payload types added to a channel.
+        assertTrue(c1.addPayloadType(vp8));
+        assertEquals(RtpDescriptionPacketExtension.NAMESPACE,
+                     vp8.getNamespace());
+        assertFalse(vp8.isFrozen());
+        assertTrue(c1.removePayloadType(vp8));
+
+        c2.removeRtpHeaderExtension(hdrExt(1));
+        c2.addRtpHeaderExtension(hdrExt(5));
+        assertEquals(2, codecs.getRtpHeaderExtensions().size());
+        assertEquals(2, c2.getRtpHeaderExtensions().size());
+        assertFalse(codecs.equals(c2.getCodecSet()));
+
+        // The XML of a channel includes that of its CodecSet.
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+
+        conference.getOrCreateContent("video").addChannel(c1);
+        assertTrue(
+            conference.getChildElementXML().toString().contains(
+                    c1.getCodecSet().toXML()));
+        assertTrue(c1.getCodecSet().toXML().contains("H264"));
+        assertFalse(c1.getCodecSet().toXML().contains("VP8"));
+    }
+
+    /**
+     * The shared (frozen) elements of a channel are modified through copies
+     * which replace them in that channel only.
+     */
+    public void testModify()
+    {
+        CodecSet codecs
+            = CodecSet.intern(
+                    Arrays.asList(payloadType(100, "VP8"),
+                                  payloadType(107, "H264")),
+                    Collections.singletonList(hdrExt(3)));
+        ColibriConferenceIQ.Channel c1 = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel c2 = new ColibriConferenceIQ.Channel();
+
+        c1.setCodecSet(codecs);
+        c2.setCodecSet(codecs);
+
+        PayloadTypePacketExtension vp8 = c1.getPayloadTypes().get(0);
+        int parameterCount = vp8.getParameters().size();
+
+        assertTrue(vp8.isFrozen());
+        assertTrue(
+            c1.modifyPayloadType(
+                vp8,
+                p -> {
+                    ParameterPacketExtension parameter
+                        = new ParameterPacketExtension("max-fr", "30");
+
+                    p.addParameter(parameter);
+                }));
+        assertFalse(c1.modifyPayloadType(vp8, p -> {}));
+
+        PayloadTypePacketExtension modified = c1.getPayloadTypes().get(0);
+
+        assertNotSame(vp8, modified);
+        assertTrue(modified.isFrozen());
+        assertEquals("VP8", modified.getName());
+        assertEquals(parameterCount + 1, modified.getParameters().size());
+        assertNull(
+            modified.getParameters().get(parameterCount).getNamespace());
+        assertEquals("H264", c1.getPayloadTypes().get(1).getName());
+        assertEquals(parameterCount, vp8.getParameters().size());
+        assertSame(codecs, c2.getCodecSet());
+
+        assertTrue(
+            c1.modifyRtpHeaderExtension(hdrExt(3), e -> e.setID("4")));
+        assertEquals(
+            "4", c1.getRtpHeaderExtensions().iterator().next().getID());
+        assertEquals(
+            "3", c2.getRtpHeaderExtensions().iterator().next().getID());
+        assertFalse(c1.modifyRtpHeaderExtension(hdrExt(3), e -> {}));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link ColibriAnalyser}.
+ */
+public class ColibriAnalyserTest
+    extends TestCase
+{
+    private static ColibriConferenceIQ.Channel createChannel(
+            String id, String endpoint)
+    {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        channel.setID(id);
+        channel.setEndpoint(endpoint);
+        channel.setChannelBundleId(endpoint);
+        return channel;
+    }
+
+    public void testSplitResponseByEndpoint()
+    {
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Channel audioA = createChannel("a1", "a");
+        ColibriConferenceIQ.Channel audioB = createChannel("b1", "b");
+        ColibriConferenceIQ.Channel videoA = createChannel("a2", "a");
+        ColibriConferenceIQ.Channel orphan = createChannel("x", null);
+
+        response.setID("conf");
+        response.getOrCreateContent("audio").addChannel(audioA);
+        response.getOrCreateContent("audio").addChannel(audioB);
+        response.getOrCreateContent("video").addChannel(videoA);
+        response.getOrCreateContent("video").addChannel(orphan);
+        response.addChannelBundle(new ColibriConferenceIQ.ChannelBundle("a"));
+        response.addChannelBundle(new ColibriConferenceIQ.ChannelBundle("b"));
+        response.addEndpoint(new ColibriConferenceIQ.Endpoint("b", null, null));
+
+        Map<String, ColibriConferenceIQ> views
+            = ColibriAnalyser.splitResponseByEndpoint(response);
+
+        assertEquals(2, views.size());
+
+        ColibriConferenceIQ a = views.get("a");
+        ColibriConferenceIQ b = views.get("b");
+
+        assertEquals("conf", a.getID());
+        assertSame(audioA, a.getContent("audio").getChannel("a1"));
+        assertSame(videoA, a.getContent("video").getChannel("a2"));
+        assertEquals(1, a.getContent("video").getChannelCount());
+        assertEquals(1, a.getChannelBundles().size());
+        assertEquals("a", a.getChannelBundles().get(0).getId());
+        assertTrue(a.getEndpoints().isEmpty());
+
+        assertSame(audioB, b.getContent("audio").getChannel("b1"));
+        assertNull(b.getContent("video"));
+        assertEquals("b", b.getChannelBundles().get(0).getId());
+        assertEquals(1, b.getEndpoints().size());
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+
+import org.jitsi.xmpp.extensions.jingle.*;
+
+/**
+ * Tests {@link ColibriConferenceIQ} and its parts.
+ */
+public class ColibriConferenceIQTest
+    extends TestCase
+{
+    /**
+     * The channels of a content are found by ID and endpoint, also after
+     * these change, and are listed in the order in which they were added.
+     */
+    public void testContentIndexes()
+    {
+        ColibriConferenceIQ.Content content
+            = new ColibriConferenceIQ.Content("video");
+        ColibriConferenceIQ.Content other
+            = new ColibriConferenceIQ.Content("video");
+        ColibriConferenceIQ.Channel c1 = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel c2 = new ColibriConferenceIQ.Channel();
+        ColibriConferenceIQ.Channel c3 = new ColibriConferenceIQ.Channel();
+
+        c1.setID("1");
+        c1.setEndpoint("a");
+        c2.setID("2");
+        c2.setEndpoint("b");
+        assertTrue(content.addChannel(c1));
+        assertTrue(content.addChannel(c2));
+        assertFalse(content.addChannel(c1));
+        assertTrue(content.addChannel(c3));
+        assertTrue(other.addChannel(c1));
+
+        assertEquals(Arrays.asList(c1, c2, c3), content.getChannels());
+        assertSame(c2, content.getChannel(1));
+        assertSame(c1, content.getChannel("1"));
+        assertNull(content.getChannel("3"));
+        assertEquals(
+            Collections.singletonList(c1),
+            content.getChannelsForEndpoint("a"));
+
+        // Changes made after the inclusion are indexed by all contents.
+        c3.setID("3");
+        c3.setEndpoint("a");
+        c1.setID("one");
+        assertSame(c3, content.getChannel("3"));
+        assertNull(content.getChannel("1"));
+        assertSame(c1, content.getChannel("one"));
+        assertSame(c1, other.getChannel("one"));
+        assertEquals(
+            Arrays.asList(c1, c3),
+            content.getChannelsForEndpoint("a"));
+
+        c2.setEndpoint("a");
+        assertEquals(
+            Arrays.asList(c1, c2, c3),
+            content.getChannelsForEndpoint("a"));
+        assertTrue(content.getChannelsForEndpoint("b").isEmpty());
+
+        assertTrue(content.removeChannel(c1));
+        assertFalse(content.removeChannel(c1));
+        assertNull(content.getChannel("one"));
+        assertSame(c1, other.getChannel("one"));
+        assertEquals(
+            Arrays.asList(c2, c3),
+            content.getChannelsForEndpoint("a"));
+
+        // The first of several channels with the same ID is found.
+        c3.setID("2");
+        assertSame(c2, content.getChannel("2"));
+        content.removeChannel(c2);
+        assertSame(c3, content.getChannel("2"));
+
+        // A channel does not keep the contents which include it, and may be
+        // included into others.
+        ColibriConferenceIQ.Content third
+            = new ColibriConferenceIQ.Content("video");
+
+        assertTrue(third.addChannel(c3));
+        assertFalse(third.addChannel(c3));
+        assertSame(c3, third.getChannel("2"));
+
+        ColibriConferenceIQ.SctpConnection conn
+            = new ColibriConferenceIQ.SctpConnection();
+
+        assertTrue(content.addSctpConnection(conn));
+        assertFalse(content.addSctpConnection(conn));
+        conn.setID("sctp");
+        assertSame(conn, content.getSctpConnection("sctp"));
+        assertTrue(content.removeSctpConnection(conn));
+        assertNull(content.getSctpConnection("sctp"));
+    }
+
+    /**
+     * The contents of a conference are found by name, also after it changes,
+     * and the views of the conference reflect later changes.
+     */
+    public void testConferenceViews()
+    {
+        ColibriConferenceIQ conference = new ColibriConferenceIQ();
+        ColibriConferenceIQ.Content audio
+            = new ColibriConferenceIQ.Content("audio");
+        ColibriConferenceIQ.Content video
+            = new ColibriConferenceIQ.Content("video");
+        ColibriConferenceIQ.Content video2
+            = new ColibriConferenceIQ.Content("video");
+        List<ColibriConferenceIQ.Content> contents = conference.getContents();
+        Collection<ColibriConferenceIQ.Endpoint> endpoints
+            = conference.getEndpointsView();
+
+        assertEquals("<conference xmlns='" + ColibriConferenceIQ.NAMESPACE
+                + "'/>",
+            conference.getChildElementXML().toString());
+
+        assertTrue(conference.addContent(audio));
+        assertTrue(conference.addContent(video));
+        assertFalse(conference.addContent(audio));
+        assertTrue(conference.addContent(video2));
+        assertSame(contents, conference.getContents());
+        assertEquals(Arrays.asList(audio, video, video2), contents);
+        assertEquals(3, conference.getContentCount());
+        assertSame(video, conference.getContent("video"));
+        assertSame(video, conference.getContentsByName().get("video"));
+        assertSame(video, conference.getOrCreateContent("video"));
+
+        Map<String, ColibriConferenceIQ.Content> byName
+            = conference.getContentsByName();
+
+        video.setName("screen");
+        assertSame(video, conference.getContent("screen"));
+        assertSame(video2, conference.getContent("video"));
+        assertSame(video, byName.get("screen"));
+
+        // A content does not keep the conferences which include it, and may
+        // be included into others.
+        ColibriConferenceIQ other = new ColibriConferenceIQ();
+
+        assertTrue(other.addContent(video));
+        assertFalse(other.addContent(video));
+        assertSame(video, other.getContent("screen"));
+        video.setName("video");
+        assertSame(video, conference.getContent("video"));
+
+        assertTrue(conference.removeContent(video));
+        assertFalse(conference.removeContent(video));
+        assertSame(video2, conference.getContent("video"));
+        video.setName("data");
+        assertNull(conference.getContent("data"));
+        assertTrue(conference.removeContent(video2));
+        assertNull(conference.getContent("video"));
+        assertEquals(1, conference.getContentsByName().size());
+
+        assertTrue(endpoints.isEmpty());
+        conference.addEndpoint(
+            new ColibriConferenceIQ.Endpoint("a", null, null));
+        conference.addChannelBundle(
+            new ColibriConferenceIQ.ChannelBundle("a"));
+        assertEquals(1, endpoints.size());
+        assertEquals(1, conference.getEndpointCount());
+        assertEquals(1, conference.getChannelBundleCount());
+        assertEquals(
+            "a", conference.getChannelBundlesView().iterator().next().getId());
+    }
+
+    /**
+     * The sources of a channel are found by SSRC and RID, and sources equal
+     * in the sense of <tt>sourceEquals</tt> are not added twice.
+     */
+    public void testChannelSourceIndex()
+    {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+        List<SourcePacketExtension> added = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++)
+        {
+            SourcePacketExtension s = new SourcePacketExtension();
+
+            s.setSSRC(0xffffff00L + i);
+            assertTrue(channel.addSource(s));
+            added.add(s);
+        }
+
+        SourcePacketExtension duplicate = new SourcePacketExtension();
+        SourcePacketExtension r1 = new SourcePacketExtension();
+        SourcePacketExtension r1WithSSRC = new SourcePacketExtension();
+        SourcePacketExtension empty = new SourcePacketExtension();
+
+        duplicate.setSSRC(0xffffff03L);
+        r1.setRid("1");
+        r1WithSSRC.setRid("1");
+        r1WithSSRC.setSSRC(1);
+        assertFalse(channel.addSource(duplicate));
+        assertTrue(channel.addSource(r1));
+        assertFalse(channel.addSource(r1WithSSRC));
+        assertTrue(channel.addSource(empty));
+        assertFalse(channel.addSource(empty));
+        assertTrue(channel.addSource(new SourcePacketExtension()));
+        assertEquals(23, channel.getSourceCount());
+
+        assertSame(added.get(3), channel.getSourceBySSRC(0xffffff03L));
+        assertNull(channel.getSourceBySSRC(1));
+        assertSame(r1, channel.getSourceByRid("1"));
+        assertNull(channel.getSourceByRid("2"));
+
+        SourceGroupPacketExtension group = new SourceGroupPacketExtension();
+
+        group.addSources(Arrays.asList(duplicate, r1WithSSRC));
+        assertTrue(channel.ownsSourcesOf(group));
+        group.addSources(Collections.singletonList(empty));
+        assertFalse(channel.ownsSourcesOf(group));
+
+        // Removals go by instance and keep the remaining ones reachable.
+        assertFalse(channel.removeSource(duplicate));
+        for (int i = 0; i < added.size(); i += 2)
+        {
+            assertTrue(channel.removeSource(added.get(i)));
+        }
+        for (int i = 0; i < added.size(); i++)
+        {
+            assertEquals(
+                (i % 2 == 0) ? null : added.get(i),
+                channel.getSourceBySSRC(0xffffff00L + i));
+        }
+        assertTrue(channel.removeSource(r1));
+        assertNull(channel.getSourceByRid("1"));
+        assertTrue(channel.removeSource(empty));
+        assertEquals(11, channel.getSourceCount());
+        assertEquals(added.get(1), channel.getSources().get(0));
+    }
+
+    /**
+     * The views of the sources and source groups of a channel are shared
+     * until the channel changes and cannot be modified.
+     */
+    public void testChannelSourceViews()
+    {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        assertTrue(channel.getSourcesView().isEmpty());
+        assertTrue(channel.getSourceGroupsView().isEmpty());
+
+        SourcePacketExtension source = new SourcePacketExtension();
+        SourceGroupPacketExtension group = new SourceGroupPacketExtension();
+
+        source.setSSRC(1);
+        channel.addSource(source);
+        channel.addSourceGroup(group);
+
+        List<SourcePacketExtension> sources = channel.getSourcesView();
+        List<SourceGroupPacketExtension> groups
+            = channel.getSourceGroupsView();
+
+        assertSame(sources, channel.getSourcesView());
+        assertSame(groups, channel.getSourceGroupsView());
+        assertEquals(Collections.singletonList(source), sources);
+        assertEquals(Collections.singletonList(group), groups);
+        try
+        {
+            sources.clear();
+            fail();
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+
+        // A failed modification keeps the views.
+        assertFalse(channel.addSource(source));
+        assertSame(sources, channel.getSourcesView());
+
+        assertTrue(channel.removeSource(source));
+        assertTrue(channel.removeSourceGroup(group));
+        assertTrue(channel.getSourcesView().isEmpty());
+        assertTrue(channel.getSourceGroupsView().isEmpty());
+        assertEquals(1, sources.size());
+    }
+
+    /**
+     * A frozen channel and the sources it holds cannot be modified.
+     */
+    public void testChannelFreeze()
+    {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(1);
+        channel.addSource(source);
+        channel.setEndpoint("a");
+        channel.freeze();
+        assertTrue(channel.isFrozen());
+        assertTrue(source.isFrozen());
+        assertEquals("a", channel.getEndpoint());
+
+        try
+        {
+            channel.setEndpoint("b");
+            fail("a frozen channel must not be modified");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        try
+        {
+            channel.removeSource(source);
+            fail("a frozen channel must not be modified");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        assertEquals(1, channel.getSourceCount());
+    }
+}
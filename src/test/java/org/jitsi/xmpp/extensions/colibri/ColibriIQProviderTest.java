@@ -24,6 +24,7 @@ import org.jxmpp.jid.impl.*;
 import org.xmlpull.mxp1.MXParser;
 import org.xmlpull.v1.XmlPullParser;
 
+import org.jitsi.xmpp.extensions.jingle.*;
 import org.jitsi.xmpp.extensions.jitsimeet.*;
 
 import java.io.StringReader;
@@ -195,4 +196,50 @@ public class ColibriIQProviderTest extends TestCase
                 "test@conference.brian2.jitsi.net/66e3ea10"),
             ssrcInfo.getOwner());
     }
+
+    /**
+     * The parser specialized for the children of channels produces the same
+     * elements as the providers registered with <tt>ProviderManager</tt>.
+     */
+    public void testFastChannelParsing()
+            throws Exception
+    {
+        assertFalse(colibriIQProvider.isFastChannelParsing());
+        // Registers the providers of the transport elements.
+        new JingleIQProvider();
+
+        String generic = parseTestXml().getChildElementXML().toString();
+
+        colibriIQProvider.setFastChannelParsing(true);
+        assertEquals(generic, parseTestXml().getChildElementXML().toString());
+
+        ColibriConferenceIQ conference = parseTestXml();
+        SourcePacketExtension source
+            = conference.getContent("video").getChannel(0).getSources().get(1);
+
+        assertEquals(3236476221L, source.getSSRC());
+        assertNotNull(
+            conference.getChannelBundle("66e3ea10").getTransport()
+                .getFirstChildOfType(DtlsFingerprintPacketExtension.class));
+
+        assertEquals(-2, ColibriChannelParser.parseSSRC(" -2\n"));
+        assertEquals(-1, ColibriChannelParser.parseSSRC("4294967295"));
+        try
+        {
+            ColibriChannelParser.parseSSRC("12a");
+            fail();
+        }
+        catch (NumberFormatException expected)
+        {
+        }
+    }
+
+    private ColibriConferenceIQ parseTestXml()
+            throws Exception
+    {
+        xmlPullParser.setInput(new StringReader(testXml));
+        xmlPullParser.next(); // iq
+        xmlPullParser.next(); // conference
+        return (ColibriConferenceIQ) colibriIQProvider.parse(xmlPullParser, 0);
+    }
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import org.jitsi.xmpp.extensions.colibri.ColibriBuilder.RequestType;
+import org.jitsi.xmpp.extensions.jingle.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.jxmpp.jid.impl.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests {@link ColibriRequestCoalescer}.
+ */
+public class ColibriRequestCoalescerTest
+    extends TestCase
+{
+    /**
+     * The requests sent by the coalescer under test.
+     */
+    private final List<ColibriConferenceIQ> sent = new ArrayList<>();
+
+    /**
+     * The responses to {@link #sent}, completed by the tests.
+     */
+    private final List<CompletableFuture<IQ>> responses = new ArrayList<>();
+
+    private ScheduledExecutorService executor;
+
+    @Override
+    protected void setUp()
+    {
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    private CompletionStage<IQ> send(ColibriConferenceIQ request)
+    {
+        CompletableFuture<IQ> response = new CompletableFuture<>();
+
+        synchronized (sent)
+        {
+            sent.add(request);
+            responses.add(response);
+        }
+        return response;
+    }
+
+    /**
+     * Responds to a channel allocation request like a bridge would, with a
+     * new ID for each channel.
+     */
+    private static ColibriConferenceIQ allocate(ColibriConferenceIQ request)
+    {
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+
+        response.setType(IQ.Type.result);
+        response.setID(request.getID() == null ? "conf" : request.getID());
+        for (ColibriConferenceIQ.Content content : request.getContents())
+        {
+            for (ColibriConferenceIQ.Channel channel : content.getChannels())
+            {
+                ColibriConferenceIQ.Channel allocated
+                    = new ColibriConferenceIQ.Channel();
+
+                allocated.setID(
+                    content.getName() + "-" + channel.getEndpoint());
+                allocated.setEndpoint(channel.getEndpoint());
+                response.getOrCreateContent(content.getName())
+                    .addChannel(allocated);
+            }
+        }
+        for (ColibriConferenceIQ.Endpoint endpoint : request.getEndpoints())
+        {
+            response.addEndpoint(endpoint);
+        }
+        return response;
+    }
+
+    private static List<ContentPacketExtension> contents()
+    {
+        ContentPacketExtension audio = new ContentPacketExtension();
+
+        audio.setName("audio");
+        return Collections.singletonList(audio);
+    }
+
+    /**
+     * Allocations submitted together are sent as one request, the following
+     * batches wait for its response, and each caller gets its own channels.
+     */
+    public void testCoalescing()
+        throws Exception
+    {
+        ColibriConferenceIQ state = new ColibriConferenceIQ();
+        ColibriRequestCoalescer coalescer
+            = new ColibriRequestCoalescer(
+                    state,
+                    JidCreate.from("bridge@example.com"),
+                    this::send,
+                    executor,
+                    TimeUnit.HOURS.toMillis(1),
+                    3);
+        List<CompletableFuture<ColibriConferenceIQ>> allocations
+            = new ArrayList<>();
+
+        for (String endpoint : Arrays.asList("a", "b", "c", "d"))
+        {
+            allocations.add(
+                coalescer.allocateChannels(
+                    true, endpoint, null, true, contents()));
+        }
+
+        // The first batch is full, the second one waits for its window.
+        assertEquals(1, sent.size());
+        assertEquals(3, sent.get(0).getEndpoints().size());
+        assertNull(sent.get(0).getID());
+
+        CompletableFuture<IQ> expired
+            = coalescer.submit(
+                    RequestType.EXPIRE_CHANNELS,
+                    b -> b.addExpireChannelsReq(new ColibriConferenceIQ()));
+
+        responses.get(0).complete(allocate(sent.get(0)));
+        assertEquals("conf", state.getID());
+        assertEquals(
+            "audio-b",
+            allocations.get(1).get().getContent("audio").getChannels().get(0)
+                .getID());
+        assertEquals(1, allocations.get(1).get().getEndpoints().size());
+
+        // The second batch was closed by the expire request, and now carries
+        // the conference ID.
+        assertEquals(2, sent.size());
+        assertEquals("conf", sent.get(1).getID());
+        assertFalse(allocations.get(3).isDone());
+        responses.get(1).complete(allocate(sent.get(1)));
+        assertEquals(
+            "audio-d",
+            allocations.get(3).get().getContent("audio").getChannels().get(0)
+                .getID());
+        assertEquals(4, state.getContent("audio").getChannelCount());
+
+        // Nothing to expire, so nothing is sent.
+        coalescer.flush();
+        assertNull(expired.get(1, TimeUnit.SECONDS));
+        assertEquals(2, sent.size());
+    }
+
+    /**
+     * A batch is sent at the end of its coalescing window.
+     */
+    public void testWindow()
+        throws Exception
+    {
+        ColibriRequestCoalescer coalescer
+            = new ColibriRequestCoalescer(
+                    new ColibriConferenceIQ(),
+                    JidCreate.from("bridge@example.com"),
+                    this::send,
+                    executor,
+                    10,
+                    100);
+        CompletableFuture<ColibriConferenceIQ> a
+            = coalescer.allocateChannels(true, "a", null, true, contents());
+        CompletableFuture<ColibriConferenceIQ> b
+            = coalescer.allocateChannels(true, "b", null, true, contents());
+
+        for (int i = 0; i < 500; i++)
+        {
+            synchronized (sent)
+            {
+                if (!sent.isEmpty())
+                    break;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(1, sent.size());
+        responses.get(0).complete(allocate(sent.get(0)));
+        assertEquals(
+            "audio-a",
+            a.get().getContent("audio").getChannels().get(0).getID());
+        assertEquals(
+            "audio-b",
+            b.get().getContent("audio").getChannels().get(0).getID());
+    }
+
+    /**
+     * An operation which throws leaves nothing in the request of its batch.
+     */
+    public void testFailedOperation()
+        throws Exception
+    {
+        ColibriRequestCoalescer coalescer
+            = new ColibriRequestCoalescer(
+                    new ColibriConferenceIQ(),
+                    JidCreate.from("bridge@example.com"),
+                    this::send,
+                    executor,
+                    TimeUnit.HOURS.toMillis(1),
+                    10);
+
+        coalescer.allocateChannels(true, "a", null, true, contents());
+        coalescer.flush();
+
+        CompletableFuture<ColibriConferenceIQ> b
+            = coalescer.allocateChannels(true, "b", null, true, contents());
+        CompletableFuture<IQ> failed
+            = coalescer.submit(
+                    RequestType.ALLOCATE_CHANNELS,
+                    builder -> {
+                        builder.addAllocateChannelsReq(
+                            true, "x", null, true, contents());
+                        throw new IllegalStateException();
+                    });
+        CompletableFuture<ColibriConferenceIQ> c
+            = coalescer.allocateChannels(true, "c", null, true, contents());
+
+        coalescer.flush();
+        responses.get(0).complete(allocate(sent.get(0)));
+        assertEquals(2, sent.size());
+        assertTrue(failed.isCompletedExceptionally());
+
+        List<String> endpoints = new ArrayList<>();
+
+        for (ColibriConferenceIQ.Endpoint endpoint : sent.get(1).getEndpoints())
+        {
+            endpoints.add(endpoint.getId());
+        }
+        assertEquals(Arrays.asList("b", "c"), endpoints);
+        assertEquals(
+            2, sent.get(1).getContent("audio").getChannelCount());
+        responses.get(1).complete(allocate(sent.get(1)));
+        assertEquals(
+            "audio-c",
+            c.get().getContent("audio").getChannels().get(0).getID());
+        assertTrue(b.isDone());
+    }
+
+    /**
+     * A sender which responds synchronously does not make the queued
+     * batches recurse.
+     */
+    public void testSynchronousSender()
+        throws Exception
+    {
+        CompletableFuture<IQ> first = new CompletableFuture<>();
+        ColibriRequestCoalescer coalescer
+            = new ColibriRequestCoalescer(
+                    new ColibriConferenceIQ(),
+                    JidCreate.from("bridge@example.com"),
+                    request -> {
+                        sent.add(request);
+                        return (sent.size() == 1)
+                            ? first
+                            : CompletableFuture.completedFuture(
+                                    allocate(request));
+                    },
+                    executor,
+                    0,
+                    1);
+        int batches = 20000;
+        CompletableFuture<ColibriConferenceIQ> last = null;
+
+        for (int i = 0; i < batches; i++)
+        {
+            last
+                = coalescer.allocateChannels(
+                    true, "e" + i, null, true, contents());
+        }
+        assertEquals(1, sent.size());
+        first.complete(allocate(sent.get(0)));
+        assertEquals(batches, sent.size());
+        assertEquals(
+            "audio-e" + (batches - 1),
+            last.get().getContent("audio").getChannels().get(0).getID());
+    }
+}
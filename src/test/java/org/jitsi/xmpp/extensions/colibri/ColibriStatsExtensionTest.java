@@ -19,6 +19,12 @@ package org.jitsi.xmpp.extensions.colibri;
 
 import junit.framework.*;
 
+import org.jivesoftware.smack.packet.*;
+import org.jxmpp.jid.*;
+import org.jxmpp.jid.impl.*;
+
+import java.util.*;
+
 /**
  * @author Boris Grozev
  */
@@ -43,12 +49,216 @@ public class ColibriStatsExtensionTest
         stats.addStat("int", 13);
         assertEquals(stats.getValueAsInt("int"), new Integer(13));
         assertEquals(stats.getValueAsString("int"), "13");
+        assertEquals("13", stats.getValue("int"));
+
+        // A value which is not a number fails to parse every time.
+        assertNull(stats.getValueAsLong("name"));
+        assertNull(stats.getValueAsLong("name"));
+        assertEquals(-1.0, stats.getValueAsDouble("name", -1));
+        assertEquals(-1.0, stats.getValueAsDouble("name", -1));
 
         assertNull(stats.getStat("somethingelse"));
         assertNull(stats.getValue("somethingelse"));
 
     }
 
+    /**
+     * Test the typed values and the lookup of stats by name.
+     */
+    @SuppressWarnings("unchecked")
+    public void testTypedValues()
+    {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat(ColibriStatsExtension.TOTAL_BYTES_RECEIVED, 5000000000L);
+        stats.addStat(ColibriStatsExtension.CPU_USAGE, 0.25);
+        stats.addStat(ColibriStatsExtension.CONFERENCES, "12");
+
+        assertEquals(
+            Long.valueOf(5000000000L),
+            stats.getValueAsLong(ColibriStatsExtension.TOTAL_BYTES_RECEIVED));
+        assertNull(
+            stats.getValueAsInt(ColibriStatsExtension.TOTAL_BYTES_RECEIVED));
+        assertEquals(
+            5000000000.0,
+            stats.getValueAsDouble(
+                ColibriStatsExtension.TOTAL_BYTES_RECEIVED, Double.NaN));
+        assertEquals(
+            Double.valueOf(0.25),
+            stats.getValueAsDouble(ColibriStatsExtension.CPU_USAGE));
+        assertNull(stats.getValueAsLong(ColibriStatsExtension.CPU_USAGE));
+        assertEquals(
+            Long.valueOf(12),
+            stats.getValueAsLong(ColibriStatsExtension.CONFERENCES));
+        assertEquals(
+            Double.valueOf(12),
+            stats.getValueAsDouble(ColibriStatsExtension.CONFERENCES));
+        assertTrue(
+            stats.toXML().contains(
+                "<stat name='total_bytes_received' value='5000000000'/>"));
+
+        // Renamed and removed stats are found by their new names.
+        ColibriStatsExtension.Stat stat
+            = stats.getStat(ColibriStatsExtension.CONFERENCES);
+
+        stat.setName(ColibriStatsExtension.LARGEST_CONFERENCE);
+        assertNull(stats.getStat(ColibriStatsExtension.CONFERENCES));
+        assertSame(
+            stat, stats.getStat(ColibriStatsExtension.LARGEST_CONFERENCE));
+        stats.removeChildExtension(stat);
+        assertNull(stats.getStat(ColibriStatsExtension.LARGEST_CONFERENCE));
+
+        // Naming a stat which had no name makes it visible by name.
+        ColibriStatsExtension.Stat unnamed = new ColibriStatsExtension.Stat();
+
+        stats.addStat(unnamed);
+        assertNull(stats.getStat(ColibriStatsExtension.VERSION));
+        unnamed.setName(ColibriStatsExtension.VERSION);
+        assertSame(unnamed, stats.getStat(ColibriStatsExtension.VERSION));
+
+        // The stats cannot be modified behind the back of the index.
+        try
+        {
+            ((List<ExtensionElement>) stats.getChildExtensions()).clear();
+            fail();
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+        assertEquals(3, stats.getStats().size());
+    }
+
+    /**
+     * Test the parsing, serialization and merging of histograms.
+     */
+    public void testHistograms()
+    {
+        ColibriStatsExtension bridge1 = new ColibriStatsExtension();
+        ColibriStatsExtension bridge2 = new ColibriStatsExtension();
+        ColibriStatsExtension bridge3 = new ColibriStatsExtension();
+
+        bridge1.addStat(
+            ColibriStatsExtension.CONFERENCE_SIZES, new long[] { 0, 3, 1 });
+        bridge2.addStat(ColibriStatsExtension.CONFERENCE_SIZES, " [ 2, 1 ] ");
+        bridge3.addStat(ColibriStatsExtension.CONFERENCE_SIZES, "[]");
+
+        assertTrue(
+            bridge1.toXML().contains(
+                "<stat name='conference_sizes' value='[0,3,1]'/>"));
+
+        long[] sizes
+            = bridge2.getValueAsLongArray(
+                    ColibriStatsExtension.CONFERENCE_SIZES);
+
+        assertTrue(Arrays.equals(new long[] { 2, 1 }, sizes));
+        // The callers get copies.
+        sizes[0] = 7;
+        assertTrue(
+            Arrays.equals(
+                new long[] { 2, 1 },
+                bridge2.getValueAsLongArray(
+                        ColibriStatsExtension.CONFERENCE_SIZES)));
+        assertEquals(
+            0,
+            bridge3.getValueAsLongArray(
+                    ColibriStatsExtension.CONFERENCE_SIZES).length);
+
+        bridge3.addStat(ColibriStatsExtension.CONFERENCES_BY_AUDIO_SENDERS,
+                        "[1,x]");
+        assertNull(
+            bridge3.getValueAsLongArray(
+                    ColibriStatsExtension.CONFERENCES_BY_AUDIO_SENDERS));
+
+        assertTrue(
+            Arrays.equals(
+                new long[] { 2, 4, 1 },
+                ColibriStatsExtension.mergeHistograms(
+                        ColibriStatsExtension.CONFERENCE_SIZES,
+                        Arrays.asList(bridge1, bridge2, bridge3))));
+    }
+
+    private static ColibriStatsExtension stats(
+            long conferences, double cpuUsage)
+    {
+        ColibriStatsExtension stats = new ColibriStatsExtension();
+
+        stats.addStat(ColibriStatsExtension.CONFERENCES, conferences);
+        stats.addStat(ColibriStatsExtension.CPU_USAGE, cpuUsage);
+        stats.addStat(ColibriStatsExtension.VERSION, "1.0");
+        return stats;
+    }
+
+    /**
+     * Test the publishing and merging of deltas.
+     */
+    public void testDeltas()
+        throws Exception
+    {
+        ColibriStatsDeltaPublisher publisher
+            = new ColibriStatsDeltaPublisher(3);
+        ColibriStatsDeltaMerger merger = new ColibriStatsDeltaMerger();
+        Jid bridge = JidCreate.from("jvb@example.com");
+
+        publisher.setThreshold(ColibriStatsExtension.CPU_USAGE, 0.1);
+
+        ColibriStatsExtension full = stats(1, 0.5);
+
+        assertSame(full, publisher.publish(full));
+        assertSame(full, merger.merge(bridge, full));
+        assertTrue(full.isFrozen());
+
+        // Only the conferences changed (by more than their threshold).
+        ColibriStatsExtension delta = publisher.publish(stats(2, 0.55));
+
+        assertTrue(delta.isDelta());
+        assertTrue(delta.toXML().contains("delta='true'"));
+        assertEquals(1, delta.getChildExtensionCount(
+                ColibriStatsExtension.Stat.class));
+
+        ColibriStatsExtension merged = merger.merge(bridge, delta);
+
+        // The snapshots are shared, so they cannot be modified.
+        assertTrue(merged.isFrozen());
+        try
+        {
+            merged.addStat(ColibriStatsExtension.REGION, "eu");
+            fail("a merged snapshot must not be modified");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+
+        assertEquals(
+            Long.valueOf(2),
+            merged.getValueAsLong(ColibriStatsExtension.CONFERENCES));
+        assertEquals(
+            Double.valueOf(0.5),
+            merged.getValueAsDouble(ColibriStatsExtension.CPU_USAGE));
+        assertEquals("1.0", merged.getValueAsString(
+                ColibriStatsExtension.VERSION));
+        assertEquals(
+            Long.valueOf(1),
+            full.getValueAsLong(ColibriStatsExtension.CONFERENCES));
+
+        // The drift is measured from the last published value.
+        delta = publisher.publish(stats(2, 0.65));
+        assertTrue(delta.isDelta());
+        assertNotNull(delta.getStat(ColibriStatsExtension.CPU_USAGE));
+
+        // Every third interval is a full set of stats.
+        assertFalse(publisher.publish(stats(2, 0.65)).isDelta());
+
+        // So is any set from which a stat disappeared.
+        ColibriStatsExtension removed = stats(2, 0.65);
+
+        removed.removeChildExtension(
+            removed.getStat(ColibriStatsExtension.VERSION));
+        assertSame(removed, publisher.publish(removed));
+        assertSame(removed, merger.merge(bridge, removed));
+        assertSame(removed, merger.remove(bridge));
+        assertNull(merger.get(bridge));
+    }
+
     /**
      * Test cloning.
      */
@@ -0,0 +1,159 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import org.jxmpp.jid.impl.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link SSRCRegistry}.
+ */
+public class SSRCRegistryTest
+    extends TestCase
+{
+    private static ColibriConferenceIQ.Channel channel(
+            String id, String endpoint, long... ssrcs)
+    {
+        ColibriConferenceIQ.Channel channel = new ColibriConferenceIQ.Channel();
+
+        channel.setID(id);
+        channel.setEndpoint(endpoint);
+        for (long ssrc : ssrcs)
+        {
+            channel.addSource(source(ssrc));
+        }
+        return channel;
+    }
+
+    private static SourcePacketExtension source(long ssrc)
+    {
+        SourcePacketExtension source = new SourcePacketExtension();
+
+        source.setSSRC(ssrc);
+        return source;
+    }
+
+    /**
+     * SSRCs keep their first owner, clashes are reported, and the SSRCs of a
+     * channel are replaced and unregistered together.
+     */
+    public void testOwnership()
+    {
+        SSRCRegistry registry = new SSRCRegistry();
+        ColibriConferenceIQ.Channel a = channel("a", "ep-a", 1, 2, 0xffffffffL);
+        ColibriConferenceIQ.Channel b = channel("b", "ep-b", 2, 3);
+
+        assertTrue(registry.registerChannel("video", a).isEmpty());
+
+        List<SourcePacketExtension> clashes
+            = registry.registerChannel("video", b);
+
+        assertEquals(1, clashes.size());
+        assertEquals(2, clashes.get(0).getSSRC());
+        assertEquals("a", registry.getOwner(2).getChannelId());
+        assertEquals("ep-b", registry.getOwner(3).getEndpoint());
+        assertEquals("ep-a", registry.getOwner(0xffffffffL).getEndpoint());
+        assertTrue(registry.clashes(2, "video", "b"));
+        assertFalse(registry.clashes(2, "video", "a"));
+        assertFalse(registry.clashes(4, "video", "b"));
+        // The same channel ID in another content is another channel.
+        assertTrue(registry.clashes(1, "audio", "a"));
+        assertEquals(4, registry.size());
+
+        assertTrue(
+            registry
+                .setSources("video", a, Arrays.asList(source(2), source(5)))
+                .isEmpty());
+        assertNull(registry.getOwner(1));
+        assertNull(registry.getOwner(0xffffffffL));
+        assertEquals("a", registry.getOwner(5).getChannelId());
+        assertEquals(3, registry.size());
+
+        assertEquals(2, registry.unregisterChannel("video", "a"));
+        assertNull(registry.getOwner(2));
+        assertTrue(registry.registerChannel("video", b).isEmpty());
+        assertEquals("b", registry.getOwner(2).getChannelId());
+        assertEquals("b", registry.unregister(3).getChannelId());
+        assertTrue(
+            Arrays.equals(new long[] { 2 }, registry.getSSRCs("video", "b")));
+    }
+
+    /**
+     * Allocation responses and expire requests keep the registry of the
+     * conference state up to date.
+     */
+    public void testAnalyserAndBuilder()
+        throws Exception
+    {
+        ColibriConferenceIQ state = new ColibriConferenceIQ();
+        ColibriConferenceIQ response = new ColibriConferenceIQ();
+
+        response.setID("conference");
+        response.getOrCreateContent("audio").addChannel(channel("x", "e", 7));
+        new ColibriAnalyser(state).processChannelAllocResp(response);
+        assertEquals("x", state.getSSRCRegistry().getOwner(7).getChannelId());
+
+        // A channel with the ID of an existing one is not adopted, and the
+        // sources whose SSRCs are owned by other channels are dropped.
+        ColibriConferenceIQ.Channel y = channel("y", "f", 7, 8);
+
+        response = new ColibriConferenceIQ();
+        response.setID("conference");
+        response.getOrCreateContent("audio").addChannel(channel("x", "f", 9));
+        response.getOrCreateContent("audio").addChannel(y);
+        new ColibriAnalyser(state).processChannelAllocResp(response);
+        assertEquals(2, state.getContent("audio").getChannelCount());
+        assertNull(state.getSSRCRegistry().getOwner(9));
+        assertSame(y, state.getContent("audio").getChannel("y"));
+        assertEquals(1, y.getSourceCount());
+        assertNotNull(y.getSourceBySSRC(8));
+        assertEquals("x", state.getSSRCRegistry().getOwner(7).getChannelId());
+
+        // So are the ones of a source update.
+        ColibriBuilder builder = new ColibriBuilder(state);
+        ColibriConferenceIQ local = new ColibriConferenceIQ();
+
+        local.getOrCreateContent("audio").addChannel(channel("y", "f"));
+        assertTrue(
+            builder.addSourceInfo(
+                Collections.singletonMap(
+                    "audio", Arrays.asList(source(7), source(10))),
+                local));
+        ColibriConferenceIQ request
+            = builder.getRequest(JidCreate.from("bridge.example.com"));
+
+        assertNull(
+            request.getContent("audio").getChannel("y").getSourceBySSRC(7));
+        // The sources are only registered once the bridge acknowledges them.
+        assertNull(state.getSSRCRegistry().getOwner(10));
+        assertEquals("y", state.getSSRCRegistry().getOwner(8).getChannelId());
+        new ColibriAnalyser(state).processChannelUpdateResp(request);
+        assertEquals("y", state.getSSRCRegistry().getOwner(10).getChannelId());
+        assertNull(state.getSSRCRegistry().getOwner(8));
+        assertEquals("x", state.getSSRCRegistry().getOwner(7).getChannelId());
+
+        ColibriConferenceIQ expired = new ColibriConferenceIQ();
+
+        expired.getOrCreateContent("audio").addChannel(channel("x", "e"));
+        assertTrue(new ColibriBuilder(state).addExpireChannelsReq(expired));
+        assertNull(state.getSSRCRegistry().getOwner(7));
+        assertEquals("y", state.getSSRCRegistry().getOwner(10).getChannelId());
+        assertEquals(1, state.getSSRCRegistry().size());
+    }
+}
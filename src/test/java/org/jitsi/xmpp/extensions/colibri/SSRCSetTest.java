@@ -0,0 +1,80 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link SSRCSet}.
+ */
+public class SSRCSetTest
+    extends TestCase
+{
+    /**
+     * A set keeps the insertion order and ignores duplicates, below and
+     * above the size at which it starts hashing.
+     */
+    public void testAddRemove()
+    {
+        SSRCSet set = new SSRCSet();
+        int[] ssrcs = new int[100];
+
+        for (int i = 0; i < ssrcs.length; i++)
+        {
+            // Include 0 and negative (i.e. large unsigned) SSRCs.
+            ssrcs[i] = (i % 2 == 0) ? i * 1000 : -i;
+        }
+
+        assertTrue(set.add(ssrcs[0]));
+        assertFalse(set.add(ssrcs[0]));
+        assertEquals(ssrcs.length - 1, set.addAll(ssrcs));
+        assertEquals(0, set.addAll(ssrcs));
+        assertEquals(ssrcs.length, set.size());
+        assertTrue(Arrays.equals(ssrcs, set.toArray()));
+        for (int ssrc : ssrcs)
+        {
+            assertTrue(set.contains(ssrc));
+        }
+        assertFalse(set.contains(7));
+
+        assertTrue(set.remove(ssrcs[10]));
+        assertFalse(set.remove(ssrcs[10]));
+        assertFalse(set.contains(ssrcs[10]));
+        assertEquals(ssrcs[11], set.get(10));
+
+        int[] removed = Arrays.copyOfRange(ssrcs, 5, 95);
+
+        assertEquals(removed.length - 1, set.removeAll(removed));
+        assertEquals(
+            "[0, -1, 2000, -3, 4000, -95, 96000, -97, 98000, -99]",
+            set.toString());
+        assertTrue(set.add(ssrcs[50]));
+        assertEquals(ssrcs[50], set.get(set.size() - 1));
+
+        StringBuilder visited = new StringBuilder();
+
+        set.forEach(ssrc -> visited.append(ssrc).append(' '));
+        assertEquals(
+            "0 -1 2000 -3 4000 -95 96000 -97 98000 -99 50000 ",
+            visited.toString());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.toArray().length);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright @ 2018 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jitsi.xmpp.extensions.colibri;
+
+import junit.framework.*;
+
+import org.jxmpp.jid.*;
+import org.jxmpp.jid.impl.*;
+
+import java.util.*;
+
+/**
+ * Tests {@link StatRingBuffer} and {@link ColibriStatsHistory}.
+ */
+public class StatRingBufferTest
+    extends TestCase
+{
+    /**
+     * The windowed aggregates only see the samples which are in the window
+     * and have not been overwritten.
+     */
+    public void testWindows()
+    {
+        StatRingBuffer buffer = new StatRingBuffer(4, 0.5);
+
+        assertTrue(Double.isNaN(buffer.latest()));
+        assertTrue(Double.isNaN(buffer.mean(0)));
+
+        for (int i = 1; i <= 6; i++)
+        {
+            buffer.append(i * 1000, i);
+        }
+
+        // Samples 1 and 2 have been overwritten.
+        assertEquals(4, buffer.size());
+        assertEquals(6.0, buffer.latest());
+        assertEquals(3.0, buffer.min(0));
+        assertEquals(6.0, buffer.max(0));
+        assertEquals(4.5, buffer.mean(0));
+        assertEquals(6.0, buffer.p95(0));
+        assertEquals(4.0, buffer.percentile(50, 0));
+
+        // The last two seconds.
+        assertEquals(2, buffer.count(5000));
+        assertEquals(5.0, buffer.min(5000));
+        assertEquals(5.5, buffer.mean(5000));
+        assertTrue(Double.isNaN(buffer.max(7000)));
+
+        // 1, 1.5, 2.25, 3.125, 4.0625, 5.03125
+        assertEquals(5.03125, buffer.ewma());
+    }
+
+    /**
+     * The history of a bridge is fed from its stats.
+     */
+    public void testHistory()
+        throws Exception
+    {
+        ColibriStatsHistory history
+            = new ColibriStatsHistory(
+                    Arrays.asList(
+                        ColibriStatsExtension.CPU_USAGE,
+                        ColibriStatsExtension.PACKET_RATE_DOWNLOAD),
+                    10,
+                    0.2);
+        Jid bridge = JidCreate.from("jvb@example.com");
+
+        for (int i = 0; i < 3; i++)
+        {
+            ColibriStatsExtension stats = new ColibriStatsExtension();
+
+            stats.addStat(ColibriStatsExtension.CPU_USAGE, 0.1 * (i + 1));
+            stats.addStat(ColibriStatsExtension.VERSION, "1.0");
+            history.record(bridge, stats, i * 1000);
+        }
+
+        StatRingBuffer cpu
+            = history.getHistory(bridge, ColibriStatsExtension.CPU_USAGE);
+
+        assertEquals(3, cpu.size());
+        assertEquals(0.3, cpu.max(0), 1e-9);
+        assertEquals(
+            0,
+            history.getHistory(
+                    bridge, ColibriStatsExtension.PACKET_RATE_DOWNLOAD)
+                .size());
+        assertNull(history.getHistory(bridge, ColibriStatsExtension.VERSION));
+
+        history.remove(bridge);
+        assertNull(history.getHistory(bridge, ColibriStatsExtension.CPU_USAGE));
+    }
+}